@@ -36,9 +36,9 @@ import org.mastodon.grouping.GroupManager;
 import org.mastodon.grouping.GroupableModelFactory;
 import org.mastodon.model.AbstractModel;
 import org.mastodon.model.AbstractSpot;
+import org.mastodon.model.ConcurrentSelectionModel;
 import org.mastodon.model.DefaultFocusModel;
 import org.mastodon.model.DefaultHighlightModel;
-import org.mastodon.model.DefaultSelectionModel;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.ForwardingNavigationHandler;
 import org.mastodon.model.ForwardingTimepointModel;
@@ -138,7 +138,7 @@ public class MastodonAppModel<
 		final ListenableReadOnlyGraph< V, E > graph = model.getGraph();
 		final GraphIdBimap< V, E > idmap = model.getGraphIdBimap();
 
-		final DefaultSelectionModel< V, E > selectionModel = new DefaultSelectionModel<>( graph, idmap );
+		final ConcurrentSelectionModel< V, E > selectionModel = new ConcurrentSelectionModel<>( graph, idmap );
 		graph.addGraphListener( selectionModel );
 		this.selectionModel = selectionModel;
 
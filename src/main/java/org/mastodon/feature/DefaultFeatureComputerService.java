@@ -28,18 +28,27 @@
  */
 package org.mastodon.feature;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-import org.mastodon.collection.RefList;
 import org.mastodon.feature.FeatureDependencyGraph.Edge;
 import org.mastodon.feature.FeatureDependencyGraph.Vertex;
-import org.mastodon.graph.algorithm.TopologicalSort;
 import org.scijava.Cancelable;
 import org.scijava.InstantiableException;
 import org.scijava.command.CommandInfo;
@@ -71,9 +80,25 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 
 	private final FeatureComputationStatus status = new FeatureComputationStatus();
 
-	private String cancelReason;
+	private volatile String cancelReason;
 
-	private FeatureComputer currentFeatureComputer;
+	private final Set< FeatureComputer > runningFeatureComputers = Collections.synchronizedSet( new HashSet<>() );
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private volatile List< FeatureComputerTiming > lastTimings = Collections.emptyList();
+
+	/**
+	 * The status given to the feature computer whose parameters are being
+	 * provided. Only accessed from the thread that calls
+	 * {@link #compute(boolean, Collection)}.
+	 */
+	private FeatureComputationStatus computerStatus;
+
+	/**
+	 * The threads of the current computation.
+	 */
+	private ThreadBudget threadBudget;
 
 	public DefaultFeatureComputerService()
 	{
@@ -214,6 +239,22 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		return deps;
 	}
 
+	/**
+	 * Computes the specified features and their dependencies.
+	 * <p>
+	 * Feature computers are scheduled following the dependency graph: a
+	 * computer is started as soon as all the features it depends on are
+	 * computed, so that independent computers run concurrently on a pool of
+	 * {@link #getNumThreads()} threads. The outputs of the computers are
+	 * created on the calling thread, before they are submitted.
+	 * <p>
+	 * Each computer reports its own progress, and listeners receive the mean
+	 * progress of all the computers. Computers that use several threads take
+	 * them from a {@link ThreadBudget} shared by the computation, so that the
+	 * total number of busy threads does not exceed {@link #getNumThreads()}.
+	 * If a computer fails, the others are canceled, and this method only
+	 * returns once they all stopped.
+	 */
 	@Override
 	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
 	{
@@ -231,36 +272,270 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 			specs.add( spec );
 		}
 		final FeatureDependencyGraph dependencyGraph = dependencies.subGraphFor( specs );
-		final RefList< FeatureDependencyGraph.Vertex > sequence = new TopologicalSort<>( dependencyGraph ).get();
 
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
-		for ( final FeatureDependencyGraph.Vertex vertex : sequence )
+		/*
+		 * Number of features each vertex still waits for. A --> B means A
+		 * depends on B, so we count outgoing edges.
+		 */
+		final Map< FeatureDependencyGraph.Vertex, Integer > pending = new HashMap<>();
+		final Deque< FeatureDependencyGraph.Vertex > ready = new ArrayDeque<>();
+		for ( final FeatureDependencyGraph.Vertex vertex : dependencyGraph.vertices() )
 		{
-			if ( isCanceled() )
-				break;
+			final int n = vertex.outgoingEdges().size();
+			pending.put( vertex, n );
+			if ( n == 0 )
+				ready.add( vertex );
+		}
 
-			currentFeatureComputer = vertex.getFeatureComputer();
-			final CommandInfo info = vertex.getFeatureComputerInfo();
-			final CommandModule module = new CommandModule( info, currentFeatureComputer );
-			for ( final ModuleItem< ? > item : info.inputs() )
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel = new HashMap<>();
+		final Map< FeatureDependencyGraph.Vertex, CommandModule > modules = new HashMap<>();
+		final Map< FeatureDependencyGraph.Vertex, FeatureComputerTiming > timings = new HashMap<>();
+		final int nThreads = Math.max( 1, Math.min( numThreads, dependencyGraph.vertices().size() ) );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		final ComputationProgress progress = new ComputationProgress( dependencyGraph.vertices().size() );
+		final ThreadBudget budget = new ThreadBudget( numThreads );
+		threadBudget = budget;
+		final CompletionService< FeatureDependencyGraph.Vertex > completionService = new ExecutorCompletionService<>( executor );
+		final long start = System.nanoTime();
+		int nRunning = 0;
+		try
+		{
+			while ( true )
 			{
-				final Class< ? > klass = item.getType();
-				provideParameters( item, module, klass, featureModel );
+				// Submit all the computers whose inputs are ready.
+				while ( !ready.isEmpty() && !isCanceled() )
+				{
+					final FeatureDependencyGraph.Vertex vertex = ready.poll();
+					final FeatureComputer featureComputer = vertex.getFeatureComputer();
+					final CommandInfo info = vertex.getFeatureComputerInfo();
+					final CommandModule module = new CommandModule( info, featureComputer );
+					final FeatureComputationStatus computerStatus = new FeatureComputationStatus( status, progress, modules.size() );
+					this.computerStatus = computerStatus;
+					for ( final ModuleItem< ? > item : info.inputs() )
+					{
+						final Class< ? > klass = item.getType();
+						provideParameters( item, module, klass, featureModel );
+					}
+					this.computerStatus = null;
+					featureComputer.createOutput();
+					outputCreated( module );
+					modules.put( vertex, module );
+
+					final FeatureComputerTiming timing = new FeatureComputerTiming( vertex.getFeatureSpec() );
+					timings.put( vertex, timing );
+					runningFeatureComputers.add( featureComputer );
+					completionService.submit( () -> {
+						budget.acquire();
+						timing.thread = Thread.currentThread().getName();
+						timing.start = System.nanoTime() - start;
+						try
+						{
+							// Computers queued when the computation was canceled do not start.
+							if ( !isCanceled() )
+							{
+								status.notifyStatus( vertex.getFeatureSpec().getKey() );
+								featureComputer.run();
+							}
+						}
+						finally
+						{
+							runningFeatureComputers.remove( featureComputer );
+							timing.end = System.nanoTime() - start;
+							computerStatus.notifyProgress( 1. );
+							budget.release( 1 );
+						}
+						return vertex;
+					} );
+					nRunning++;
+				}
+
+				if ( nRunning == 0 )
+					break;
+
+				final FeatureDependencyGraph.Vertex vertex = completionService.take().get();
+				nRunning--;
+
+				final FeatureComputerTiming timing = timings.get( vertex );
+				long longestDependency = 0l;
+				for ( final FeatureDependencyGraph.Edge edge : vertex.outgoingEdges() )
+					longestDependency = Math.max( longestDependency, timings.get( edge.getTarget() ).criticalPath );
+				timing.criticalPath = longestDependency + timing.getDuration();
+
+				final CommandInfo info = vertex.getFeatureComputerInfo();
+				final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( modules.get( vertex ) );
+				featureModel.put( vertex.getFeatureSpec(), output );
+
+				// Release computers depending on this one.
+				for ( final FeatureDependencyGraph.Edge edge : vertex.incomingEdges() )
+				{
+					final FeatureDependencyGraph.Vertex dependent = edge.getSource();
+					final int n = pending.get( dependent ) - 1;
+					pending.put( dependent, n );
+					if ( n == 0 )
+						ready.add( dependent );
+				}
 			}
+		}
+		catch ( final InterruptedException e )
+		{
+			cancel( "Feature computation interrupted." );
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			cancel( "Feature computation failed: " + e.getCause().getMessage() );
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new RuntimeException( cause );
+		}
+		finally
+		{
+			// Do not return while other computers still write to their outputs.
+			executor.shutdown();
+			awaitTermination( executor );
+			threadBudget = null;
+			runningFeatureComputers.clear();
+			markCriticalPath( timings );
+			final List< FeatureComputerTiming > list = new ArrayList<>( timings.values() );
+			list.sort( Comparator.comparingLong( t -> t.start ) );
+			lastTimings = Collections.unmodifiableList( list );
+			status.notifyClear();
+		}
+		return ( featureModel );
+	}
 
-			status.notifyStatus( vertex.getFeatureSpec().getKey() );
-			currentFeatureComputer.createOutput();
-			currentFeatureComputer.run();
+	private static void awaitTermination( final ExecutorService executor )
+	{
+		boolean interrupted = Thread.interrupted();
+		while ( true )
+		{
+			try
+			{
+				if ( executor.awaitTermination( 1, TimeUnit.SECONDS ) )
+					break;
+			}
+			catch ( final InterruptedException e )
+			{
+				interrupted = true;
+			}
+		}
+		if ( interrupted )
+			Thread.currentThread().interrupt();
+	}
 
-			final Feature< ? > output = ( Feature< ? > ) info.outputs().iterator().next().getValue( module );
-			featureModel.put( vertex.getFeatureSpec(), output );
+	/**
+	 * Walks back from the computer that finished its chain of dependencies
+	 * last, following the longest dependency each time.
+	 */
+	private static void markCriticalPath( final Map< FeatureDependencyGraph.Vertex, FeatureComputerTiming > timings )
+	{
+		FeatureDependencyGraph.Vertex vertex = null;
+		long longest = -1l;
+		for ( final Map.Entry< FeatureDependencyGraph.Vertex, FeatureComputerTiming > entry : timings.entrySet() )
+		{
+			if ( entry.getValue().criticalPath > longest )
+			{
+				longest = entry.getValue().criticalPath;
+				vertex = entry.getKey();
+			}
+		}
+		while ( vertex != null )
+		{
+			timings.get( vertex ).onCriticalPath = true;
+			FeatureDependencyGraph.Vertex next = null;
+			longest = -1l;
+			for ( final FeatureDependencyGraph.Edge edge : vertex.outgoingEdges() )
+			{
+				final FeatureComputerTiming timing = timings.get( edge.getTarget() );
+				if ( timing != null && timing.criticalPath > longest )
+				{
+					longest = timing.criticalPath;
+					next = edge.getTarget();
+				}
+			}
+			vertex = next;
 		}
+	}
 
-		currentFeatureComputer = null;
-		status.notifyClear();
-		return ( featureModel );
+	/**
+	 * Sets the maximal number of feature computers that can run concurrently.
+	 * A value of 1 makes computers run one after the other, in an order
+	 * compatible with their dependencies.
+	 *
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Returns the maximal number of feature computers that can run
+	 * concurrently.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Returns the timings of the feature computers that were run during the
+	 * last call to {@link #compute(boolean, Collection)}, sorted by start
+	 * time.
+	 *
+	 * @return an unmodifiable list of timings.
+	 */
+	public List< FeatureComputerTiming > getLastComputationTimings()
+	{
+		return lastTimings;
+	}
+
+	/**
+	 * Returns a human readable report of the timings of the last call to
+	 * {@link #compute(boolean, Collection)}. Feature computers that lie on
+	 * the critical path of the dependency graph are marked with a star.
+	 *
+	 * @return the report, as a string.
+	 */
+	public String getLastComputationReport()
+	{
+		final List< FeatureComputerTiming > timings = lastTimings;
+		final StringBuilder str = new StringBuilder();
+		FeatureComputerTiming last = null;
+		for ( final FeatureComputerTiming timing : timings )
+			if ( last == null || timing.criticalPath > last.criticalPath )
+				last = timing;
+		final long criticalPath = ( last == null ) ? 0l : last.criticalPath;
+		str.append( String.format( "Computed %d features. Critical path: %.1f ms.%n", timings.size(), criticalPath / 1e6 ) );
+		for ( final FeatureComputerTiming timing : timings )
+		{
+			str.append( String.format( " %s %-40s start %10.1f ms - duration %10.1f ms - on %s%n",
+					timing.isOnCriticalPath() ? "*" : " ",
+					timing.getFeatureSpec().getKey(),
+					timing.getStart() / 1e6,
+					timing.getDuration() / 1e6,
+					timing.getThread() ) );
+		}
+		return str.toString();
 	}
 
+	/**
+	 * Called after the parameters of the {@link FeatureComputer} described by
+	 * the specified {@link CommandModule} were provided and its output was
+	 * created, just before it is run. Does nothing by default.
+	 *
+	 * @param module
+	 *            the command module representing the feature computer.
+	 */
+	protected void outputCreated( final CommandModule module )
+	{}
+
 	/**
 	 * Try to set a value for the specified {@link ModuleItem} that is a parameter
 	 * of the {@link FeatureComputer} described by the specified
@@ -299,7 +574,16 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		{
 			@SuppressWarnings( "unchecked" )
 			final ModuleItem< FeatureComputationStatus > statusModule = ( ModuleItem< FeatureComputationStatus > ) item;
-			statusModule.setValue( module, status );
+			statusModule.setValue( module, computerStatus != null ? computerStatus : status );
+			return;
+		}
+
+		// ThreadBudget.
+		if ( ThreadBudget.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< ThreadBudget > budgetModule = ( ModuleItem< ThreadBudget > ) item;
+			budgetModule.setValue( module, threadBudget );
 			return;
 		}
 
@@ -316,8 +600,12 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 	public void cancel( final String reason )
 	{
 		this.cancelReason = reason;
-		if ( currentFeatureComputer instanceof Cancelable )
-			( ( Cancelable ) currentFeatureComputer ).cancel( reason );
+		synchronized ( runningFeatureComputers )
+		{
+			for ( final FeatureComputer featureComputer : runningFeatureComputers )
+				if ( featureComputer instanceof Cancelable )
+					( ( Cancelable ) featureComputer ).cancel( reason );
+		}
 	}
 
 	@Override
@@ -352,13 +640,178 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		void clear();
 	}
 
+	/**
+	 * Timing of one feature computer during a computation. Times are in
+	 * nanoseconds, relative to the start of the computation.
+	 */
+	public static class FeatureComputerTiming
+	{
+		private final FeatureSpec< ?, ? > spec;
+
+		private volatile String thread = "";
+
+		private volatile long start;
+
+		private volatile long end;
+
+		/**
+		 * Duration of the longest chain of dependencies ending with this
+		 * computer, this computer included.
+		 */
+		private long criticalPath;
+
+		private boolean onCriticalPath;
+
+		private FeatureComputerTiming( final FeatureSpec< ?, ? > spec )
+		{
+			this.spec = spec;
+		}
+
+		public FeatureSpec< ?, ? > getFeatureSpec()
+		{
+			return spec;
+		}
+
+		public String getThread()
+		{
+			return thread;
+		}
+
+		public long getStart()
+		{
+			return start;
+		}
+
+		public long getEnd()
+		{
+			return end;
+		}
+
+		public long getDuration()
+		{
+			return end - start;
+		}
+
+		/**
+		 * Returns the total duration of the longest chain of dependencies
+		 * ending with this computer, this computer included.
+		 *
+		 * @return the critical path duration, in nanoseconds.
+		 */
+		public long getCriticalPath()
+		{
+			return criticalPath;
+		}
+
+		public boolean isOnCriticalPath()
+		{
+			return onCriticalPath;
+		}
+	}
+
+	/**
+	 * Threads that the feature computers of one computation share. Each
+	 * running computer holds one thread. A computer that can use more threads
+	 * reserves the idle ones with {@link #tryAcquire(int)}, and releases them
+	 * when done.
+	 */
+	public static class ThreadBudget
+	{
+		private final Semaphore permits;
+
+		ThreadBudget( final int numThreads )
+		{
+			permits = new Semaphore( numThreads );
+		}
+
+		void acquire()
+		{
+			permits.acquireUninterruptibly();
+		}
+
+		/**
+		 * Reserves up to the specified number of threads, among those that
+		 * are idle. Never blocks.
+		 *
+		 * @param numThreads
+		 *            the number of threads wanted.
+		 * @return the number of threads reserved, possibly 0.
+		 */
+		public int tryAcquire( final int numThreads )
+		{
+			int acquired = 0;
+			while ( acquired < numThreads && permits.tryAcquire() )
+				++acquired;
+			return acquired;
+		}
+
+		/**
+		 * Releases threads reserved with {@link #tryAcquire(int)}.
+		 *
+		 * @param numThreads
+		 *            the number of threads to release.
+		 */
+		public void release( final int numThreads )
+		{
+			if ( numThreads > 0 )
+				permits.release( numThreads );
+		}
+	}
+
+	/**
+	 * Progress of each feature computer of one computation.
+	 */
+	private static class ComputationProgress
+	{
+		private final double[] progress;
+
+		ComputationProgress( final int numComputers )
+		{
+			progress = new double[ numComputers ];
+		}
+
+		/**
+		 * Sets the progress of one computer and returns the mean progress of
+		 * all of them.
+		 */
+		synchronized double set( final int computer, final double value )
+		{
+			progress[ computer ] = Math.max( 0., Math.min( 1., value ) );
+			double sum = 0.;
+			for ( final double p : progress )
+				sum += p;
+			return sum / progress.length;
+		}
+	}
+
 	public static class FeatureComputationStatus
 	{
 		private final Listeners.List< FeatureComputationStatusListener > listeners;
 
+		/**
+		 * The progress this status contributes to, or {@code null} if
+		 * progress is reported as is.
+		 */
+		private final ComputationProgress progress;
+
+		private final int computer;
+
 		FeatureComputationStatus()
 		{
 			listeners = new Listeners.SynchronizedList<>();
+			progress = null;
+			computer = -1;
+		}
+
+		/**
+		 * Creates the status of one computer, that reports to the listeners of
+		 * the specified status.
+		 */
+		private FeatureComputationStatus( final FeatureComputationStatus parent, final ComputationProgress progress, final int computer )
+		{
+			this.listeners = parent.listeners;
+			this.progress = progress;
+			this.computer = computer;
 		}
 
 		public void notifyStatus( final String status )
@@ -371,7 +824,8 @@ public class DefaultFeatureComputerService extends AbstractService implements Fe
 		 */
 		public void notifyProgress( final double progress )
 		{
-			listeners.list.forEach( l -> l.progress( progress ) );
+			final double total = ( this.progress == null ) ? progress : this.progress.set( computer, progress );
+			listeners.list.forEach( l -> l.progress( total ) );
 		}
 
 		public void notifyClear()
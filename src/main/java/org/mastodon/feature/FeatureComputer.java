@@ -28,6 +28,7 @@
  */
 package org.mastodon.feature;
 
+import org.mastodon.feature.update.Update;
 import org.scijava.ItemIO;
 import org.scijava.command.Command;
 
@@ -36,6 +37,12 @@ import org.scijava.command.Command;
  * <p>
  * A computer must generate exactly one single feature as output, annotated with
  * {@link ItemIO#OUTPUT}, and that must be of type {@link Feature}.
+ * <p>
+ * A computer that supports incremental computation can declare an input
+ * parameter of type {@link Update}. It will receive the objects that were
+ * added or modified since it last ran, and can process only these ones. When
+ * the value of this parameter is <code>null</code>, changes were not tracked
+ * and all the objects must be processed.
  */
 public interface FeatureComputer extends Command
 {
@@ -28,15 +28,25 @@
  */
 package org.mastodon.feature;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import org.scijava.listeners.Listeners;
 
 /**
  * Class that manage a collection of features in a model graph.
+ * <p>
+ * Features can be declared lazily, with a loader that creates the feature the
+ * first time it is retrieved with {@link #getFeature(FeatureSpec)}. Lazy
+ * features are listed by {@link #getFeatureSpecs()} like the others. Loaders
+ * run outside the lock of this model, so that retrieving a lazy feature does
+ * not block the retrieval of the others.
  *
  * @author Jean-Yves Tinevez
  */
@@ -70,9 +80,15 @@ public class FeatureModel
 
 	private final Map< FeatureSpec< ?, ? >, Feature< ? > > features;
 
+	/**
+	 * Loaders for the features declared lazily and not retrieved yet.
+	 */
+	private final Map< FeatureSpec< ?, ? >, LazyFeature > lazyFeatures;
+
 	public FeatureModel()
 	{
 		this.features = new HashMap<>();
+		this.lazyFeatures = new HashMap<>();
 		this.listeners = new Listeners.SynchronizedList<>();
 	}
 
@@ -81,7 +97,11 @@ public class FeatureModel
 	 */
 	public void clear()
 	{
-		features.clear();
+		synchronized ( this )
+		{
+			features.clear();
+			lazyFeatures.clear();
+		}
 		notifyFeatureModelChanged();
 	}
 
@@ -93,7 +113,11 @@ public class FeatureModel
 	 */
 	public void clear( final FeatureSpec< ?, ? > key )
 	{
-		final boolean removed = features.remove( key ) != null;
+		final boolean removed;
+		synchronized ( this )
+		{
+			removed = ( features.remove( key ) != null ) | ( lazyFeatures.remove( key ) != null );
+		}
 		if ( removed )
 			notifyFeatureModelChanged();
 	}
@@ -106,10 +130,88 @@ public class FeatureModel
 	 */
 	public void declareFeature( final Feature< ? > feature )
 	{
-		features.put( feature.getSpec(), feature );
+		synchronized ( this )
+		{
+			lazyFeatures.remove( feature.getSpec() );
+			features.put( feature.getSpec(), feature );
+		}
 		notifyFeatureModelChanged();
 	}
 
+	/**
+	 * Registers a feature that will be created by the specified loader the
+	 * first time it is retrieved. The loader is called at most once. If it
+	 * returns {@code null}, the feature is removed from this model.
+	 *
+	 * @param key
+	 *            the {@link FeatureSpec} of the feature.
+	 * @param loader
+	 *            the loader that creates the feature.
+	 */
+	public void declareLazyFeature( final FeatureSpec< ?, ? > key, final Supplier< Feature< ? > > loader )
+	{
+		synchronized ( this )
+		{
+			features.remove( key );
+			lazyFeatures.put( key, new LazyFeature( loader ) );
+		}
+		notifyFeatureModelChanged();
+	}
+
+	/**
+	 * Returns {@code true} if some features declared lazily have not been
+	 * loaded yet.
+	 *
+	 * @return whether some features are still to be loaded.
+	 */
+	public synchronized boolean hasLazyFeatures()
+	{
+		return !lazyFeatures.isEmpty();
+	}
+
+	/**
+	 * Returns {@code true} if the feature with the specified key is declared
+	 * in this model and is not waiting to be loaded.
+	 *
+	 * @param key
+	 *            the {@link FeatureSpec} of the feature.
+	 * @return whether the feature is loaded.
+	 */
+	public synchronized boolean isLoaded( final FeatureSpec< ?, ? > key )
+	{
+		return features.containsKey( key );
+	}
+
+	/**
+	 * Loads all the features declared lazily and not retrieved yet.
+	 */
+	public void loadLazyFeatures()
+	{
+		final Collection< FeatureSpec< ?, ? > > keys;
+		synchronized ( this )
+		{
+			keys = new ArrayList<>( lazyFeatures.keySet() );
+		}
+		keys.forEach( this::getFeature );
+	}
+
+	/**
+	 * Removes all the features declared lazily and not retrieved yet, for
+	 * instance because the data they were to be loaded from is not valid
+	 * anymore.
+	 */
+	public void discardLazyFeatures()
+	{
+		final boolean removed;
+		synchronized ( this )
+		{
+			removed = !lazyFeatures.isEmpty();
+			lazyFeatures.clear();
+		}
+		if ( removed )
+			notifyFeatureModelChanged();
+	}
+
 	/**
 	 * Returns the feature with the specified key.
 	 *
@@ -120,7 +222,41 @@ public class FeatureModel
 	 */
 	public Feature< ? > getFeature( final FeatureSpec< ?, ? > key )
 	{
-		return features.get( key );
+		final LazyFeature lazy;
+		synchronized ( this )
+		{
+			final Feature< ? > feature = features.get( key );
+			if ( feature != null )
+				return feature;
+
+			lazy = lazyFeatures.get( key );
+			if ( lazy == null )
+				return null;
+		}
+
+		final Feature< ? > loaded = lazy.get();
+
+		final boolean replaced;
+		synchronized ( this )
+		{
+			replaced = lazyFeatures.get( key ) != lazy;
+			if ( !replaced )
+			{
+				lazyFeatures.remove( key );
+				if ( loaded != null )
+				{
+					features.put( key, loaded );
+					return loaded;
+				}
+			}
+		}
+		// The feature was cleared or declared again while loading.
+		if ( replaced )
+			return getFeature( key );
+
+		// The loader did not produce a feature, it is not declared anymore.
+		notifyFeatureModelChanged();
+		return null;
 	}
 
 	/**
@@ -130,9 +266,38 @@ public class FeatureModel
 	 * @return the collection of the {@link FeatureSpec}s declared in this
 	 *         feature model.
 	 */
-	public Collection< FeatureSpec< ?, ? > > getFeatureSpecs()
+	public synchronized Collection< FeatureSpec< ?, ? > > getFeatureSpecs()
+	{
+		final Set< FeatureSpec< ?, ? > > specs = new LinkedHashSet<>( features.keySet() );
+		specs.addAll( lazyFeatures.keySet() );
+		return Collections.unmodifiableSet( specs );
+	}
+
+	/**
+	 * A feature loader that runs at most once. Callers that retrieve the same
+	 * feature while it is loaded wait for the result.
+	 */
+	private static class LazyFeature
 	{
-		return Collections.unmodifiableSet( features.keySet() );
+
+		private Supplier< Feature< ? > > loader;
+
+		private Feature< ? > feature;
+
+		LazyFeature( final Supplier< Feature< ? > > loader )
+		{
+			this.loader = loader;
+		}
+
+		synchronized Feature< ? > get()
+		{
+			if ( loader != null )
+			{
+				feature = loader.get();
+				loader = null;
+			}
+			return feature;
+		}
 	}
 
 	/*
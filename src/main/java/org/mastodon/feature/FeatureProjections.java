@@ -46,6 +46,36 @@ public class FeatureProjections
 		return new MyDoublePropertyProjection<>( key, map, units );
 	}
 
+	/**
+	 * Returns the map storing the values of the specified projection, if it
+	 * was created with {@link #project(FeatureProjectionKey, DoublePropertyMap, String)}.
+	 *
+	 * @param projection
+	 *            the projection.
+	 * @return the backing map, or {@code null}.
+	 */
+	public static final < T > DoublePropertyMap< T > getDoublePropertyMap( final FeatureProjection< T > projection )
+	{
+		return ( projection instanceof MyDoublePropertyProjection )
+				? ( ( MyDoublePropertyProjection< T > ) projection ).map
+				: null;
+	}
+
+	/**
+	 * Returns the map storing the values of the specified projection, if it
+	 * was created with {@link #project(FeatureProjectionKey, IntPropertyMap, String)}.
+	 *
+	 * @param projection
+	 *            the projection.
+	 * @return the backing map, or {@code null}.
+	 */
+	public static final < T > IntPropertyMap< T > getIntPropertyMap( final FeatureProjection< T > projection )
+	{
+		return ( projection instanceof MyIntPropertyProjection )
+				? ( ( MyIntPropertyProjection< T > ) projection ).map
+				: null;
+	}
+
 	private static final class MyIntPropertyProjection< T > implements IntFeatureProjection< T >
 	{
 
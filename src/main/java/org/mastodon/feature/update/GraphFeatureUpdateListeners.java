@@ -36,6 +36,7 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureModel.FeatureModelListener;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.Vertex;
 import org.mastodon.properties.PropertyChangeListener;
 
@@ -64,6 +65,98 @@ public class GraphFeatureUpdateListeners
 		return new MyVertexPropertyChangeListener<>( featureModel, vertexClass, edgeClass );
 	}
 
+	/**
+	 * Returns a new listener that records the vertices and edges modified in
+	 * a graph into the specified trackers. The returned instance must be
+	 * registered both as a {@link GraphListener} to the graph and as a
+	 * {@link PropertyChangeListener} to the vertex properties that features
+	 * depend on.
+	 * <p>
+	 * Structural changes are reported as follow:
+	 * <ul>
+	 * <li>added vertices are modified;</li>
+	 * <li>added and removed edges modify their source and target vertices,
+	 * and added edges are modified;</li>
+	 * <li>a vertex whose property change is modified, as well as all its
+	 * edges.</li>
+	 * </ul>
+	 * Removed objects are discarded from the trackers. When the graph is
+	 * rebuilt, the trackers forget all features.
+	 *
+	 * @param vertexUpdates
+	 *            the tracker for vertices.
+	 * @param edgeUpdates
+	 *            the tracker for edges.
+	 * @return a new listener.
+	 */
+	public static < V extends Vertex< E >, E extends Edge< V > > GraphUpdateListener< V, E > graphUpdateListener( final UpdateTracker< V > vertexUpdates, final UpdateTracker< E > edgeUpdates )
+	{
+		return new GraphUpdateListener<>( vertexUpdates, edgeUpdates );
+	}
+
+	/**
+	 * Feeds {@link UpdateTracker}s with the changes of a graph.
+	 *
+	 * @see GraphFeatureUpdateListeners#graphUpdateListener(UpdateTracker,
+	 *      UpdateTracker)
+	 */
+	public static final class GraphUpdateListener< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >, PropertyChangeListener< V >
+	{
+
+		private final UpdateTracker< V > vertexUpdates;
+
+		private final UpdateTracker< E > edgeUpdates;
+
+		private GraphUpdateListener( final UpdateTracker< V > vertexUpdates, final UpdateTracker< E > edgeUpdates )
+		{
+			this.vertexUpdates = vertexUpdates;
+			this.edgeUpdates = edgeUpdates;
+		}
+
+		@Override
+		public void propertyChanged( final V v )
+		{
+			vertexUpdates.addModified( v );
+			for ( final E e : v.edges() )
+				edgeUpdates.addModified( e );
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			vertexUpdates.forgetAll();
+			edgeUpdates.forgetAll();
+		}
+
+		@Override
+		public void vertexAdded( final V v )
+		{
+			vertexUpdates.addModified( v );
+		}
+
+		@Override
+		public void vertexRemoved( final V v )
+		{
+			vertexUpdates.removed( v );
+		}
+
+		@Override
+		public void edgeAdded( final E e )
+		{
+			edgeUpdates.addModified( e );
+			vertexUpdates.addModified( e.getSource() );
+			vertexUpdates.addModified( e.getTarget() );
+		}
+
+		@Override
+		public void edgeRemoved( final E e )
+		{
+			edgeUpdates.removed( e );
+			vertexUpdates.addModified( e.getSource() );
+			vertexUpdates.addModified( e.getTarget() );
+		}
+	}
+
 	private static final class MyVertexPropertyChangeListener< V extends Vertex< E >, E extends Edge< V > > implements PropertyChangeListener< V >, FeatureModelListener
 	{
 
@@ -77,6 +170,12 @@ public class GraphFeatureUpdateListeners
 
 		private final List< Feature< V > > vertexFeatures;
 
+		/**
+		 * Whether some features of the vertices or edges were not loaded yet
+		 * when the lists of features were built.
+		 */
+		private boolean missingLazyFeatures;
+
 		public MyVertexPropertyChangeListener( final FeatureModel featureModel, final Class< V > vertexClass, final Class< E > edgeClass )
 		{
 			this.featureModel = featureModel;
@@ -91,6 +190,12 @@ public class GraphFeatureUpdateListeners
 		@Override
 		public void propertyChanged( final V v )
 		{
+			// Lazy features must be loaded before their values can be invalidated.
+			if ( missingLazyFeatures )
+			{
+				featureModel.loadLazyFeatures();
+				featureModelChanged();
+			}
 			vertexFeatures.forEach( f -> f.invalidate( v ) );
 			for ( final Feature< E > f : edgeFeatures )
 				v.edges().forEach( e -> f.invalidate( e ) );
@@ -99,20 +204,34 @@ public class GraphFeatureUpdateListeners
 		@Override
 		public void featureModelChanged()
 		{
-			featuresOfTarget( featureModel, vertexClass, vertexFeatures );
-			featuresOfTarget( featureModel, edgeClass, edgeFeatures );
+			final boolean missingVertexFeatures = featuresOfTarget( featureModel, vertexClass, vertexFeatures );
+			final boolean missingEdgeFeatures = featuresOfTarget( featureModel, edgeClass, edgeFeatures );
+			missingLazyFeatures = missingVertexFeatures || missingEdgeFeatures;
 		}
 
+		/**
+		 * Collects the loaded features of the specified target, and returns
+		 * whether some were not loaded yet. Loading a lazy feature does not
+		 * fire an event, so these are collected when a property changes.
+		 */
 		@SuppressWarnings( "unchecked" )
-		private static < O > void featuresOfTarget(
+		private static < O > boolean featuresOfTarget(
 				final FeatureModel featureModel,
 				final Class< O > targetClass,
 				final List< Feature< O > > featureList )
 		{
 			featureList.clear();
+			boolean missing = false;
 			for ( final FeatureSpec< ?, ? > fs : featureModel.getFeatureSpecs() )
-				if ( fs.getTargetClass().equals( targetClass ) )
+			{
+				if ( !fs.getTargetClass().equals( targetClass ) )
+					continue;
+				if ( featureModel.isLoaded( fs ) )
 					featureList.add( ( Feature< O > ) featureModel.getFeature( fs ) );
+				else
+					missing = true;
+			}
+			return missing;
 		}
 	}
 }
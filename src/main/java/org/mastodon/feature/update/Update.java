@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.feature.update;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+
+/**
+ * The objects that were modified since a feature was last computed.
+ * <p>
+ * Instances are created and fed by an {@link UpdateTracker}, and handed to the
+ * feature computer that declares a {@code @Parameter} of this type. A computer
+ * that receives a non-<code>null</code> update can compute values only for
+ * the objects it contains. A <code>null</code> update means that changes were
+ * not tracked, and that all the objects must be processed.
+ *
+ * @param <O>
+ *            the type of objects the feature is defined for.
+ */
+public class Update< O >
+{
+
+	private final RefSet< O > modified;
+
+	Update( final RefCollection< O > pool )
+	{
+		this.modified = RefCollections.createRefSet( pool );
+	}
+
+	/**
+	 * Returns the set of objects that were added or modified since the feature
+	 * was last computed. Objects that were removed from the graph are not
+	 * part of this set.
+	 *
+	 * @return the set of modified objects.
+	 */
+	public RefSet< O > get()
+	{
+		return modified;
+	}
+
+	void add( final O o )
+	{
+		modified.add( o );
+	}
+
+	void remove( final O o )
+	{
+		modified.remove( o );
+	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString() + " modified: " + modified.size();
+	}
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.feature.update;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.feature.FeatureSpec;
+
+/**
+ * Tracks, for each feature, the objects of one type that were modified since
+ * the feature was last computed.
+ * <p>
+ * A feature is tracked from the first time its changes are
+ * {@link #take(FeatureSpec) taken}. Before that, and after it has been
+ * {@link #forget(FeatureSpec) forgotten}, the tracker cannot tell what
+ * changed, and {@link #take(FeatureSpec)} returns <code>null</code>.
+ * <p>
+ * This class is thread-safe: modifications are reported from the threads
+ * that edit the graph while feature computers take changes from the
+ * computation threads.
+ *
+ * @param <O>
+ *            the type of objects tracked.
+ */
+public class UpdateTracker< O >
+{
+
+	private final RefCollection< O > pool;
+
+	private final Map< FeatureSpec< ?, ? >, Update< O > > updates;
+
+	/**
+	 * Creates a new tracker for the objects of the specified collection.
+	 *
+	 * @param pool
+	 *            the collection of objects to track, typically the vertices
+	 *            or the edges of a graph.
+	 */
+	public UpdateTracker( final RefCollection< O > pool )
+	{
+		this.pool = pool;
+		this.updates = new HashMap<>();
+	}
+
+	/**
+	 * Marks the specified object as modified for all the tracked features.
+	 *
+	 * @param o
+	 *            the object that was added or modified.
+	 */
+	public synchronized void addModified( final O o )
+	{
+		for ( final Update< O > update : updates.values() )
+			update.add( o );
+	}
+
+	/**
+	 * Removes the specified object from the changes of all the tracked
+	 * features. Must be called before the object is removed from the graph.
+	 *
+	 * @param o
+	 *            the object that is removed.
+	 */
+	public synchronized void removed( final O o )
+	{
+		for ( final Update< O > update : updates.values() )
+			update.remove( o );
+	}
+
+	/**
+	 * Returns the changes accumulated for the specified feature, and starts a
+	 * new, empty, set of changes for it.
+	 *
+	 * @param spec
+	 *            the feature.
+	 * @return the changes since the last call, or <code>null</code> if the
+	 *         feature was not tracked until now.
+	 */
+	public synchronized Update< O > take( final FeatureSpec< ?, ? > spec )
+	{
+		return updates.put( spec, new Update<>( pool ) );
+	}
+
+	/**
+	 * Stops tracking changes for the specified feature. This must be called
+	 * when changes were taken but could not be processed, for instance when
+	 * the computation was canceled.
+	 *
+	 * @param spec
+	 *            the feature.
+	 */
+	public synchronized void forget( final FeatureSpec< ?, ? > spec )
+	{
+		updates.remove( spec );
+	}
+
+	/**
+	 * Stops tracking changes for all features.
+	 */
+	public synchronized void forgetAll()
+	{
+		updates.clear();
+	}
+}
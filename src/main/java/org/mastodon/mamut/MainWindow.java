@@ -61,10 +61,12 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 import org.mastodon.app.MastodonIcons;
 import org.mastodon.app.ui.ViewMenu;
+import org.mastodon.ui.ProgressListener;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.mastodon.ui.keymap.Keymap;
 
@@ -78,6 +80,12 @@ public class MainWindow extends JFrame
 
 	private final ViewMenu menu;
 
+	private final JLabel statusLabel;
+
+	private final ProjectManager projectManager;
+
+	private final ProgressListener statusListener;
+
 	public MainWindow( final WindowManager windowManager )
 	{
 		super( "Mastodon" );
@@ -145,6 +153,13 @@ public class MainWindow extends JFrame
 		prepareButton( loadProjectButton, "save as...", SAVE_AS_ICON_MEDIUM );
 		buttonsPanel.add( loadProjectButton, "grow, wrap" );
 
+		// Status of the project manager operations, e.g. imports.
+		statusLabel = new JLabel( " " );
+		buttonsPanel.add( statusLabel, "span, growx, wrap" );
+		statusListener = new StatusLabelUpdater();
+		projectManager = windowManager.getProjectManager();
+		projectManager.progressListeners().add( statusListener );
+
 		/*
 		 * Background with an image.
 		 */
@@ -205,8 +220,10 @@ public class MainWindow extends JFrame
 	 */
 	public boolean close( final WindowManager windowManager, final Action saveAction, final WindowEvent trigger )
 	{
-		if ( windowManager != null && windowManager.getAppModel() == null || windowManager.getAppModel().getModel().isSavePoint() )
+		if ( windowManager != null && windowManager.getAppModel() == null
+				|| windowManager.getAppModel().getModel().isSavePoint() && !windowManager.getProjectManager().isRecovered() )
 		{
+			windowManager.getProjectManager().discardJournal();
 			windowManager.closeAllWindows();
 			dispose();
 			return true;
@@ -240,7 +257,11 @@ public class MainWindow extends JFrame
 
 		case JOptionPane.NO_OPTION:
 			if ( windowManager != null )
+			{
+				// Saved or discarded, the journal is not needed anymore.
+				windowManager.getProjectManager().discardJournal();
 				windowManager.closeAllWindows();
+			}
 			dispose();
 		}
 		return true;
@@ -284,4 +305,61 @@ public class MainWindow extends JFrame
 						item( WindowManager.NEW_BRANCH_TRACKSCHEME_VIEW ),
 						item( WindowManager.NEW_HIERARCHY_TRACKSCHEME_VIEW ) ) );
 	}
+
+	@Override
+	public void dispose()
+	{
+		projectManager.progressListeners().remove( statusListener );
+		super.dispose();
+	}
+
+	private void setStatus( final String status )
+	{
+		if ( SwingUtilities.isEventDispatchThread() )
+		{
+			statusLabel.setText( status );
+			// The operation may block the event dispatch thread.
+			statusLabel.paintImmediately( 0, 0, statusLabel.getWidth(), statusLabel.getHeight() );
+		}
+		else
+			SwingUtilities.invokeLater( () -> statusLabel.setText( status ) );
+	}
+
+	/**
+	 * Shows the progress of the project manager operations in the status
+	 * label.
+	 */
+	private class StatusLabelUpdater implements ProgressListener
+	{
+
+		private String status = "";
+
+		private int percent = -1;
+
+		@Override
+		public void showStatus( final String string )
+		{
+			status = string;
+			percent = -1;
+			setStatus( string );
+		}
+
+		@Override
+		public void showProgress( final int current, final int total )
+		{
+			final int p = total <= 0 ? 100 : ( int ) ( 100L * current / total );
+			if ( p == percent )
+				return;
+			percent = p;
+			setStatus( String.format( "%s: %d%%", status, p ) );
+		}
+
+		@Override
+		public void clearStatus()
+		{
+			status = "";
+			percent = -1;
+			setStatus( " " );
+		}
+	}
 }
@@ -157,7 +157,7 @@ public class MamutBranchView<
 
 		// Selection
 		final SelectionModel< Spot, Link > graphSelectionModel = appModel.getSelectionModel();
-		final SelectionModel< BranchSpot, BranchLink > branchSelectionModel =
+		final BranchGraphSelectionAdapter< Spot, Link, BranchSpot, BranchLink > branchSelectionModel =
 				new BranchGraphSelectionAdapter<>( branchGraph, graph, graph.getGraphIdBimap(), graphSelectionModel );
 		selectionModel = new SelectionModelAdapter<>( branchSelectionModel, vertexMap, edgeMap );
 
@@ -171,7 +171,8 @@ public class MamutBranchView<
 		this.timepointModel = new TimepointModelAdapter( groupHandle.getModel( appModel.TIMEPOINT ) );
 
 		// Tag-set.
-		this.tagSetModel = branchTagSetModel( appModel );
+		final BranchGraphTagSetAdapter< Spot, Link, BranchSpot, BranchLink > branchTagSetModel = branchTagSetModel( appModel );
+		this.tagSetModel = branchTagSetModel;
 
 		// Closing runnables.
 		this.runOnClose = new ArrayList<>();
@@ -181,6 +182,8 @@ public class MamutBranchView<
 			focusModel.listeners().removeAll();
 			selectionModel.listeners().removeAll();
 			navigationHandler.listeners().removeAll();
+			branchSelectionModel.close();
+			branchTagSetModel.close();
 		} );
 	}
 
@@ -348,7 +351,7 @@ public class MamutBranchView<
 		return groupHandle;
 	}
 
-	private static TagSetModel< BranchSpot, BranchLink > branchTagSetModel( final MamutAppModel appModel )
+	private static BranchGraphTagSetAdapter< Spot, Link, BranchSpot, BranchLink > branchTagSetModel( final MamutAppModel appModel )
 	{
 		final ModelGraph graph = appModel.getModel().getGraph();
 		final ModelBranchGraph branchGraph = appModel.getModel().getBranchGraph();
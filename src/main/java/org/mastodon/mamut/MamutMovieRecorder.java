@@ -0,0 +1,536 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut;
+
+import static org.mastodon.mamut.MamutViewStateSerialization.BDV_CANVAS_SIZE_KEY;
+import static org.mastodon.mamut.MamutViewStateSerialization.BDV_STATE_KEY;
+import static org.mastodon.mamut.MamutViewStateSerialization.BDV_TRANSFORM_KEY;
+import static org.mastodon.mamut.MamutViewStateSerialization.FRAME_POSITION_KEY;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.mastodon.adapter.FocusModelAdapter;
+import org.mastodon.adapter.HighlightModelAdapter;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
+import org.mastodon.mamut.model.BoundingSphereRadiusStatistics;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelOverlayProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.branch.BranchLink;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.model.ConcurrentSelectionModel;
+import org.mastodon.model.DefaultFocusModel;
+import org.mastodon.model.DefaultHighlightModel;
+import org.mastodon.ui.coloring.CachingGraphColorGenerator;
+import org.mastodon.ui.coloring.ColoringModelMain;
+import org.mastodon.ui.coloring.GraphColorGeneratorAdapter;
+import org.mastodon.ui.coloring.TagSetGraphColorGenerator;
+import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.mastodon.views.bdv.export.AbstractBDVRecorder;
+import org.mastodon.views.bdv.export.MovieFileBDVRecorder;
+import org.mastodon.views.bdv.export.PNGFolderBDVRecorder;
+import org.mastodon.views.bdv.overlay.OverlayGraphRenderer;
+import org.mastodon.views.bdv.overlay.ui.RenderSettingsManager;
+import org.mastodon.views.bdv.overlay.wrap.OverlayEdgeWrapper;
+import org.mastodon.views.bdv.overlay.wrap.OverlayGraphWrapper;
+import org.mastodon.views.bdv.overlay.wrap.OverlayVertexWrapper;
+import org.mastodon.views.trackscheme.display.ColorBarOverlay;
+import org.scijava.Context;
+
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterConsole;
+import bdv.tools.InitializeViewerState;
+import bdv.viewer.ViewerOptions;
+import bdv.viewer.ViewerPanel;
+import mpicbg.spim.data.SpimDataException;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Records BDV movies of a Mastodon project without a GUI.
+ * <p>
+ * The BDV views are restored from the GUI state saved with the project (viewer
+ * state, transform, coloring and colorbar), and rendered through an
+ * {@link AbstractBDVRecorder}. No window is created, so this can run with
+ * {@code -Djava.awt.headless=true}, e.g. on batch nodes. Selection, focus and
+ * highlight are not part of the saved state and are empty in the movies.
+ * <p>
+ * Only projects based on a BDV XML/H5 dataset (or a dummy dataset) are
+ * supported.
+ */
+public class MamutMovieRecorder
+{
+
+	private static final int DEFAULT_CANVAS_WIDTH = 650;
+
+	private static final int DEFAULT_CANVAS_HEIGHT = 400;
+
+	private final Model model;
+
+	private final SharedBigDataViewerData sharedBdvData;
+
+	private final BoundingSphereRadiusStatistics radiusStats;
+
+	private final FeatureColorModeManager featureColorModeManager;
+
+	private final RenderSettingsManager renderSettingsManager;
+
+	private final List< Map< String, Object > > bdvGuiStates;
+
+	/**
+	 * Opens the specified project.
+	 *
+	 * @param project
+	 *            the project to open.
+	 * @param context
+	 *            the context used to deserialize the features of the model.
+	 *            May be {@code null}, in which case features are not loaded and
+	 *            coloring by feature is not available.
+	 * @throws IOException
+	 *             if the project cannot be read.
+	 * @throws SpimDataException
+	 *             if the image data cannot be opened.
+	 */
+	public MamutMovieRecorder( final MamutProject project, final Context context ) throws IOException, SpimDataException
+	{
+		final String imagePath = project.getDatasetXmlFile().getAbsolutePath();
+		this.sharedBdvData = SharedBigDataViewerData.fromSpimDataXmlFile( imagePath, ViewerOptions.options(), () -> {} );
+		if ( sharedBdvData == null )
+			throw new IOException( "Cannot open image data " + imagePath );
+
+		final String spaceUnits = project.getSpaceUnits() == null ? "pixel" : project.getSpaceUnits();
+		final String timeUnits = project.getTimeUnits() == null ? "frame" : project.getTimeUnits();
+		this.model = new Model( spaceUnits, timeUnits );
+		Element windowsEl = null;
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
+			if ( context != null )
+				MamutRawFeatureModelIO.deserialize( context, model, idmap, reader, project );
+			try
+			{
+				windowsEl = ProjectManager.loadWindowsElement( reader );
+			}
+			catch ( final FileNotFoundException e )
+			{
+				// No GUI file: no saved BDV view.
+			}
+		}
+		catch ( final ClassNotFoundException e )
+		{
+			throw new IOException( e );
+		}
+		model.declareDefaultFeatures();
+
+		this.radiusStats = new BoundingSphereRadiusStatistics( model );
+		this.featureColorModeManager = new FeatureColorModeManager();
+		this.renderSettingsManager = new RenderSettingsManager();
+		this.bdvGuiStates = windowsEl == null
+				? Collections.emptyList()
+				: MamutViewStateSerialization.readGuiStates( windowsEl, MamutViewBdv.class.getSimpleName() );
+	}
+
+	/**
+	 * Returns the number of BDV views saved with the project.
+	 *
+	 * @return the number of BDV views.
+	 */
+	public int numBdvViews()
+	{
+		return bdvGuiStates.size();
+	}
+
+	/**
+	 * Returns the number of timepoints of the image data.
+	 *
+	 * @return the number of timepoints.
+	 */
+	public int numTimepoints()
+	{
+		return sharedBdvData.getNumTimepoints();
+	}
+
+	/**
+	 * Records a movie of a saved BDV view.
+	 *
+	 * @param viewIndex
+	 *            the index of the saved BDV view, or -1 to use a default view
+	 *            of the whole dataset.
+	 * @param output
+	 *            the movie file to write to, or the folder to write PNG images
+	 *            to if it has no extension.
+	 * @param width
+	 *            the movie width, or 0 to use the width of the saved view.
+	 * @param height
+	 *            the movie height, or 0 to use the height of the saved view.
+	 * @param minTimepoint
+	 *            the first timepoint to record.
+	 * @param maxTimepoint
+	 *            the last timepoint to record.
+	 * @param fps
+	 *            the frame rate of the movie file.
+	 * @param numThreads
+	 *            the number of frames to render concurrently.
+	 * @param progressWriter
+	 *            the progress writer.
+	 */
+	public void record(
+			final int viewIndex,
+			final File output,
+			final int width,
+			final int height,
+			final int minTimepoint,
+			final int maxTimepoint,
+			final int fps,
+			final int numThreads,
+			final ProgressWriter progressWriter )
+	{
+		final Recording recording = new Recording( viewIndex, output, fps, numThreads, progressWriter );
+		try
+		{
+			recording.recorder.record(
+					width > 0 ? width : recording.canvasWidth,
+					height > 0 ? height : recording.canvasHeight,
+					minTimepoint, maxTimepoint );
+		}
+		finally
+		{
+			recording.close();
+		}
+	}
+
+	/**
+	 * Records a max-projection movie of a saved BDV view.
+	 *
+	 * @param viewIndex
+	 *            the index of the saved BDV view, or -1 to use a default view
+	 *            of the whole dataset.
+	 * @param output
+	 *            the movie file to write to, or the folder to write PNG images
+	 *            to if it has no extension.
+	 * @param width
+	 *            the movie width, or 0 to use the width of the saved view.
+	 * @param height
+	 *            the movie height, or 0 to use the height of the saved view.
+	 * @param minTimepoint
+	 *            the first timepoint to record.
+	 * @param maxTimepoint
+	 *            the last timepoint to record.
+	 * @param stepSize
+	 *            the distance between projected slices, in units of the voxel
+	 *            width of the first source.
+	 * @param numSteps
+	 *            the number of projected slices.
+	 * @param projectOverlay
+	 *            whether to also project the tracks overlay.
+	 * @param fps
+	 *            the frame rate of the movie file.
+	 * @param numThreads
+	 *            the number of frames to render concurrently.
+	 * @param progressWriter
+	 *            the progress writer.
+	 */
+	public void recordMaxProjection(
+			final int viewIndex,
+			final File output,
+			final int width,
+			final int height,
+			final int minTimepoint,
+			final int maxTimepoint,
+			final double stepSize,
+			final int numSteps,
+			final boolean projectOverlay,
+			final int fps,
+			final int numThreads,
+			final ProgressWriter progressWriter )
+	{
+		final Recording recording = new Recording( viewIndex, output, fps, numThreads, progressWriter );
+		try
+		{
+			recording.recorder.recordMaxProjectionMovie(
+					width > 0 ? width : recording.canvasWidth,
+					height > 0 ? height : recording.canvasHeight,
+					minTimepoint, maxTimepoint,
+					stepSize, numSteps, projectOverlay );
+		}
+		finally
+		{
+			recording.close();
+		}
+	}
+
+	/**
+	 * A BDV view restored from a saved GUI state, without frame, and the
+	 * recorder that renders it.
+	 */
+	private class Recording
+	{
+		private final ViewerPanel viewer;
+
+		private final int canvasWidth;
+
+		private final int canvasHeight;
+
+		private final AbstractBDVRecorder recorder;
+
+		private final Runnable onClose;
+
+		Recording( final int viewIndex, final File output, final int fps, final int numThreads, final ProgressWriter progressWriter )
+		{
+			final Map< String, Object > guiState = viewIndex < 0
+					? Collections.emptyMap()
+					: bdvGuiStates.get( viewIndex );
+
+			viewer = new ViewerPanel(
+					sharedBdvData.getSources(),
+					sharedBdvData.getNumTimepoints(),
+					sharedBdvData.getCache(),
+					sharedBdvData.getOptions() );
+
+			/*
+			 * The saved transform applies to the saved canvas. Projects saved
+			 * before the canvas size was, only have the frame size, which is a
+			 * bit larger.
+			 */
+			final int[] size = ( int[] ) guiState.get( BDV_CANVAS_SIZE_KEY );
+			final int[] pos = ( int[] ) guiState.get( FRAME_POSITION_KEY );
+			if ( size != null && size[ 0 ] > 0 && size[ 1 ] > 0 )
+			{
+				canvasWidth = size[ 0 ];
+				canvasHeight = size[ 1 ];
+			}
+			else if ( pos != null )
+			{
+				canvasWidth = pos[ 2 ];
+				canvasHeight = pos[ 3 ];
+			}
+			else
+			{
+				canvasWidth = DEFAULT_CANVAS_WIDTH;
+				canvasHeight = DEFAULT_CANVAS_HEIGHT;
+			}
+
+			// Restore BDV state.
+			final Element stateEl = ( Element ) guiState.get( BDV_STATE_KEY );
+			if ( null != stateEl )
+				viewer.stateFromXml( stateEl );
+
+			// Restore transform.
+			final AffineTransform3D tLoaded = ( AffineTransform3D ) guiState.get( BDV_TRANSFORM_KEY );
+			if ( null == tLoaded )
+				viewer.state().setViewerTransform( InitializeViewerState.initTransform( canvasWidth, canvasHeight, false, viewer.state().snapshot() ) );
+			else
+				viewer.state().setViewerTransform( tLoaded );
+
+			// Tracks overlay, with empty highlight, focus and selection.
+			final ModelGraph graph = model.getGraph();
+			final OverlayGraphWrapper< Spot, Link > viewGraph = new OverlayGraphWrapper<>(
+					graph,
+					model.getGraphIdBimap(),
+					model.getSpatioTemporalIndex(),
+					graph.getLock(),
+					new ModelOverlayProperties( graph, radiusStats ) );
+			final GraphColorGeneratorAdapter< Spot, Link, OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > coloring =
+					new GraphColorGeneratorAdapter<>( viewGraph.getVertexMap(), viewGraph.getEdgeMap() );
+			final ConcurrentSelectionModel< Spot, Link > selection = new ConcurrentSelectionModel<>( graph, model.getGraphIdBimap() );
+			graph.addGraphListener( selection );
+			final OverlayGraphRenderer< OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > tracksOverlay = new OverlayGraphRenderer<>(
+					viewGraph,
+					new HighlightModelAdapter<>( new DefaultHighlightModel<>( model.getGraphIdBimap() ), viewGraph.getVertexMap(), viewGraph.getEdgeMap() ),
+					new FocusModelAdapter<>( new DefaultFocusModel<>( model.getGraphIdBimap() ), viewGraph.getVertexMap(), viewGraph.getEdgeMap() ),
+					new SelectionModelAdapter<>( selection, viewGraph.getVertexMap(), viewGraph.getEdgeMap() ),
+					coloring );
+			tracksOverlay.setRenderSettings( renderSettingsManager.getForwardDefaultStyle() );
+
+			// Coloring and colorbar.
+			final ColoringModelMain< Spot, Link, BranchSpot, BranchLink > coloringModel = new ColoringModelMain<>(
+					model.getTagSetModel(), featureColorModeManager, model.getFeatureModel(), model.getBranchGraph() );
+			// The model does not change while recording: feature colors can be cached for good.
+			final CachingGraphColorGenerator< Spot, Link > featureColoring = new CachingGraphColorGenerator<>( model.getGraphIdBimap() );
+			coloringModel.listeners().add( () -> {
+				if ( coloringModel.noColoring() )
+					coloring.setColorGenerator( null );
+				else if ( coloringModel.getTagSet() != null )
+					coloring.setColorGenerator( new TagSetGraphColorGenerator<>( model.getTagSetModel(), coloringModel.getTagSet() ) );
+				else if ( coloringModel.getFeatureColorMode() != null )
+				{
+					featureColoring.setColorGenerator( coloringModel.getFeatureGraphColorGenerator() );
+					coloring.setColorGenerator( featureColoring );
+				}
+			} );
+			MamutView.restoreColoring( coloringModel, guiState );
+			final ColorBarOverlay colorBarOverlay = new ColorBarOverlay( coloringModel, () -> viewer.getBackground() );
+			MamutView.restoreColorbarState( colorBarOverlay, guiState );
+
+			// Recorder.
+			if ( output.getName().contains( "." ) )
+				recorder = new MovieFileBDVRecorder( viewer, tracksOverlay, colorBarOverlay, progressWriter, output.getAbsolutePath(), fps );
+			else
+				recorder = new PNGFolderBDVRecorder( viewer, tracksOverlay, colorBarOverlay, progressWriter, output );
+			recorder.setCanvasSize( canvasWidth, canvasHeight );
+			recorder.setNumThreads( numThreads );
+
+			onClose = () -> {
+				graph.removeGraphListener( selection );
+				viewer.stop();
+			};
+		}
+
+		void close()
+		{
+			onClose.run();
+		}
+	}
+
+	private static void printUsage()
+	{
+		System.out.println( "Usage: MamutMovieRecorder [options] <project.mastodon> <output>" );
+		System.out.println( "Records a movie of a BDV view saved with a Mastodon project." );
+		System.out.println( "The output is a movie file (e.g. movie.mp4), or a folder of PNG images if it has no extension." );
+		System.out.println( "Options:" );
+		System.out.println( "  --view <index>        index of the saved BDV view (default: 0, or a default view if none is saved)" );
+		System.out.println( "  --size <w> <h>        movie size (default: size of the saved view)" );
+		System.out.println( "  --time <min> <max>    timepoint range (default: all timepoints)" );
+		System.out.println( "  --fps <fps>           frame rate of the movie file (default: 10)" );
+		System.out.println( "  --threads <n>         number of frames rendered concurrently (default: number of processors)" );
+		System.out.println( "  --mip <step> <n>      record a max projection of n slices, step voxels apart" );
+		System.out.println( "  --mip-overlay         also project the tracks overlay in max projections" );
+		System.out.println( "  --no-features         do not load features (coloring by feature is not available)" );
+	}
+
+	public static void main( final String[] args ) throws Exception
+	{
+		int viewIndex = 0;
+		int width = 0;
+		int height = 0;
+		int minTimepoint = 0;
+		int maxTimepoint = -1;
+		int fps = 10;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		double stepSize = 0.;
+		int numSteps = 0;
+		boolean projectOverlay = false;
+		boolean loadFeatures = true;
+		String projectPath = null;
+		String outputPath = null;
+		try
+		{
+			for ( int i = 0; i < args.length; ++i )
+			{
+				switch ( args[ i ] )
+				{
+				case "--view":
+					viewIndex = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--size":
+					width = Integer.parseInt( args[ ++i ] );
+					height = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--time":
+					minTimepoint = Integer.parseInt( args[ ++i ] );
+					maxTimepoint = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--fps":
+					fps = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--threads":
+					numThreads = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--mip":
+					stepSize = Double.parseDouble( args[ ++i ] );
+					numSteps = Integer.parseInt( args[ ++i ] );
+					break;
+				case "--mip-overlay":
+					projectOverlay = true;
+					break;
+				case "--no-features":
+					loadFeatures = false;
+					break;
+				default:
+					if ( projectPath == null )
+						projectPath = args[ i ];
+					else if ( outputPath == null )
+						outputPath = args[ i ];
+					else
+						throw new IllegalArgumentException( "Unexpected argument: " + args[ i ] );
+				}
+			}
+		}
+		catch ( final ArrayIndexOutOfBoundsException | IllegalArgumentException e )
+		{
+			System.err.println( e.getMessage() );
+			printUsage();
+			System.exit( 1 );
+		}
+		if ( projectPath == null || outputPath == null )
+		{
+			printUsage();
+			System.exit( 1 );
+		}
+
+		final MamutProject project = new MamutProjectIO().load( projectPath );
+		final Context context = loadFeatures ? new Context() : null;
+		try
+		{
+			final MamutMovieRecorder movieRecorder = new MamutMovieRecorder( project, context );
+			if ( movieRecorder.numBdvViews() == 0 )
+				viewIndex = -1;
+			else if ( viewIndex >= movieRecorder.numBdvViews() )
+				throw new IllegalArgumentException( "The project has only " + movieRecorder.numBdvViews() + " saved BDV views." );
+			if ( maxTimepoint < 0 )
+				maxTimepoint = movieRecorder.numTimepoints() - 1;
+
+			final ProgressWriter progressWriter = new ProgressWriterConsole();
+			if ( numSteps > 0 )
+				movieRecorder.recordMaxProjection( viewIndex, new File( outputPath ), width, height, minTimepoint, maxTimepoint,
+						stepSize, numSteps, projectOverlay, fps, numThreads, progressWriter );
+			else
+				movieRecorder.record( viewIndex, new File( outputPath ), width, height, minTimepoint, maxTimepoint,
+						fps, numThreads, progressWriter );
+		}
+		finally
+		{
+			if ( context != null )
+				context.dispose();
+		}
+		System.exit( 0 );
+	}
+}
@@ -57,6 +57,7 @@ import org.mastodon.graph.Vertex;
 import org.mastodon.grouping.GroupHandle;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.branch.BranchLink;
 import org.mastodon.mamut.model.branch.BranchSpot;
@@ -65,6 +66,7 @@ import org.mastodon.model.SelectionModel;
 import org.mastodon.model.tag.TagSetModel;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.TagSetMenu;
+import org.mastodon.ui.coloring.CachingGraphColorGenerator;
 import org.mastodon.ui.coloring.ColoringMenu;
 import org.mastodon.ui.coloring.ColoringModel;
 import org.mastodon.ui.coloring.ColoringModelMain;
@@ -125,13 +127,28 @@ public class MamutView< VG extends ViewGraph< Spot, Link, V, E >, V extends Vert
 		featureModel.listeners().add( coloringMenu );
 		onClose( () -> featureModel.listeners().remove( coloringMenu ) );
 
+		// Feature colors are cached until the graph or the features change.
+		final ModelGraph graph = appModel.getModel().getGraph();
+		final CachingGraphColorGenerator< Spot, Link > featureColoring = new CachingGraphColorGenerator<>( graph.getGraphIdBimap() );
+		graph.addGraphListener( featureColoring );
+		graph.addGraphChangeListener( featureColoring );
+		featureModel.listeners().add( featureColoring );
+		onClose( () -> {
+			graph.removeGraphListener( featureColoring );
+			graph.removeGraphChangeListener( featureColoring );
+			featureModel.listeners().remove( featureColoring );
+		} );
+
 		final ColoringModelMain.ColoringChangedListener coloringChangedListener = () -> {
 			if ( coloringModel.noColoring() )
 				colorGeneratorAdapter.setColorGenerator( null );
 			else if ( coloringModel.getTagSet() != null )
 				colorGeneratorAdapter.setColorGenerator( new TagSetGraphColorGenerator<>( tagSetModel, coloringModel.getTagSet() ) );
 			else if ( coloringModel.getFeatureColorMode() != null )
-				colorGeneratorAdapter.setColorGenerator( coloringModel.getFeatureGraphColorGenerator() );
+			{
+				featureColoring.setColorGenerator( coloringModel.getFeatureGraphColorGenerator() );
+				colorGeneratorAdapter.setColorGenerator( featureColoring );
+			}
 			refresh.run();
 		};
 		coloringModel.listeners().add( coloringChangedListener );
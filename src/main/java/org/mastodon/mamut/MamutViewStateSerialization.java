@@ -110,6 +110,13 @@ class MamutViewStateSerialization
 	 */
 	static final String BDV_TRANSFORM_KEY = "BdvTransform";
 
+	/**
+	 * Key for the size of the canvas of a BDV view, to which its transform
+	 * applies. Value is an <code>int[]</code> array of 2 elements: width and
+	 * height.
+	 */
+	static final String BDV_CANVAS_SIZE_KEY = "BdvCanvasSize";
+
 	/**
 	 * Key for the transform in a TrackScheme view. Value is a
 	 * {@link ScreenTransform} instance.
@@ -538,6 +545,9 @@ class MamutViewStateSerialization
 		final AffineTransform3D t = new AffineTransform3D();
 		view.getViewerPanelMamut().state().getViewerTransform( t );
 		guiState.put( BDV_TRANSFORM_KEY, t );
+		guiState.put( BDV_CANVAS_SIZE_KEY, new int[] {
+				view.getViewerPanelMamut().getDisplay().getWidth(),
+				view.getViewerPanelMamut().getDisplay().getHeight() } );
 		// Coloring.
 		final ColoringModel coloringModel = view.getColoringModel();
 		getColoringState( coloringModel, guiState );
@@ -563,6 +573,9 @@ class MamutViewStateSerialization
 		final AffineTransform3D t = new AffineTransform3D();
 		view.getViewerPanelMamut().state().getViewerTransform( t );
 		guiState.put( BDV_TRANSFORM_KEY, t );
+		guiState.put( BDV_CANVAS_SIZE_KEY, new int[] {
+				view.getViewerPanelMamut().getDisplay().getWidth(),
+				view.getViewerPanelMamut().getDisplay().getHeight() } );
 		// Coloring.
 		final ColoringModel coloringModel = view.getColoringModel();
 		getColoringState( coloringModel, guiState );
@@ -703,6 +716,29 @@ class MamutViewStateSerialization
 		}
 	}
 
+	/**
+	 * Reads the GUI states of the views of the specified type from XML,
+	 * without creating any window.
+	 *
+	 * @param windowsEl
+	 *            the XML element that stores the GUI state of the views.
+	 * @param viewType
+	 *            the simple class name of the views to read, e.g.
+	 *            {@code "MamutViewBdv"}.
+	 * @return the GUI states, in the order they are found in the XML.
+	 */
+	static List< Map< String, Object > > readGuiStates( final Element windowsEl, final String viewType )
+	{
+		final List< Map< String, Object > > guiStates = new ArrayList<>();
+		for ( final Element viewEl : windowsEl.getChildren( WINDOW_TAG ) )
+		{
+			final Map< String, Object > guiState = xmlToMap( viewEl );
+			if ( viewType.equals( guiState.get( VIEW_TYPE_KEY ) ) )
+				guiStates.add( guiState );
+		}
+		return guiStates;
+	}
+
 	private static Map< String, Object > xmlToMap( final Element viewEl )
 	{
 		final Map< String, Object > guiState = new HashMap<>();
@@ -723,6 +759,9 @@ class MamutViewStateSerialization
 				final int[] pos = XmlHelpers.getIntArray( viewEl, key );
 				value = sanitize( pos );
 				break;
+			case BDV_CANVAS_SIZE_KEY:
+				value = XmlHelpers.getIntArray( viewEl, key );
+				break;
 			case TAG_SET_KEY:
 			case FEATURE_COLOR_MODE_KEY:
 			case VIEW_TYPE_KEY:
@@ -805,6 +844,8 @@ class MamutViewStateSerialization
 	private static int[] sanitize( final int[] pos )
 	{
 		assert pos.length == 4;
+		if ( GraphicsEnvironment.isHeadless() )
+			return pos;
 		final GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
 		if ( null == ge )
 			return pos;
@@ -130,6 +130,12 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		final ViewGraph< BranchSpot, BranchLink, BranchSpot, BranchLink > viewBranchGraph = IdentityViewGraph.wrap( branchGraph, branchGraph.getGraphIdBimap() );
 		final GraphColorGeneratorAdapter< BranchSpot, BranchLink, BranchSpot, BranchLink > branchColoringAdapter = new GraphColorGeneratorAdapter<>( viewBranchGraph.getVertexMap(), viewBranchGraph.getEdgeMap() );
 
+		// Branch-graph tags and selection.
+		final BranchGraphTagSetAdapter< Spot, Link, BranchSpot, BranchLink > branchTagSetModel = branchTagSetModel( appModel );
+		onClose( () -> branchTagSetModel.close() );
+		final BranchGraphSelectionAdapter< Spot, Link, BranchSpot, BranchLink > branchSelectionModel = branchSelectionModel( appModel );
+		onClose( () -> branchSelectionModel.close() );
+
 		// Selection table?
 		this.selectionTable = ( boolean ) guiState.getOrDefault( TABLE_SELECTION_ONLY, false );
 
@@ -155,8 +161,8 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 					.vertexLabelGetter( s -> s.getLabel() )
 					.vertexLabelSetter( ( s, label ) -> s.setLabel( label ) )
 					.featureModel( featureModel )
-					.tagSetModel( branchTagSetModel( appModel ) )
-					.selectionModel( branchSelectionModel( appModel ) )
+					.tagSetModel( branchTagSetModel )
+					.selectionModel( branchSelectionModel )
 					.highlightModel( branchHighlightModel( appModel ) )
 					.coloring( branchColoringAdapter )
 					.focusModel( branchFocusfocusModel( appModel ) )
@@ -218,7 +224,7 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		appModel.getPlugins().addMenus( menu );
 
 		coloringModel = registerColoring( coloringAdapter, colorMenuHandle, () -> frame.repaint() );
-		branchColoringModel = registerBranchColoring( appModel, branchColoringAdapter, colorBranchMenuHandle, () -> frame.repaint(), runOnClose );
+		branchColoringModel = registerBranchColoring( appModel, branchTagSetModel, branchColoringAdapter, colorBranchMenuHandle, () -> frame.repaint(), runOnClose );
 
 		// Restore coloring.
 		restoreColoring( coloringModel, guiState );
@@ -269,6 +275,7 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 
 	private static final ColoringModel registerBranchColoring(
 			final MamutAppModel appModel,
+			final TagSetModel< BranchSpot, BranchLink > branchTagSetModel,
 			final GraphColorGeneratorAdapter< BranchSpot, BranchLink, BranchSpot, BranchLink > colorGeneratorAdapter,
 			final JMenuHandle menuHandle,
 			final Runnable refresh,
@@ -298,7 +305,7 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 			if ( coloringModel.noColoring() )
 				colorGeneratorAdapter.setColorGenerator( null );
 			else if ( coloringModel.getTagSet() != null )
-				colorGeneratorAdapter.setColorGenerator( new TagSetGraphColorGenerator<>( branchTagSetModel( appModel ), coloringModel.getTagSet() ) );
+				colorGeneratorAdapter.setColorGenerator( new TagSetGraphColorGenerator<>( branchTagSetModel, coloringModel.getTagSet() ) );
 			else if ( coloringModel.getFeatureColorMode() != null )
 				colorGeneratorAdapter.setColorGenerator( ( GraphColorGenerator< BranchSpot, BranchLink > ) coloringModel.getFeatureGraphColorGenerator() );
 			refresh.run();
@@ -308,7 +315,7 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		return coloringModel;
 	}
 
-	private static TagSetModel< BranchSpot, BranchLink > branchTagSetModel( final MamutAppModel appModel )
+	private static BranchGraphTagSetAdapter< Spot, Link, BranchSpot, BranchLink > branchTagSetModel( final MamutAppModel appModel )
 	{
 		final ModelGraph graph = appModel.getModel().getGraph();
 		final ModelBranchGraph branchGraph = appModel.getModel().getBranchGraph();
@@ -347,12 +354,12 @@ public class MamutViewTable extends MamutView< ViewGraph< Spot, Link, Spot, Link
 		return branchFocusfocusModel;
 	}
 
-	private static SelectionModel< BranchSpot, BranchLink > branchSelectionModel( final MamutAppModel appModel )
+	private static BranchGraphSelectionAdapter< Spot, Link, BranchSpot, BranchLink > branchSelectionModel( final MamutAppModel appModel )
 	{
 		final ModelGraph graph = appModel.getModel().getGraph();
 		final ModelBranchGraph branchGraph = appModel.getModel().getBranchGraph();
 		final SelectionModel< Spot, Link > graphSelectionModel = appModel.getSelectionModel();
-		final SelectionModel< BranchSpot, BranchLink > branchSelectionModel =
+		final BranchGraphSelectionAdapter< Spot, Link, BranchSpot, BranchLink > branchSelectionModel =
 				new BranchGraphSelectionAdapter<>( branchGraph, graph, graph.getGraphIdBimap(), graphSelectionModel );
 		return branchSelectionModel;
 	}
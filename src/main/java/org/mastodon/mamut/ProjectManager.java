@@ -37,6 +37,7 @@ import static org.mastodon.mamut.project.MamutProjectIO.MAMUTPROJECT_VERSION_ATT
 import static org.mastodon.mamut.project.MamutProjectIO.MAMUTPROJECT_VERSION_ATTRIBUTE_NAME;
 
 import java.awt.Component;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowListener;
 import java.io.File;
@@ -45,7 +46,14 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -71,12 +79,14 @@ import org.mastodon.mamut.importer.trackmate.MamutExporter;
 import org.mastodon.mamut.importer.trackmate.TrackMateImporter;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelJournal;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.project.MamutImagePlusProject;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProject.ProjectReader;
 import org.mastodon.mamut.project.MamutProject.ProjectWriter;
 import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.ui.ProgressListener;
 import org.mastodon.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.ui.keymap.CommandDescriptions;
 import org.mastodon.ui.keymap.KeyConfigContexts;
@@ -87,6 +97,7 @@ import org.mastodon.ui.util.XmlFileFilter;
 import org.mastodon.util.BDVImagePlusExporter;
 import org.mastodon.util.DummySpimData;
 import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.listeners.Listeners;
 import org.scijava.plugin.Plugin;
 import org.scijava.ui.behaviour.KeyPressedManager;
 import org.scijava.ui.behaviour.util.AbstractNamedAction;
@@ -165,6 +176,27 @@ public class ProjectManager
 
 	private File proposedProjectRoot;
 
+	/**
+	 * Journal of the unsaved edits to the model of the current project, or
+	 * {@code null} if the project was never saved.
+	 */
+	private ModelJournal journal;
+
+	/**
+	 * Whether the current model was recovered from a journal and was not
+	 * saved since.
+	 */
+	private boolean recovered;
+
+	/**
+	 * Serializes tags and features concurrently when saving, and compresses
+	 * the entries of zipped projects. Shared by all saves. Its daemon threads
+	 * stop when idle, so it is never shut down.
+	 */
+	private final ExecutorService saveExecutor;
+
+	private final Listeners.List< ProgressListener > progressListeners;
+
 	private final AbstractNamedAction createProjectAction;
 
 	private final AbstractNamedAction createProjectFromUrlAction;
@@ -187,6 +219,16 @@ public class ProjectManager
 	{
 		this.windowManager = windowManager;
 
+		final int nThreads = Runtime.getRuntime().availableProcessors();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor( nThreads, nThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread( r, "Mastodon project writer" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		executor.allowCoreThreadTimeOut( true );
+		saveExecutor = executor;
+		progressListeners = new Listeners.SynchronizedList<>();
+
 		tgmmImportDialog = new TgmmImportDialog( null );
 		simiImportDialog = new SimiImportDialog( null );
 
@@ -233,6 +275,19 @@ public class ProjectManager
 		actions.namedAction( exportMamutAction, EXPORT_MAMUT_KEYS );
 	}
 
+	/**
+	 * Exposes the listeners notified of the progress of the long operations
+	 * of this project manager, like importing a MaMuT project. They can be
+	 * notified on the event dispatch thread, which is blocked until the
+	 * operation is finished.
+	 *
+	 * @return the progress listeners.
+	 */
+	public Listeners< ProgressListener > progressListeners()
+	{
+		return progressListeners;
+	}
+
 	public synchronized void createProject()
 	{
 		final Component parent = null; // TODO
@@ -547,21 +602,191 @@ public class ProjectManager
 			return;
 
 		project.setProjectRoot( projectRoot );
-		try (final MamutProject.ProjectWriter writer = project.openForWriting())
-		{
-			new MamutProjectIO().save( project, writer );
-			final Model model = windowManager.getAppModel().getModel();
-			final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( writer );
-			// Serialize feature model.
-			MamutRawFeatureModelIO.serialize( windowManager.getContext(), model, idmap, writer );
-			// Serialize GUI state.
-			saveGUI( writer );
-			// Set save point.
-			model.setSavePoint();
+		final Model model = windowManager.getAppModel().getModel();
+		final ReentrantReadWriteLock.ReadLock lock = model.getGraph().getLock().readLock();
+		lock.lock();
+		try
+		{
+			// Features not loaded yet are read from the files we are about to overwrite.
+			model.getFeatureModel().loadLazyFeatures();
+			try (final MamutProject.ProjectWriter writer = project.openForWriting( saveExecutor ))
+			{
+				new MamutProjectIO().save( project, writer );
+				final GraphToFileIdMap< Spot, Link > idmap = model.saveRawGraph( writer );
+				// Serialize tags and feature model concurrently.
+				final Future< ? > tags = saveExecutor.submit( () -> {
+					model.saveRawTags( writer, idmap );
+					return null;
+				} );
+				try
+				{
+					MamutRawFeatureModelIO.serialize( windowManager.getContext(), model, idmap, writer, saveExecutor );
+					tags.get();
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException( e );
+				}
+				catch ( final ExecutionException e )
+				{
+					if ( e.getCause() instanceof IOException )
+						throw ( IOException ) e.getCause();
+					throw new IOException( e.getCause() );
+				}
+				// Serialize GUI state.
+				saveGUI( writer );
+				// Set save point.
+				model.setSavePoint();
+			}
+		}
+		finally
+		{
+			lock.unlock();
 		}
+		// The journal is now empty, start a new one next to the saved project.
+		discardJournal();
+		recovered = false;
+		openJournal( model );
 		updateEnabledActions();
 	}
 
+	/**
+	 * Stops journaling the edits to the current model and deletes the journal,
+	 * for instance because the user chose not to save them.
+	 */
+	public synchronized void discardJournal()
+	{
+		if ( journal == null )
+			return;
+		journal.discard();
+		journal = null;
+	}
+
+	/**
+	 * Sets whether the model graph of the current project is saved as
+	 * columnar files the next time it is saved, rather than as a single
+	 * serialized file. Columnar files are memory-mapped when a project folder
+	 * is opened, which makes opening large projects faster, but they cannot
+	 * be read by older versions of Mastodon. When a project is opened, this
+	 * is set to the layout of the project.
+	 *
+	 * @param columnar
+	 *            whether to save the model graph as columnar files.
+	 * @see MamutProject#isRawModelColumnar()
+	 */
+	public synchronized void setRawModelColumnar( final boolean columnar )
+	{
+		if ( project != null )
+			project.setRawModelColumnar( columnar );
+	}
+
+	/**
+	 * Returns {@code true} if the current model was recovered from the
+	 * journal of unsaved edits left by a previous session, and was not saved
+	 * since.
+	 *
+	 * @return whether the model holds recovered edits.
+	 */
+	public synchronized boolean isRecovered()
+	{
+		return recovered;
+	}
+
+	private void openJournal( final Model model )
+	{
+		final File folder = project.getJournalFolder();
+		if ( folder == null )
+			return;
+		try
+		{
+			journal = ModelJournal.open( model, windowManager.getContext(), folder );
+			// The journal now applies to the project as it is on disk.
+			ModelJournal.setBase( folder, project.getSavedStateFingerprint() );
+			journal.failureListeners().add( ProjectManager::journalFailed );
+		}
+		catch ( final IOException e )
+		{
+			// Journaling is a safety net, do not prevent working without it.
+			e.printStackTrace();
+			if ( journal != null )
+				journal.close();
+			journal = null;
+		}
+	}
+
+	private static void journalFailed( final IOException e )
+	{
+		e.printStackTrace();
+		if ( GraphicsEnvironment.isHeadless() )
+			return;
+		SwingUtilities.invokeLater( () -> JOptionPane.showMessageDialog(
+				null,
+				"Unsaved edits cannot be journaled anymore:\n"
+						+ e.getMessage() + "\n"
+						+ "\n"
+						+ "Edits made from now on may be lost if Mastodon stops\n"
+						+ "unexpectedly. Please save the project.",
+				"Journal of unsaved edits failed",
+				JOptionPane.WARNING_MESSAGE ) );
+	}
+
+	/**
+	 * Asks the user whether to recover the unsaved edits journaled in the
+	 * specified folder. Without a display, edits are only recovered if the
+	 * journal was recorded against the project as it is on disk.
+	 *
+	 * @return {@code true} if the edits should be recovered.
+	 */
+	private static boolean confirmRecovery( final MamutProject project, final File folder )
+	{
+		final boolean matches = ModelJournal.isBasedOn( folder, project.getSavedStateFingerprint() );
+		if ( GraphicsEnvironment.isHeadless() )
+			return matches;
+
+		final String message = matches
+				? "Mastodon found unsaved edits of a previous session\n"
+						+ "of project " + project.getProjectRoot() + ".\n"
+						+ "\n"
+						+ "Do you want to recover them?\n"
+						+ "(Clicking 'No' will discard them.)"
+				: "Mastodon found unsaved edits of a previous session\n"
+						+ "of project " + project.getProjectRoot() + ",\n"
+						+ "but the project was saved again since they were recorded.\n"
+						+ "Recovering them may corrupt the model.\n"
+						+ "\n"
+						+ "Do you want to recover them anyway?\n"
+						+ "(Clicking 'No' will discard them.)";
+		final AtomicInteger answer = new AtomicInteger( JOptionPane.NO_OPTION );
+		final Runnable ask = () -> answer.set( JOptionPane.showConfirmDialog(
+				null,
+				message,
+				"Recover unsaved edits",
+				JOptionPane.YES_NO_OPTION,
+				matches ? JOptionPane.QUESTION_MESSAGE : JOptionPane.WARNING_MESSAGE,
+				MastodonIcons.MASTODON_ICON_MEDIUM ) );
+		if ( SwingUtilities.isEventDispatchThread() )
+			ask.run();
+		else
+		{
+			try
+			{
+				SwingUtilities.invokeAndWait( ask );
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return matches;
+			}
+			catch ( final InvocationTargetException e )
+			{
+				e.printStackTrace();
+				return matches;
+			}
+		}
+		return answer.get() == JOptionPane.YES_OPTION;
+	}
+
 	/**
 	 * Opens a project. If {@code project.getProjectRoot() == null} this is a
 	 * new project and data structures are initialized as empty. The image data
@@ -640,14 +865,39 @@ public class ProjectManager
 		// Prepare image data.
 		final SharedBigDataViewerData sharedBdvData = openImageData( localProject, windowManager );
 
+		// Stop journaling the previous project.
+		if ( journal != null )
+		{
+			journal.close();
+			journal = null;
+		}
+
+		// Ask before recovering unsaved edits of a previous session.
+		final File journalFolder = localProject.getJournalFolder();
+		if ( journalFolder != null && ModelJournal.hasEdits( journalFolder ) && !confirmRecovery( localProject, journalFolder ) )
+			ModelJournal.discard( journalFolder );
+
 		// Load model.
-		loadModel( windowManager, sharedBdvData, localProject, restoreGUIState );
+		recovered = loadModel( windowManager, sharedBdvData, localProject, restoreGUIState );
 
 		this.project = localProject;
+
+		// Replay and resume the journal of unsaved edits.
+		final Model model = windowManager.getAppModel().getModel();
+		openJournal( model );
+		if ( journal != null && !model.isSavePoint() )
+			recovered = true;
 		updateEnabledActions();
 	}
 
-	private static void loadModel( final WindowManager windowManager, final SharedBigDataViewerData sharedBdvData, final MamutProject project, final boolean restoreGUIState ) throws IOException
+	/**
+	 * Loads the model of the specified project. If the journal of the project
+	 * holds a snapshot of unsaved edits, the model graph, tags and features are
+	 * loaded from it instead.
+	 *
+	 * @return {@code true} if the model was loaded from a journal snapshot.
+	 */
+	private static boolean loadModel( final WindowManager windowManager, final SharedBigDataViewerData sharedBdvData, final MamutProject project, final boolean restoreGUIState ) throws IOException
 	{
 		/*
 		 * Try to read units from spimData is they are not present
@@ -671,17 +921,43 @@ public class ProjectManager
 		 */
 		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
 		final boolean isNewProject = project.getProjectRoot() == null;
-		if ( !isNewProject )
+		final File snapshot = isNewProject ? null : ModelJournal.findSnapshot( project.getJournalFolder() );
+		if ( snapshot != null )
 		{
 			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				project.setRawModelColumnar( reader.hasRawModelColumns() );
+			}
+			final MamutProject snapshotProject = new MamutProject( snapshot );
+			try (final MamutProject.ProjectReader reader = snapshotProject.openForReading())
 			{
 				final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
-				// Load features.
 				MamutRawFeatureModelIO.deserialize(
 						windowManager.getContext(),
 						model,
 						idmap,
-						reader );
+						reader,
+						snapshotProject );
+			}
+			catch ( final ClassNotFoundException e )
+			{
+				e.printStackTrace();
+			}
+		}
+		else if ( !isNewProject )
+		{
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				// Save in the same model layout as we loaded from.
+				project.setRawModelColumnar( reader.hasRawModelColumns() );
+				final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
+				// Load features. They are deserialized when first used.
+				MamutRawFeatureModelIO.deserialize(
+						windowManager.getContext(),
+						model,
+						idmap,
+						reader,
+						project );
 			}
 			catch ( final ClassNotFoundException e )
 			{
@@ -689,7 +965,9 @@ public class ProjectManager
 			}
 		}
 
-		model.setSavePoint();
+		// Recovered edits are not saved.
+		if ( snapshot == null )
+			model.setSavePoint();
 		model.declareDefaultFeatures();
 
 		final MamutAppModel appModel = new MamutAppModel(
@@ -721,6 +999,7 @@ public class ProjectManager
 				}
 			}
 		}
+		return snapshot != null;
 	}
 
 	public synchronized void importTgmm()
@@ -758,11 +1037,35 @@ public class ProjectManager
 		if ( file == null )
 			return;
 
+		final ProgressListener progress = new ProgressListener()
+		{
+			@Override
+			public void showStatus( final String string )
+			{
+				progressListeners.list.forEach( l -> l.showStatus( string ) );
+			}
+
+			@Override
+			public void showProgress( final int current, final int total )
+			{
+				progressListeners.list.forEach( l -> l.showProgress( current, total ) );
+			}
+
+			@Override
+			public void clearStatus()
+			{
+				progressListeners.list.forEach( ProgressListener::clearStatus );
+			}
+		};
+
 		try
 		{
 			final TrackMateImporter importer = new TrackMateImporter( file );
 			open( importer.createProject() );
-			importer.readModel( windowManager.getAppModel().getModel(), windowManager.getFeatureSpecsService() );
+			importer.readModel(
+					windowManager.getAppModel().getModel(),
+					windowManager.getFeatureSpecsService(),
+					progress );
 		}
 		catch ( final IOException | SpimDataException e )
 		{
@@ -868,6 +1171,26 @@ public class ProjectManager
 	}
 
 	private static void loadGUI( final ProjectReader reader, final WindowManager windowManager ) throws IOException
+	{
+		final Element windowsEl = loadWindowsElement( reader );
+		if ( null == windowsEl )
+			return;
+
+		MamutViewStateSerialization.fromXml( windowsEl, windowManager );
+	}
+
+	/**
+	 * Reads the XML element that stores the GUI state of the views of a
+	 * project.
+	 *
+	 * @param reader
+	 *            the project reader.
+	 * @return the XML element, or {@code null} if the GUI file does not
+	 *         contain any view.
+	 * @throws IOException
+	 *             if the GUI file cannot be read or parsed.
+	 */
+	static Element loadWindowsElement( final ProjectReader reader ) throws IOException
 	{
 		final SAXBuilder sax = new SAXBuilder();
 		Document guiDoc;
@@ -883,11 +1206,7 @@ public class ProjectManager
 		if ( !GUI_TAG.equals( root.getName() ) )
 			throw new IOException( "expected <" + GUI_TAG + "> root element. wrong file?" );
 
-		final Element windowsEl = root.getChild( WINDOWS_TAG );
-		if ( null == windowsEl )
-			return;
-
-		MamutViewStateSerialization.fromXml( windowsEl, windowManager );
+		return root.getChild( WINDOWS_TAG );
 	}
 
 	/**
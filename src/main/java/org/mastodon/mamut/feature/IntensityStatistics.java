@@ -0,0 +1,294 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import org.scijava.util.DoubleArray;
+
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computes the mean, standard deviation, min, max, median and sum of the
+ * pixel values of a spot, without sorting them.
+ * <p>
+ * Instances are not thread-safe, and keep their scratch memory from one call
+ * to {@link #compute(Iterable)} to the next. Use one instance per thread.
+ */
+abstract class IntensityStatistics
+{
+
+	/**
+	 * Largest number of distinct values of an integer type, for which we use
+	 * a histogram.
+	 */
+	private static final long MAX_HISTOGRAM_SIZE = 1l << 16;
+
+	int size;
+
+	double mean;
+
+	double std;
+
+	double min;
+
+	double max;
+
+	double median;
+
+	double sum;
+
+	/**
+	 * Computes the statistics of the specified pixels. If there is no pixel,
+	 * {@link #size} is 0 and the other fields are undefined.
+	 *
+	 * @param pixels
+	 *            the pixels.
+	 */
+	abstract void compute( Iterable< ? extends RealType< ? > > pixels );
+
+	/**
+	 * Returns a new statistics instance suited to the specified pixel type.
+	 * Integer types with at most 2<sup>16</sup> distinct values, like
+	 * {@code UnsignedByteType} or {@code UnsignedShortType}, are treated with
+	 * a histogram, and give exact results. Other types are treated by storing
+	 * the values and selecting the median.
+	 *
+	 * @param type
+	 *            the pixel type.
+	 * @return a new statistics instance.
+	 */
+	static IntensityStatistics create( final RealType< ? > type )
+	{
+		if ( type instanceof IntegerType )
+		{
+			final double minValue = type.getMinValue();
+			final double maxValue = type.getMaxValue();
+			if ( maxValue - minValue < MAX_HISTOGRAM_SIZE )
+				return new HistogramStatistics( ( long ) minValue, ( int ) ( maxValue - minValue ) + 1 );
+		}
+		return new SelectionStatistics();
+	}
+
+	/**
+	 * Counting sort of integer values, in one pass over the pixels. Memory is
+	 * bounded by the number of distinct values of the type.
+	 */
+	static final class HistogramStatistics extends IntensityStatistics
+	{
+
+		private final long offset;
+
+		private final int[] histogram;
+
+		HistogramStatistics( final long offset, final int nBins )
+		{
+			this.offset = offset;
+			this.histogram = new int[ nBins ];
+		}
+
+		@Override
+		void compute( final Iterable< ? extends RealType< ? > > pixels )
+		{
+			int n = 0;
+			double s = 0.;
+			int lo = Integer.MAX_VALUE;
+			int hi = -1;
+			for ( final RealType< ? > p : pixels )
+			{
+				final double val = p.getRealDouble();
+				final int bin = ( int ) ( ( long ) val - offset );
+				histogram[ bin ]++;
+				if ( bin < lo )
+					lo = bin;
+				if ( bin > hi )
+					hi = bin;
+				s += val;
+				n++;
+			}
+			size = n;
+			if ( n < 1 )
+				return;
+
+			sum = s;
+			mean = s / n;
+			min = lo + offset;
+			max = hi + offset;
+
+			// Walk the histogram for the median and the variance, and reset it.
+			final int k = n / 2;
+			int cumsum = 0;
+			boolean found = false;
+			double sum2 = 0.;
+			for ( int bin = lo; bin <= hi; bin++ )
+			{
+				final int count = histogram[ bin ];
+				if ( count == 0 )
+					continue;
+				histogram[ bin ] = 0;
+				final double val = bin + offset;
+				cumsum += count;
+				if ( !found && cumsum > k )
+				{
+					median = val;
+					found = true;
+				}
+				final double dx = val - mean;
+				sum2 += count * dx * dx;
+			}
+			std = n < 2 ? 0. : Math.sqrt( sum2 / ( n - 1 ) );
+		}
+	}
+
+	/**
+	 * Stores the values and selects the median in linear expected time.
+	 * <p>
+	 * The median is exact, so memory is not bounded: it grows with the number
+	 * of pixels in the spot, 8 bytes per pixel, as when sorting a copy of the
+	 * values. Buffers larger than {@link #MAX_RETAINED_VALUES} values are not
+	 * kept from one spot to the next.
+	 */
+	static final class SelectionStatistics extends IntensityStatistics
+	{
+
+		/**
+		 * Largest number of values for which the buffer is kept for the next
+		 * call to {@link #compute(Iterable)}.
+		 */
+		static final int MAX_RETAINED_VALUES = 1 << 20;
+
+		private DoubleArray store = new DoubleArray();
+
+		@Override
+		void compute( final Iterable< ? extends RealType< ? > > pixels )
+		{
+			store.clear();
+			double s = 0.;
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			for ( final RealType< ? > p : pixels )
+			{
+				final double val = p.getRealDouble();
+				store.addValue( val );
+				s += val;
+				if ( val < lo )
+					lo = val;
+				if ( val > hi )
+					hi = val;
+			}
+			final int n = store.size();
+			size = n;
+			if ( n < 1 )
+				return;
+
+			final double[] array = store.getArray();
+			sum = s;
+			mean = s / n;
+			min = lo;
+			max = hi;
+			if ( n < 2 )
+			{
+				std = 0.;
+				median = array[ 0 ];
+				return;
+			}
+
+			double sum2 = 0.;
+			for ( int i = 0; i < n; i++ )
+			{
+				final double dx = array[ i ] - mean;
+				sum2 += dx * dx;
+			}
+			std = Math.sqrt( sum2 / ( n - 1 ) );
+			median = select( array, n, n / 2 );
+			if ( array.length > MAX_RETAINED_VALUES )
+				store = new DoubleArray();
+		}
+	}
+
+	/**
+	 * Returns the k-th smallest value of the first n elements of the specified
+	 * array, which is reordered in the process. This is the value that would
+	 * be at index k after sorting.
+	 *
+	 * @param array
+	 *            the array.
+	 * @param n
+	 *            the number of elements to consider.
+	 * @param k
+	 *            the rank of the value to return, starting from 0.
+	 * @return the k-th smallest value.
+	 */
+	static double select( final double[] array, final int n, final int k )
+	{
+		int left = 0;
+		int right = n - 1;
+		while ( right > left )
+		{
+			// Median of three as pivot.
+			final int mid = ( left + right ) >>> 1;
+			if ( array[ mid ] < array[ left ] )
+				swap( array, mid, left );
+			if ( array[ right ] < array[ left ] )
+				swap( array, right, left );
+			if ( array[ right ] < array[ mid ] )
+				swap( array, right, mid );
+			final double pivot = array[ mid ];
+
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( array[ i ] < pivot )
+					i++;
+				while ( array[ j ] > pivot )
+					j--;
+				if ( i <= j )
+				{
+					swap( array, i, j );
+					i++;
+					j--;
+				}
+			}
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return array[ k ];
+		}
+		return array[ k ];
+	}
+
+	private static void swap( final double[] array, final int i, final int j )
+	{
+		final double tmp = array[ i ];
+		array[ i ] = array[ j ];
+		array[ j ] = tmp;
+	}
+}
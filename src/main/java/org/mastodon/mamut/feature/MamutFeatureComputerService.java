@@ -28,7 +28,10 @@
  */
 package org.mastodon.mamut.feature;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -38,6 +41,9 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.update.GraphFeatureUpdateListeners;
+import org.mastodon.feature.update.GraphFeatureUpdateListeners.GraphUpdateListener;
+import org.mastodon.feature.update.Update;
+import org.mastodon.feature.update.UpdateTracker;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
@@ -66,6 +72,24 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 
 	private PropertyChangeListener< Spot > vertexPropertyListener;
 
+	private GraphUpdateListener< Spot, Link > graphUpdateListener;
+
+	private UpdateTracker< Spot > vertexUpdates;
+
+	private UpdateTracker< Link > edgeUpdates;
+
+	/**
+	 * The features whose changes were taken during the current computation.
+	 */
+	private final List< FeatureSpec< ?, ? > > takenUpdates = new ArrayList<>();
+
+	/**
+	 * The outputs that were completely computed by the last computation of
+	 * each tracked feature. The changes tracked for a feature only apply to
+	 * this very output.
+	 */
+	private final Map< FeatureSpec< ?, ? >, Feature< ? > > trackedOutputs = new HashMap<>();
+
 	public MamutFeatureComputerService()
 	{
 		super( MamutFeatureComputer.class );
@@ -77,11 +101,37 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		// Set the force flag.
 		shouldRecomputeAll.set( forceComputeAll );
 
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( forceComputeAll, featureKeys );
-		if ( isCanceled() )
-			return null;
+		takenUpdates.clear();
+		boolean completed = false;
+		try
+		{
+			final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( forceComputeAll, featureKeys );
+			if ( isCanceled() )
+				return null;
 
-		return results;
+			completed = true;
+			for ( final FeatureSpec< ?, ? > spec : takenUpdates )
+				trackedOutputs.put( spec, results.get( spec ) );
+			return results;
+		}
+		finally
+		{
+			/*
+			 * Changes that were taken but not fully processed are lost. Stop
+			 * tracking these features so that they are entirely processed
+			 * next time.
+			 */
+			if ( !completed )
+			{
+				for ( final FeatureSpec< ?, ? > spec : takenUpdates )
+				{
+					vertexUpdates.forget( spec );
+					edgeUpdates.forget( spec );
+					trackedOutputs.remove( spec );
+				}
+			}
+			takenUpdates.clear();
+		}
 	}
 
 	@Override
@@ -136,9 +186,76 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 			return;
 		}
 
+		// Pass the objects modified since last computation.
+		if ( Update.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< Update< ? > > updateItem = ( ModuleItem< Update< ? > > ) item;
+			updateItem.setValue( module, takeUpdate( module ) );
+			return;
+		}
+
 		super.provideParameters( item, module, parameterClass, featureModel );
 	}
 
+	/**
+	 * Discards the changes given to the specified module if its output is not
+	 * the one these changes were tracked for. This happens when the output
+	 * was created anew, for instance because the feature was removed from the
+	 * feature model in the meantime. All the objects must then be processed.
+	 */
+	@Override
+	protected void outputCreated( final CommandModule module )
+	{
+		final FeatureSpec< ?, ? > spec = getSpec( module );
+		if ( !takenUpdates.contains( spec ) )
+			return;
+
+		final Object output = module.getInfo().outputs().iterator().next().getValue( module );
+		if ( output != null && output == trackedOutputs.get( spec ) )
+			return;
+
+		for ( final ModuleItem< ? > item : module.getInfo().inputs() )
+		{
+			if ( Update.class.isAssignableFrom( item.getType() ) )
+			{
+				@SuppressWarnings( "unchecked" )
+				final ModuleItem< Update< ? > > updateItem = ( ModuleItem< Update< ? > > ) item;
+				updateItem.setValue( module, null );
+			}
+		}
+	}
+
+	/**
+	 * Returns the changes accumulated for the feature computed by the
+	 * specified module, and starts tracking new changes for it.
+	 *
+	 * @return the changes, or <code>null</code> if all objects must be
+	 *         processed.
+	 */
+	private Update< ? > takeUpdate( final CommandModule module )
+	{
+		final FeatureSpec< ?, ? > spec = getSpec( module );
+		final UpdateTracker< ? > tracker;
+		if ( Spot.class.equals( spec.getTargetClass() ) )
+			tracker = vertexUpdates;
+		else if ( Link.class.equals( spec.getTargetClass() ) )
+			tracker = edgeUpdates;
+		else
+			return null;
+
+		takenUpdates.add( spec );
+		final Update< ? > update = tracker.take( spec );
+		return shouldRecomputeAll.get() ? null : update;
+	}
+
+	private FeatureSpec< ?, ? > getSpec( final CommandModule module )
+	{
+		@SuppressWarnings( "unchecked" )
+		final Class< ? extends Feature< ? > > featureClass = ( Class< ? extends Feature< ? > > ) module.getInfo().outputs().iterator().next().getType();
+		return featureSpecsService.getSpec( featureClass );
+	}
+
 	/**
 	 * Sets the image data to be used by the feature computers.
 	 *
@@ -167,6 +284,9 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 			final SpotPool previousSpotPool = ( SpotPool ) this.model.getGraph().vertices().getRefPool();
 			previousSpotPool.covarianceProperty().propertyChangeListeners().remove( vertexPropertyListener );
 			previousSpotPool.positionProperty().propertyChangeListeners().remove( vertexPropertyListener );
+			previousSpotPool.covarianceProperty().propertyChangeListeners().remove( graphUpdateListener );
+			previousSpotPool.positionProperty().propertyChangeListeners().remove( graphUpdateListener );
+			this.model.getGraph().removeGraphListener( graphUpdateListener );
 		}
 
 		/*
@@ -185,6 +305,11 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		 * Indeed, there might be feature values that depend on the neighbor
 		 * values. If a neighbor of an object is changed, a feature value of the
 		 * object that depends on the neighbors will become out of sync.
+		 *
+		 * In addition, the objects that are added or modified are recorded in
+		 * per-feature update trackers. Feature computers that declare an
+		 * Update parameter receive the objects modified since they last ran,
+		 * and can process only these ones instead of scanning the model.
 		 */
 
 		this.model = model;
@@ -198,5 +323,14 @@ public class MamutFeatureComputerService extends DefaultFeatureComputerService
 		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
 		spotPool.covarianceProperty().propertyChangeListeners().add( vertexPropertyListener );
 		spotPool.positionProperty().propertyChangeListeners().add( vertexPropertyListener );
+
+		// Track modified objects.
+		this.vertexUpdates = new UpdateTracker<>( graph.vertices() );
+		this.edgeUpdates = new UpdateTracker<>( graph.edges() );
+		trackedOutputs.clear();
+		this.graphUpdateListener = GraphFeatureUpdateListeners.graphUpdateListener( vertexUpdates, edgeUpdates );
+		graph.addGraphListener( graphUpdateListener );
+		spotPool.covarianceProperty().propertyChangeListeners().add( graphUpdateListener );
+		spotPool.positionProperty().propertyChangeListeners().add( graphUpdateListener );
 	}
 }
@@ -30,6 +30,8 @@ package org.mastodon.mamut.feature;
 
 import static org.mastodon.feature.ui.AvailableFeatureProjectionsImp.createAvailableFeatureProjections;
 
+import java.util.function.IntSupplier;
+
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.ui.AvailableFeatureProjections;
@@ -39,12 +41,12 @@ import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.branch.BranchLink;
 import org.mastodon.mamut.model.branch.BranchSpot;
-import org.mastodon.ui.coloring.feature.DefaultFeatureRangeCalculator;
 import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
 import org.mastodon.ui.coloring.feature.FeatureProjectionId;
 import org.mastodon.ui.coloring.feature.FeatureRangeCalculator;
 import org.mastodon.ui.coloring.feature.Projections;
 import org.mastodon.ui.coloring.feature.ProjectionsFromFeatureModel;
+import org.mastodon.ui.coloring.feature.PropertyMapFeatureRangeCalculator;
 import org.scijava.listeners.Listeners;
 
 /**
@@ -102,10 +104,19 @@ public class MamutFeatureProjectionsManager implements FeatureProjectionsManager
 		{
 			final FeatureModel featureModel = model.getFeatureModel();
 			final Projections projections = new ProjectionsFromFeatureModel( featureModel );
-			featureRangeCalculator.vertexCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().vertices(), projections );
-			featureRangeCalculator.edgeCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().edges(), projections );
-			featureRangeCalculator.branchVertexCalculator = new DefaultFeatureRangeCalculator<>( model.getBranchGraph().vertices(), projections );
-			featureRangeCalculator.branchEdgeCalculator = new DefaultFeatureRangeCalculator<>( model.getBranchGraph().edges(), projections );
+			final IntSupplier stamp = model.getGraph()::getModificationStamp;
+			final PropertyMapFeatureRangeCalculator< Spot > vertexCalculator = new PropertyMapFeatureRangeCalculator<>( model.getGraph().vertices(), projections, stamp );
+			final PropertyMapFeatureRangeCalculator< Link > edgeCalculator = new PropertyMapFeatureRangeCalculator<>( model.getGraph().edges(), projections, stamp );
+			final PropertyMapFeatureRangeCalculator< BranchSpot > branchVertexCalculator = new PropertyMapFeatureRangeCalculator<>( model.getBranchGraph().vertices(), projections, stamp );
+			final PropertyMapFeatureRangeCalculator< BranchLink > branchEdgeCalculator = new PropertyMapFeatureRangeCalculator<>( model.getBranchGraph().edges(), projections, stamp );
+			featureModel.listeners().add( vertexCalculator );
+			featureModel.listeners().add( edgeCalculator );
+			featureModel.listeners().add( branchVertexCalculator );
+			featureModel.listeners().add( branchEdgeCalculator );
+			featureRangeCalculator.vertexCalculator = vertexCalculator;
+			featureRangeCalculator.edgeCalculator = edgeCalculator;
+			featureRangeCalculator.branchVertexCalculator = branchVertexCalculator;
+			featureRangeCalculator.branchEdgeCalculator = branchEdgeCalculator;
 			featureModel.listeners().add( this::notifyAvailableFeatureProjectionsChanged );
 		}
 		else
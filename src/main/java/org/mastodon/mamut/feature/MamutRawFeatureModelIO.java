@@ -35,7 +35,14 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.feature.Feature;
@@ -44,6 +51,7 @@ import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.io.FeatureSerializationService;
 import org.mastodon.feature.io.FeatureSerializer;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.io.FileIdToObjectMap;
@@ -56,6 +64,7 @@ import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.branch.BranchLink;
 import org.mastodon.mamut.model.branch.BranchSpot;
 import org.mastodon.mamut.model.branch.ModelBranchGraph;
+import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProject.ProjectReader;
 import org.mastodon.mamut.project.MamutProject.ProjectWriter;
 import org.scijava.Context;
@@ -70,6 +79,92 @@ public class MamutRawFeatureModelIO
 			final ProjectWriter writer )
 			throws IOException
 	{
+		for ( final Callable< Void > task : serializationTasks( context, model, idmap, writer ) )
+			call( task );
+	}
+
+	/**
+	 * Serializes the features of the specified model concurrently, one task
+	 * per feature, using the specified executor. Returns when all features
+	 * have been serialized.
+	 * <p>
+	 * The {@link ProjectWriter} must support several feature streams being
+	 * open at the same time.
+	 *
+	 * @param context
+	 *            the context, used to discover feature serializers.
+	 * @param model
+	 *            the model whose features to serialize.
+	 * @param idmap
+	 *            the map from graph objects to file ids.
+	 * @param writer
+	 *            the writer to serialize features to.
+	 * @param executor
+	 *            the executor to run the serialization tasks.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing any of the features.
+	 */
+	public static void serialize(
+			final Context context,
+			final Model model,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final ProjectWriter writer,
+			final ExecutorService executor )
+			throws IOException
+	{
+		final List< Callable< Void > > tasks = serializationTasks( context, model, idmap, writer );
+		final List< Future< Void > > futures = new ArrayList<>( tasks.size() );
+		for ( final Callable< Void > task : tasks )
+			futures.add( executor.submit( task ) );
+		for ( final Future< Void > future : futures )
+			get( future );
+	}
+
+	private static void get( final Future< ? > future ) throws IOException
+	{
+		try
+		{
+			future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new IOException( cause );
+		}
+	}
+
+	private static void call( final Callable< Void > task ) throws IOException
+	{
+		try
+		{
+			task.call();
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( final Exception e )
+		{
+			throw new IOException( e );
+		}
+	}
+
+	private static List< Callable< Void > > serializationTasks(
+			final Context context,
+			final Model model,
+			final GraphToFileIdMap< Spot, Link > idmap,
+			final ProjectWriter writer )
+	{
+		final List< Callable< Void > > tasks = new ArrayList<>();
 		final FeatureModel featureModel = model.getFeatureModel();
 		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
 		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
@@ -81,9 +176,9 @@ public class MamutRawFeatureModelIO
 
 			final Class< ? > specTargetClass = spec.getTargetClass();
 			if ( specTargetClass == Spot.class )
-				write( rawFeature, rawSerializer, idmap.vertices(), writer );
+				tasks.add( () -> write( rawFeature, rawSerializer, idmap.vertices(), writer ) );
 			else if ( specTargetClass == Link.class )
-				write( rawFeature, rawSerializer, idmap.edges(), writer );
+				tasks.add( () -> write( rawFeature, rawSerializer, idmap.edges(), writer ) );
 			else if ( specTargetClass == BranchSpot.class )
 			{
 				if ( !BranchFeatureSerializer.class.isInstance( rawSerializer ) )
@@ -94,13 +189,13 @@ public class MamutRawFeatureModelIO
 				}
 				@SuppressWarnings( "rawtypes" )
 				final BranchFeatureSerializer branchFeatureSerializer = ( BranchFeatureSerializer ) rawSerializer;
-				writeBranchFeature(
+				tasks.add( () -> writeBranchFeature(
 						rawFeature,
 						branchFeatureSerializer,
 						idmap.vertices(),
 						model.getBranchGraph(),
 						model.getGraph(),
-						writer );
+						writer ) );
 			}
 			else if ( specTargetClass == BranchLink.class )
 			{
@@ -112,17 +207,18 @@ public class MamutRawFeatureModelIO
 				}
 				@SuppressWarnings( "rawtypes" )
 				final BranchFeatureSerializer branchFeatureSerializer = ( BranchFeatureSerializer ) rawSerializer;
-				writeBranchFeature(
+				tasks.add( () -> writeBranchFeature(
 						rawFeature,
 						branchFeatureSerializer,
 						idmap.edges(),
 						model.getBranchGraph(),
 						model.getGraph(),
-						writer );
+						writer ) );
 			}
 			else
 				System.err.println( "Do not know how to serialize a feature that targets " + specTargetClass );
 		}
+		return tasks;
 	}
 
 	public static void deserialize(
@@ -131,6 +227,53 @@ public class MamutRawFeatureModelIO
 			final FileIdToGraphMap< Spot, Link > idmap,
 			final ProjectReader reader ) throws ClassNotFoundException, IOException
 	{
+		deserialize( context, model, idmap, reader, null );
+	}
+
+	/**
+	 * Deserializes the features stored in the specified project into the
+	 * feature model of the specified model.
+	 * <p>
+	 * If the project the reader was opened from is specified, the spot and
+	 * link features are declared in the feature model with
+	 * {@link FeatureModel#declareLazyFeature(FeatureSpec, java.util.function.Supplier)}.
+	 * They are read from the project and deserialized the first time they are
+	 * retrieved, for instance by a table, a coloring mode or a feature
+	 * computer, or by a background thread that loads them one after the
+	 * other. Pending features are deserialized before the first change to the
+	 * model graph, because the file id map is not valid anymore afterwards.
+	 * They are dropped if the project files change before they are loaded, so
+	 * the project must not be saved over before
+	 * {@link FeatureModel#loadLazyFeatures()} is called. Branch features depend
+	 * on the branch graph and are always deserialized right away.
+	 *
+	 * @param context
+	 *            the context, used to discover feature serializers.
+	 * @param model
+	 *            the model to deserialize features into.
+	 * @param idmap
+	 *            the map from file ids to graph objects.
+	 * @param reader
+	 *            the reader to deserialize features from.
+	 * @param project
+	 *            the project the reader was opened from, to read the spot and
+	 *            link features from when they are first retrieved. If
+	 *            {@code null}, all features are deserialized right away.
+	 * @throws ClassNotFoundException
+	 *             if a class of a serialized object cannot be found.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading.
+	 */
+	public static void deserialize(
+			final Context context,
+			final Model model,
+			final FileIdToGraphMap< Spot, Link > idmap,
+			final ProjectReader reader,
+			final MamutProject project ) throws ClassNotFoundException, IOException
+	{
+		// Copy the project location, it changes if the project is saved elsewhere.
+		final MamutProject source = ( project == null ) ? null : new MamutProject( project.getProjectRoot() );
+		final String fingerprint = ( source == null ) ? null : source.getSavedStateFingerprint();
 		final FeatureSerializationService featureSerializationService = context.getService( FeatureSerializationService.class );
 		final FeatureSpecsService featureSpecsService = context.getService( FeatureSpecsService.class );
 		final Collection< String > featureKeys = reader.getFeatureKeys();
@@ -157,6 +300,15 @@ public class MamutRawFeatureModelIO
 			}
 
 			final Class< ? > targetClass = serializer.getFeatureSpec().getTargetClass();
+			if ( source != null && ( targetClass == Spot.class || targetClass == Link.class ) )
+			{
+				final FileIdToObjectMap< ? > fileIdMap = ( targetClass == Spot.class ) ? idmap.vertices() : idmap.edges();
+				final RefCollection< ? > pool = ( targetClass == Spot.class ) ? model.getGraph().vertices() : model.getGraph().edges();
+				featureModel.declareLazyFeature( serializer.getFeatureSpec(),
+						() -> readLazily( serializer, fileIdMap, pool, source, fingerprint, featureKey ) );
+				continue;
+			}
+
 			@SuppressWarnings( "rawtypes" )
 			Feature feature;
 			if ( targetClass == Spot.class )
@@ -164,13 +316,13 @@ public class MamutRawFeatureModelIO
 						serializer,
 						idmap.vertices(),
 						model.getGraph().vertices(),
-						reader );
+						reader.getFeatureInputStream( featureKey ) );
 			else if ( targetClass == Link.class )
 				feature = read(
 						serializer,
 						idmap.edges(),
 						model.getGraph().edges(),
-						reader );
+						reader.getFeatureInputStream( featureKey ) );
 			else if ( targetClass == BranchSpot.class )
 			{
 				if ( !BranchFeatureSerializer.class.isInstance( serializer ) )
@@ -219,11 +371,126 @@ public class MamutRawFeatureModelIO
 			if ( feature != null )
 				featureModel.declareFeature( feature );
 		}
+		if ( featureModel.hasLazyFeatures() )
+		{
+			model.getGraph().addGraphListener( new LazyFeatureLoader( featureModel ) );
+			loadInBackground( model );
+		}
 		featureModel.resumeListeners();
 	}
 
+	/**
+	 * Loads the pending lazy features one after the other in a background
+	 * thread, so that the first change to the model graph seldom has to wait
+	 * for them. Each feature is loaded under the graph read lock, so that it
+	 * is not loaded while the graph is changed.
+	 */
+	private static void loadInBackground( final Model model )
+	{
+		final FeatureModel featureModel = model.getFeatureModel();
+		final Thread thread = new Thread( () -> {
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			{
+				final ReadLock lock = model.getGraph().getLock().readLock();
+				lock.lock();
+				try
+				{
+					featureModel.getFeature( spec );
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		}, "Mastodon feature loader" );
+		thread.setDaemon( true );
+		thread.setPriority( Thread.MIN_PRIORITY );
+		thread.start();
+	}
+
+	/**
+	 * Reads a feature from the project it was declared from, unless the
+	 * project changed since.
+	 */
+	private static Feature< ? > readLazily(
+			final FeatureSerializer< ?, ? > serializer,
+			final FileIdToObjectMap< ? > idmap,
+			final RefCollection< ? > pool,
+			final MamutProject source,
+			final String fingerprint,
+			final String featureKey )
+	{
+		if ( !fingerprint.equals( source.getSavedStateFingerprint() ) )
+		{
+			System.err.println( "The project " + source.getProjectRoot()
+					+ " changed since it was opened. Cannot load the feature with key: " + featureKey );
+			return null;
+		}
+		try (final ProjectReader reader = source.openForReading())
+		{
+			return read( serializer, idmap, pool, reader.getFeatureInputStream( featureKey ) );
+		}
+		catch ( final IOException | ClassNotFoundException e )
+		{
+			System.err.println( "Could not deserialize the feature with key: " + featureKey );
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the pending lazy features before the first change to the model
+	 * graph, and discards them if the graph is rebuilt.
+	 */
+	private static class LazyFeatureLoader implements GraphListener< Spot, Link >
+	{
+
+		private final FeatureModel featureModel;
+
+		public LazyFeatureLoader( final FeatureModel featureModel )
+		{
+			this.featureModel = featureModel;
+		}
+
+		private void load()
+		{
+			if ( featureModel.hasLazyFeatures() )
+				featureModel.loadLazyFeatures();
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			featureModel.discardLazyFeatures();
+		}
+
+		@Override
+		public void vertexAdded( final Spot vertex )
+		{
+			load();
+		}
+
+		@Override
+		public void vertexRemoved( final Spot vertex )
+		{
+			load();
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{
+			load();
+		}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			load();
+		}
+	}
+
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
-	private static void write(
+	private static Void write(
 			final Feature< ? > rawFeature,
 			final FeatureSerializer< ?, ? > rawSerializer,
 			final ObjectToFileIdMap< ? > idmap,
@@ -237,10 +504,11 @@ public class MamutRawFeatureModelIO
 		{
 			serializer.serialize( feature, idmap, oos );
 		}
+		return null;
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
-	private static void writeBranchFeature(
+	private static Void writeBranchFeature(
 			final Feature< ? > rawFeature,
 			final BranchFeatureSerializer< ?, ?, ? > branchFeatureSerializer,
 			final ObjectToFileIdMap< ? > idmap,
@@ -255,6 +523,7 @@ public class MamutRawFeatureModelIO
 		{
 			serializer.serialize( rawFeature, idmap, oos, branchGraph, graph );
 		}
+		return null;
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
@@ -262,11 +531,11 @@ public class MamutRawFeatureModelIO
 			final FeatureSerializer< ?, ? > rawSerializer,
 			final FileIdToObjectMap< ? > idmap,
 			final RefCollection< ? > pool,
-			final ProjectReader reader ) throws IOException, ClassNotFoundException
+			final InputStream is ) throws IOException, ClassNotFoundException
 	{
 		final FeatureSerializer serializer = rawSerializer;
 		try (
-				final InputStream fis = reader.getFeatureInputStream( serializer.getFeatureSpec().getKey() );
+				final InputStream fis = is;
 				final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( fis, 1024 * 1024 ) ))
 		{
 			return serializer.deserialize( idmap, pool, ois );
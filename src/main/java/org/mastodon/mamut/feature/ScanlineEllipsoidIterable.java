@@ -0,0 +1,465 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.mastodon.mamut.model.Spot;
+
+import bdv.viewer.Source;
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.LinAlgHelpers;
+
+/**
+ * An iterable that iterates over the pixels of spot over a specified
+ * {@link Source}, line by line. The source transform is taken into account.
+ * <p>
+ * This is a drop-in alternative to {@link EllipsoidIterable}, that iterates
+ * over the same pixels in the same order. Instead of testing every pixel of
+ * the bounding box, the extent of the ellipsoid along X is computed
+ * analytically for each (Y, Z) line when the iterable is reset, and the
+ * cursors read the resulting runs of pixels from the source.
+ * <p>
+ * Call {@link #reset(Spot)} before iterating over a spot. The
+ * {@link Localizable} methods return the spot center in pixel coordinates.
+ *
+ * @param <T>
+ *            the pixel type in the source.
+ */
+public class ScanlineEllipsoidIterable< T > implements IterableInterval< T >, Localizable
+{
+	// bounding box min/max
+	private final long[] min = new long[ 3 ];
+
+	private final long[] max = new long[ 3 ];
+
+	// spot covariance in source coordinates
+	private final double[][] S = new double[ 3 ][ 3 ];
+
+	// spot precision (= S^-1)
+	private final double[][] P = new double[ 3 ][ 3 ];
+
+	// spot position in source coordinates
+	private final double[] pos = new double[ 3 ];
+
+	// temporary transformation matrices
+	private final double[][] T = new double[ 3 ][ 3 ];
+
+	private final double[][] TS = new double[ 3 ][ 3 ];
+
+	// transform of current source to global coordinates
+	private final AffineTransform3D sourceTransform = new AffineTransform3D();
+
+	private final double[] p = new double[ 3 ];
+
+	private final double[] diff = new double[ 3 ];
+
+	private final Source< T > source;
+
+	private RandomAccessibleInterval< T > img;
+
+	/**
+	 * The runs of pixels inside the ellipsoid, stored as consecutive (y, z,
+	 * xmin, xmax) quadruplets.
+	 */
+	private long[] runs = new long[ 4 * 64 ];
+
+	private int nRuns;
+
+	private long size;
+
+	public ScanlineEllipsoidIterable( final Source< T > source )
+	{
+		this.source = source;
+	}
+
+	/**
+	 * Resets this iterable to that it iterates over the specified spot. The
+	 * pixel iterated are taken from the resolution level 0,
+	 *
+	 * @param spot
+	 *            the spot to iterate.
+	 */
+	public void reset( final Spot spot )
+	{
+		reset( spot, 0 );
+	}
+
+	/**
+	 * Resets this iterable to that it iterates over the specified spot, at the
+	 * specified resolution level in the source. Generate an error of the
+	 * specified resolution level is not present in the source.
+	 *
+	 * @param spot
+	 *            the spot to iterate.
+	 * @param resolutionLevel
+	 *            the resolution level to use in the source.
+	 */
+	public void reset( final Spot spot, final int resolutionLevel )
+	{
+		final int t = spot.getTimepoint();
+		source.getSourceTransform( t, resolutionLevel, sourceTransform );
+		img = source.getSource( t, resolutionLevel );
+
+		// transform spot covariance into source coordinates
+		spot.getCovariance( S );
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				T[ r ][ c ] = sourceTransform.inverse().get( r, c );
+		LinAlgHelpers.mult( T, S, TS );
+		LinAlgHelpers.multABT( TS, T, S );
+
+		// transform spot position into source coordinates
+		spot.localize( pos );
+		sourceTransform.inverse().apply( pos, pos );
+
+		// get bounding box
+		for ( int d = 0; d < 3; ++d )
+		{
+			final double radius = Math.sqrt( S[ d ][ d ] );
+			min[ d ] = Math.max( 0, ( long ) Math.floor( pos[ d ] - radius ) );
+			max[ d ] = Math.min( img.max( d ), ( long ) Math.ceil( pos[ d ] + radius ) );
+		}
+
+		// if bounding box is empty, we set it to cover pixel at (0,0,0), as
+		// EllipsoidIterable does.
+		if ( Intervals.isEmpty( this ) )
+			for ( int d = 0; d < 3; ++d )
+				min[ d ] = max[ d ] = 0;
+
+		// inflate ellipsoid by .5 pixels on either side
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 3; ++c )
+				if ( r == c )
+				{
+					final double radius = Math.sqrt( S[ r ][ c ] );
+					T[ r ][ c ] = ( radius + 0.5 ) / radius;
+				}
+				else
+				{
+					T[ r ][ c ] = 0;
+				}
+		LinAlgHelpers.mult( T, S, TS );
+		LinAlgHelpers.multABT( TS, T, S );
+
+		// get precision from covariance
+		LinAlgHelpers.invertSymmetric3x3( S, P );
+
+		computeRuns();
+	}
+
+	/**
+	 * For each line of the bounding box, solves
+	 *
+	 * <pre>
+	 * P00 dx^2 + 2 dx (P01 dy + P02 dz) + (P11 dy^2 + 2 P12 dy dz + P22 dz^2) &lt; 1
+	 * </pre>
+	 *
+	 * for dx. The run bounds are then checked against the same test as
+	 * {@link EllipsoidIterable} so that rounding errors do not change the
+	 * pixels iterated.
+	 */
+	private void computeRuns()
+	{
+		nRuns = 0;
+		size = 0;
+		final double a = P[ 0 ][ 0 ];
+		for ( long z = min[ 2 ]; z <= max[ 2 ]; ++z )
+		{
+			final double dz = pos[ 2 ] - z;
+			for ( long y = min[ 1 ]; y <= max[ 1 ]; ++y )
+			{
+				final double dy = pos[ 1 ] - y;
+				final double b = P[ 0 ][ 1 ] * dy + P[ 0 ][ 2 ] * dz;
+				final double c = P[ 1 ][ 1 ] * dy * dy + 2 * P[ 1 ][ 2 ] * dy * dz + P[ 2 ][ 2 ] * dz * dz;
+				final double disc = b * b - a * ( c - 1 );
+
+				// center of the chord, in pixel coordinates
+				final long xc = Math.max( min[ 0 ], Math.min( max[ 0 ], Math.round( pos[ 0 ] + b / a ) ) );
+				long x0;
+				long x1;
+				if ( disc < 0 )
+				{
+					x0 = xc;
+					x1 = xc;
+				}
+				else
+				{
+					final double s = Math.sqrt( disc );
+					x0 = Math.max( min[ 0 ], ( long ) Math.ceil( pos[ 0 ] + ( b - s ) / a ) );
+					x1 = Math.min( max[ 0 ], ( long ) Math.floor( pos[ 0 ] + ( b + s ) / a ) );
+					if ( x0 > x1 )
+					{
+						x0 = xc;
+						x1 = xc;
+					}
+				}
+
+				// shrink or grow to match the pixel test exactly
+				while ( x0 <= x1 && !contains( x0, y, z ) )
+					++x0;
+				while ( x1 >= x0 && !contains( x1, y, z ) )
+					--x1;
+				if ( x0 > x1 )
+					continue;
+				while ( x0 > min[ 0 ] && contains( x0 - 1, y, z ) )
+					--x0;
+				while ( x1 < max[ 0 ] && contains( x1 + 1, y, z ) )
+					++x1;
+
+				if ( 4 * ( nRuns + 1 ) > runs.length )
+					runs = Arrays.copyOf( runs, 2 * runs.length );
+				final int i = 4 * nRuns++;
+				runs[ i ] = y;
+				runs[ i + 1 ] = z;
+				runs[ i + 2 ] = x0;
+				runs[ i + 3 ] = x1;
+				size += x1 - x0 + 1;
+			}
+		}
+	}
+
+	private boolean contains( final long x, final long y, final long z )
+	{
+		p[ 0 ] = x;
+		p[ 1 ] = y;
+		p[ 2 ] = z;
+		LinAlgHelpers.subtract( pos, p, diff );
+		LinAlgHelpers.mult( P, diff, p );
+		final double d2 = LinAlgHelpers.dot( diff, p );
+		return d2 < 1;
+	}
+
+	@Override
+	public Cursor< T > cursor()
+	{
+		return new ScanlineCursor();
+	}
+
+	@Override
+	public Cursor< T > localizingCursor()
+	{
+		return cursor();
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public T firstElement()
+	{
+		return cursor().next();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return this;
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return cursor();
+	}
+
+	@Override
+	public long min( final int d )
+	{
+		return min[ d ];
+	}
+
+	@Override
+	public long max( final int d )
+	{
+		return max[ d ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return 3;
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return min( d );
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return max( d );
+	}
+
+	@Override
+	public long getLongPosition( final int d )
+	{
+		return Math.round( pos[ d ] );
+	}
+
+	@Override
+	public double getDoublePosition( final int d )
+	{
+		return pos[ d ];
+	}
+
+	/**
+	 * Iterates over the runs computed at the last reset. The runs array is
+	 * shared with the iterable, so cursors must not be used after the
+	 * iterable is reset.
+	 */
+	private final class ScanlineCursor implements Cursor< T >
+	{
+
+		private final RandomAccess< T > ra;
+
+		private final long[] runs;
+
+		private final int nRuns;
+
+		// index of the current run
+		private int run;
+
+		// current x position and end of the current run
+		private long x;
+
+		private long xmax;
+
+		public ScanlineCursor()
+		{
+			this.ra = img.randomAccess( ScanlineEllipsoidIterable.this );
+			this.runs = ScanlineEllipsoidIterable.this.runs;
+			this.nRuns = ScanlineEllipsoidIterable.this.nRuns;
+			reset();
+		}
+
+		private ScanlineCursor( final ScanlineCursor c )
+		{
+			this.ra = c.ra.copy();
+			this.runs = c.runs;
+			this.nRuns = c.nRuns;
+			this.run = c.run;
+			this.x = c.x;
+			this.xmax = c.xmax;
+		}
+
+		@Override
+		public T get()
+		{
+			return ra.get();
+		}
+
+		@Override
+		public void fwd()
+		{
+			if ( x < xmax )
+			{
+				++x;
+				ra.fwd( 0 );
+				return;
+			}
+			final int i = 4 * ++run;
+			x = runs[ i + 2 ];
+			xmax = runs[ i + 3 ];
+			ra.setPosition( x, 0 );
+			ra.setPosition( runs[ i ], 1 );
+			ra.setPosition( runs[ i + 1 ], 2 );
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			for ( long s = 0; s < steps; ++s )
+				fwd();
+		}
+
+		@Override
+		public void reset()
+		{
+			run = -1;
+			x = 0;
+			xmax = 0;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return x < xmax || run < nRuns - 1;
+		}
+
+		@Override
+		public T next()
+		{
+			fwd();
+			return get();
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return ra.getLongPosition( d );
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return ra.getDoublePosition( d );
+		}
+
+		@Override
+		public ScanlineCursor copy()
+		{
+			return new ScanlineCursor( this );
+		}
+
+		@Override
+		public ScanlineCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+}
@@ -218,7 +218,7 @@ public class SpotCenterIntensityFeatureComputer implements MamutFeatureComputer,
 			final double[][] cov = new double[ 3 ][ 3 ];
 			final JamaEigenvalueDecomposition eig = new JamaEigenvalueDecomposition( 3 );
 			final Spot spot = model.getGraph().vertices().createRef();
-			final EllipsoidIterable< RealType< ? > > iterable = new EllipsoidIterable<>( source );
+			final ScanlineEllipsoidIterable< RealType< ? > > iterable = new ScanlineEllipsoidIterable<>( source );
 			while ( true )
 			{
 				if ( isCanceled() )
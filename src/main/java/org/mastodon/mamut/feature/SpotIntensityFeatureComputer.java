@@ -29,13 +29,22 @@
 package org.mastodon.mamut.feature;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntFunction;
 
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
 import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
+import org.mastodon.feature.DefaultFeatureComputerService.ThreadBudget;
 import org.mastodon.feature.Feature;
+import org.mastodon.feature.update.Update;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.properties.DoublePropertyMap;
@@ -45,7 +54,6 @@ import org.scijava.Cancelable;
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
-import org.scijava.util.DoubleArray;
 
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
@@ -55,6 +63,12 @@ import net.imglib2.type.numeric.RealType;
 public class SpotIntensityFeatureComputer implements MamutFeatureComputer, Cancelable
 {
 
+	/**
+	 * The number of threads that compute time-points concurrently. 1 runs the
+	 * computation in the calling thread.
+	 */
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
 	@Parameter
 	private SharedBigDataViewerData bdvData;
 
@@ -67,10 +81,16 @@ public class SpotIntensityFeatureComputer implements MamutFeatureComputer, Cance
 	@Parameter
 	private FeatureComputationStatus status;
 
+	@Parameter
+	private Update< Spot > update;
+
+	@Parameter
+	private ThreadBudget threadBudget;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotIntensityFeature output;
 
-	private String cancelReason;
+	private volatile String cancelReason;
 
 	@Override
 	public void createOutput()
@@ -135,78 +155,231 @@ public class SpotIntensityFeatureComputer implements MamutFeatureComputer, Cance
 
 		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
 		final int nSources = sources.size();
-		int done = 0;
-		MAIN_LOOP: for ( int iSource = 0; iSource < nSources; iSource++ )
+		final AtomicInteger done = new AtomicInteger( 0 );
+		final int nThreads = Math.max( 1, Math.min( numThreads, numTimepoints ) );
+
+		/*
+		 * If we know what changed since last computation, and if it is small
+		 * compared to the model, we only process the modified spots in this
+		 * thread. Otherwise, we scan all the time-points in parallel and skip
+		 * the spots that have a value already.
+		 */
+		final Update< Spot > changes = recomputeAll ? null : update;
+		if ( changes != null && ( long ) changes.get().size() * nThreads < model.getGraph().vertices().size() )
 		{
-			@SuppressWarnings( "unchecked" )
-			final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
-			// Calculation are made on resolution level 0 by default.
-			final EllipsoidIterable< RealType< ? > > ellipsoidIter = new EllipsoidIterable<>( source );
-			final DoubleArray store = new DoubleArray();
+			for ( int iSource = 0; iSource < nSources; iSource++ )
+			{
+				status.notifyProgress( ( double ) iSource / nSources );
+
+				@SuppressWarnings( "unchecked" )
+				final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
+				final TimepointComputer computer = new TimepointComputer( source, iSource, null, 0, null, done, todo );
+				for ( final Spot spot : changes.get() )
+				{
+					if ( isCanceled() )
+						return;
+					computer.compute( spot );
+				}
+			}
+			return;
+		}
 
-			for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
+		/*
+		 * The calling thread is one of the workers. The others are taken from
+		 * the threads the feature computation leaves idle.
+		 */
+		final int nExtraThreads = threadBudget == null ? nThreads - 1 : threadBudget.tryAcquire( nThreads - 1 );
+		final int nWorkers = 1 + nExtraThreads;
+		final ExecutorService executor = nExtraThreads > 0 ? Executors.newFixedThreadPool( nExtraThreads ) : null;
+		try
+		{
+			for ( int iSource = 0; iSource < nSources; iSource++ )
 			{
+				if ( isCanceled() )
+					break;
+
+				@SuppressWarnings( "unchecked" )
+				final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
 
-				status.notifyProgress( ( double ) done++ / todo );
+				/*
+				 * Collect the spots that have a value already before the
+				 * workers start, so that they do not read the property map
+				 * while others write to it.
+				 */
+				final RefSet< Spot > skip = recomputeAll ? null : computedSpots( output.means.get( iSource ) );
+
+				/*
+				 * Time-points are dispatched to the workers as they become
+				 * free. Each worker owns its iterable and statistics scratch
+				 * memory.
+				 */
+				final AtomicInteger nextTimepoint = new AtomicInteger( 0 );
+				final List< Future< Void > > futures = new ArrayList<>( nExtraThreads );
+				for ( int i = 1; i < nWorkers; i++ )
+					futures.add( executor.submit( new TimepointComputer( source, iSource, nextTimepoint, numTimepoints, skip, done, todo ) ) );
+				new TimepointComputer( source, iSource, nextTimepoint, numTimepoints, skip, done, todo ).call();
+				for ( final Future< Void > future : futures )
+					future.get();
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			throw rethrow( e.getCause() );
+		}
+		catch ( final Exception e )
+		{
+			throw rethrow( e );
+		}
+		finally
+		{
+			if ( executor != null )
+				executor.shutdownNow();
+			if ( threadBudget != null )
+				threadBudget.release( nExtraThreads );
+		}
+	}
+
+	/**
+	 * Returns the spots that have a value in the specified map.
+	 */
+	private RefSet< Spot > computedSpots( final DoublePropertyMap< Spot > map )
+	{
+		final RefSet< Spot > computed = RefCollections.createRefSet( model.getGraph().vertices() );
+		for ( final Spot spot : model.getGraph().vertices() )
+			if ( map.isSet( spot ) )
+				computed.add( spot );
+		return computed;
+	}
+
+	private static RuntimeException rethrow( final Throwable t )
+	{
+		if ( t instanceof RuntimeException )
+			return ( RuntimeException ) t;
+		if ( t instanceof Error )
+			throw ( Error ) t;
+		return new RuntimeException( t );
+	}
+
+	/**
+	 * Sets the number of threads used to compute the feature. Time-points are
+	 * processed concurrently, so there is no point in using more threads than
+	 * there are time-points. A value of 1 runs the computation in the calling
+	 * thread. When run by the feature computer service, the threads beyond the
+	 * calling one are only used if the other feature computers leave them
+	 * idle.
+	 *
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Returns the number of threads used to compute the feature.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	private final class TimepointComputer implements Callable< Void >
+	{
+
+		private final int iSource;
+
+		private final AtomicInteger nextTimepoint;
+
+		private final int numTimepoints;
+
+		/**
+		 * The spots to skip, or {@code null} to compute all spots.
+		 */
+		private final RefSet< Spot > skip;
+
+		private final AtomicInteger done;
+
+		private final int todo;
+
+		private final ScanlineEllipsoidIterable< RealType< ? > > ellipsoidIter;
+
+		private final IntensityStatistics stats;
+
+		public TimepointComputer(
+				final Source< RealType< ? > > source,
+				final int iSource,
+				final AtomicInteger nextTimepoint,
+				final int numTimepoints,
+				final RefSet< Spot > skip,
+				final AtomicInteger done,
+				final int todo )
+		{
+			this.iSource = iSource;
+			this.nextTimepoint = nextTimepoint;
+			this.numTimepoints = numTimepoints;
+			this.skip = skip;
+			this.done = done;
+			this.todo = todo;
+			// Calculation are made on resolution level 0 by default.
+			this.ellipsoidIter = new ScanlineEllipsoidIterable<>( source );
+			this.stats = IntensityStatistics.create( source.getType() );
+		}
+
+		@Override
+		public Void call() throws Exception
+		{
+			int timepoint;
+			while ( ( timepoint = nextTimepoint.getAndIncrement() ) < numTimepoints )
+			{
+				status.notifyProgress( ( double ) done.getAndIncrement() / todo );
 
 				final SpatialIndex< Spot > toProcess = model.getSpatioTemporalIndex().getSpatialIndex( timepoint );
 				for ( final Spot spot : toProcess )
 				{
 					if ( isCanceled() )
-						break MAIN_LOOP;
+						return null;
 
 					/*
 					 * Skip if we are not force to recompute all and if a value
 					 * is already computed.
 					 */
-					if ( !recomputeAll && output.means.get( iSource ).isSet( spot ) )
+					if ( skip != null && skip.contains( spot ) )
 						continue;
 
-					ellipsoidIter.reset( spot );
-					store.clear();
-					ellipsoidIter.forEach( p -> store.addValue( p.getRealDouble() ) );
+					compute( spot );
+				}
+			}
+			return null;
+		}
 
-					final int size = store.size();
-					if ( size < 1 )
-						continue;
+		private void compute( final Spot spot )
+		{
+			ellipsoidIter.reset( spot );
+			stats.compute( ellipsoidIter );
+			if ( stats.size < 1 )
+				return;
 
-					final double[] array = store.getArray();
-					if ( size < 2 )
-					{
-						output.means.get( iSource ).set( spot, array[ 0 ] );
-						output.stds.get( iSource ).set( spot, 0 );
-						output.mins.get( iSource ).set( spot, array[ 0 ] );
-						output.maxs.get( iSource ).set( spot, array[ 0 ] );
-						output.medians.get( iSource ).set( spot, array[ 0 ] );
-						output.sums.get( iSource ).set( spot, array[ 0 ] );
-						continue;
-					}
-					
-					double sum = 0.;
-					for ( int i = 0; i < size; i++ )
-						sum += array[ i ];
-
-					final double mean = sum / size;
-					double sum2 = 0.;
-					for ( int i = 0; i < size; i++ )
-					{
-						final double dx = array[ i ] - mean;
-						sum2 += dx * dx;
-					}
-					final double variance = sum2 / ( size - 1 );
-
-					Arrays.sort( array, 0, size );
-					final double min = array[ 0 ];
-					final double max = array[ size - 1 ];
-					final double median = array[ size / 2 ];
-
-					output.means.get( iSource ).set( spot, mean );
-					output.stds.get( iSource ).set( spot, Math.sqrt( variance ) );
-					output.mins.get( iSource ).set( spot, min );
-					output.maxs.get( iSource ).set( spot, max );
-					output.medians.get( iSource ).set( spot, median );
-					output.sums.get( iSource ).set( spot, sum );
-				}
+			set( spot, stats.mean, stats.std, stats.min, stats.max, stats.median, stats.sum );
+		}
+
+		private void set( final Spot spot, final double mean, final double std, final double min, final double max, final double median, final double sum )
+		{
+			// Property maps are not thread-safe.
+			synchronized ( output )
+			{
+				output.means.get( iSource ).set( spot, mean );
+				output.stds.get( iSource ).set( spot, std );
+				output.mins.get( iSource ).set( spot, min );
+				output.maxs.get( iSource ).set( spot, max );
+				output.medians.get( iSource ).set( spot, median );
+				output.sums.get( iSource ).set( spot, sum );
 			}
 		}
 	}
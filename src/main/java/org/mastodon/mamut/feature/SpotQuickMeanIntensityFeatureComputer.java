@@ -35,6 +35,7 @@ import java.util.function.IntFunction;
 
 import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
 import org.mastodon.feature.Feature;
+import org.mastodon.feature.update.Update;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.properties.DoublePropertyMap;
@@ -65,6 +66,9 @@ public class SpotQuickMeanIntensityFeatureComputer implements MamutFeatureComput
 	@Parameter
 	private FeatureComputationStatus status;
 
+	@Parameter
+	private Update< Spot > update;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private SpotQuickMeanIntensityFeature output;
 
@@ -111,13 +115,35 @@ public class SpotQuickMeanIntensityFeatureComputer implements MamutFeatureComput
 
 		final ArrayList< SourceAndConverter< ? > > sources = bdvData.getSources();
 		final int nSources = sources.size();
+
+		// Only process the spots modified since last computation, if we know them.
+		final Update< Spot > changes = recomputeAll ? null : update;
+		if ( changes != null )
+		{
+			for ( int iSource = 0; iSource < nSources; iSource++ )
+			{
+				status.notifyProgress( ( double ) iSource / nSources );
+
+				@SuppressWarnings( "unchecked" )
+				final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
+				final ScanlineEllipsoidIterable< RealType< ? > > ellipsoidIter = new ScanlineEllipsoidIterable<>( source );
+				for ( final Spot spot : changes.get() )
+				{
+					if ( isCanceled() )
+						return;
+					compute( spot, source, iSource, ellipsoidIter );
+				}
+			}
+			return;
+		}
+
 		int done = 0;
 		MAIN_LOOP: for ( int iSource = 0; iSource < nSources; iSource++ )
 		{
 			@SuppressWarnings( "unchecked" )
 			final Source< RealType< ? > > source = ( Source< RealType< ? > > ) sources.get( iSource ).getSpimSource();
 			// Calculation are made on resolution level 0 by default.
-			final EllipsoidIterable< RealType< ? > > ellipsoidIter = new EllipsoidIterable<>( source );
+			final ScanlineEllipsoidIterable< RealType< ? > > ellipsoidIter = new ScanlineEllipsoidIterable<>( source );
 
 			for ( int timepoint = 0; timepoint < numTimepoints; timepoint++ )
 			{
@@ -137,32 +163,37 @@ public class SpotQuickMeanIntensityFeatureComputer implements MamutFeatureComput
 					if ( !recomputeAll && output.means.get( iSource ).isSet( spot ) )
 						continue;
 
-					// Iterate over the highest available resolution level.
-					ellipsoidIter.reset( spot, source.getNumMipmapLevels() - 1 );
-					double sum = 0.;
-					int size = 0;
-					for ( final RealType< ? > p : ellipsoidIter )
-					{
-						sum += p.getRealDouble();
-						size++;
-					}
-
-					if ( size < 1 )
-						continue;
-
-					if ( size < 2 )
-					{
-						output.means.get( iSource ).set( spot, sum );
-						continue;
-					}
-
-					final double mean = sum / size;
-					output.means.get( iSource ).set( spot, mean );
+					compute( spot, source, iSource, ellipsoidIter );
 				}
 			}
 		}
 	}
 
+	private void compute( final Spot spot, final Source< RealType< ? > > source, final int iSource, final ScanlineEllipsoidIterable< RealType< ? > > ellipsoidIter )
+	{
+		// Iterate over the highest available resolution level.
+		ellipsoidIter.reset( spot, source.getNumMipmapLevels() - 1 );
+		double sum = 0.;
+		int size = 0;
+		for ( final RealType< ? > p : ellipsoidIter )
+		{
+			sum += p.getRealDouble();
+			size++;
+		}
+
+		if ( size < 1 )
+			return;
+
+		if ( size < 2 )
+		{
+			output.means.get( iSource ).set( spot, sum );
+			return;
+		}
+
+		final double mean = sum / size;
+		output.means.get( iSource ).set( spot, mean );
+	}
+
 	public static final long nSpots( final IntFunction< Iterable< Spot > > index, final int numTimepoints )
 	{
 		long nSpots = 0l;
@@ -42,17 +42,26 @@ public class ModelImporter extends AbstractModelImporter< Model >
 	}
 
 	@Override
-	protected void startImport()
+	protected void startImport( final boolean clear )
 	{
-		super.startImport();
+		model.getSpatialIndexMaintenance().pause();
+		super.startImport( clear );
 		model.getTagSetModel().pauseListeners();
-		model.getTagSetModel().clear();
+		if ( clear )
+			model.getTagSetModel().clear();
 	}
 
 	@Override
 	protected void finishImport()
 	{
 		model.getTagSetModel().resumeListeners();
-		super.finishImport();
+		try
+		{
+			super.finishImport();
+		}
+		finally
+		{
+			model.getSpatialIndexMaintenance().resume();
+		}
 	}
 }
@@ -515,9 +515,18 @@ public class SimiImporter
 			this.interpolate = interpolate;
 			this.graph = model.getGraph();
 
+			// The Simi file is already parsed, only insertion is left.
 			startImport();
-			add( simi.root, null );
-			finishImport();
+			startInsertion();
+			try
+			{
+				add( simi.root, null );
+			}
+			finally
+			{
+				finishInsertion();
+				finishImport();
+			}
 		}
 
 		private void add( final SimiCell cell, final Spot parent )
@@ -35,9 +35,15 @@ import static mpicbg.spim.data.XmlHelpers.getIntAttribute;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -66,8 +72,18 @@ import net.imglib2.util.LinAlgHelpers;
 
 public class TgmmImporter extends ModelImporter
 {
+	/**
+	 * Maximal number of parsed time-points waiting to be inserted in the
+	 * model, per parsing thread.
+	 */
+	private static final int PENDING_FRAMES_PER_THREAD = 2;
+
 	/**
 	 * Import a set of XML file generated by the TGMM algorithm in a model.
+	 * <p>
+	 * TGMM files are parsed concurrently, one time-point per task, on as many
+	 * threads as there are processors. Spots and links are then added to the
+	 * model time-point by time-point, in order.
 	 *
 	 * @param tgmmFileNameFormat
 	 *            a string that can be parsed by
@@ -114,9 +130,67 @@ public class TgmmImporter extends ModelImporter
 				setupID,
 				nSigmas,
 				null,
+				Runtime.getRuntime().availableProcessors(),
+				model );
+	}
+
+	public static void read(
+			final String tgmmFileNameFormat,
+			final TimePoints timepointsToRead,
+			final Map< TimePoint, Integer > timepointToIndex,
+			final ViewRegistrations viewRegistrations,
+			final int setupID,
+			final double nSigmas,
+			final double[][] useThisCovariance,
+			final Model model )
+		throws JDOMException, IOException
+	{
+		new TgmmImporter(
+				tgmmFileNameFormat,
+				timepointsToRead,
+				timepointToIndex,
+				viewRegistrations,
+				setupID,
+				nSigmas,
+				useThisCovariance,
+				Runtime.getRuntime().availableProcessors(),
 				model );
 	}
 
+	/**
+	 * Import a set of XML file generated by the TGMM algorithm in a model,
+	 * parsing files with the specified number of threads.
+	 *
+	 * @param tgmmFileNameFormat
+	 *            a string that can be parsed by
+	 *            {@link String#format(String, Object...)} to generate target
+	 *            TGMM filenames.
+	 * @param timepointsToRead
+	 *            the desired time-points to read.
+	 * @param timepointToIndex
+	 *            mapping between time-point and index in the file name.
+	 * @param viewRegistrations
+	 *            the {@link ViewRegistrations} to position the tracks in the
+	 *            proper coordinate system.
+	 * @param setupID
+	 *            the setup ID of the desired transform in the
+	 *            ViewRegistrations.
+	 * @param nSigmas
+	 *            the number of sigmas to convert a TGMM probability into
+	 *            ellipsoids semi-axis lengths.
+	 * @param useThisCovariance
+	 *            if not {@code null}, the covariance given to all spots.
+	 * @param numThreads
+	 *            the number of threads used to parse TGMM files.
+	 * @param model
+	 *            the {@link Model} to update with the read tracks.
+	 *
+	 * @throws JDOMException
+	 *             when errors occur in parsing.
+	 * @throws IOException
+	 *             when an I/O error prevents a document from being fully
+	 *             parsed.
+	 */
 	public static void read(
 			final String tgmmFileNameFormat,
 			final TimePoints timepointsToRead,
@@ -125,6 +199,7 @@ public class TgmmImporter extends ModelImporter
 			final int setupID,
 			final double nSigmas,
 			final double[][] useThisCovariance,
+			final int numThreads,
 			final Model model )
 		throws JDOMException, IOException
 	{
@@ -136,6 +211,7 @@ public class TgmmImporter extends ModelImporter
 				setupID,
 				nSigmas,
 				useThisCovariance,
+				numThreads,
 				model );
 	}
 
@@ -147,73 +223,220 @@ public class TgmmImporter extends ModelImporter
 			final int setupID,
 			final double nSigmas,
 			final double[][] useThisCovariance,
+			final int numThreads,
 			final Model model )
 		throws JDOMException, IOException
 	{
 		super( model );
-		startImport();
-
-		final Graph< Spot, Link > graph = model.getGraph();
-		final Spot spot = graph.vertexRef();
-		final Spot parent = graph.vertexRef();
-		final Spot tmp = graph.vertexRef();
-		final Link edge = graph.edgeRef();
 
-		IntRefMap< Spot > idToSpot = RefMaps.createIntRefMap( graph.vertices(), -1, 2000 );
-		IntRefMap< Spot > previousIdToSpot = RefMaps.createIntRefMap( graph.vertices(), -1, 2000 );
-
-		for ( final TimePoint timepoint : timepointsToRead.getTimePointsOrdered() )
+		final List< TimePoint > timepoints = timepointsToRead.getTimePointsOrdered();
+		final int nThreads = Math.max( 1, Math.min( numThreads, timepoints.size() ) );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		startImport();
+		try
 		{
-			final int timepointId = timepoint.getId();
-			final int timepointIndex = timepointToIndex.get( timepoint );
-			final AffineTransform3D transform = viewRegistrations.getViewRegistration( timepointId, setupID ).getModel();
-			final String tgmmFileName = String.format( tgmmFileNameFormat, timepointId );
-			System.out.println( tgmmFileName );
-
-			final SAXBuilder sax = new SAXBuilder();
-			final Document doc = sax.build( tgmmFileName );
-			final Element root = doc.getRootElement();
-
-			final List< Element > gaussianMixtureModels = root.getChildren( "GaussianMixtureModel" );
-			for ( final Element elem : gaussianMixtureModels )
+			final Graph< Spot, Link > graph = model.getGraph();
+			final Spot spot = graph.vertexRef();
+			final Spot parent = graph.vertexRef();
+			final Spot tmp = graph.vertexRef();
+			final Link edge = graph.edgeRef();
+			final double[] pos = new double[ 3 ];
+			final double[][] S = new double[ 3 ][ 3 ];
+
+			IntRefMap< Spot > idToSpot = RefMaps.createIntRefMap( graph.vertices(), -1, 2000 );
+			IntRefMap< Spot > previousIdToSpot = RefMaps.createIntRefMap( graph.vertices(), -1, 2000 );
+
+			// Reported from this thread, in time-point order, once done.
+			final List< String > warnings = new ArrayList<>();
+
+			/*
+			 * Parse time-points ahead on the executor, in order, but not too
+			 * far ahead so that parsed frames do not pile up in memory.
+			 */
+			final ArrayDeque< Future< Frame > > pending = new ArrayDeque<>();
+			int next = 0;
+			while ( next < timepoints.size() || !pending.isEmpty() )
 			{
+				while ( next < timepoints.size() && pending.size() < PENDING_FRAMES_PER_THREAD * nThreads )
+				{
+					final TimePoint timepoint = timepoints.get( next++ );
+					final int timepointId = timepoint.getId();
+					final int timepointIndex = timepointToIndex.get( timepoint );
+					final AffineTransform3D transform = viewRegistrations.getViewRegistration( timepointId, setupID ).getModel();
+					final String tgmmFileName = String.format( tgmmFileNameFormat, timepointId );
+					pending.add( executor.submit( () -> parse( tgmmFileName, timepointIndex, transform, nSigmas, useThisCovariance == null ) ) );
+				}
+
+				final Frame frame = getFrame( pending.poll() );
+				warnings.addAll( frame.warnings );
+
+				// Only hold the write lock while adding the parsed frame.
+				startInsertion();
 				try
 				{
-					final double nu = getDoubleAttribute( elem, "nu" );
-					final double[] m = getDoubleArrayAttribute( elem, "m" );
-					final double[] W = getDoubleArrayAttribute( elem, "W" );
-					final int id = getIntAttribute( elem, "id" );
-//					final int lineage = getIntAttribute( elem, "lineage" );
-					final int parentId = getIntAttribute( elem, "parent" );
-
-					final double[][] S = ( useThisCovariance != null ) ? useThisCovariance : getCovariance( transform, nu / ( nSigmas * nSigmas ), W );
-					graph.addVertex( spot ).init(
-							timepointIndex,
-							getPosition( transform, m ),
-							S );
-					idToSpot.put( id, spot, tmp );
-
-					if ( ( parentId >= 0 ) && ( previousIdToSpot.get( parentId, parent ) != null ) )
-						graph.addEdge( parent, spot, edge ).init();
+					for ( int i = 0; i < frame.size; i++ )
+					{
+						for ( int d = 0; d < 3; d++ )
+							pos[ d ] = frame.positions[ 3 * i + d ];
+						final double[][] cov;
+						if ( useThisCovariance != null )
+							cov = useThisCovariance;
+						else
+						{
+							for ( int r = 0; r < 3; r++ )
+								for ( int c = 0; c < 3; c++ )
+									S[ r ][ c ] = frame.covariances[ 9 * i + 3 * r + c ];
+							cov = S;
+						}
+						graph.addVertex( spot ).init( frame.timepointIndex, pos, cov );
+						idToSpot.put( frame.ids[ i ], spot, tmp );
+
+						final int parentId = frame.parentIds[ i ];
+						if ( ( parentId >= 0 ) && ( previousIdToSpot.get( parentId, parent ) != null ) )
+							graph.addEdge( parent, spot, edge ).init();
+					}
 				}
-				catch ( final NumberFormatException e )
+				finally
 				{
-					System.out.println( "- Ignoring " + elem + ": " + e.getMessage() );
+					finishInsertion();
 				}
+
+				previousIdToSpot.clear();
+				final IntRefMap< Spot > m = previousIdToSpot;
+				previousIdToSpot = idToSpot;
+				idToSpot = m;
 			}
 
-			previousIdToSpot.clear();
-			final IntRefMap< Spot > m = previousIdToSpot;
-			previousIdToSpot = idToSpot;
-			idToSpot = m;
+			for ( final String warning : warnings )
+				System.out.println( warning );
+
+			graph.releaseRef( spot );
+			graph.releaseRef( parent );
+			graph.releaseRef( tmp );
+			graph.releaseRef( edge );
 		}
+		finally
+		{
+			executor.shutdownNow();
+			finishImport();
+		}
+	}
 
-		graph.releaseRef( spot );
-		graph.releaseRef( parent );
-		graph.releaseRef( tmp );
-		graph.releaseRef( edge );
+	/**
+	 * The Gaussian mixture models of one TGMM file, transformed to global
+	 * coordinates.
+	 */
+	private static final class Frame
+	{
+		private final int timepointIndex;
+
+		private int size;
+
+		private final int[] ids;
+
+		private final int[] parentIds;
+
+		/**
+		 * Positions, 3 values per spot.
+		 */
+		private final double[] positions;
+
+		/**
+		 * Covariance matrices, 9 values per spot in row-major order, or
+		 * {@code null} if they were not computed.
+		 */
+		private final double[] covariances;
+
+		/**
+		 * Why Gaussian mixture models of this file were ignored.
+		 */
+		private final List< String > warnings = new ArrayList<>();
+
+		private Frame( final int timepointIndex, final int capacity, final boolean withCovariances )
+		{
+			this.timepointIndex = timepointIndex;
+			this.size = 0;
+			this.ids = new int[ capacity ];
+			this.parentIds = new int[ capacity ];
+			this.positions = new double[ 3 * capacity ];
+			this.covariances = withCovariances ? new double[ 9 * capacity ] : null;
+		}
+	}
 
-		finishImport();
+	/**
+	 * Parses one TGMM file. Called concurrently for different time-points.
+	 */
+	private static Frame parse(
+			final String tgmmFileName,
+			final int timepointIndex,
+			final AffineTransform3D transform,
+			final double nSigmas,
+			final boolean computeCovariances )
+		throws JDOMException, IOException
+	{
+		final SAXBuilder sax = new SAXBuilder();
+		final Document doc = sax.build( tgmmFileName );
+		final Element root = doc.getRootElement();
+
+		final List< Element > gaussianMixtureModels = root.getChildren( "GaussianMixtureModel" );
+		final Frame frame = new Frame( timepointIndex, gaussianMixtureModels.size(), computeCovariances );
+		for ( final Element elem : gaussianMixtureModels )
+		{
+			try
+			{
+				final double nu = getDoubleAttribute( elem, "nu" );
+				final double[] m = getDoubleArrayAttribute( elem, "m" );
+				final double[] W = getDoubleArrayAttribute( elem, "W" );
+				final int id = getIntAttribute( elem, "id" );
+//				final int lineage = getIntAttribute( elem, "lineage" );
+				final int parentId = getIntAttribute( elem, "parent" );
+
+				final int i = frame.size;
+				if ( computeCovariances )
+				{
+					final double[][] S = getCovariance( transform, nu / ( nSigmas * nSigmas ), W );
+					for ( int r = 0; r < 3; r++ )
+						System.arraycopy( S[ r ], 0, frame.covariances, 9 * i + 3 * r, 3 );
+				}
+				System.arraycopy( getPosition( transform, m ), 0, frame.positions, 3 * i, 3 );
+				frame.ids[ i ] = id;
+				frame.parentIds[ i ] = parentId;
+				frame.size++;
+			}
+			catch ( final NumberFormatException e )
+			{
+				frame.warnings.add( "- Ignoring " + elem + ": " + e.getMessage() );
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Waits for a parsed frame, and rethrows the exception of the parsing task
+	 * if it failed.
+	 */
+	private static Frame getFrame( final Future< Frame > future ) throws JDOMException, IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while reading TGMM files.", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof JDOMException )
+				throw ( JDOMException ) cause;
+			if ( cause instanceof IOException )
+				throw ( IOException ) cause;
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new IOException( cause );
+		}
 	}
 
 	private static double[][] getCovariance( final AffineTransform3D transform, final double nu, final double[] W )
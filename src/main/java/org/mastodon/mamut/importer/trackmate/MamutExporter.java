@@ -96,9 +96,14 @@ import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.VISIBILITY_
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.VOXEL_DEPTH_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.WIDTH_ATTRIBUTE;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -113,8 +118,6 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
@@ -135,6 +138,7 @@ import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.pool.PoolObject;
+import org.mastodon.spatial.SpatialIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.views.bdv.overlay.util.JamaEigenvalueDecomposition;
 
@@ -157,8 +161,6 @@ public class MamutExporter
 
 	private final MamutProject project;
 
-	private final Element root;
-
 	/**
 	 * Used to retrieve equivalent radius.
 	 */
@@ -177,8 +179,6 @@ public class MamutExporter
 	{
 		this.model = model;
 		this.project = project;
-		this.root = new Element( TRACKMATE_TAG );
-		root.setAttribute( VERSION_ATTRIBUTE, "7.0.4" );
 		this.eig = new JamaEigenvalueDecomposition( 3 );
 		this.cov = new double[ 3 ][ 3 ];
 
@@ -186,36 +186,44 @@ public class MamutExporter
 		linkFeatureProjections = getExportFeatureProjections( model.getFeatureModel(), Link.class, TrackMateImportedLinkFeatures.class );
 	}
 
+	/**
+	 * Writes the MaMuT file. The model content is streamed to the file as the
+	 * model is iterated: spots time-point by time-point, and tracks root by
+	 * root. Only the small settings and GUI state sections are built in
+	 * memory before being written.
+	 */
 	private void write( final File file ) throws IOException
 	{
-		try (FileOutputStream fos = new FileOutputStream( file ))
+		try (final OutputStream os = new BufferedOutputStream( new FileOutputStream( file ), 1024 * 1024 ))
 		{
-			final Document document = new Document( root );
-			final XMLOutputter outputter = new XMLOutputter( Format.getPrettyFormat() );
-			outputter.output( document, fos );
+			final XmlWriter xml = new XmlWriter( os );
+			xml.startDocument();
+			xml.start( TRACKMATE_TAG );
+			xml.attribute( VERSION_ATTRIBUTE, "7.0.4" );
+			writeModel( xml );
+			xml.element( settingsToXml() );
+			final Element guiStateElement = guiStateToXml();
+			if ( null != guiStateElement )
+				xml.element( guiStateElement );
+			xml.end();
+			xml.endDocument();
 		}
 	}
 
-	private void appendModel()
+	private void writeModel( final XmlWriter xml ) throws IOException
 	{
-		final Element modelElement = new Element( MODEL_TAG );
-		modelElement.setAttribute( SPATIAL_UNITS_ATTRIBUTE, model.getSpaceUnits() );
-		modelElement.setAttribute( TIME_UNITS_ATTRIBUTE, model.getTimeUnits() );
-
-		final Element featureDeclarationElement = featuresDeclarationToXml();
-		modelElement.addContent( featureDeclarationElement );
+		xml.start( MODEL_TAG );
+		xml.attribute( SPATIAL_UNITS_ATTRIBUTE, model.getSpaceUnits() );
+		xml.attribute( TIME_UNITS_ATTRIBUTE, model.getTimeUnits() );
 
-		final Element spotElement = spotCollectionToXml();
-		modelElement.addContent( spotElement );
+		xml.element( featuresDeclarationToXml() );
+		writeSpotCollection( xml );
+		writeTrackCollection( xml );
 
-		final Element[] tracksElements = trackCollectionToXml();
-		for ( final Element element : tracksElements )
-			modelElement.addContent( element );
-
-		root.addContent( modelElement );
+		xml.end();
 	}
 
-	private void appendSettings()
+	private Element settingsToXml()
 	{
 		final Element settingsElement = new Element( SETTINGS_TAG );
 
@@ -234,14 +242,17 @@ public class MamutExporter
 		final Element analyzerCollection = analyzerCollectionToXml();
 		settingsElement.addContent( analyzerCollection );
 
-		root.addContent( settingsElement );
+		return settingsElement;
 	}
 
 	/**
 	 * Try to locates a .settings file for the bdv file and import the content
 	 * that MaMuT can recognize (setup assignments and bookmarks).
+	 *
+	 * @return the GUI state element, or {@code null} if there is no settings
+	 *         file.
 	 */
-	private void appendGuiState()
+	private Element guiStateToXml()
 	{
 		final String fs = project.getDatasetXmlFile().getAbsolutePath();
 		final int ixml = fs.lastIndexOf( ".xml" );
@@ -259,13 +270,14 @@ public class MamutExporter
 				guiStateElement.addContent( setupAssignmentsElement );
 				final Element bookmarksElement = root.getChild( BOOKMARKS_TAG ).detach();
 				guiStateElement.addContent( bookmarksElement );
-				this.root.addContent( guiStateElement );
+				return guiStateElement;
 			}
 			catch ( final JDOMException | IOException e )
 			{
 				e.printStackTrace();
 			}
 		}
+		return null;
 	}
 
 	private Element analyzerCollectionToXml()
@@ -381,12 +393,12 @@ public class MamutExporter
 		return imageDataElement;
 	}
 
-	private Element[] trackCollectionToXml()
+	private void writeTrackCollection( final XmlWriter xml ) throws IOException
 	{
 		/*
 		 * Track collection element.
 		 */
-		final Element allTracksElement = new Element( TRACK_COLLECTION_TAG );
+		xml.start( TRACK_COLLECTION_TAG );
 
 		// Collect roots, as candidates for single tracks.
 		final RefList< Spot > roots = RefCollections.createRefList( model.getGraph().vertices() );
@@ -403,76 +415,85 @@ public class MamutExporter
 		final DepthFirstSearch< Spot, Link > search = new DepthFirstSearch<>( model.getGraph(), SearchDirection.UNDIRECTED );
 		final RefSet< Spot > toSkip = RefCollections.createRefSet( model.getGraph().vertices() );
 		final RefList< Spot > iteratedRoots = RefCollections.createRefList( model.getGraph().vertices() );
-
-		for ( final Spot root : roots )
+		final IOException[] error = new IOException[ 1 ];
+		final SearchListener< Spot, Link, DepthFirstSearch< Spot, Link > > searchListener = new SearchListener< Spot, Link, DepthFirstSearch< Spot, Link > >()
 		{
-			// Skip over the roots that were path of a track already dealt with.
-			if ( toSkip.contains( root ) )
-				continue;
 
-			// Create the track element.
-			final Element trackElement = trackToXml( root );
-			final SearchListener< Spot, Link, DepthFirstSearch< Spot, Link > > searchListener = new SearchListener< Spot, Link, DepthFirstSearch< Spot, Link > >()
+			@Override
+			public void processVertexLate( final Spot vertex, final DepthFirstSearch< Spot, Link > search )
 			{
+				/*
+				 * 1 root = 1 track, unless a track has several roots. Add the
+				 * iterated vertex to the list of root to skip if needed.
+				 */
+				if ( vertex.incomingEdges().isEmpty() )
+					toSkip.add( vertex );
+			}
+
+			@Override
+			public void processVertexEarly( final Spot vertex, final DepthFirstSearch< Spot, Link > search )
+			{}
 
-				@Override
-				public void processVertexLate( final Spot vertex, final DepthFirstSearch< Spot, Link > search )
+			@Override
+			public void processEdge( final Link edge, final Spot from, final Spot to, final DepthFirstSearch< Spot, Link > search )
+			{
+				// Write iterated edge in the track element.
+				if ( null != error[ 0 ] )
+					return;
+				try
 				{
-					/*
-					 * 1 root = 1 track, unless a track has several roots. Add
-					 * the iterated vertex to the list of root to skip if
-					 * needed.
-					 */
-					if ( vertex.incomingEdges().isEmpty() )
-						toSkip.add( vertex );
+					writeEdge( xml, edge, from.getInternalPoolIndex(), to.getInternalPoolIndex() );
 				}
-
-				@Override
-				public void processVertexEarly( final Spot vertex, final DepthFirstSearch< Spot, Link > search )
-				{}
-
-				@Override
-				public void processEdge( final Link edge, final Spot from, final Spot to, final DepthFirstSearch< Spot, Link > search )
+				catch ( final IOException e )
 				{
-					// Add iterated edge to the track element.
-					final Element edgeElement = edgeToXml( edge, from.getInternalPoolIndex(), to.getInternalPoolIndex() );
-					trackElement.addContent( edgeElement );
+					error[ 0 ] = e;
 				}
+			}
 
-				@Override
-				public void crossComponent( final Spot from, final Spot to, final DepthFirstSearch< Spot, Link > search )
-				{}
-			};
-			search.setTraversalListener( searchListener );
-			search.start( root );
+			@Override
+			public void crossComponent( final Spot from, final Spot to, final DepthFirstSearch< Spot, Link > search )
+			{}
+		};
+		search.setTraversalListener( searchListener );
+
+		for ( final Spot root : roots )
+		{
+			// Skip over the roots that were path of a track already dealt with.
+			if ( toSkip.contains( root ) )
+				continue;
 
 			// Don't serialize empty track (no edges).
-			if ( trackElement.getContentSize() > 0 )
-			{
-				allTracksElement.addContent( trackElement );
-				iteratedRoots.add( root );
-			}
+			if ( root.edges().isEmpty() )
+				continue;
+
+			// Write the track element.
+			startTrack( xml, root );
+			search.start( root );
+			if ( null != error[ 0 ] )
+				throw error[ 0 ];
+			xml.end();
+			iteratedRoots.add( root );
 		}
 
+		xml.end();
+
 		/*
 		 * Filtered track collection element.
 		 */
 
-		final Element filteredTracksElement = new Element( FILTERED_TRACKS_TAG );
+		xml.start( FILTERED_TRACKS_TAG );
 		for ( final Spot spot : iteratedRoots )
 		{
-			final Element filteredTrackID = new Element( TRACK_ID_TAG );
-			filteredTrackID.setAttribute( TRACK_ID_ATTRIBUTE, Integer.toString( spot.getInternalPoolIndex() ) );
-			filteredTracksElement.addContent( filteredTrackID );
+			xml.empty( TRACK_ID_TAG );
+			xml.attribute( TRACK_ID_ATTRIBUTE, Integer.toString( spot.getInternalPoolIndex() ) );
 		}
-
-		return new Element[] { allTracksElement, filteredTracksElement };
+		xml.end();
 	}
 
-	private Element spotCollectionToXml()
+	private void writeSpotCollection( final XmlWriter xml ) throws IOException
 	{
-		final Element spotCollectionElement = new Element( SPOT_COLLECTION_TAG );
-		spotCollectionElement.setAttribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE, Integer.toString( model.getGraph().vertices().size() ) );
+		xml.start( SPOT_COLLECTION_TAG );
+		xml.attribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE, Integer.toString( model.getGraph().vertices().size() ) );
 
 		// Read time points from dataset xml.
 		List< TimePoint > tps = null;
@@ -497,91 +518,81 @@ public class MamutExporter
 		{
 			final TimePoint tp = tps.get( tpIndex );
 
-			final Element frameSpotsElement = new Element( SPOT_FRAME_COLLECTION_TAG );
-			frameSpotsElement.setAttribute( FRAME_ATTRIBUTE, tp.getName() );
-
-			for ( final Spot spot : spots.getSpatialIndex( tpIndex ) )
+			final SpatialIndex< Spot > frameSpots = spots.getSpatialIndex( tpIndex );
+			if ( frameSpots.isEmpty() )
 			{
-				final Element spotElement = spotToXml( spot );
-				frameSpotsElement.addContent( spotElement );
+				xml.empty( SPOT_FRAME_COLLECTION_TAG );
+				xml.attribute( FRAME_ATTRIBUTE, tp.getName() );
+				continue;
 			}
-			spotCollectionElement.addContent( frameSpotsElement );
+
+			xml.start( SPOT_FRAME_COLLECTION_TAG );
+			xml.attribute( FRAME_ATTRIBUTE, tp.getName() );
+			for ( final Spot spot : frameSpots )
+				writeSpot( xml, spot );
+			xml.end();
 		}
 
-		return spotCollectionElement;
+		xml.end();
 	}
 
-	private Element edgeToXml( final Link edge, final int sourceSpotID, final int targetSpotID )
+	private void writeEdge( final XmlWriter xml, final Link edge, final int sourceSpotID, final int targetSpotID ) throws IOException
 	{
-		final Collection< Attribute > attributes = new ArrayList<>();
+		xml.empty( EDGE_TAG );
 
 		// Source and target ID.
-		attributes.add( new Attribute( EDGE_SOURCE_ATTRIBUTE, Integer.toString( sourceSpotID ) ) );
-		attributes.add( new Attribute( EDGE_TARGET_ATTRIBUTE, Integer.toString( targetSpotID ) ) );
+		xml.attribute( EDGE_SOURCE_ATTRIBUTE, Integer.toString( sourceSpotID ) );
+		xml.attribute( EDGE_TARGET_ATTRIBUTE, Integer.toString( targetSpotID ) );
 
 		// Link features.
-		linkFeatureProjections.forEach( p -> attributes.add( new Attribute(
-				p.attributeName,
-				Double.toString( p.projection.value( edge ) ) ) ) );
-
-		final Element edgeElement = new Element( EDGE_TAG );
-		edgeElement.setAttributes( attributes );
-		return edgeElement;
+		for ( final ExportFeatureProjection< Link > p : linkFeatureProjections )
+			xml.attribute( p.attributeName, Double.toString( p.projection.value( edge ) ) );
 	}
 
-	private Element trackToXml( final Spot root )
+	private void startTrack( final XmlWriter xml, final Spot root ) throws IOException
 	{
-		final Collection< Attribute > attributes = new ArrayList<>();
+		xml.start( TRACK_TAG );
 
 		// Track name.
-		attributes.add( new Attribute( TRACK_NAME_ATTRIBUTE, root.getLabel() ) );
+		xml.attribute( TRACK_NAME_ATTRIBUTE, root.getLabel() );
 
 		// Track ID.
-		attributes.add( new Attribute( TRACK_ID_ATTRIBUTE, Integer.toString( root.getInternalPoolIndex() ) ) );
+		xml.attribute( TRACK_ID_ATTRIBUTE, Integer.toString( root.getInternalPoolIndex() ) );
 
 		// Other track features.
 		// TODO: when we compute and store track features, modify this.
-
-		final Element trackElement = new Element( TRACK_TAG );
-		trackElement.setAttributes( attributes );
-		return trackElement;
 	}
 
-	private Element spotToXml( final Spot spot )
+	private void writeSpot( final XmlWriter xml, final Spot spot ) throws IOException
 	{
-		final Collection< Attribute > attributes = new ArrayList<>();
+		xml.empty( SPOT_ELEMENT_TAG );
 
 		// Id.
-		attributes.add( new Attribute( ID_FEATURE_NAME, Integer.toString( spot.getInternalPoolIndex() ) ) );
+		xml.attribute( ID_FEATURE_NAME, Integer.toString( spot.getInternalPoolIndex() ) );
 		// Name.
-		attributes.add( new Attribute( LABEL_FEATURE_NAME, spot.getLabel() ) );
+		xml.attribute( LABEL_FEATURE_NAME, spot.getLabel() );
 		// Position.
-		attributes.add( new Attribute( POSITION_X_FEATURE_NAME, Double.toString( spot.getDoublePosition( 0 ) ) ) );
-		attributes.add( new Attribute( POSITION_Y_FEATURE_NAME, Double.toString( spot.getDoublePosition( 1 ) ) ) );
-		attributes.add( new Attribute( POSITION_Z_FEATURE_NAME, Double.toString( spot.getDoublePosition( 2 ) ) ) );
+		xml.attribute( POSITION_X_FEATURE_NAME, Double.toString( spot.getDoublePosition( 0 ) ) );
+		xml.attribute( POSITION_Y_FEATURE_NAME, Double.toString( spot.getDoublePosition( 1 ) ) );
+		xml.attribute( POSITION_Z_FEATURE_NAME, Double.toString( spot.getDoublePosition( 2 ) ) );
 		// Frame and time.
-		attributes.add( new Attribute( FRAME_FEATURE_NAME, Integer.toString( spot.getTimepoint() ) ) );
-		attributes.add( new Attribute( POSITION_T_FEATURE_NAME, Double.toString( spot.getTimepoint() ) ) );
+		xml.attribute( FRAME_FEATURE_NAME, Integer.toString( spot.getTimepoint() ) );
+		xml.attribute( POSITION_T_FEATURE_NAME, Double.toString( spot.getTimepoint() ) );
 		// Quality.
-		attributes.add( new Attribute( QUALITY_FEATURE_NAME, Double.toString( -1. ) ) );
+		xml.attribute( QUALITY_FEATURE_NAME, Double.toString( -1. ) );
 		// Visibility.
-		attributes.add( new Attribute( VISIBILITY_FEATURE_NAME, Integer.toString( 1 ) ) );
+		xml.attribute( VISIBILITY_FEATURE_NAME, Integer.toString( 1 ) );
 
 		// Radius. We have to scale it by transform norm because in MaMuT they
 		// are before rendering.
 		spot.getCovariance( cov );
 		eig.decomposeSymmetric( cov );
 		final double meanRadius = Arrays.stream( eig.getRealEigenvalues() ).map( Math::sqrt ).average().getAsDouble();
-		attributes.add( new Attribute( RADIUS_FEATURE_NAME, Double.toString( meanRadius ) ) );
+		xml.attribute( RADIUS_FEATURE_NAME, Double.toString( meanRadius ) );
 
 		// Spot features.
-		spotFeatureProjections.forEach( p -> attributes.add( new Attribute(
-				p.attributeName,
-				Double.toString( p.projection.value( spot ) ) ) ) );
-
-		final Element spotElement = new Element( SPOT_ELEMENT_TAG );
-		spotElement.setAttributes( attributes );
-		return spotElement;
+		for ( final ExportFeatureProjection< Spot > p : spotFeatureProjections )
+			xml.attribute( p.attributeName, Double.toString( p.projection.value( spot ) ) );
 	}
 
 	private Element featuresDeclarationToXml()
@@ -894,9 +905,211 @@ public class MamutExporter
 	public static final void export( final File target, final Model model, final MamutProject project ) throws IOException
 	{
 		final MamutExporter exporter = new MamutExporter( model, project );
-		exporter.appendModel();
-		exporter.appendSettings();
-		exporter.appendGuiState();
 		exporter.write( target );
 	}
+
+	/**
+	 * Writes indented XML with the same bytes as the JDOM
+	 * {@code XMLOutputter} with {@code Format.getPrettyFormat()}: one element
+	 * per line, indented by two spaces, CRLF line breaks, elements without
+	 * content written as {@code <name ... />}, elements with only text on a
+	 * single line, and the JDOM escaping of text and attribute values.
+	 */
+	private static final class XmlWriter
+	{
+		private static final String LINE_SEPARATOR = "\r\n";
+
+		private static final String INDENT = "  ";
+
+		private final Writer writer;
+
+		/**
+		 * The names of the elements started and not ended yet.
+		 */
+		private final List< String > names;
+
+		/**
+		 * Whether the element at each depth has child elements.
+		 */
+		private boolean[] hasChildren;
+
+		private int depth;
+
+		/**
+		 * Whether the last start tag is not closed yet, because attributes can
+		 * still be added to it.
+		 */
+		private boolean tagOpen;
+
+		/**
+		 * Whether the open tag is the tag of an element without content.
+		 */
+		private boolean tagEmpty;
+
+		XmlWriter( final OutputStream os )
+		{
+			this.writer = new OutputStreamWriter( os, StandardCharsets.UTF_8 );
+			this.names = new ArrayList<>();
+			this.hasChildren = new boolean[ 16 ];
+			this.depth = 0;
+		}
+
+		void startDocument() throws IOException
+		{
+			writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+		}
+
+		void endDocument() throws IOException
+		{
+			closeTag();
+			writer.write( LINE_SEPARATOR );
+			writer.flush();
+		}
+
+		/**
+		 * Starts an element that must be closed with {@link #end()}.
+		 * Attributes can be added right after. If nothing is written before
+		 * {@link #end()}, the element is written as an empty element.
+		 */
+		void start( final String name ) throws IOException
+		{
+			newLine();
+			writer.write( '<' );
+			writer.write( name );
+			tagOpen = true;
+			tagEmpty = false;
+			names.add( name );
+			if ( ++depth >= hasChildren.length )
+				hasChildren = Arrays.copyOf( hasChildren, 2 * hasChildren.length );
+			hasChildren[ depth ] = false;
+		}
+
+		/**
+		 * Writes an element without content. Attributes can be added right
+		 * after.
+		 */
+		void empty( final String name ) throws IOException
+		{
+			newLine();
+			writer.write( '<' );
+			writer.write( name );
+			tagOpen = true;
+			tagEmpty = true;
+		}
+
+		void attribute( final String name, final String value ) throws IOException
+		{
+			writer.write( ' ' );
+			writer.write( name );
+			writer.write( "=\"" );
+			escape( value, true );
+			writer.write( '"' );
+		}
+
+		void text( final String text ) throws IOException
+		{
+			if ( text.isEmpty() )
+				return;
+			closeTag();
+			escape( text, false );
+		}
+
+		void end() throws IOException
+		{
+			final String name = names.remove( names.size() - 1 );
+			if ( tagOpen && !tagEmpty )
+			{
+				// No content: JDOM writes an empty element.
+				tagEmpty = true;
+				closeTag();
+				depth--;
+				return;
+			}
+			closeTag();
+			if ( hasChildren[ depth-- ] )
+				indent();
+			writer.write( "</" );
+			writer.write( name );
+			writer.write( '>' );
+		}
+
+		/**
+		 * Writes a JDOM element and its child elements. Text content is
+		 * trimmed, and only written for elements without child elements.
+		 */
+		void element( final Element element ) throws IOException
+		{
+			final List< Element > children = element.getChildren();
+			final String text = element.getTextTrim();
+			start( element.getName() );
+			for ( final Attribute a : element.getAttributes() )
+				attribute( a.getName(), a.getValue() );
+			if ( children.isEmpty() )
+				text( text );
+			else
+				for ( final Element child : children )
+					element( child );
+			end();
+		}
+
+		private void closeTag() throws IOException
+		{
+			if ( !tagOpen )
+				return;
+			writer.write( tagEmpty ? " />" : ">" );
+			tagOpen = false;
+		}
+
+		private void newLine() throws IOException
+		{
+			closeTag();
+			hasChildren[ depth ] = true;
+			indent();
+		}
+
+		private void indent() throws IOException
+		{
+			writer.write( LINE_SEPARATOR );
+			for ( int i = 0; i < depth; i++ )
+				writer.write( INDENT );
+		}
+
+		/**
+		 * Escapes like JDOM: {@code & < > \r} always, and {@code " \t \n} in
+		 * attribute values.
+		 */
+		private void escape( final String str, final boolean attribute ) throws IOException
+		{
+			for ( int i = 0; i < str.length(); i++ )
+			{
+				final char c = str.charAt( i );
+				switch ( c )
+				{
+				case '&':
+					writer.write( "&amp;" );
+					break;
+				case '<':
+					writer.write( "&lt;" );
+					break;
+				case '>':
+					writer.write( "&gt;" );
+					break;
+				case '\r':
+					writer.write( "&#xD;" );
+					break;
+				case '"':
+					writer.write( attribute ? "&quot;" : "\"" );
+					break;
+				case '\t':
+					writer.write( attribute ? "&#x9;" : "\t" );
+					break;
+				case '\n':
+					writer.write( attribute ? "&#xA;" : LINE_SEPARATOR );
+					break;
+				default:
+					writer.write( c );
+				}
+			}
+		}
+	}
 }
@@ -33,7 +33,6 @@ import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.EDGE_SOURCE
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.EDGE_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.EDGE_TARGET_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.FEATURE_ATTRIBUTE;
-import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.FEATURE_DECLARATION_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.FEATURE_DIMENSION_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.FEATURE_ISINT_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.FEATURE_TAG;
@@ -55,30 +54,34 @@ import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.POSITION_Z_
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.RADIUS_FEATURE_NAME;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SETTINGS_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPATIAL_UNITS_ATTRIBUTE;
+import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPOT_COLLECTION_NSPOTS_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPOT_COLLECTION_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPOT_ELEMENT_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPOT_FEATURE_DECLARATION_TAG;
-import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.SPOT_FRAME_COLLECTION_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.TIME_UNITS_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.TRACK_COLLECTION_TAG;
-import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.TRACK_TAG;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.VISIBILITY_FEATURE_NAME;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.VOXEL_DEPTH_ATTRIBUTE;
 import static org.mastodon.mamut.importer.trackmate.TrackMateXMLKeys.WIDTH_ATTRIBUTE;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.mastodon.collection.IntRefMap;
 import org.mastodon.collection.RefMaps;
 import org.mastodon.feature.Dimension;
@@ -92,40 +95,50 @@ import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.ui.ProgressListener;
 
 /**
  * Importer for TrackMate (http://imagej.net/TrackMate) files.
  * <p>
  * The importer can read the model as a whole and also import feature values.
+ * <p>
+ * The file is parsed as a stream: spots and links are added to the model as
+ * their XML elements are read, and the XML document is never held in memory.
+ * Large MaMuT files can therefore be imported with a heap that is much smaller
+ * than the file.
  *
  * @author Jean-Yves Tinevez
  * @author Tobias Pietzsch
  */
 public class TrackMateImporter
 {
-	private final File file;
+	/**
+	 * Initial capacity of the map from TrackMate spot ids to spots, if the
+	 * file does not specify the number of spots.
+	 */
+	private static final int DEFAULT_NSPOTS = 1000;
 
-	private final Document document;
+	/**
+	 * Maximal number of spots or edges added to the model graph in one batch,
+	 * i.e. while holding its write lock.
+	 */
+	private static final int INSERTION_BATCH_SIZE = 1000;
+
+	private final File file;
 
 	/**
-	 * Read the specified TrackMate file.
+	 * Prepare reading the specified TrackMate file.
 	 *
 	 * @param file
 	 *            the path to the TrackMate file.
 	 * @throws IOException
-	 *             if an error happens while opening or parsing the XML file.
+	 *             if the file cannot be read.
 	 */
 	public TrackMateImporter( final File file ) throws IOException
 	{
+		if ( !file.canRead() )
+			throw new IOException( "Cannot read TrackMate file " + file );
 		this.file = file;
-		try
-		{
-			document = new SAXBuilder().build( file );
-		}
-		catch ( final JDOMException e )
-		{
-			throw new IOException( e );
-		}
 	}
 
 	/**
@@ -140,14 +153,55 @@ public class TrackMateImporter
 	 */
 	public MamutProject createProject() throws IOException
 	{
-		final Element root = document.getRootElement();
-		final Element settingsEl = root.getChild( SETTINGS_TAG );
-		if ( null == settingsEl )
+		Map< String, String > modelAttributes = null;
+		Map< String, String > imageDataAttributes = null;
+		boolean foundSettings = false;
+		try (final InputStream is = new BufferedInputStream( new FileInputStream( file ) ))
+		{
+			final XMLStreamReader reader = createReader( is );
+			try
+			{
+				// Move to the root element.
+				reader.nextTag();
+				while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+				{
+					final String name = reader.getLocalName();
+					if ( MODEL_TAG.equals( name ) )
+					{
+						modelAttributes = getAttributes( reader );
+						skipElement( reader );
+					}
+					else if ( SETTINGS_TAG.equals( name ) )
+					{
+						foundSettings = true;
+						while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
+						{
+							if ( IMAGE_DATA_TAG.equals( reader.getLocalName() ) )
+								imageDataAttributes = getAttributes( reader );
+							skipElement( reader );
+						}
+					}
+					else
+						skipElement( reader );
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final XMLStreamException e )
+		{
+			throw new IOException( e );
+		}
+
+		if ( !foundSettings )
 			throw new IOException( "Could not import TrackMate project. No <" + SETTINGS_TAG + "> element found." );
+		if ( null == imageDataAttributes )
+			throw new IOException( "Could not import TrackMate project. No <" + IMAGE_DATA_TAG + "> element found." );
 
-		final Element imageDataEl = settingsEl.getChild( IMAGE_DATA_TAG );
-		final String imageFilename = imageDataEl.getAttributeValue( FILENAME_ATTRIBUTE );
-		final String imageFolder = imageDataEl.getAttributeValue( FOLDER_ATTRIBUTE );
+		final String imageFilename = imageDataAttributes.get( FILENAME_ATTRIBUTE );
+		final String imageFolder = imageDataAttributes.get( FOLDER_ATTRIBUTE );
 		File imageFile = new File( imageFolder, imageFilename );
 		if ( !imageFile.exists() )
 		{
@@ -157,20 +211,19 @@ public class TrackMateImporter
 			{
 				System.err.println( "Warning. Cannot find the image data file: \"" + imageFilename + "\" in \"" + imageFolder + "\" nor in \""
 						+ file.getParent() + "\". Substituting default void image." );
-				imageFile = makDummyImage( imageDataEl );
+				imageFile = makDummyImage( imageDataAttributes );
 			}
 		}
 
 		final MamutProject project = new MamutProject( null, imageFile );
 
 		// Set project time and space units
-		final Element modelEl = root.getChild( MODEL_TAG );
-		if ( null != modelEl )
+		if ( null != modelAttributes )
 		{
-			final String spaceUnits = modelEl.getAttributeValue( SPATIAL_UNITS_ATTRIBUTE );
+			final String spaceUnits = modelAttributes.get( SPATIAL_UNITS_ATTRIBUTE );
 			if ( spaceUnits != null )
 				project.setSpaceUnits( spaceUnits );
-			final String timeUnits = modelEl.getAttributeValue( TIME_UNITS_ATTRIBUTE );
+			final String timeUnits = modelAttributes.get( TIME_UNITS_ATTRIBUTE );
 			if ( timeUnits != null )
 				project.setTimeUnits( timeUnits );
 		}
@@ -182,34 +235,34 @@ public class TrackMateImporter
 	 * Returns a dummy BDV file, made to reflect the metadata stored in the
 	 * <code>ImageData</code> XML element of a TrackMate file.
 	 *
-	 * @param imageDataEl
-	 *            the <code>ImageData</code> XML element.
+	 * @param imageDataAttributes
+	 *            the attributes of the <code>ImageData</code> XML element.
 	 * @return a dummy BDF file.
 	 */
-	private static File makDummyImage( final Element imageDataEl )
+	private static File makDummyImage( final Map< String, String > imageDataAttributes )
 	{
-		final String wel = imageDataEl.getAttributeValue( WIDTH_ATTRIBUTE );
+		final String wel = imageDataAttributes.get( WIDTH_ATTRIBUTE );
 		final int width = wel == null ? 1000 : Integer.parseInt( wel );
 
-		final String hel = imageDataEl.getAttributeValue( HEIGHT_ATTRIBUTE );
+		final String hel = imageDataAttributes.get( HEIGHT_ATTRIBUTE );
 		final int height = hel == null ? 1000 : Integer.parseInt( hel );
 
-		final String zel = imageDataEl.getAttributeValue( NSLICES_ATTRIBUTE );
+		final String zel = imageDataAttributes.get( NSLICES_ATTRIBUTE );
 		final int depth = zel == null ? 100 : Integer.parseInt( zel );
 
-		final String ntel = imageDataEl.getAttributeValue( NFRAMES_ATTRIBUTE );
+		final String ntel = imageDataAttributes.get( NFRAMES_ATTRIBUTE );
 		final int nTimepoints = ntel == null ? 100 : Integer.parseInt( ntel );
 
-		final String dxel = imageDataEl.getAttributeValue( PIXEL_WIDTH_ATTRIBUTE );
+		final String dxel = imageDataAttributes.get( PIXEL_WIDTH_ATTRIBUTE );
 		final double dx = dxel == null ? 1. : Double.parseDouble( dxel );
 
-		final String dyel = imageDataEl.getAttributeValue( PIXEL_HEIGHT_ATTRIBUTE );
+		final String dyel = imageDataAttributes.get( PIXEL_HEIGHT_ATTRIBUTE );
 		final double dy = dyel == null ? 1. : Double.parseDouble( dyel );
 
-		final String dzel = imageDataEl.getAttributeValue( VOXEL_DEPTH_ATTRIBUTE );
+		final String dzel = imageDataAttributes.get( VOXEL_DEPTH_ATTRIBUTE );
 		final double dz = dzel == null ? 1. : Double.parseDouble( dzel );
 
-//		final String dtel = imageDataEl.getAttributeValue( TIME_INTERVAL_ATTRIBUTE );
+//		final String dtel = imageDataAttributes.get( TIME_INTERVAL_ATTRIBUTE );
 //		final double dt = dtel == null ? 1. : Double.parseDouble( dtel );
 
 		final String dummyStr = String.format( "x=%d y=%d z=%d sx=%f sy=%f sz=%f t=%d.dummy",
@@ -232,216 +285,243 @@ public class TrackMateImporter
 
 	public void readModel( final Model model, final FeatureSpecsService featureSpecsService ) throws IOException
 	{
-		new Import( model, featureSpecsService );
+		readModel( model, featureSpecsService, null );
 	}
 
-	private final class Import extends ModelImporter
+	/**
+	 * Imports the specified TrackMate file into a Mastodon {@link Model},
+	 * reporting progress as the file is read.
+	 *
+	 * @param model
+	 *            the Model that will receive the imported data.
+	 * @param featureSpecsService
+	 *            the feature specs service, used to skip feature values that
+	 *            were exported from Mastodon. Can be {@code null}.
+	 * @param progressListener
+	 *            receives the percentage of the file read so far. Can be
+	 *            {@code null}.
+	 * @throws IOException
+	 *             if the TrackMate file cannot be imported.
+	 */
+	public void readModel( final Model model, final FeatureSpecsService featureSpecsService, final ProgressListener progressListener ) throws IOException
 	{
-		Import( final Model model, final FeatureSpecsService featureSpecsService ) throws IOException
+		if ( null != progressListener )
+			progressListener.showStatus( "Importing " + file.getName() );
+		try (final InputStream is = new BufferedInputStream( new ProgressInputStream( new FileInputStream( file ), file.length(), progressListener ) ))
 		{
-			super( model );
-			startImport();
+			final XMLStreamReader reader = createReader( is );
+			try
+			{
+				new Import( model, featureSpecsService, reader );
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final XMLStreamException e )
+		{
+			throw new IOException( e );
+		}
+		finally
+		{
+			if ( null != progressListener )
+				progressListener.clearStatus();
+		}
+	}
 
-			final ModelGraph graph = model.getGraph();
+	private static XMLStreamReader createReader( final InputStream is ) throws XMLStreamException
+	{
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+		return factory.createXMLStreamReader( is );
+	}
 
-			final Element root = document.getRootElement();
-			final Element modelEl = root.getChild( MODEL_TAG );
-			if ( null == modelEl )
-				throw new IOException( "Could not import TrackMate project. No <" + MODEL_TAG + "> element found." );
+	private static Map< String, String > getAttributes( final XMLStreamReader reader )
+	{
+		final int n = reader.getAttributeCount();
+		final Map< String, String > attributes = new HashMap<>( 2 * n );
+		for ( int i = 0; i < n; i++ )
+			attributes.put( reader.getAttributeLocalName( i ), reader.getAttributeValue( i ) );
+		return attributes;
+	}
 
-			/*
-			 * Units.
-			 */
+	/**
+	 * Skips the content of the current element. When this method returns, the
+	 * reader is positioned on the end tag of the element.
+	 */
+	private static void skipElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		int depth = 1;
+		while ( depth > 0 )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				depth++;
+			else if ( event == XMLStreamConstants.END_ELEMENT )
+				depth--;
+		}
+	}
 
-			final String spaceUnits = modelEl.getAttributeValue( SPATIAL_UNITS_ATTRIBUTE );
-			final String timeUnits = modelEl.getAttributeValue( TIME_UNITS_ATTRIBUTE );
+	private final class Import extends ModelImporter
+	{
+		private final ModelGraph graph;
 
-			/*
-			 * Read feature declaration and instantiate mastodon features.
-			 */
+		private final Set< String > ignoredSpotFeatureKeys;
+
+		private final Set< String > ignoredLinkFeatureKeys;
+
+		private final NumberFormat numberFormat = NumberFormat.getInstance();
+
+		private final TrackMateImportedSpotFeatures spotFeatures = new TrackMateImportedSpotFeatures();
+
+		private final Map< String, DoublePropertyMap< Spot > > spotDoubleFeatureMap = new HashMap<>();
+
+		private final Map< String, IntPropertyMap< Spot > > spotIntFeatureMap = new HashMap<>();
+
+		private final TrackMateImportedLinkFeatures linkFeatures = new TrackMateImportedLinkFeatures();
+
+		private final Map< String, DoublePropertyMap< Link > > linkDoubleFeatureMap = new HashMap<>();
+
+		private final Map< String, IntPropertyMap< Link > > linkIntFeatureMap = new HashMap<>();
+
+		private final double[] pos = new double[ 3 ];
+
+		private String spaceUnits;
+
+		private String timeUnits;
 
-			final Element featureDeclarationEl = modelEl.getChild( FEATURE_DECLARATION_TAG );
+		/**
+		 * Map spot ID -> Vertex. Created with the number of spots declared in
+		 * the file, so that it does not need to grow while spots are added.
+		 */
+		private IntRefMap< Spot > idToSpotIDmap;
 
+		/**
+		 * Number of spots or edges added in the current batch, or -1 if no
+		 * batch is open.
+		 */
+		private int batchSize = -1;
+
+		Import( final Model model, final FeatureSpecsService featureSpecsService, final XMLStreamReader reader ) throws IOException, XMLStreamException
+		{
+			super( model );
+			this.graph = model.getGraph();
 			/*
 			 * TODO: could get this from the spimdata XML, for now just we're
 			 *       safe for a while with 10...
 			 */
 			final int expectedNumSources = 10;
-
-			// Spot features.
-			final TrackMateImportedSpotFeatures spotFeatures = new TrackMateImportedSpotFeatures();
-			final Element spotFeatureDeclarationEl = featureDeclarationEl.getChild( SPOT_FEATURE_DECLARATION_TAG );
-			final List< Element > spotFeatureEls = spotFeatureDeclarationEl.getChildren( FEATURE_TAG );
-			final Map< String, DoublePropertyMap< Spot > > spotDoubleFeatureMap = new HashMap<>();
-			final Map< String, IntPropertyMap< Spot > > spotIntFeatureMap = new HashMap<>();
-			final Set< String > ignoredSpotFeatureKeys = MamutExporter.getLikelyExportedFeatureProjections( featureSpecsService, expectedNumSources, Spot.class );
-			for ( final Element featureEl : spotFeatureEls )
+			this.ignoredSpotFeatureKeys = MamutExporter.getLikelyExportedFeatureProjections( featureSpecsService, expectedNumSources, Spot.class );
+			this.ignoredLinkFeatureKeys = MamutExporter.getLikelyExportedFeatureProjections( featureSpecsService, expectedNumSources, Link.class );
+			startImport();
+			try
 			{
-				final String featureKey = featureEl.getAttributeValue( FEATURE_ATTRIBUTE );
-				if ( ignoredSpotFeatureKeys.contains( featureKey ) )
-					continue;
-//				final String featureName = featureEl.getAttributeValue( FEATURE_NAME_ATTRIBUTE );
-//				final String featureShortName = featureEl.getAttributeValue( FEATURE_SHORT_NAME_ATTRIBUTE );
-				final String featureDimension = featureEl.getAttributeValue( FEATURE_DIMENSION_ATTRIBUTE );
-				final String units = dimensionToUnits( featureDimension, spaceUnits, timeUnits );
-				final boolean featureIsInt = Boolean.parseBoolean( featureEl.getAttributeValue( FEATURE_ISINT_ATTRIBUTE ) );
-				if ( featureIsInt )
-				{
-					final IntPropertyMap< Spot > values = new IntPropertyMap<>( graph.vertices().getRefPool(), Integer.MIN_VALUE );
-					spotFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
-					spotIntFeatureMap.put( featureKey, values );
-				}
-				else
-				{
-					final DoublePropertyMap< Spot > values = new DoublePropertyMap<>( graph.vertices().getRefPool(), Double.NaN );
-					spotFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
-					spotDoubleFeatureMap.put( featureKey, values );
-				}
+				read( model, reader );
 			}
+			finally
+			{
+				finishImport();
+			}
+		}
 
-			// Link features.
-			final TrackMateImportedLinkFeatures linkFeatures = new TrackMateImportedLinkFeatures();
-			final Element edgeFeatureDeclarationEl = featureDeclarationEl.getChild( EDGE_FEATURE_DECLARATION_TAG );
-			final List< Element > edgeFeatureEls = edgeFeatureDeclarationEl.getChildren( FEATURE_TAG );
-			final Map< String, DoublePropertyMap< Link > > linkDoubleFeatureMap = new HashMap<>();
-			final Map< String, IntPropertyMap< Link > > linkIntFeatureMap = new HashMap<>();
-			final Set< String > ignoredLinkFeatureKeys = MamutExporter.getLikelyExportedFeatureProjections( featureSpecsService, expectedNumSources, Link.class );
-			for ( final Element featureEl : edgeFeatureEls )
+		private void read( final Model model, final XMLStreamReader reader ) throws IOException, XMLStreamException
+		{
+			// Move to the root element, then to the model element.
+			reader.nextTag();
+			boolean foundModel = false;
+			while ( reader.nextTag() == XMLStreamConstants.START_ELEMENT )
 			{
-				final String featureKey = featureEl.getAttributeValue( FEATURE_ATTRIBUTE );
-				if ( ignoredLinkFeatureKeys.contains( featureKey ) )
-					continue;
-//				final String featureName = featureEl.getAttributeValue( FEATURE_NAME_ATTRIBUTE );
-//				final String featureShortName = featureEl.getAttributeValue( FEATURE_SHORT_NAME_ATTRIBUTE );
-				final String featureDimension = featureEl.getAttributeValue( FEATURE_DIMENSION_ATTRIBUTE );
-				final String units = dimensionToUnits( featureDimension, spaceUnits, timeUnits );
-				final boolean featureIsInt = Boolean.parseBoolean( featureEl.getAttributeValue( FEATURE_ISINT_ATTRIBUTE ) );
-				if ( featureIsInt )
+				if ( MODEL_TAG.equals( reader.getLocalName() ) )
 				{
-					final IntPropertyMap< Link > values = new IntPropertyMap<>( graph.edges().getRefPool(), Integer.MIN_VALUE );
-					linkFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
-					linkIntFeatureMap.put( featureKey, values );
-				}
-				else
-				{
-					final DoublePropertyMap< Link > values = new DoublePropertyMap<>( graph.edges().getRefPool(), Double.NaN );
-					linkFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
-					linkDoubleFeatureMap.put( featureKey, values );
+					foundModel = true;
+					break;
 				}
+				skipElement( reader );
 			}
+			if ( !foundModel )
+				throw new IOException( "Could not import TrackMate project. No <" + MODEL_TAG + "> element found." );
 
 			/*
-			 * Read model and build the graph.
+			 * Units.
 			 */
 
+			spaceUnits = reader.getAttributeValue( null, SPATIAL_UNITS_ATTRIBUTE );
+			timeUnits = reader.getAttributeValue( null, TIME_UNITS_ATTRIBUTE );
+
 			final Spot ref = graph.vertexRef();
 			final Spot putRef = graph.vertexRef();
 			final Spot sourceRef = graph.vertexRef();
 			final Spot targetRef = graph.vertexRef();
 			final Link edgeRef = graph.edgeRef();
+			idToSpotIDmap = RefMaps.createIntRefMap( graph.vertices(), -1, DEFAULT_NSPOTS );
 
+			/*
+			 * Read the content of the model element. The children of the model
+			 * element (section) and their children (subsection) tell how to
+			 * interpret the elements below.
+			 */
+
+			String section = null;
+			String subsection = null;
+			int depth = 1;
 			try
 			{
-				final double[] pos = new double[ 3 ];
-
-				// Map spot ID -> Vertex
-				final IntRefMap< Spot > idToSpotIDmap = RefMaps.createIntRefMap( graph.vertices(), -1 );
-
-				/*
-				 * Import spots.
-				 */
-				final Element allSpotsEl = modelEl.getChild( SPOT_COLLECTION_TAG );
-				final List< Element > allFramesEl = allSpotsEl.getChildren( SPOT_FRAME_COLLECTION_TAG );
-				for ( final Element frameEl : allFramesEl )
+				while ( depth > 0 )
 				{
-					final List< Element > frameSpotsEl = frameEl.getChildren( SPOT_ELEMENT_TAG );
-					for ( final Element spotEl : frameSpotsEl )
+					final int event = reader.next();
+					if ( event == XMLStreamConstants.END_ELEMENT )
 					{
-						final boolean visible = Integer.parseInt( spotEl.getAttributeValue( VISIBILITY_FEATURE_NAME ) ) != 0;
-						if ( !visible )
-							continue;
-
-						// Create spot.
-						pos[ 0 ] = Double.parseDouble( spotEl.getAttributeValue( POSITION_X_FEATURE_NAME ) );
-						pos[ 1 ] = Double.parseDouble( spotEl.getAttributeValue( POSITION_Y_FEATURE_NAME ) );
-						pos[ 2 ] = Double.parseDouble( spotEl.getAttributeValue( POSITION_Z_FEATURE_NAME ) );
-						final double radius = Double.parseDouble( spotEl.getAttributeValue( RADIUS_FEATURE_NAME ) );
-						final int frame = Integer.parseInt( spotEl.getAttributeValue( FRAME_FEATURE_NAME ) );
-						final int id = Integer.parseInt( spotEl.getAttributeValue( ID_FEATURE_NAME ) );
-						final String label = spotEl.getAttributeValue( LABEL_FEATURE_NAME );
-
-						final Spot spot = graph.addVertex( ref ).init( frame, pos, radius );
-						spot.setLabel( label );
-						idToSpotIDmap.put( id, spot, putRef );
-
-						// Spot features.
-						for ( final String featureKey : spotDoubleFeatureMap.keySet() )
+						depth--;
+						// A batch ends with the frame or track of its objects.
+						if ( depth == 2 )
 						{
-							final String attributeValue = spotEl.getAttributeValue( featureKey );
-							if ( null != attributeValue )
-							{
-								final double val = Double.parseDouble( attributeValue );
-								final DoublePropertyMap< Spot > feature = spotDoubleFeatureMap.get( featureKey );
-								feature.set( spot, val );
-							}
+							subsection = null;
+							finishBatch();
 						}
-						for ( final String featureKey : spotIntFeatureMap.keySet() )
+						else if ( depth == 1 )
 						{
-							final String attributeValue = spotEl.getAttributeValue( featureKey );
-							if ( null != attributeValue )
-							{
-								final int val = NumberFormat.getInstance().parse( attributeValue ).intValue();
-								final IntPropertyMap< Spot > feature = spotIntFeatureMap.get( featureKey );
-								feature.set( spot, val );
-							}
+							section = null;
+							finishBatch();
 						}
+						continue;
 					}
-				}
+					if ( event != XMLStreamConstants.START_ELEMENT )
+						continue;
 
-				/*
-				 * Import edges.
-				 */
-				final Element trackCollectionEl = modelEl.getChild( TRACK_COLLECTION_TAG );
-				final List< Element > trakEls = trackCollectionEl.getChildren( TRACK_TAG );
-				for ( final Element trackEl : trakEls )
-				{
-					final List< Element > edgeEls = trackEl.getChildren( EDGE_TAG );
-					for ( final Element edgeEl : edgeEls )
+					depth++;
+					final String name = reader.getLocalName();
+					if ( depth == 2 )
+					{
+						section = name;
+						if ( SPOT_COLLECTION_TAG.equals( name ) )
+						{
+							final String nspots = reader.getAttributeValue( null, SPOT_COLLECTION_NSPOTS_ATTRIBUTE );
+							if ( nspots != null )
+								idToSpotIDmap = RefMaps.createIntRefMap( graph.vertices(), -1, Math.max( DEFAULT_NSPOTS, Integer.parseInt( nspots ) ) );
+						}
+					}
+					else if ( depth == 3 )
+						subsection = name;
+					else if ( depth == 4 )
 					{
-						// Create links.
-						final int sourceID = Integer.parseInt( edgeEl.getAttributeValue( EDGE_SOURCE_ATTRIBUTE ) );
-						final Spot source = idToSpotIDmap.get( sourceID, sourceRef );
-						final int targetID = Integer.parseInt( edgeEl.getAttributeValue( EDGE_TARGET_ATTRIBUTE ) );
-						final Spot target = idToSpotIDmap.get( targetID, targetRef );
-
-						// Protect against link time inversion.
-						final Link link;
-						if ( source.getTimepoint() < target.getTimepoint() )
-							link = graph.addEdge( source, target, edgeRef ).init();
-						else
-							link = graph.addEdge( target, source, edgeRef ).init();
-
-						// Edge features.
-						for ( final String featureKey : linkDoubleFeatureMap.keySet() )
+						if ( SPOT_ELEMENT_TAG.equals( name ) && SPOT_COLLECTION_TAG.equals( section ) )
 						{
-							final String attributeValue = edgeEl.getAttributeValue( featureKey );
-							if ( null != attributeValue )
-							{
-								final double val = Double.parseDouble( attributeValue );
-								final DoublePropertyMap< Link > pm = linkDoubleFeatureMap.get( featureKey );
-								pm.set( link, val );
-							}
+							startBatch();
+							readSpot( reader, ref, putRef );
+							countInBatch();
 						}
-						for ( final String featureKey : linkIntFeatureMap.keySet() )
+						else if ( EDGE_TAG.equals( name ) && TRACK_COLLECTION_TAG.equals( section ) )
 						{
-							final String attributeValue = edgeEl.getAttributeValue( featureKey );
-							if ( null != attributeValue )
-							{
-								final int val = NumberFormat.getInstance().parse( attributeValue ).intValue();
-								final IntPropertyMap< Link > pm = linkIntFeatureMap.get( featureKey );
-								pm.set( link, val );
-							}
+							startBatch();
+							readEdge( reader, sourceRef, targetRef, edgeRef );
+							countInBatch();
 						}
+						else if ( FEATURE_TAG.equals( name ) && SPOT_FEATURE_DECLARATION_TAG.equals( subsection ) )
+							declareSpotFeature( reader );
+						else if ( FEATURE_TAG.equals( name ) && EDGE_FEATURE_DECLARATION_TAG.equals( subsection ) )
+							declareLinkFeature( reader );
 					}
 				}
 			}
@@ -451,6 +531,7 @@ public class TrackMateImporter
 			}
 			finally
 			{
+				finishBatch();
 				graph.releaseRef( ref );
 				graph.releaseRef( putRef );
 				graph.releaseRef( sourceRef );
@@ -467,7 +548,248 @@ public class TrackMateImporter
 			featureModel.declareFeature( spotFeatures );
 			featureModel.declareFeature( linkFeatures );
 			featureModel.resumeListeners();
-			finishImport();
+		}
+
+		/**
+		 * Opens a batch of insertions, holding the write lock of the model
+		 * graph, unless one is already open.
+		 */
+		private void startBatch()
+		{
+			if ( batchSize < 0 )
+			{
+				startInsertion();
+				batchSize = 0;
+			}
+		}
+
+		private void countInBatch()
+		{
+			if ( ++batchSize >= INSERTION_BATCH_SIZE )
+				finishBatch();
+		}
+
+		/**
+		 * Closes the current batch of insertions, if any, releasing the write
+		 * lock of the model graph.
+		 */
+		private void finishBatch()
+		{
+			if ( batchSize >= 0 )
+			{
+				batchSize = -1;
+				finishInsertion();
+			}
+		}
+
+		private void declareSpotFeature( final XMLStreamReader reader )
+		{
+			final String featureKey = reader.getAttributeValue( null, FEATURE_ATTRIBUTE );
+			if ( ignoredSpotFeatureKeys.contains( featureKey ) )
+				return;
+			final String featureDimension = reader.getAttributeValue( null, FEATURE_DIMENSION_ATTRIBUTE );
+			final String units = dimensionToUnits( featureDimension, spaceUnits, timeUnits );
+			final boolean featureIsInt = Boolean.parseBoolean( reader.getAttributeValue( null, FEATURE_ISINT_ATTRIBUTE ) );
+			if ( featureIsInt )
+			{
+				final IntPropertyMap< Spot > values = new IntPropertyMap<>( graph.vertices().getRefPool(), Integer.MIN_VALUE );
+				spotFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
+				spotIntFeatureMap.put( featureKey, values );
+			}
+			else
+			{
+				final DoublePropertyMap< Spot > values = new DoublePropertyMap<>( graph.vertices().getRefPool(), Double.NaN );
+				spotFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
+				spotDoubleFeatureMap.put( featureKey, values );
+			}
+		}
+
+		private void declareLinkFeature( final XMLStreamReader reader )
+		{
+			final String featureKey = reader.getAttributeValue( null, FEATURE_ATTRIBUTE );
+			if ( ignoredLinkFeatureKeys.contains( featureKey ) )
+				return;
+			final String featureDimension = reader.getAttributeValue( null, FEATURE_DIMENSION_ATTRIBUTE );
+			final String units = dimensionToUnits( featureDimension, spaceUnits, timeUnits );
+			final boolean featureIsInt = Boolean.parseBoolean( reader.getAttributeValue( null, FEATURE_ISINT_ATTRIBUTE ) );
+			if ( featureIsInt )
+			{
+				final IntPropertyMap< Link > values = new IntPropertyMap<>( graph.edges().getRefPool(), Integer.MIN_VALUE );
+				linkFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
+				linkIntFeatureMap.put( featureKey, values );
+			}
+			else
+			{
+				final DoublePropertyMap< Link > values = new DoublePropertyMap<>( graph.edges().getRefPool(), Double.NaN );
+				linkFeatures.store( featureKey, dimensionToDimension( featureDimension ), units, values );
+				linkDoubleFeatureMap.put( featureKey, values );
+			}
+		}
+
+		private void readSpot( final XMLStreamReader reader, final Spot ref, final Spot putRef ) throws IOException, ParseException
+		{
+			// Reset, so that a missing coordinate is not taken from the previous spot.
+			Arrays.fill( pos, Double.NaN );
+			boolean visible = true;
+			double radius = 0.;
+			int frame = 0;
+			int id = -1;
+			String label = null;
+			final int n = reader.getAttributeCount();
+			for ( int i = 0; i < n; i++ )
+			{
+				final String key = reader.getAttributeLocalName( i );
+				switch ( key )
+				{
+				case VISIBILITY_FEATURE_NAME:
+					visible = Integer.parseInt( reader.getAttributeValue( i ) ) != 0;
+					break;
+				case POSITION_X_FEATURE_NAME:
+					pos[ 0 ] = Double.parseDouble( reader.getAttributeValue( i ) );
+					break;
+				case POSITION_Y_FEATURE_NAME:
+					pos[ 1 ] = Double.parseDouble( reader.getAttributeValue( i ) );
+					break;
+				case POSITION_Z_FEATURE_NAME:
+					pos[ 2 ] = Double.parseDouble( reader.getAttributeValue( i ) );
+					break;
+				case RADIUS_FEATURE_NAME:
+					radius = Double.parseDouble( reader.getAttributeValue( i ) );
+					break;
+				case FRAME_FEATURE_NAME:
+					frame = Integer.parseInt( reader.getAttributeValue( i ) );
+					break;
+				case ID_FEATURE_NAME:
+					id = Integer.parseInt( reader.getAttributeValue( i ) );
+					break;
+				case LABEL_FEATURE_NAME:
+					label = reader.getAttributeValue( i );
+					break;
+				default:
+					break;
+				}
+			}
+			if ( !visible )
+				return;
+			if ( Double.isNaN( pos[ 0 ] ) || Double.isNaN( pos[ 1 ] ) || Double.isNaN( pos[ 2 ] ) )
+				throw new IOException( "Could not import TrackMate project. Spot " + id + " has no position." );
+
+			// Create spot.
+			final Spot spot = graph.addVertex( ref ).init( frame, pos, radius );
+			spot.setLabel( label );
+			idToSpotIDmap.put( id, spot, putRef );
+
+			// Spot features.
+			for ( int i = 0; i < n; i++ )
+			{
+				final String featureKey = reader.getAttributeLocalName( i );
+				final DoublePropertyMap< Spot > doubleFeature = spotDoubleFeatureMap.get( featureKey );
+				if ( null != doubleFeature )
+				{
+					doubleFeature.set( spot, Double.parseDouble( reader.getAttributeValue( i ) ) );
+					continue;
+				}
+				final IntPropertyMap< Spot > intFeature = spotIntFeatureMap.get( featureKey );
+				if ( null != intFeature )
+					intFeature.set( spot, numberFormat.parse( reader.getAttributeValue( i ) ).intValue() );
+			}
+		}
+
+		private void readEdge( final XMLStreamReader reader, final Spot sourceRef, final Spot targetRef, final Link edgeRef ) throws ParseException
+		{
+			// Create links.
+			final int sourceID = Integer.parseInt( reader.getAttributeValue( null, EDGE_SOURCE_ATTRIBUTE ) );
+			final Spot source = idToSpotIDmap.get( sourceID, sourceRef );
+			final int targetID = Integer.parseInt( reader.getAttributeValue( null, EDGE_TARGET_ATTRIBUTE ) );
+			final Spot target = idToSpotIDmap.get( targetID, targetRef );
+			if ( null == source || null == target )
+				return;
+
+			// Protect against link time inversion.
+			final Link link;
+			if ( source.getTimepoint() < target.getTimepoint() )
+				link = graph.addEdge( source, target, edgeRef ).init();
+			else
+				link = graph.addEdge( target, source, edgeRef ).init();
+
+			// Edge features.
+			final int n = reader.getAttributeCount();
+			for ( int i = 0; i < n; i++ )
+			{
+				final String featureKey = reader.getAttributeLocalName( i );
+				final DoublePropertyMap< Link > doubleFeature = linkDoubleFeatureMap.get( featureKey );
+				if ( null != doubleFeature )
+				{
+					doubleFeature.set( link, Double.parseDouble( reader.getAttributeValue( i ) ) );
+					continue;
+				}
+				final IntPropertyMap< Link > intFeature = linkIntFeatureMap.get( featureKey );
+				if ( null != intFeature )
+					intFeature.set( link, numberFormat.parse( reader.getAttributeValue( i ) ).intValue() );
+			}
+		}
+	}
+
+	/**
+	 * Reports the percentage of the file read so far to a
+	 * {@link ProgressListener}.
+	 */
+	private static final class ProgressInputStream extends FilterInputStream
+	{
+		private final long length;
+
+		private final ProgressListener listener;
+
+		private long read;
+
+		private int percent;
+
+		ProgressInputStream( final InputStream in, final long length, final ProgressListener listener )
+		{
+			super( in );
+			this.length = Math.max( 1, length );
+			this.listener = listener;
+			this.read = 0;
+			this.percent = -1;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			final int b = super.read();
+			if ( b >= 0 )
+				advance( 1 );
+			return b;
+		}
+
+		@Override
+		public int read( final byte[] b, final int off, final int len ) throws IOException
+		{
+			final int n = super.read( b, off, len );
+			if ( n > 0 )
+				advance( n );
+			return n;
+		}
+
+		@Override
+		public long skip( final long n ) throws IOException
+		{
+			final long skipped = super.skip( n );
+			advance( skipped );
+			return skipped;
+		}
+
+		private void advance( final long n )
+		{
+			read += n;
+			if ( null == listener )
+				return;
+			final int p = ( int ) ( 100 * read / length );
+			if ( p != percent )
+			{
+				percent = p;
+				listener.showProgress( p, 100 );
+			}
 		}
 	}
 
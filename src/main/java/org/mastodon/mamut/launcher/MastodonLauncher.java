@@ -59,6 +59,7 @@ import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.project.MamutImagePlusProject;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.ui.LoggingProgressListener;
 import org.mastodon.ui.util.EverythingDisablerAndReenabler;
 import org.mastodon.ui.util.ExtensionFileFilter;
 import org.mastodon.ui.util.FileChooser;
@@ -573,11 +574,14 @@ public class MastodonLauncher extends JFrame
 		new Thread( () -> {
 			try
 			{
-
+				gui.clearLog();
 				final TrackMateImporter importer = new TrackMateImporter( file );
 				final WindowManager windowManager = createWindowManager();
 				windowManager.getProjectManager().open( importer.createProject() );
-				importer.readModel( windowManager.getAppModel().getModel(), windowManager.getFeatureSpecsService() );
+				importer.readModel(
+						windowManager.getAppModel().getModel(),
+						windowManager.getFeatureSpecsService(),
+						new LoggingProgressListener( s -> gui.setStatus( s + "\n" ) ) );
 				new MainWindow( windowManager ).setVisible( true );
 				dispose();
 			}
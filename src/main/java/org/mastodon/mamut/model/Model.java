@@ -46,7 +46,6 @@ import org.mastodon.graph.GraphIdBimap;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
-import org.mastodon.labels.LabelSets;
 import org.mastodon.mamut.feature.LinkDisplacementFeature;
 import org.mastodon.mamut.feature.LinkTargetIdFeature;
 import org.mastodon.mamut.feature.LinkVelocityFeature;
@@ -63,10 +62,10 @@ import org.mastodon.model.AbstractModel;
 import org.mastodon.model.tag.DefaultTagSetModel;
 import org.mastodon.model.tag.RawTagSetModelIO;
 import org.mastodon.model.tag.TagSetModel;
+import org.mastodon.properties.IntPropertyMap;
 import org.mastodon.properties.Property;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.spatial.SpatioTemporalIndexImp;
-import org.mastodon.spatial.SpatioTemporalIndexImpRebuilderThread;
 import org.mastodon.undo.GraphUndoRecorder;
 import org.mastodon.undo.Recorder;
 import org.mastodon.undo.UndoPointMarker;
@@ -101,6 +100,8 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	private final SpatioTemporalIndex< Spot > index;
 
+	private final SpatialIndexMaintenance indexMaintenance;
+
 	private final ReentrantReadWriteLock lock;
 
 	private final GraphUndoRecorder< Spot, Link > undoRecorder;
@@ -129,10 +130,10 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		this.timeUnits = timeUnits;
 		final SpatioTemporalIndexImp< Spot, Link > theIndex = new SpatioTemporalIndexImp<>( modelGraph, modelGraph.idmap().vertexIdBimap() );
 		/*
-		 * Every 1 second, rebuild spatial indices with more than 100
-		 * modifications
+		 * Rebuild spatial indices with more than 100 modifications. Check at
+		 * least every second.
 		 */
-		new SpatioTemporalIndexImpRebuilderThread( "Rebuild spatial indices", theIndex, 100, 1000, true ).start();
+		indexMaintenance = new SpatialIndexMaintenance( modelGraph, theIndex, 100, 1000 );
 		index = theIndex;
 		lock = modelGraph.getLock();
 
@@ -154,20 +155,20 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
 				{
 					@Override
-					protected LabelSets< Spot, Integer > getVertexIdLabelSets()
+					protected IntPropertyMap< Spot > getVertexTagProperty()
 					{
-						return super.getVertexIdLabelSets();
+						return super.getVertexTagProperty();
 					}
-				}.getVertexIdLabelSets() );
+				}.getVertexTagProperty() );
 		edgeUndoableProperties.add(
 				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
 				{
 					@Override
-					protected LabelSets< Link, Integer > getEdgeIdLabelSets()
+					protected IntPropertyMap< Link > getEdgeTagProperty()
 					{
-						return super.getEdgeIdLabelSets();
+						return super.getEdgeTagProperty();
 					}
-				}.getEdgeIdLabelSets() );
+				}.getEdgeTagProperty() );
 
 		undoRecorder = new GraphUndoRecorder<>(
 				initialCapacity,
@@ -200,6 +201,8 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 
 	/**
 	 * Clears this model and loads the model from the specified project folder.
+	 * If the project stores the model graph as columnar files, these are read
+	 * instead of the serialized model graph.
 	 *
 	 * @param reader
 	 *            reader from which to load the raw project files.
@@ -210,7 +213,9 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public FileIdToGraphMap< Spot, Link > loadRaw( final MamutProject.ProjectReader reader ) throws IOException
 	{
-		final FileIdToGraphMap< Spot, Link > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), ModelSerializer.getInstance() );
+		final FileIdToGraphMap< Spot, Link > idmap = reader.hasRawModelColumns()
+				? modelGraph.loadColumns( reader )
+				: modelGraph.loadRaw( reader.getRawModelInputStream(), ModelSerializer.getInstance() );
 
 		tagSetModel.pauseListeners();
 		tagSetModel.clear();
@@ -228,7 +233,10 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	}
 
 	/**
-	 * Saves this model to the specified the specified project folder.
+	 * Saves this model to the specified the specified project folder. The
+	 * model graph is saved as columnar files if
+	 * {@link MamutProject.ProjectWriter#isRawModelColumnar()} is
+	 * {@code true}.
 	 *
 	 * @param writer
 	 *            writer to save the raw project files.
@@ -239,16 +247,50 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 	 */
 	public GraphToFileIdMap< Spot, Link > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
-		final GraphToFileIdMap< Spot, Link > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance() );
+		final GraphToFileIdMap< Spot, Link > idmap = saveRawGraph( writer );
+		saveRawTags( writer, idmap );
+		return idmap;
+	}
+
+	/**
+	 * Saves the model graph of this model, but not the tags, to the specified
+	 * project folder. Use {@link #saveRawTags(MamutProject.ProjectWriter, GraphToFileIdMap)}
+	 * with the returned map to save the tags, possibly concurrently with the
+	 * features.
+	 *
+	 * @param writer
+	 *            writer to save the raw project files.
+	 * @return the {@link GraphToFileIdMap} object generated by saving the model
+	 *         graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public GraphToFileIdMap< Spot, Link > saveRawGraph( final MamutProject.ProjectWriter writer ) throws IOException
+	{
+		return writer.isRawModelColumnar()
+				? ModelColumnsIO.write( modelGraph, writer )
+				: modelGraph.saveRaw( writer.getRawModelOutputStream(), ModelSerializer.getInstance() );
+	}
 
+	/**
+	 * Saves the tags of this model to the specified project folder.
+	 *
+	 * @param writer
+	 *            writer to save the raw project files.
+	 * @param idmap
+	 *            the {@link GraphToFileIdMap} object generated by saving the
+	 *            model graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public void saveRawTags( final MamutProject.ProjectWriter writer, final GraphToFileIdMap< Spot, Link > idmap ) throws IOException
+	{
 		try (
 				final OutputStream fos = writer.getRawTagsOutputStream();
 				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
 		{
 			RawTagSetModelIO.write( tagSetModel, idmap, oos );
 		}
-
-		return idmap;
 	}
 
 	/**
@@ -261,6 +303,17 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return index;
 	}
 
+	/**
+	 * Exposes the object that decides when the spatial indices of this model
+	 * are rebuilt, and that keeps metrics about these rebuilds.
+	 *
+	 * @return the spatial index maintenance.
+	 */
+	public SpatialIndexMaintenance getSpatialIndexMaintenance()
+	{
+		return indexMaintenance;
+	}
+
 	public SpatioTemporalIndex< BranchSpot > getBranchGraphSpatioTemporalIndex()
 	{
 		return branchIndex;
@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mastodon.collection.IntRefMap;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefMaps;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.mamut.project.LargeByteBuffer;
+import org.mastodon.mamut.project.MamutProject;
+
+/**
+ * Reads and writes a {@link ModelGraph} as fixed-layout binary columns.
+ * <p>
+ * The model is split over three files:
+ * <ul>
+ * <li>the spot columns: timepoint, position, covariance, bounding-sphere
+ * radius squared and label index, each stored contiguously for all spots;
+ * <li>the link columns: source and target spot file ids;
+ * <li>the label string table, indexed by the spot label column.
+ * </ul>
+ * All files start with a magic number, a format version and the number of
+ * entries. Values are stored big-endian at fixed offsets, so that the columns
+ * can be read from a {@link LargeByteBuffer} mapped with
+ * {@link java.nio.channels.FileChannel#map} without intermediate copies or
+ * object streams. Offsets are {@code long}, the spot columns of more than
+ * about 24 million spots exceed 2 GB.
+ * <p>
+ * Spot and link file ids are assigned consecutively in iteration order, and
+ * links are stored in the order of the outgoing edge lists of their source
+ * spots so that child order is preserved on reading.
+ * <p>
+ * Reading still copies every spot and link into the pools of the graph, so
+ * it takes time proportional to the size of the model. The pools cannot be
+ * backed by the mapped columns: they store one interleaved record per object,
+ * with the links of the graph threaded through the records, in a heap array
+ * of {@link org.mastodon.pool.SingleArrayMemPool}. What the columns save
+ * compared to the serialized model file is the object stream: the copy is a
+ * sequential scan of each column, and the file pages are only read once.
+ * {@code ModelColumnsIOBenchmark} compares the two.
+ */
+class ModelColumnsIO
+{
+
+	static final int SPOTS_MAGIC = 0x4d535054; // MSPT
+
+	static final int LINKS_MAGIC = 0x4d4c4e4b; // MLNK
+
+	static final int LABELS_MAGIC = 0x4d4c424c; // MLBL
+
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+	private static final int NO_LABEL = -1;
+
+	private ModelColumnsIO()
+	{}
+
+	/**
+	 * Writes the spot, link and label columns of the specified graph.
+	 *
+	 * @param graph
+	 *            the graph to write.
+	 * @param writer
+	 *            the project writer that provides the column streams. The
+	 *            streams are opened and closed one after the other.
+	 * @return the map from graph objects to file ids.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing.
+	 */
+	static GraphToFileIdMap< Spot, Link > write(
+			final ModelGraph graph,
+			final MamutProject.ProjectWriter writer ) throws IOException
+	{
+		final SpotPool pool = graph.getVertexPool();
+		final int numSpots = graph.vertices().size();
+		final int numLinks = graph.edges().size();
+		final RefIntMap< Spot > spotToFileId = RefMaps.createRefIntMap( graph.vertices(), -1, numSpots );
+		final RefIntMap< Link > linkToFileId = RefMaps.createRefIntMap( graph.edges(), -1, numLinks );
+
+		int id = 0;
+		for ( final Spot spot : graph.vertices() )
+			spotToFileId.put( spot, id++ );
+
+		/*
+		 * Spot columns.
+		 */
+		final Map< String, Integer > labelIndex = new HashMap<>();
+		final List< String > labels = new ArrayList<>();
+		try (final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( writer.getRawSpotColumnsOutputStream(), 1024 * 1024 ) ))
+		{
+			writeHeader( dos, SPOTS_MAGIC, numSpots );
+			for ( final Spot spot : graph.vertices() )
+				dos.writeInt( spot.getTimepoint() );
+			for ( final Spot spot : graph.vertices() )
+				for ( int d = 0; d < 3; ++d )
+					dos.writeDouble( spot.getDoublePosition( d ) );
+			for ( final Spot spot : graph.vertices() )
+				for ( int i = 0; i < 6; ++i )
+					dos.writeDouble( pool.covariance.get( spot, i ) );
+			for ( final Spot spot : graph.vertices() )
+				dos.writeDouble( pool.boundingSphereRadiusSqu.get( spot ) );
+			for ( final Spot spot : graph.vertices() )
+			{
+				if ( pool.label.isSet( spot ) )
+				{
+					final String label = pool.label.get( spot );
+					Integer index = labelIndex.get( label );
+					if ( index == null )
+					{
+						index = labels.size();
+						labelIndex.put( label, index );
+						labels.add( label );
+					}
+					dos.writeInt( index );
+				}
+				else
+					dos.writeInt( NO_LABEL );
+			}
+		}
+
+		/*
+		 * Link columns.
+		 */
+		try (final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( writer.getRawLinkColumnsOutputStream(), 1024 * 1024 ) ))
+		{
+			writeHeader( dos, LINKS_MAGIC, numLinks );
+			final Spot ref = graph.vertexRef();
+			id = 0;
+			for ( final Spot spot : graph.vertices() )
+				for ( final Link link : spot.outgoingEdges() )
+				{
+					linkToFileId.put( link, id++ );
+					dos.writeInt( spotToFileId.get( spot ) );
+					dos.writeInt( spotToFileId.get( link.getTarget( ref ) ) );
+				}
+			graph.releaseRef( ref );
+		}
+
+		/*
+		 * Label string table.
+		 */
+		try (final DataOutputStream dos = new DataOutputStream( new BufferedOutputStream( writer.getRawLabelTableOutputStream(), 1024 * 1024 ) ))
+		{
+			writeHeader( dos, LABELS_MAGIC, labels.size() );
+			for ( final String label : labels )
+			{
+				final byte[] bytes = label.getBytes( StandardCharsets.UTF_8 );
+				dos.writeInt( bytes.length );
+				dos.write( bytes );
+			}
+		}
+
+		return new GraphToFileIdMap<>( spotToFileId, linkToFileId );
+	}
+
+	/**
+	 * Adds the spots and links stored in the specified columns to the graph.
+	 * The graph listeners are expected to be paused by the caller.
+	 *
+	 * @param graph
+	 *            the graph to add spots and links to.
+	 * @param spots
+	 *            the spot columns.
+	 * @param links
+	 *            the link columns.
+	 * @param labels
+	 *            the label string table.
+	 * @return the map from file ids to graph objects.
+	 * @throws IOException
+	 *             if the buffers do not contain valid model columns.
+	 */
+	static FileIdToGraphMap< Spot, Link > read(
+			final ModelGraph graph,
+			final LargeByteBuffer spots,
+			final LargeByteBuffer links,
+			final LargeByteBuffer labels ) throws IOException
+	{
+		final SpotPool pool = graph.getVertexPool();
+
+		/*
+		 * Label string table.
+		 */
+		final int numLabels = readHeader( labels, LABELS_MAGIC, "label table" );
+		final String[] labelTable = new String[ numLabels ];
+		long offset = HEADER_SIZE;
+		for ( int i = 0; i < numLabels; ++i )
+		{
+			checkSize( labels, offset + Integer.BYTES, "label table" );
+			final int length = labels.getInt( offset );
+			if ( length < 0 )
+				throw new IOException( "Invalid label table file. Negative length of label " + i + "." );
+			checkSize( labels, offset + Integer.BYTES + length, "label table" );
+			offset += Integer.BYTES;
+			final byte[] bytes = new byte[ length ];
+			for ( int j = 0; j < length; ++j )
+				bytes[ j ] = labels.get( offset + j );
+			offset += length;
+			labelTable[ i ] = new String( bytes, StandardCharsets.UTF_8 );
+		}
+
+		/*
+		 * Spot columns.
+		 */
+		final int numSpots = readHeader( spots, SPOTS_MAGIC, "spot columns" );
+		final long timepointOffset = HEADER_SIZE;
+		final long positionOffset = timepointOffset + ( long ) numSpots * Integer.BYTES;
+		final long covarianceOffset = positionOffset + 3L * numSpots * Double.BYTES;
+		final long radiusOffset = covarianceOffset + 6L * numSpots * Double.BYTES;
+		final long labelOffset = radiusOffset + ( long ) numSpots * Double.BYTES;
+		checkSize( spots, labelOffset + ( long ) numSpots * Integer.BYTES, "spot columns" );
+
+		final IntRefMap< Spot > fileIdToSpot = RefMaps.createIntRefMap( graph.vertices(), -1, numSpots );
+		final Spot spot = graph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		final double[] cov = new double[ 6 ];
+		for ( int i = 0; i < numSpots; ++i )
+		{
+			final int timepoint = spots.getInt( timepointOffset + ( long ) i * Integer.BYTES );
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = spots.getDouble( positionOffset + ( 3L * i + d ) * Double.BYTES );
+			for ( int j = 0; j < 6; ++j )
+				cov[ j ] = spots.getDouble( covarianceOffset + ( 6L * i + j ) * Double.BYTES );
+			final double rsqu = spots.getDouble( radiusOffset + ( long ) i * Double.BYTES );
+			graph.addVertex( spot ).initRaw( timepoint, pos, cov, rsqu );
+
+			final int label = spots.getInt( labelOffset + ( long ) i * Integer.BYTES );
+			if ( label != NO_LABEL )
+			{
+				if ( label < 0 || label >= numLabels )
+					throw new IOException( "Invalid spot columns file. Label index " + label + " of spot " + i
+							+ " is out of the label table of " + numLabels + " labels." );
+				pool.label.set( spot, labelTable[ label ] );
+			}
+
+			fileIdToSpot.put( i, spot );
+		}
+
+		/*
+		 * Link columns.
+		 */
+		final int numLinks = readHeader( links, LINKS_MAGIC, "link columns" );
+		checkSize( links, HEADER_SIZE + 2L * numLinks * Integer.BYTES, "link columns" );
+
+		final IntRefMap< Link > fileIdToLink = RefMaps.createIntRefMap( graph.edges(), -1, numLinks );
+		final Spot target = graph.vertexRef();
+		final Link link = graph.edgeRef();
+		for ( int i = 0; i < numLinks; ++i )
+		{
+			final int sourceId = links.getInt( HEADER_SIZE + 2L * i * Integer.BYTES );
+			final int targetId = links.getInt( HEADER_SIZE + ( 2L * i + 1 ) * Integer.BYTES );
+			if ( sourceId < 0 || sourceId >= numSpots || targetId < 0 || targetId >= numSpots )
+				throw new IOException( "Invalid link columns file. Link " + i + " from spot " + sourceId + " to spot " + targetId
+						+ " refers to a spot out of the " + numSpots + " spots." );
+			fileIdToSpot.get( sourceId, spot );
+			fileIdToSpot.get( targetId, target );
+			graph.addEdge( spot, target, link ).init();
+			fileIdToLink.put( i, link );
+		}
+		graph.releaseRef( spot );
+		graph.releaseRef( target );
+		graph.releaseRef( link );
+
+		return new FileIdToGraphMap<>( fileIdToSpot, fileIdToLink );
+	}
+
+	private static void writeHeader( final DataOutputStream dos, final int magic, final int size ) throws IOException
+	{
+		dos.writeInt( magic );
+		dos.writeInt( VERSION );
+		dos.writeInt( size );
+	}
+
+	private static int readHeader( final LargeByteBuffer buffer, final int magic, final String what ) throws IOException
+	{
+		checkSize( buffer, HEADER_SIZE, what );
+		if ( buffer.getInt( 0 ) != magic )
+			throw new IOException( "Invalid " + what + " file. Wrong magic number." );
+		final int version = buffer.getInt( Integer.BYTES );
+		if ( version != VERSION )
+			throw new IOException( "Unsupported " + what + " file version: " + version );
+		final int size = buffer.getInt( 2 * Integer.BYTES );
+		if ( size < 0 )
+			throw new IOException( "Invalid " + what + " file. Negative number of entries: " + size );
+		return size;
+	}
+
+	private static void checkSize( final LargeByteBuffer buffer, final long expected, final String what ) throws IOException
+	{
+		if ( buffer.size() < expected )
+			throw new IOException( "Truncated " + what + " file. Expected at least " + expected + " bytes but got " + buffer.size() + "." );
+	}
+}
@@ -28,8 +28,13 @@
  */
 package org.mastodon.mamut.model;
 
+import java.io.IOException;
+
 import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.io.properties.StringPropertyMapSerializer;
+import org.mastodon.mamut.project.LargeByteBuffer;
+import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.model.AbstractModelGraph;
 import org.mastodon.pool.ByteMappedElement;
 import org.mastodon.properties.PropertyChangeListener;
@@ -63,6 +68,34 @@ public class ModelGraph extends AbstractModelGraph< ModelGraph, SpotPool, LinkPo
 		return idmap;
 	}
 
+	/**
+	 * Clears this graph and loads it from the columnar model files of the
+	 * specified project.
+	 *
+	 * @param reader
+	 *            reader from which to load the model columns.
+	 * @return the map from file ids to graph objects.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the columns.
+	 * @see ModelColumnsIO
+	 */
+	FileIdToGraphMap< Spot, Link > loadColumns( final MamutProject.ProjectReader reader ) throws IOException
+	{
+		final LargeByteBuffer spots = reader.getRawSpotColumns();
+		final LargeByteBuffer links = reader.getRawLinkColumns();
+		final LargeByteBuffer labels = reader.getRawLabelTable();
+		pauseListeners();
+		clear();
+		try
+		{
+			return ModelColumnsIO.read( this, spots, links, labels );
+		}
+		finally
+		{
+			resumeListeners();
+		}
+	}
+
 	/**
 	 * Register a {@link PropertyChangeListener} that will be notified when
 	 * a {@code Spot}s label is changed.
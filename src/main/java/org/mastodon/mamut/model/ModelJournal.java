@@ -0,0 +1,1410 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import org.mastodon.collection.IntRefMap;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefMaps;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.mamut.feature.MamutRawFeatureModelIO;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.model.tag.DefaultObjTags;
+import org.mastodon.model.tag.DefaultObjTags.TagChangeListener;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.ObjTags;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.properties.PropertyChangeListener;
+import org.scijava.Context;
+import org.scijava.listeners.Listeners;
+
+/**
+ * Write-ahead journal of the edits made to a {@link Model}.
+ * <p>
+ * The journal records the same changes as the undo recorder of the model:
+ * spots and links added and removed, changes to spot positions, covariances
+ * and labels, and changes to the tags of spots and links. They are appended to an in-memory buffer when they
+ * happen, which is cheap, and the buffer is appended to a log file in the
+ * journal folder by a background thread every flush interval.
+ * <p>
+ * Every compaction interval, if the log grew past a quarter of the size of
+ * the last snapshot, and at least past {@value #MIN_COMPACTION_LOG_SIZE}
+ * bytes, the background thread writes a full snapshot of the model graph,
+ * tags and features to the journal folder and starts a new, empty log. Edits
+ * are blocked while the model is copied to memory, not while the snapshot is
+ * written to disk. Because a small log replays quickly, snapshots are rare
+ * and most compaction intervals cost nothing. Snapshots and logs are numbered by
+ * generation. A snapshot is only used once its {@value #COMPLETE_MARKER}
+ * marker file is written, so a crash while writing one falls back to the
+ * previous generation.
+ * <p>
+ * Generation 0 is the project as last saved. The caller records a fingerprint
+ * of the saved project files with {@link #setBase(File, String)}, and checks
+ * it with {@link #isBasedOn(File, String)} before recovering, so that edits
+ * are not replayed onto a project that was saved again elsewhere. When a
+ * project is opened, the caller loads the model from
+ * {@link #findSnapshot(File)} if there is one, or from the project otherwise. Then {@link #open(Model, File)} replays the log
+ * of that generation and resumes journaling. When the project is saved or
+ * the user discards the changes, the journal is {@link #discard() discarded}.
+ * <p>
+ * Spots are identified in the log by their position in the iteration order
+ * of the graph when the generation started, which is their file id in the
+ * project or snapshot. Spots added afterwards get consecutive ids. Links are
+ * identified by their source and target spots. Changes to the tag set
+ * structure cannot be described by the log and trigger a snapshot.
+ * <p>
+ * Feature values are not journaled. They are included in the snapshots if a
+ * {@link Context} is given, and are otherwise in the same state as during a
+ * normal session: values of objects edited since are not recomputed.
+ * <p>
+ * Journaling runs in the background. If the log or a snapshot cannot be
+ * written, the {@link #failureListeners()} are notified, once until the
+ * journal works again.
+ */
+public class ModelJournal implements Closeable
+{
+
+	/**
+	 * Default interval, in milliseconds, between two appends to the log file.
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	/**
+	 * Default interval, in milliseconds, between two snapshots.
+	 */
+	public static final long DEFAULT_COMPACTION_INTERVAL = 5 * 60 * 1000;
+
+	/**
+	 * Size, in bytes, below which the log is never compacted.
+	 */
+	public static final long MIN_COMPACTION_LOG_SIZE = 1 << 20;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	private static final String LOG_PREFIX = "journal-";
+
+	private static final String LOG_SUFFIX = ".log";
+
+	static final String COMPLETE_MARKER = "complete";
+
+	private static final String BASE_FILE = "base";
+
+	private static final byte ADD_SPOT = 1;
+
+	private static final byte REMOVE_SPOT = 2;
+
+	private static final byte ADD_LINK = 3;
+
+	private static final byte REMOVE_LINK = 4;
+
+	private static final byte SET_POSITION = 5;
+
+	private static final byte SET_COVARIANCE = 6;
+
+	private static final byte SET_LABEL = 7;
+
+	private static final byte SET_SPOT_TAGS = 8;
+
+	private static final byte SET_LINK_TAGS = 9;
+
+	private final Model model;
+
+	private final ModelGraph graph;
+
+	private final Context context;
+
+	private final File folder;
+
+	private final Recorder recorder;
+
+	private final ScheduledExecutorService executor;
+
+	private final ByteArrayOutputStream buffer;
+
+	private final DataOutputStream out;
+
+	private RefIntMap< Spot > ids;
+
+	private int nextId;
+
+	private int generation;
+
+	private FileChannel log;
+
+	/**
+	 * Whether edits were recorded since the last snapshot.
+	 */
+	private boolean dirty;
+
+	/**
+	 * Whether the graph was rebuilt, in which case the log cannot describe
+	 * the changes and a snapshot is needed.
+	 */
+	private boolean invalid;
+
+	private boolean closed;
+
+	/**
+	 * Size, in bytes, of the log of the current generation. Only accessed from
+	 * the background thread, or once it is stopped.
+	 */
+	private long logSize;
+
+	/**
+	 * Size, in bytes, of the snapshot of the current generation, 0 for the
+	 * project itself.
+	 */
+	private long snapshotSize;
+
+	/**
+	 * Whether the last background flush or compaction failed.
+	 */
+	private boolean failing;
+
+	private final Listeners.List< FailureListener > failureListeners;
+
+	/**
+	 * Interface for listeners notified when the journal cannot be written.
+	 */
+	public interface FailureListener
+	{
+		/**
+		 * Called from the background thread when appending to the log or
+		 * writing a snapshot failed. Edits made since the last successful
+		 * write may not be recoverable until a later write succeeds.
+		 *
+		 * @param e
+		 *            the exception that caused the failure.
+		 */
+		void journalFailed( IOException e );
+	}
+
+	private ModelJournal( final Model model, final Context context, final File folder, final int generation )
+	{
+		this.model = model;
+		this.graph = model.getGraph();
+		this.context = context;
+		this.folder = folder;
+		this.generation = generation;
+		this.recorder = new Recorder();
+		this.buffer = new ByteArrayOutputStream();
+		this.out = new DataOutputStream( buffer );
+		this.failureListeners = new Listeners.SynchronizedList<>();
+		this.executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread thread = new Thread( r, "Mastodon model journal" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+
+	/**
+	 * Opens the journal in the specified folder with the default flush and
+	 * compaction intervals.
+	 *
+	 * @param model
+	 *            the model to journal, loaded from the snapshot returned by
+	 *            {@link #findSnapshot(File)} or from the project if there is
+	 *            none.
+	 * @param folder
+	 *            the journal folder.
+	 * @return a new journal.
+	 * @throws IOException
+	 *             if the journal folder or log cannot be read or written.
+	 */
+	public static ModelJournal open( final Model model, final File folder ) throws IOException
+	{
+		return open( model, null, folder, DEFAULT_FLUSH_INTERVAL, DEFAULT_COMPACTION_INTERVAL );
+	}
+
+	/**
+	 * Opens the journal in the specified folder with the default flush and
+	 * compaction intervals. Features are included in the snapshots.
+	 *
+	 * @param model
+	 *            the model to journal, loaded from the snapshot returned by
+	 *            {@link #findSnapshot(File)} or from the project if there is
+	 *            none.
+	 * @param context
+	 *            the context, used to serialize features in the snapshots.
+	 * @param folder
+	 *            the journal folder.
+	 * @return a new journal.
+	 * @throws IOException
+	 *             if the journal folder or log cannot be read or written.
+	 */
+	public static ModelJournal open( final Model model, final Context context, final File folder ) throws IOException
+	{
+		return open( model, context, folder, DEFAULT_FLUSH_INTERVAL, DEFAULT_COMPACTION_INTERVAL );
+	}
+
+	/**
+	 * Opens the journal in the specified folder, without features in the
+	 * snapshots.
+	 *
+	 * @param model
+	 *            the model to journal.
+	 * @param folder
+	 *            the journal folder.
+	 * @param flushInterval
+	 *            the interval, in milliseconds, between two appends to the log
+	 *            file.
+	 * @param compactionInterval
+	 *            the interval, in milliseconds, between two snapshots.
+	 * @return a new journal.
+	 * @throws IOException
+	 *             if the journal folder or log cannot be read or written.
+	 * @see #open(Model, Context, File, long, long)
+	 */
+	public static ModelJournal open( final Model model, final File folder, final long flushInterval, final long compactionInterval ) throws IOException
+	{
+		return open( model, null, folder, flushInterval, compactionInterval );
+	}
+
+	/**
+	 * Opens the journal in the specified folder. The log of the current
+	 * generation, if any, is replayed on the model, then journaling resumes.
+	 *
+	 * @param model
+	 *            the model to journal, loaded from the snapshot returned by
+	 *            {@link #findSnapshot(File)} or from the project if there is
+	 *            none.
+	 * @param context
+	 *            the context, used to serialize features in the snapshots. May
+	 *            be {@code null}, in which case snapshots have no features.
+	 * @param folder
+	 *            the journal folder.
+	 * @param flushInterval
+	 *            the interval, in milliseconds, between two appends to the log
+	 *            file.
+	 * @param compactionInterval
+	 *            the interval, in milliseconds, between two snapshots.
+	 * @return a new journal.
+	 * @throws IOException
+	 *             if the journal folder or log cannot be read or written.
+	 */
+	public static ModelJournal open( final Model model, final Context context, final File folder, final long flushInterval, final long compactionInterval ) throws IOException
+	{
+		if ( !folder.exists() && !folder.mkdirs() )
+			throw new IOException( "Cannot create journal folder " + folder );
+
+		final File snapshot = findSnapshot( folder );
+		final int generation = ( snapshot == null ) ? 0 : generationOf( snapshot );
+		final ModelJournal journal = new ModelJournal( model, context, folder, generation );
+		journal.snapshotSize = ( snapshot == null ) ? 0 : sizeOf( snapshot );
+
+		// The replay edits the graph, readers must not see it half-done.
+		final WriteLock lock = journal.graph.getLock().writeLock();
+		lock.lock();
+		try
+		{
+			journal.resetIds();
+			final File logFile = journal.logFile( generation );
+			if ( logFile.exists() )
+				journal.dirty = journal.replay( logFile ) > 0;
+			journal.deleteOtherGenerations();
+			journal.log = FileChannel.open( logFile.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+			journal.logSize = journal.log.size();
+			journal.recorder.register();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if ( journal.dirty )
+			journal.graph.notifyGraphChanged();
+
+		journal.executor.scheduleWithFixedDelay( journal::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS );
+		journal.executor.scheduleWithFixedDelay( journal::compactQuietly, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS );
+		return journal;
+	}
+
+	/**
+	 * Returns the most recent complete snapshot in the specified journal
+	 * folder, or {@code null} if there is none. If a snapshot is returned, the
+	 * model must be loaded from it rather than from the project before
+	 * calling {@link #open(Model, File)}.
+	 *
+	 * @param folder
+	 *            the journal folder.
+	 * @return the snapshot folder, or {@code null}.
+	 */
+	public static File findSnapshot( final File folder )
+	{
+		final File[] snapshots = folder.listFiles( f -> f.isDirectory()
+				&& f.getName().startsWith( SNAPSHOT_PREFIX )
+				&& new File( f, COMPLETE_MARKER ).exists() );
+		if ( snapshots == null )
+			return null;
+
+		File latest = null;
+		for ( final File snapshot : snapshots )
+			if ( latest == null || generationOf( snapshot ) > generationOf( latest ) )
+				latest = snapshot;
+		return latest;
+	}
+
+	/**
+	 * Returns {@code true} if the specified journal folder holds edits that
+	 * are not in the saved project.
+	 *
+	 * @param folder
+	 *            the journal folder.
+	 * @return whether there is something to recover.
+	 */
+	public static boolean hasEdits( final File folder )
+	{
+		if ( findSnapshot( folder ) != null )
+			return true;
+		final File log = new File( folder, LOG_PREFIX + 0 + LOG_SUFFIX );
+		return log.exists() && log.length() > 0;
+	}
+
+	/**
+	 * Records the fingerprint of the saved project the edits of the specified
+	 * journal folder apply to.
+	 *
+	 * @param folder
+	 *            the journal folder.
+	 * @param fingerprint
+	 *            the fingerprint of the saved project, see
+	 *            {@link MamutProject#getSavedStateFingerprint()}.
+	 * @throws IOException
+	 *             if the fingerprint cannot be written.
+	 */
+	public static void setBase( final File folder, final String fingerprint ) throws IOException
+	{
+		final File tmp = new File( folder, BASE_FILE + ".tmp" );
+		Files.write( tmp.toPath(), fingerprint.getBytes( StandardCharsets.UTF_8 ) );
+		Files.move( tmp.toPath(), new File( folder, BASE_FILE ).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	/**
+	 * Returns {@code true} if the edits of the specified journal folder apply
+	 * to the saved project with the specified fingerprint. Returns
+	 * {@code false} if the journal has no recorded fingerprint.
+	 *
+	 * @param folder
+	 *            the journal folder.
+	 * @param fingerprint
+	 *            the fingerprint of the saved project, see
+	 *            {@link MamutProject#getSavedStateFingerprint()}.
+	 * @return whether the journal was recorded against this saved project.
+	 */
+	public static boolean isBasedOn( final File folder, final String fingerprint )
+	{
+		final File base = new File( folder, BASE_FILE );
+		if ( !base.exists() )
+			return false;
+		try
+		{
+			return fingerprint.equals( new String( Files.readAllBytes( base.toPath() ), StandardCharsets.UTF_8 ) );
+		}
+		catch ( final IOException e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes the specified journal folder without opening it, for instance
+	 * because the user chose not to recover its edits.
+	 *
+	 * @param folder
+	 *            the journal folder.
+	 */
+	public static void discard( final File folder )
+	{
+		delete( folder );
+	}
+
+	/**
+	 * Returns the listeners notified when the journal cannot be written.
+	 *
+	 * @return the failure listeners.
+	 */
+	public Listeners< FailureListener > failureListeners()
+	{
+		return failureListeners;
+	}
+
+	/**
+	 * Appends the pending edits to the log file and writes a snapshot of the
+	 * model now, instead of waiting for the compaction interval.
+	 *
+	 * @throws IOException
+	 *             if the snapshot cannot be written.
+	 */
+	public void compact() throws IOException
+	{
+		try
+		{
+			executor.submit( () -> {
+				compactNow();
+				return null;
+			} ).get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final java.util.concurrent.ExecutionException e )
+		{
+			if ( e.getCause() instanceof IOException )
+				throw ( IOException ) e.getCause();
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	/**
+	 * Stops journaling and flushes the pending edits to the log file. The
+	 * journal folder is left in place so that the edits can be recovered.
+	 */
+	@Override
+	public void close()
+	{
+		synchronized ( this )
+		{
+			if ( closed )
+				return;
+			closed = true;
+			recorder.unregister();
+		}
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination( 1, TimeUnit.MINUTES );
+			flush();
+			log.close();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Stops journaling and deletes the journal folder, for instance because
+	 * the model was saved or the changes discarded.
+	 */
+	public void discard()
+	{
+		close();
+		delete( folder );
+	}
+
+	/*
+	 * Background tasks.
+	 */
+
+	private void flushQuietly()
+	{
+		try
+		{
+			flush();
+			succeeded();
+		}
+		catch ( final IOException e )
+		{
+			synchronized ( this )
+			{
+				// The log may end with a partial record, only a snapshot can fix it.
+				invalid = true;
+				buffer.reset();
+			}
+			failed( e );
+		}
+	}
+
+	private void compactQuietly()
+	{
+		try
+		{
+			synchronized ( this )
+			{
+				if ( !invalid && ( !dirty || logSize + buffer.size() < Math.max( MIN_COMPACTION_LOG_SIZE, snapshotSize / 4 ) ) )
+					return;
+			}
+			compactNow();
+			succeeded();
+		}
+		catch ( final IOException e )
+		{
+			failed( e );
+		}
+	}
+
+	private void succeeded()
+	{
+		failing = false;
+	}
+
+	private void failed( final IOException e )
+	{
+		if ( failing )
+			return;
+		failing = true;
+		for ( final FailureListener l : failureListeners.list )
+			l.journalFailed( e );
+	}
+
+	private void flush() throws IOException
+	{
+		final byte[] bytes;
+		synchronized ( this )
+		{
+			if ( buffer.size() == 0 )
+				return;
+			bytes = buffer.toByteArray();
+			buffer.reset();
+		}
+		append( log, bytes );
+		logSize += bytes.length;
+	}
+
+	private static void append( final FileChannel channel, final byte[] bytes ) throws IOException
+	{
+		final ByteBuffer bb = ByteBuffer.wrap( bytes );
+		while ( bb.hasRemaining() )
+			channel.write( bb );
+		channel.force( false );
+	}
+
+	/**
+	 * Writes a snapshot of the next generation, then switches to an empty log.
+	 * <p>
+	 * The model is copied to memory under the graph read lock, which
+	 * guarantees that the snapshot, the new spot ids and the pending records
+	 * all describe the same state. The snapshot is written to disk after the
+	 * lock is released. Edits made meanwhile are buffered with the ids of the
+	 * next generation; this is safe because flushes run on the same thread as
+	 * this method.
+	 */
+	private void compactNow() throws IOException
+	{
+		final int previous = generation;
+		final int next = previous + 1;
+		final InMemoryProjectWriter data = new InMemoryProjectWriter();
+		final byte[] pending;
+		final RefIntMap< Spot > previousIds;
+		final int previousNextId;
+		final ReadLock lock = graph.getLock().readLock();
+		lock.lock();
+		try
+		{
+			final GraphToFileIdMap< Spot, Link > idmap = model.saveRaw( data );
+			if ( context != null )
+				MamutRawFeatureModelIO.serialize( context, model, idmap, data );
+			synchronized ( this )
+			{
+				pending = buffer.toByteArray();
+				buffer.reset();
+				generation = next;
+				previousIds = ids;
+				previousNextId = nextId;
+				resetIds();
+				dirty = false;
+				invalid = false;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		// Until the snapshot is complete, recovery uses the previous log.
+		append( log, pending );
+		logSize += pending.length;
+		try
+		{
+			final File dir = new File( folder, SNAPSHOT_PREFIX + next );
+			delete( dir );
+			if ( !dir.mkdirs() )
+				throw new IOException( "Cannot create snapshot folder " + dir );
+			final MamutProject snapshot = new MamutProject( dir );
+			snapshot.setRawModelColumnar( true );
+			try (final MamutProject.ProjectWriter writer = snapshot.openForWriting())
+			{
+				data.writeTo( writer );
+			}
+			if ( !new File( dir, COMPLETE_MARKER ).createNewFile() )
+				throw new IOException( "Cannot complete snapshot " + dir );
+		}
+		catch ( final IOException e )
+		{
+			synchronized ( this )
+			{
+				/*
+				 * Edits made while writing were buffered with the ids of the
+				 * failed generation and are lost. Stop recording until a
+				 * snapshot succeeds.
+				 */
+				generation = previous;
+				ids = previousIds;
+				nextId = previousNextId;
+				buffer.reset();
+				invalid = true;
+			}
+			throw e;
+		}
+
+		final FileChannel previousLog = log;
+		synchronized ( this )
+		{
+			log = FileChannel.open( logFile( next ).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		}
+		previousLog.close();
+		logSize = 0;
+		snapshotSize = data.size();
+		deleteOtherGenerations();
+	}
+
+	/**
+	 * Holds the files of a snapshot in memory, so that the model can be
+	 * copied quickly under the graph lock, and written to disk afterwards.
+	 */
+	private static class InMemoryProjectWriter implements MamutProject.ProjectWriter
+	{
+
+		private static final String FEATURE = "feature/";
+
+		private final Map< String, ChunkedOutputStream > files = new LinkedHashMap<>();
+
+		private synchronized OutputStream create( final String name )
+		{
+			final ChunkedOutputStream os = new ChunkedOutputStream();
+			files.put( name, os );
+			return os;
+		}
+
+		/**
+		 * Returns the total size, in bytes, of the files held in memory.
+		 */
+		synchronized long size()
+		{
+			long size = 0;
+			for ( final ChunkedOutputStream os : files.values() )
+				size += os.size();
+			return size;
+		}
+
+		/**
+		 * Writes the files held in memory to the specified project writer.
+		 */
+		void writeTo( final MamutProject.ProjectWriter writer ) throws IOException
+		{
+			for ( final Map.Entry< String, ChunkedOutputStream > entry : files.entrySet() )
+			{
+				final String name = entry.getKey();
+				final OutputStream os;
+				if ( name.startsWith( FEATURE ) )
+					os = writer.getFeatureOutputStream( name.substring( FEATURE.length() ) );
+				else
+				{
+					switch ( name )
+					{
+					case "model":
+						os = writer.getRawModelOutputStream();
+						break;
+					case "spots":
+						os = writer.getRawSpotColumnsOutputStream();
+						break;
+					case "links":
+						os = writer.getRawLinkColumnsOutputStream();
+						break;
+					case "labels":
+						os = writer.getRawLabelTableOutputStream();
+						break;
+					case "tags":
+						os = writer.getRawTagsOutputStream();
+						break;
+					default:
+						throw new IOException( "Unexpected snapshot file " + name );
+					}
+				}
+				try
+				{
+					entry.getValue().writeTo( os );
+				}
+				finally
+				{
+					os.close();
+				}
+			}
+		}
+
+		@Override
+		public OutputStream getProjectXmlOutputStream() throws IOException
+		{
+			throw new IOException( "Snapshots have no project file." );
+		}
+
+		@Override
+		public OutputStream getRawModelOutputStream()
+		{
+			return create( "model" );
+		}
+
+		@Override
+		public boolean isRawModelColumnar()
+		{
+			return true;
+		}
+
+		@Override
+		public OutputStream getRawSpotColumnsOutputStream()
+		{
+			return create( "spots" );
+		}
+
+		@Override
+		public OutputStream getRawLinkColumnsOutputStream()
+		{
+			return create( "links" );
+		}
+
+		@Override
+		public OutputStream getRawLabelTableOutputStream()
+		{
+			return create( "labels" );
+		}
+
+		@Override
+		public OutputStream getRawTagsOutputStream()
+		{
+			return create( "tags" );
+		}
+
+		@Override
+		public OutputStream getFeatureOutputStream( final String featureKey )
+		{
+			return create( FEATURE + featureKey );
+		}
+
+		@Override
+		public OutputStream getGuiOutputStream() throws IOException
+		{
+			throw new IOException( "Snapshots have no GUI file." );
+		}
+
+		@Override
+		public void close()
+		{}
+	}
+
+	/**
+	 * An output stream that stores bytes in a list of fixed-size chunks, so
+	 * that it is not limited to 2 GB and never copies what it holds.
+	 */
+	private static class ChunkedOutputStream extends OutputStream
+	{
+
+		private static final int CHUNK_SIZE = 1 << 20;
+
+		private final List< byte[] > chunks = new ArrayList<>();
+
+		private byte[] current;
+
+		private int pos = CHUNK_SIZE;
+
+		@Override
+		public void write( final int b )
+		{
+			if ( pos == CHUNK_SIZE )
+				nextChunk();
+			current[ pos++ ] = ( byte ) b;
+		}
+
+		@Override
+		public void write( final byte[] b, int off, int len )
+		{
+			while ( len > 0 )
+			{
+				if ( pos == CHUNK_SIZE )
+					nextChunk();
+				final int n = Math.min( len, CHUNK_SIZE - pos );
+				System.arraycopy( b, off, current, pos, n );
+				pos += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void nextChunk()
+		{
+			current = new byte[ CHUNK_SIZE ];
+			chunks.add( current );
+			pos = 0;
+		}
+
+		long size()
+		{
+			return chunks.isEmpty() ? 0 : ( long ) ( chunks.size() - 1 ) * CHUNK_SIZE + pos;
+		}
+
+		void writeTo( final OutputStream os ) throws IOException
+		{
+			for ( final byte[] chunk : chunks )
+				os.write( chunk, 0, chunk == current ? pos : CHUNK_SIZE );
+		}
+	}
+
+	/*
+	 * Replay.
+	 */
+
+	/**
+	 * Replays the specified log on the model. A truncated last record, left
+	 * by a crash while appending, is ignored.
+	 *
+	 * @return the number of records replayed.
+	 */
+	private int replay( final File logFile ) throws IOException
+	{
+		final SpotPool pool = graph.getVertexPool();
+		final ObjTags< Spot > spotTags = model.getTagSetModel().getVertexTags();
+		final ObjTags< Link > linkTags = model.getTagSetModel().getEdgeTags();
+		final TagSetStructure tss = model.getTagSetModel().getTagSetStructure();
+		final IntRefMap< Spot > spots = RefMaps.createIntRefMap( graph.vertices(), -1, graph.vertices().size() );
+		for ( final Spot spot : graph.vertices() )
+			spots.put( ids.get( spot ), spot );
+
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		final Link eref = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		final double[] cov = new double[ 6 ];
+		final double[][] cov33 = new double[ 3 ][ 3 ];
+		int n = 0;
+		try (final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( logFile ), 1024 * 1024 ) ))
+		{
+			while ( true )
+			{
+				final byte type;
+				try
+				{
+					type = in.readByte();
+				}
+				catch ( final EOFException e )
+				{
+					break;
+				}
+				try
+				{
+					switch ( type )
+					{
+					case ADD_SPOT:
+					{
+						final int id = in.readInt();
+						final int tp = in.readInt();
+						readDoubles( in, pos );
+						readDoubles( in, cov );
+						final double rsqu = in.readDouble();
+						graph.addVertex( ref1 ).initRaw( tp, pos, cov, rsqu );
+						spots.put( id, ref1 );
+						ids.put( ref1, id );
+						nextId = Math.max( nextId, id + 1 );
+						break;
+					}
+					case REMOVE_SPOT:
+					{
+						final Spot spot = spots.removeWithRef( in.readInt(), ref1 );
+						if ( spot != null )
+							graph.remove( spot );
+						break;
+					}
+					case ADD_LINK:
+					{
+						final Spot source = spots.get( in.readInt(), ref1 );
+						final Spot target = spots.get( in.readInt(), ref2 );
+						if ( source != null && target != null )
+							graph.addEdge( source, target, eref ).init();
+						break;
+					}
+					case REMOVE_LINK:
+					{
+						final Spot source = spots.get( in.readInt(), ref1 );
+						final Spot target = spots.get( in.readInt(), ref2 );
+						if ( source != null && target != null )
+						{
+							final Link link = graph.getEdge( source, target, eref );
+							if ( link != null )
+								graph.remove( link );
+						}
+						break;
+					}
+					case SET_POSITION:
+					{
+						final Spot spot = spots.get( in.readInt(), ref1 );
+						readDoubles( in, pos );
+						if ( spot != null )
+							spot.setPosition( pos );
+						break;
+					}
+					case SET_COVARIANCE:
+					{
+						final Spot spot = spots.get( in.readInt(), ref1 );
+						readDoubles( in, cov );
+						if ( spot != null )
+						{
+							int i = 0;
+							for ( int row = 0; row < 3; ++row )
+								for ( int col = row; col < 3; ++col )
+									cov33[ row ][ col ] = cov33[ col ][ row ] = cov[ i++ ];
+							spot.setCovariance( cov33 );
+						}
+						break;
+					}
+					case SET_LABEL:
+					{
+						final Spot spot = spots.get( in.readInt(), ref1 );
+						final String label = in.readBoolean() ? readString( in ) : null;
+						if ( spot != null )
+						{
+							if ( label == null )
+								pool.label.remove( spot );
+							else
+								spot.setLabel( label );
+						}
+						break;
+					}
+					case SET_SPOT_TAGS:
+					{
+						final Spot spot = spots.get( in.readInt(), ref1 );
+						final int[] tags = readTags( in );
+						if ( spot != null )
+							applyTags( spotTags, tss, spot, tags );
+						break;
+					}
+					case SET_LINK_TAGS:
+					{
+						final Spot source = spots.get( in.readInt(), ref1 );
+						final Spot target = spots.get( in.readInt(), ref2 );
+						final int[] tags = readTags( in );
+						if ( source != null && target != null )
+						{
+							final Link link = graph.getEdge( source, target, eref );
+							if ( link != null )
+								applyTags( linkTags, tss, link, tags );
+						}
+						break;
+					}
+					default:
+						throw new IOException( "Corrupted journal " + logFile + ". Unknown record type " + type + " after " + n + " records." );
+					}
+				}
+				catch ( final EOFException e )
+				{
+					// Truncated last record.
+					break;
+				}
+				++n;
+			}
+		}
+		finally
+		{
+			graph.releaseRef( ref1 );
+			graph.releaseRef( ref2 );
+			graph.releaseRef( eref );
+		}
+		return n;
+	}
+
+	private static void readDoubles( final DataInputStream in, final double[] values ) throws IOException
+	{
+		for ( int i = 0; i < values.length; ++i )
+			values[ i ] = in.readDouble();
+	}
+
+	private static String readString( final DataInputStream in ) throws IOException
+	{
+		final byte[] bytes = new byte[ in.readInt() ];
+		in.readFully( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Reads the tags of an object, as pairs of tag set id and tag id, or -1
+	 * if the object has no tag in the tag set.
+	 */
+	private static int[] readTags( final DataInputStream in ) throws IOException
+	{
+		final int[] tags = new int[ 2 * in.readInt() ];
+		for ( int i = 0; i < tags.length; ++i )
+			tags[ i ] = in.readInt();
+		return tags;
+	}
+
+	private static < O > void applyTags( final ObjTags< O > objTags, final TagSetStructure tss, final O obj, final int[] tags )
+	{
+		for ( int i = 0; i < tags.length; i += 2 )
+		{
+			final TagSet tagSet = findTagSet( tss, tags[ i ] );
+			if ( tagSet == null )
+				continue;
+			final ObjTagMap< O, Tag > tagMap = objTags.tags( tagSet );
+			final Tag tag = findTag( tagSet, tags[ i + 1 ] );
+			if ( tag == null )
+				tagMap.remove( obj );
+			else
+				tagMap.set( obj, tag );
+		}
+	}
+
+	private static TagSet findTagSet( final TagSetStructure tss, final int id )
+	{
+		for ( final TagSet tagSet : tss.getTagSets() )
+			if ( tagSet.id() == id )
+				return tagSet;
+		return null;
+	}
+
+	private static Tag findTag( final TagSet tagSet, final int id )
+	{
+		for ( final Tag tag : tagSet.getTags() )
+			if ( tag.id() == id )
+				return tag;
+		return null;
+	}
+
+	/*
+	 * Recording.
+	 */
+
+	private class Recorder implements GraphListener< Spot, Link >
+	{
+
+		private final PropertyChangeListener< Spot > positionListener = spot -> record( SET_POSITION, spot );
+
+		private final PropertyChangeListener< Spot > covarianceListener = spot -> record( SET_COVARIANCE, spot );
+
+		private final PropertyChangeListener< Spot > labelListener = spot -> record( SET_LABEL, spot );
+
+		private final TagChangeListener< Spot > spotTagsListener = new TagChangeListener< Spot >()
+		{
+			@Override
+			public void tagsChanged( final Spot spot )
+			{
+				record( SET_SPOT_TAGS, spot );
+			}
+
+			@Override
+			public void tagsRebuilt()
+			{
+				graphRebuilt();
+			}
+		};
+
+		private final TagChangeListener< Link > linkTagsListener = new TagChangeListener< Link >()
+		{
+			@Override
+			public void tagsChanged( final Link link )
+			{
+				recordLink( SET_LINK_TAGS, link );
+			}
+
+			@Override
+			public void tagsRebuilt()
+			{
+				graphRebuilt();
+			}
+		};
+
+		void register()
+		{
+			final SpotPool pool = graph.getVertexPool();
+			graph.addGraphListener( this );
+			pool.positionProperty().propertyChangeListeners().add( positionListener );
+			pool.covarianceProperty().propertyChangeListeners().add( covarianceListener );
+			graph.addVertexLabelListener( labelListener );
+			final ObjTags< Spot > spotTags = model.getTagSetModel().getVertexTags();
+			if ( spotTags instanceof DefaultObjTags )
+				( ( DefaultObjTags< Spot > ) spotTags ).tagChangeListeners().add( spotTagsListener );
+			final ObjTags< Link > linkTags = model.getTagSetModel().getEdgeTags();
+			if ( linkTags instanceof DefaultObjTags )
+				( ( DefaultObjTags< Link > ) linkTags ).tagChangeListeners().add( linkTagsListener );
+		}
+
+		void unregister()
+		{
+			final SpotPool pool = graph.getVertexPool();
+			graph.removeGraphListener( this );
+			pool.positionProperty().propertyChangeListeners().remove( positionListener );
+			pool.covarianceProperty().propertyChangeListeners().remove( covarianceListener );
+			graph.removeVertexLabelListener( labelListener );
+			final ObjTags< Spot > spotTags = model.getTagSetModel().getVertexTags();
+			if ( spotTags instanceof DefaultObjTags )
+				( ( DefaultObjTags< Spot > ) spotTags ).tagChangeListeners().remove( spotTagsListener );
+			final ObjTags< Link > linkTags = model.getTagSetModel().getEdgeTags();
+			if ( linkTags instanceof DefaultObjTags )
+				( ( DefaultObjTags< Link > ) linkTags ).tagChangeListeners().remove( linkTagsListener );
+		}
+
+		/**
+		 * Also called when the tag set structure changes, or tags are
+		 * cleared.
+		 */
+		@Override
+		public void graphRebuilt()
+		{
+			synchronized ( ModelJournal.this )
+			{
+				// The log cannot describe this, wait for the next snapshot.
+				invalid = true;
+				buffer.reset();
+				resetIds();
+			}
+			executor.execute( ModelJournal.this::compactQuietly );
+		}
+
+		@Override
+		public void vertexAdded( final Spot vertex )
+		{
+			synchronized ( ModelJournal.this )
+			{
+				final int id = nextId++;
+				ids.put( vertex, id );
+				record( ADD_SPOT, vertex );
+			}
+		}
+
+		@Override
+		public void vertexRemoved( final Spot vertex )
+		{
+			record( REMOVE_SPOT, vertex );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{
+			recordLink( ADD_LINK, edge );
+		}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			recordLink( REMOVE_LINK, edge );
+		}
+	}
+
+	private synchronized void record( final byte type, final Spot spot )
+	{
+		if ( closed || invalid )
+			return;
+		final int id = ids.get( spot );
+		if ( id < 0 )
+			return;
+
+		final SpotPool pool = graph.getVertexPool();
+		try
+		{
+			out.writeByte( type );
+			out.writeInt( id );
+			switch ( type )
+			{
+			case ADD_SPOT:
+				out.writeInt( spot.getTimepoint() );
+				for ( int d = 0; d < 3; ++d )
+					out.writeDouble( spot.getDoublePosition( d ) );
+				for ( int i = 0; i < 6; ++i )
+					out.writeDouble( pool.covariance.get( spot, i ) );
+				out.writeDouble( pool.boundingSphereRadiusSqu.get( spot ) );
+				break;
+			case SET_POSITION:
+				for ( int d = 0; d < 3; ++d )
+					out.writeDouble( spot.getDoublePosition( d ) );
+				break;
+			case SET_COVARIANCE:
+				for ( int i = 0; i < 6; ++i )
+					out.writeDouble( pool.covariance.get( spot, i ) );
+				break;
+			case SET_LABEL:
+				final boolean isSet = pool.label.isSet( spot );
+				out.writeBoolean( isSet );
+				if ( isSet )
+				{
+					// Not writeUTF(), which is limited to 64 KB.
+					final byte[] bytes = pool.label.get( spot ).getBytes( StandardCharsets.UTF_8 );
+					out.writeInt( bytes.length );
+					out.write( bytes );
+				}
+				break;
+			case SET_SPOT_TAGS:
+				writeTags( model.getTagSetModel().getVertexTags(), spot );
+				break;
+			default:
+				break;
+			}
+			dirty = true;
+		}
+		catch ( final IOException e )
+		{
+			// Cannot happen when writing to a ByteArrayOutputStream.
+			throw new RuntimeException( e );
+		}
+	}
+
+	private synchronized void recordLink( final byte type, final Link link )
+	{
+		if ( closed || invalid )
+			return;
+		final Spot ref = graph.vertexRef();
+		try
+		{
+			final int source = ids.get( link.getSource( ref ) );
+			final int target = ids.get( link.getTarget( ref ) );
+			if ( source < 0 || target < 0 )
+				return;
+			out.writeByte( type );
+			out.writeInt( source );
+			out.writeInt( target );
+			if ( type == SET_LINK_TAGS )
+				writeTags( model.getTagSetModel().getEdgeTags(), link );
+			dirty = true;
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		finally
+		{
+			graph.releaseRef( ref );
+		}
+	}
+
+	private < O > void writeTags( final ObjTags< O > objTags, final O obj ) throws IOException
+	{
+		final List< TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+		out.writeInt( tagSets.size() );
+		for ( final TagSet tagSet : tagSets )
+		{
+			final Tag tag = objTags.tags( tagSet ).get( obj );
+			out.writeInt( tagSet.id() );
+			out.writeInt( tag == null ? -1 : tag.id() );
+		}
+	}
+
+	/*
+	 * Files and ids.
+	 */
+
+	/**
+	 * Identifies spots by their position in the graph iteration order, which
+	 * is their file id in a project or snapshot saved now.
+	 */
+	private void resetIds()
+	{
+		ids = RefMaps.createRefIntMap( graph.vertices(), -1, graph.vertices().size() );
+		nextId = 0;
+		for ( final Spot spot : graph.vertices() )
+			ids.put( spot, nextId++ );
+	}
+
+	private File logFile( final int gen )
+	{
+		return new File( folder, LOG_PREFIX + gen + LOG_SUFFIX );
+	}
+
+	private void deleteOtherGenerations()
+	{
+		final String snapshot = SNAPSHOT_PREFIX + generation;
+		final String log = logFile( generation ).getName();
+		final File[] files = folder.listFiles( f -> ( f.getName().startsWith( SNAPSHOT_PREFIX ) && !f.getName().equals( snapshot ) )
+				|| ( f.getName().startsWith( LOG_PREFIX ) && !f.getName().equals( log ) ) );
+		if ( files != null )
+			for ( final File file : files )
+				delete( file );
+	}
+
+	private static int generationOf( final File snapshot )
+	{
+		try
+		{
+			return Integer.parseInt( snapshot.getName().substring( SNAPSHOT_PREFIX.length() ) );
+		}
+		catch ( final NumberFormatException e )
+		{
+			return -1;
+		}
+	}
+
+	private static long sizeOf( final File file )
+	{
+		final File[] children = file.listFiles();
+		if ( children == null )
+			return file.length();
+		long size = 0;
+		for ( final File child : children )
+			size += sizeOf( child );
+		return size;
+	}
+
+	private static void delete( final File file )
+	{
+		final File[] children = file.listFiles();
+		if ( children != null )
+			for ( final File child : children )
+				delete( child );
+		file.delete();
+	}
+}
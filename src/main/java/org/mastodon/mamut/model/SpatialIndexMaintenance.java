@@ -0,0 +1,400 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.spatial.SpatioTemporalIndexImp;
+import org.mastodon.spatial.VertexPositionListener;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Decides when the per-time-point spatial indices of a {@link Model} are
+ * rebuilt, and keeps metrics about these rebuilds.
+ * <p>
+ * Spots added to, moved in or removed from a time-point are not indexed in its
+ * kd-tree right away: the {@link SpatioTemporalIndexImp} keeps them in a small
+ * unindexed set that queries scan linearly. This class counts these
+ * modifications per time-point and merges them into the kd-tree in a
+ * background thread once they reach a threshold.
+ * <p>
+ * Each rebuild is a rebuild of the whole kd-tree of a time-point. The
+ * {@link SpatioTemporalIndexImp} always rebuilds the time-point with the most
+ * modifications, so once any time-point is due, the time-point with the most
+ * modifications is rebuilt, and the metrics are recorded for it.
+ * <p>
+ * The thread is woken up as soon as a time-point reaches its threshold, and
+ * otherwise checks for due time-points every poll interval. Background
+ * rebuilds can be {@link #pause() paused} during bulk modifications of the
+ * model, for instance while importing.
+ */
+public class SpatialIndexMaintenance implements GraphListener< Spot, Link >, VertexPositionListener< Spot >
+{
+
+	/**
+	 * Int value used to declare that the requested timepoint is not in a map.
+	 * Timepoints are always &gt;= 0, so -1 works...
+	 */
+	private final static int NO_ENTRY_KEY = -1;
+
+	private final SpatioTemporalIndexImp< Spot, Link > index;
+
+	/**
+	 * Number of unindexed modifications per time-point.
+	 */
+	private final TIntIntHashMap modifications;
+
+	private final TIntObjectHashMap< RebuildStats > stats;
+
+	private final RebuilderThread thread;
+
+	private volatile int threshold;
+
+	private volatile long pollInterval;
+
+	private volatile boolean paused;
+
+	/**
+	 * Creates a new maintenance for the spatial index of the specified graph,
+	 * and starts its rebuilder thread.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param index
+	 *            the spatio-temporal index of the graph.
+	 * @param threshold
+	 *            the number of modifications of a time-point that triggers a
+	 *            rebuild of its index.
+	 * @param pollInterval
+	 *            the maximal time in milliseconds between two checks for
+	 *            time-points to rebuild.
+	 */
+	public SpatialIndexMaintenance(
+			final ModelGraph graph,
+			final SpatioTemporalIndexImp< Spot, Link > index,
+			final int threshold,
+			final long pollInterval )
+	{
+		this.index = index;
+		this.threshold = threshold;
+		this.pollInterval = pollInterval;
+		this.paused = false;
+		modifications = new TIntIntHashMap( 10, 0.5f, NO_ENTRY_KEY, 0 );
+		stats = new TIntObjectHashMap<>( 10, 0.5f, NO_ENTRY_KEY );
+		graph.addGraphListener( this );
+		graph.addVertexPositionListener( this );
+		thread = new RebuilderThread();
+		thread.start();
+	}
+
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	/**
+	 * Sets the number of modifications of a time-point that triggers a rebuild
+	 * of its index.
+	 *
+	 * @param threshold
+	 *            the number of modifications.
+	 */
+	public void setThreshold( final int threshold )
+	{
+		this.threshold = threshold;
+		wakeUp();
+	}
+
+	public long getPollInterval()
+	{
+		return pollInterval;
+	}
+
+	public void setPollInterval( final long pollInterval )
+	{
+		this.pollInterval = pollInterval;
+		wakeUp();
+	}
+
+	/**
+	 * Stops rebuilding spatial indices in the background, until
+	 * {@link #resume()} is called. Modifications keep being counted.
+	 */
+	public void pause()
+	{
+		paused = true;
+	}
+
+	/**
+	 * Resumes rebuilding spatial indices in the background.
+	 */
+	public void resume()
+	{
+		paused = false;
+		wakeUp();
+	}
+
+	/**
+	 * Returns the number of times the spatial index of the specified
+	 * time-point was rebuilt.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the number of rebuilds.
+	 */
+	public synchronized int getRebuildCount( final int timepoint )
+	{
+		final RebuildStats s = stats.get( timepoint );
+		return s == null ? 0 : s.count;
+	}
+
+	/**
+	 * Returns the total time spent rebuilding the spatial index of the
+	 * specified time-point, in milliseconds.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the total rebuild time.
+	 */
+	public synchronized double getRebuildTimeMillis( final int timepoint )
+	{
+		final RebuildStats s = stats.get( timepoint );
+		return s == null ? 0. : s.totalNanos / 1e6;
+	}
+
+	/**
+	 * Returns the longest rebuild of the spatial index of the specified
+	 * time-point, in milliseconds.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the maximal rebuild time.
+	 */
+	public synchronized double getMaxRebuildTimeMillis( final int timepoint )
+	{
+		final RebuildStats s = stats.get( timepoint );
+		return s == null ? 0. : s.maxNanos / 1e6;
+	}
+
+	/**
+	 * Returns the time-points whose spatial index was rebuilt at least once.
+	 *
+	 * @return a new array of time-points, unsorted.
+	 */
+	public synchronized int[] getRebuiltTimepoints()
+	{
+		return stats.keys();
+	}
+
+	/**
+	 * Returns the number of modifications of the specified time-point that are
+	 * not yet merged in its spatial index.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the number of pending modifications.
+	 */
+	public synchronized int getPendingModifications( final int timepoint )
+	{
+		return modifications.get( timepoint );
+	}
+
+	/**
+	 * Clears rebuild metrics.
+	 */
+	public synchronized void resetStats()
+	{
+		stats.clear();
+	}
+
+	private synchronized void clear()
+	{
+		modifications.clear();
+	}
+
+	/**
+	 * Returns whether any time-point reached its threshold. Must be called
+	 * while synchronized.
+	 */
+	private boolean anyDue()
+	{
+		for ( final int t : modifications.keys() )
+			if ( modifications.get( t ) >= threshold )
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the time-point with the most modifications, that is, the
+	 * time-point that {@link SpatioTemporalIndexImp#rebuildAnyIndex(int)}
+	 * rebuilds, or -1 if there are no modifications. Must be called while
+	 * synchronized.
+	 */
+	private int mostModified()
+	{
+		int best = NO_ENTRY_KEY;
+		int bestCount = 0;
+		for ( final int t : modifications.keys() )
+		{
+			final int count = modifications.get( t );
+			if ( count > bestCount )
+			{
+				best = t;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+
+	private synchronized void modified( final int timepoint )
+	{
+		final int n = modifications.adjustOrPutValue( timepoint, 1, 1 );
+		if ( n == threshold && !paused )
+			notifyAll();
+	}
+
+	private synchronized void wakeUp()
+	{
+		notifyAll();
+	}
+
+	@Override
+	public void vertexAdded( final Spot v )
+	{
+		modified( v.getTimepoint() );
+	}
+
+	@Override
+	public void vertexRemoved( final Spot v )
+	{
+		modified( v.getTimepoint() );
+	}
+
+	@Override
+	public void vertexPositionChanged( final Spot v )
+	{
+		modified( v.getTimepoint() );
+	}
+
+	@Override
+	public void edgeAdded( final Link edge )
+	{}
+
+	@Override
+	public void edgeRemoved( final Link edge )
+	{}
+
+	@Override
+	public void graphRebuilt()
+	{
+		// The spatio-temporal index rebuilds all time-points itself.
+		clear();
+	}
+
+	private static final class RebuildStats
+	{
+		private int count;
+
+		private long totalNanos;
+
+		private long maxNanos;
+
+		private void add( final long nanos )
+		{
+			++count;
+			totalNanos += nanos;
+			maxNanos = Math.max( maxNanos, nanos );
+		}
+	}
+
+	private final class RebuilderThread extends Thread
+	{
+		private RebuilderThread()
+		{
+			super( "Rebuild spatial indices" );
+			setDaemon( true );
+		}
+
+		@Override
+		public void run()
+		{
+			while ( !isInterrupted() )
+			{
+				final int t;
+				final int count;
+				synchronized ( SpatialIndexMaintenance.this )
+				{
+					t = paused || !anyDue() ? NO_ENTRY_KEY : mostModified();
+					if ( t == NO_ENTRY_KEY )
+					{
+						try
+						{
+							SpatialIndexMaintenance.this.wait( pollInterval );
+						}
+						catch ( final InterruptedException e )
+						{
+							break;
+						}
+						continue;
+					}
+					count = modifications.get( t );
+				}
+
+				/*
+				 * The index rebuilds the time-point with the most
+				 * modifications, which is t: the index counts the same
+				 * modifications as we do, and we reset our count whenever it
+				 * rebuilds.
+				 */
+				final long start = System.nanoTime();
+				final boolean rebuilt = index.rebuildAnyIndex( count );
+				final long nanos = System.nanoTime() - start;
+				synchronized ( SpatialIndexMaintenance.this )
+				{
+					/*
+					 * Also reset the count if the index did not need a
+					 * rebuild, so that we do not spin on it.
+					 */
+					modifications.remove( t );
+					if ( rebuilt )
+					{
+						RebuildStats s = stats.get( t );
+						if ( s == null )
+						{
+							s = new RebuildStats();
+							stats.put( t, s );
+						}
+						s.add( nanos );
+					}
+				}
+			}
+		}
+	}
+}
@@ -145,6 +145,35 @@ public final class Spot extends AbstractSpot< Spot, Link, SpotPool, ByteMappedEl
 		return this;
 	}
 
+	/**
+	 * Initialize a new {@link Spot} from stored values. Unlike the public
+	 * {@code init()} methods, the bounding-sphere radius is not recomputed
+	 * from the covariance matrix.
+	 *
+	 * @param timepointId
+	 *            the time-point id to add the spot to in the spatio-temporal
+	 *            index.
+	 * @param pos
+	 *            the position of the spot.
+	 * @param cov
+	 *            the upper triangle of the covariance matrix, in row-major
+	 *            order.
+	 * @param boundingSphereRadiusSqu
+	 *            the squared radius of the bounding sphere.
+	 * @return this {@link Spot}.
+	 */
+	Spot initRaw( final int timepointId, final double[] pos, final double[] cov, final double boundingSphereRadiusSqu )
+	{
+		super.partialInit( timepointId, pos );
+
+		for ( int i = 0; i < 6; ++i )
+			pool.covariance.setQuiet( this, i, cov[ i ] );
+		pool.boundingSphereRadiusSqu.setQuiet( this, boundingSphereRadiusSqu );
+
+		super.initDone();
+		return this;
+	}
+
 	public void getCovariance( final double[][] cov )
 	{
 		getCovarianceInternal( cov );
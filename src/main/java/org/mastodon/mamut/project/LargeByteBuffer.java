@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only, big-endian byte buffer addressed with {@code long} offsets, so
+ * that it can hold more than the 2 GB a single {@link ByteBuffer} can.
+ * <p>
+ * The content is split over several windows of the same power-of-two size. A
+ * value that straddles two windows is assembled byte per byte, all other
+ * values are read directly from their window.
+ */
+public final class LargeByteBuffer
+{
+
+	/**
+	 * Log2 of the default window size, 1 GB.
+	 */
+	static final int DEFAULT_WINDOW_SHIFT = 30;
+
+	private final ByteBuffer[] windows;
+
+	private final int shift;
+
+	private final long mask;
+
+	private final long size;
+
+	private LargeByteBuffer( final ByteBuffer[] windows, final int shift, final long size )
+	{
+		this.windows = windows;
+		this.shift = shift;
+		this.mask = ( 1L << shift ) - 1;
+		this.size = size;
+	}
+
+	/**
+	 * Wraps the content of the specified buffer, from position 0 to its limit.
+	 *
+	 * @param buffer
+	 *            the buffer to wrap.
+	 * @return a new {@link LargeByteBuffer} backed by the specified buffer.
+	 */
+	public static LargeByteBuffer wrap( final ByteBuffer buffer )
+	{
+		// A ByteBuffer is smaller than 2 GB, so one window is enough.
+		return new LargeByteBuffer( new ByteBuffer[] { buffer }, 31, buffer.limit() );
+	}
+
+	/**
+	 * Maps the whole content of the specified channel, read-only. The mapping
+	 * stays valid after the channel is closed.
+	 *
+	 * @param channel
+	 *            the channel to map.
+	 * @return a new {@link LargeByteBuffer} backed by the mapped windows.
+	 * @throws IOException
+	 *             if the channel cannot be mapped.
+	 */
+	public static LargeByteBuffer map( final FileChannel channel ) throws IOException
+	{
+		return map( channel, DEFAULT_WINDOW_SHIFT );
+	}
+
+	static LargeByteBuffer map( final FileChannel channel, final int shift ) throws IOException
+	{
+		final long size = channel.size();
+		final long windowSize = 1L << shift;
+		final ByteBuffer[] windows = new ByteBuffer[ numWindows( size, shift ) ];
+		for ( int i = 0; i < windows.length; ++i )
+		{
+			final long position = i * windowSize;
+			windows[ i ] = channel.map( MapMode.READ_ONLY, position, Math.min( windowSize, size - position ) );
+		}
+		return new LargeByteBuffer( windows, shift, size );
+	}
+
+	/**
+	 * Reads the specified number of bytes from a stream into heap windows.
+	 *
+	 * @param is
+	 *            the stream to read from. It is not closed.
+	 * @param size
+	 *            the number of bytes to read.
+	 * @return a new {@link LargeByteBuffer} holding the bytes read.
+	 * @throws IOException
+	 *             if the stream cannot be read or ends before {@code size}
+	 *             bytes.
+	 */
+	public static LargeByteBuffer read( final InputStream is, final long size ) throws IOException
+	{
+		return read( is, size, DEFAULT_WINDOW_SHIFT );
+	}
+
+	static LargeByteBuffer read( final InputStream is, final long size, final int shift ) throws IOException
+	{
+		final long windowSize = 1L << shift;
+		final ByteBuffer[] windows = new ByteBuffer[ numWindows( size, shift ) ];
+		for ( int i = 0; i < windows.length; ++i )
+		{
+			final byte[] bytes = new byte[ ( int ) Math.min( windowSize, size - i * windowSize ) ];
+			int offset = 0;
+			while ( offset < bytes.length )
+			{
+				final int n = is.read( bytes, offset, bytes.length - offset );
+				if ( n < 0 )
+					throw new EOFException( "Expected " + size + " bytes but got " + ( i * windowSize + offset ) + "." );
+				offset += n;
+			}
+			windows[ i ] = ByteBuffer.wrap( bytes );
+		}
+		return new LargeByteBuffer( windows, shift, size );
+	}
+
+	private static int numWindows( final long size, final int shift )
+	{
+		final long n = ( size + ( 1L << shift ) - 1 ) >>> shift;
+		if ( n > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "Size too large: " + size );
+		return ( int ) n;
+	}
+
+	/**
+	 * Returns the number of bytes in this buffer.
+	 *
+	 * @return the size in bytes.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	public byte get( final long position )
+	{
+		return windows[ ( int ) ( position >>> shift ) ].get( ( int ) ( position & mask ) );
+	}
+
+	public int getInt( final long position )
+	{
+		final ByteBuffer window = windows[ ( int ) ( position >>> shift ) ];
+		final int offset = ( int ) ( position & mask );
+		if ( offset <= window.limit() - Integer.BYTES )
+			return window.getInt( offset );
+
+		int value = 0;
+		for ( int i = 0; i < Integer.BYTES; ++i )
+			value = ( value << 8 ) | ( get( position + i ) & 0xff );
+		return value;
+	}
+
+	public long getLong( final long position )
+	{
+		final ByteBuffer window = windows[ ( int ) ( position >>> shift ) ];
+		final int offset = ( int ) ( position & mask );
+		if ( offset <= window.limit() - Long.BYTES )
+			return window.getLong( offset );
+
+		long value = 0;
+		for ( int i = 0; i < Long.BYTES; ++i )
+			value = ( value << 8 ) | ( get( position + i ) & 0xff );
+		return value;
+	}
+
+	public double getDouble( final long position )
+	{
+		return Double.longBitsToDouble( getLong( position ) );
+	}
+}
@@ -33,13 +33,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class MamutProject
@@ -66,16 +74,35 @@ public class MamutProject
 	 */
 	private String timeUnits;
 
+	/**
+	 * Whether the model graph is saved as columnar files instead of
+	 * {@value #RAW_MODEL_FILE_NAME}.
+	 */
+	private boolean rawModelColumnar;
+
+	/**
+	 * The compression level used when saving to a {@code .mastodon} file.
+	 */
+	private int compressionLevel = WriteZip.DEFAULT_COMPRESSION_LEVEL;
+
 	static final String PROJECT_FILE_NAME = "project.xml";
 
 	static final String RAW_MODEL_FILE_NAME = "model.raw";
 
+	static final String RAW_SPOT_COLUMNS_FILE_NAME = "model.spots";
+
+	static final String RAW_LINK_COLUMNS_FILE_NAME = "model.links";
+
+	static final String RAW_LABEL_TABLE_FILE_NAME = "model.labels";
+
 	static final String RAW_TAGS_FILE_NAME = "tags.raw";
 
 	static final String FEATURE_FOLDER_NAME = "features";
 
 	static final String GUI_FILE_NAME = "gui.xml";
 
+	static final String JOURNAL_FOLDER_NAME = "journal";
+
 	public MamutProject( final String projectRoot )
 	{
 		this( new File( projectRoot ), null );
@@ -150,6 +177,94 @@ public class MamutProject
 		this.timeUnits = timeUnits;
 	}
 
+	/**
+	 * Returns whether the model graph of this project is saved as columnar
+	 * files (spot columns, link columns and label string table) rather than
+	 * as a single serialized {@value #RAW_MODEL_FILE_NAME} file.
+	 * <p>
+	 * Columnar files can be memory-mapped when the project is a folder, which
+	 * makes opening large projects considerably faster. They cannot be read by
+	 * older versions of Mastodon.
+	 * <p>
+	 * When a project is opened, this is set to the layout found in the
+	 * project, so that it is saved in the same layout. To convert a project,
+	 * call {@code ProjectManager.setRawModelColumnar(boolean)} before saving
+	 * it.
+	 *
+	 * @return {@code true} if the model graph is saved as columnar files.
+	 */
+	public boolean isRawModelColumnar()
+	{
+		return rawModelColumnar;
+	}
+
+	public void setRawModelColumnar( final boolean columnar )
+	{
+		this.rawModelColumnar = columnar;
+	}
+
+	/**
+	 * Returns the compression level used when saving this project to a
+	 * {@code .mastodon} file. Ignored when the project is a folder.
+	 *
+	 * @return the compression level, from 0 (no compression) to 9 (best
+	 *         compression).
+	 */
+	public int getCompressionLevel()
+	{
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel( final int level )
+	{
+		this.compressionLevel = level;
+	}
+
+	/**
+	 * Returns the folder where unsaved edits to the model of this project are
+	 * journaled. For a project folder, this is a sub-folder of the project.
+	 * For a {@code .mastodon} file, this is a folder next to it.
+	 *
+	 * @return the journal folder, or {@code null} if the project was never
+	 *         saved.
+	 */
+	public File getJournalFolder()
+	{
+		if ( projectRoot == null )
+			return null;
+		if ( projectRoot.isDirectory() )
+			return new File( projectRoot, JOURNAL_FOLDER_NAME );
+		return new File( projectRoot.getParentFile(), projectRoot.getName() + "." + JOURNAL_FOLDER_NAME );
+	}
+
+	/**
+	 * Returns a fingerprint of the project as saved on disk: the sizes and
+	 * modification times of the files that hold the model. It changes every
+	 * time the project is saved, so that the journal of unsaved edits can
+	 * tell whether it still applies to the project.
+	 *
+	 * @return the fingerprint, or {@code null} if the project was never
+	 *         saved.
+	 */
+	public String getSavedStateFingerprint()
+	{
+		if ( projectRoot == null )
+			return null;
+		if ( !projectRoot.isDirectory() )
+			return fingerprint( projectRoot );
+
+		final StringBuilder str = new StringBuilder();
+		for ( final String name : new String[] { PROJECT_FILE_NAME, RAW_MODEL_FILE_NAME,
+				RAW_SPOT_COLUMNS_FILE_NAME, RAW_LINK_COLUMNS_FILE_NAME, RAW_LABEL_TABLE_FILE_NAME, RAW_TAGS_FILE_NAME } )
+			str.append( fingerprint( new File( projectRoot, name ) ) ).append( '\n' );
+		return str.toString();
+	}
+
+	private static String fingerprint( final File file )
+	{
+		return file.getName() + ( file.exists() ? " " + file.length() + " " + file.lastModified() : " -" );
+	}
+
 	@Override
 	public String toString()
 	{
@@ -169,7 +284,25 @@ public class MamutProject
 	{
 		return projectRoot.isDirectory()
 				? new WriteToDirectory()
-				: new WriteToZip();
+				: new WriteToZip( null );
+	}
+
+	/**
+	 * Opens this project for writing. If the project is a zip file, its
+	 * entries are compressed on the specified executor, which is not shut
+	 * down when the writer is closed.
+	 *
+	 * @param executor
+	 *            the executor to compress zip entries on.
+	 * @return a new writer.
+	 * @throws IOException
+	 *             if the project cannot be opened for writing.
+	 */
+	public ProjectWriter openForWriting( final ExecutorService executor ) throws IOException
+	{
+		return projectRoot.isDirectory()
+				? new WriteToDirectory()
+				: new WriteToZip( executor );
 	}
 
 	public interface ProjectReader extends Closeable
@@ -178,6 +311,23 @@ public class MamutProject
 
 		InputStream getRawModelInputStream() throws IOException;
 
+		/**
+		 * Returns whether this project stores the model graph as columnar
+		 * files. If so, the model should be read with
+		 * {@link #getRawSpotColumns()}, {@link #getRawLinkColumns()} and
+		 * {@link #getRawLabelTable()} instead of
+		 * {@link #getRawModelInputStream()}.
+		 *
+		 * @return {@code true} if the columnar model files are present.
+		 */
+		boolean hasRawModelColumns();
+
+		LargeByteBuffer getRawSpotColumns() throws IOException;
+
+		LargeByteBuffer getRawLinkColumns() throws IOException;
+
+		LargeByteBuffer getRawLabelTable() throws IOException;
+
 		InputStream getRawTagsInputStream() throws IOException;
 
 		InputStream getFeatureInputStream( String featureKey ) throws IOException;
@@ -193,12 +343,33 @@ public class MamutProject
 		InputStream getGuiInputStream() throws IOException;
 	}
 
+	/**
+	 * Writes the files of a project. Several streams can be open at the same
+	 * time and written to from different threads.
+	 */
 	public interface ProjectWriter extends Closeable
 	{
 		OutputStream getProjectXmlOutputStream() throws IOException;
 
 		OutputStream getRawModelOutputStream() throws IOException;
 
+		/**
+		 * Returns whether the model graph should be written as columnar files
+		 * via {@link #getRawSpotColumnsOutputStream()},
+		 * {@link #getRawLinkColumnsOutputStream()} and
+		 * {@link #getRawLabelTableOutputStream()} instead of
+		 * {@link #getRawModelOutputStream()}.
+		 *
+		 * @return {@code true} if the model graph should be written as columns.
+		 */
+		boolean isRawModelColumnar();
+
+		OutputStream getRawSpotColumnsOutputStream() throws IOException;
+
+		OutputStream getRawLinkColumnsOutputStream() throws IOException;
+
+		OutputStream getRawLabelTableOutputStream() throws IOException;
+
 		OutputStream getRawTagsOutputStream() throws IOException;
 
 		OutputStream getFeatureOutputStream( String featureKey ) throws IOException;
@@ -220,6 +391,44 @@ public class MamutProject
 			return new FileInputStream( new File( projectRoot, RAW_MODEL_FILE_NAME ) );
 		}
 
+		@Override
+		public boolean hasRawModelColumns()
+		{
+			return new File( projectRoot, RAW_SPOT_COLUMNS_FILE_NAME ).exists();
+		}
+
+		@Override
+		public LargeByteBuffer getRawSpotColumns() throws IOException
+		{
+			return map( RAW_SPOT_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLinkColumns() throws IOException
+		{
+			return map( RAW_LINK_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLabelTable() throws IOException
+		{
+			return map( RAW_LABEL_TABLE_FILE_NAME );
+		}
+
+		/*
+		 * The mapping stays valid after the channel is closed.
+		 */
+		private LargeByteBuffer map( final String fn ) throws IOException
+		{
+			final File file = new File( projectRoot, fn );
+			if ( !file.exists() )
+				throw new FileNotFoundException( file.getAbsolutePath() );
+			try (final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+			{
+				return LargeByteBuffer.map( channel );
+			}
+		}
+
 		@Override
 		public InputStream getRawTagsInputStream() throws FileNotFoundException
 		{
@@ -279,6 +488,30 @@ public class MamutProject
 			return zip.getInputStream( RAW_MODEL_FILE_NAME );
 		}
 
+		@Override
+		public boolean hasRawModelColumns()
+		{
+			return zip.contains( RAW_SPOT_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public LargeByteBuffer getRawSpotColumns() throws IOException
+		{
+			return zip.getLargeByteBuffer( RAW_SPOT_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLinkColumns() throws IOException
+		{
+			return zip.getLargeByteBuffer( RAW_LINK_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLabelTable() throws IOException
+		{
+			return zip.getLargeByteBuffer( RAW_LABEL_TABLE_FILE_NAME );
+		}
+
 		@Override
 		public InputStream getRawTagsInputStream() throws IOException
 		{
@@ -321,10 +554,88 @@ public class MamutProject
 			return new FileOutputStream( new File( projectRoot, PROJECT_FILE_NAME ) );
 		}
 
+		/**
+		 * The column files written so far. They are put in place together,
+		 * once all of them are written.
+		 */
+		private final List< ReplaceOnCloseOutputStream > writtenColumns = new ArrayList<>();
+
 		@Override
 		public OutputStream getRawModelOutputStream() throws FileNotFoundException
 		{
-			return new FileOutputStream( new File( projectRoot, RAW_MODEL_FILE_NAME ) );
+			return new ReplaceOnCloseOutputStream( new File( projectRoot, RAW_MODEL_FILE_NAME ) )
+			{
+				@Override
+				void written() throws IOException
+				{
+					replace();
+					/*
+					 * Remove stale columns, they would take precedence when
+					 * reading. The spot columns mark a project as columnar,
+					 * remove them first.
+					 */
+					new File( projectRoot, RAW_SPOT_COLUMNS_FILE_NAME ).delete();
+					new File( projectRoot, RAW_LINK_COLUMNS_FILE_NAME ).delete();
+					new File( projectRoot, RAW_LABEL_TABLE_FILE_NAME ).delete();
+				}
+			};
+		}
+
+		@Override
+		public boolean isRawModelColumnar()
+		{
+			return rawModelColumnar;
+		}
+
+		@Override
+		public OutputStream getRawSpotColumnsOutputStream() throws FileNotFoundException
+		{
+			return column( RAW_SPOT_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public OutputStream getRawLinkColumnsOutputStream() throws FileNotFoundException
+		{
+			return column( RAW_LINK_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public OutputStream getRawLabelTableOutputStream() throws FileNotFoundException
+		{
+			return column( RAW_LABEL_TABLE_FILE_NAME );
+		}
+
+		private OutputStream column( final String name ) throws FileNotFoundException
+		{
+			return new ReplaceOnCloseOutputStream( new File( projectRoot, name ) )
+			{
+				@Override
+				void written() throws IOException
+				{
+					columnWritten( this );
+				}
+			};
+		}
+
+		/**
+		 * Puts the column files in place once the three of them are written,
+		 * and only then removes the {@value #RAW_MODEL_FILE_NAME} file. A save
+		 * that fails before leaves the previous model files untouched.
+		 */
+		private synchronized void columnWritten( final ReplaceOnCloseOutputStream column ) throws IOException
+		{
+			writtenColumns.add( column );
+			if ( writtenColumns.size() < 3 )
+				return;
+
+			// The spot columns mark a project as columnar, replace them last.
+			writtenColumns.sort( ( c1, c2 ) -> Boolean.compare(
+					c1.file.getName().equals( RAW_SPOT_COLUMNS_FILE_NAME ),
+					c2.file.getName().equals( RAW_SPOT_COLUMNS_FILE_NAME ) ) );
+			for ( final ReplaceOnCloseOutputStream c : writtenColumns )
+				c.replace();
+			writtenColumns.clear();
+			new File( projectRoot, RAW_MODEL_FILE_NAME ).delete();
 		}
 
 		@Override
@@ -353,13 +664,89 @@ public class MamutProject
 		{}
 	}
 
+	/**
+	 * Writes to a temporary file next to the target file, and renames it to
+	 * the target file when closed. The column files are memory-mapped when
+	 * read, and overwriting a mapped file in place would change or truncate
+	 * the content under the mapping. Renaming replaces the directory entry
+	 * only, so existing mappings keep the previous content. A save that fails
+	 * while writing leaves the target file untouched.
+	 */
+	private static class ReplaceOnCloseOutputStream extends FilterOutputStream
+	{
+		private final File file;
+
+		private final File tmp;
+
+		private boolean closed = false;
+
+		ReplaceOnCloseOutputStream( final File file ) throws FileNotFoundException
+		{
+			this( file, new File( file.getParentFile(), file.getName() + ".tmp" ) );
+		}
+
+		private ReplaceOnCloseOutputStream( final File file, final File tmp ) throws FileNotFoundException
+		{
+			super( new FileOutputStream( tmp ) );
+			this.file = file;
+			this.tmp = tmp;
+		}
+
+		@Override
+		public void write( final byte[] b, final int off, final int len ) throws IOException
+		{
+			out.write( b, off, len );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if ( closed )
+				return;
+			closed = true;
+			super.close();
+			written();
+		}
+
+		/**
+		 * Called once the temporary file is completely written. Replaces the
+		 * target file by default.
+		 */
+		void written() throws IOException
+		{
+			replace();
+		}
+
+		/**
+		 * Renames the temporary file to the target file.
+		 */
+		void replace() throws IOException
+		{
+			try
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( final AtomicMoveNotSupportedException e )
+			{
+				Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+		}
+	}
+
 	private class WriteToZip implements ProjectWriter
 	{
 		private final WriteZip zip;
 
-		WriteToZip() throws IOException
+		/**
+		 * @param executor
+		 *            the executor to compress entries on, or {@code null} to
+		 *            use a pool created for the zip file.
+		 */
+		WriteToZip( final ExecutorService executor ) throws IOException
 		{
-			zip = new WriteZip( projectRoot );
+			zip = executor == null
+					? new WriteZip( projectRoot, compressionLevel, Runtime.getRuntime().availableProcessors() )
+					: new WriteZip( projectRoot, compressionLevel, executor );
 		}
 
 		@Override
@@ -374,6 +761,30 @@ public class MamutProject
 			return zip.getOutputStream( RAW_MODEL_FILE_NAME );
 		}
 
+		@Override
+		public boolean isRawModelColumnar()
+		{
+			return rawModelColumnar;
+		}
+
+		@Override
+		public OutputStream getRawSpotColumnsOutputStream() throws IOException
+		{
+			return zip.getOutputStream( RAW_SPOT_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public OutputStream getRawLinkColumnsOutputStream() throws IOException
+		{
+			return zip.getOutputStream( RAW_LINK_COLUMNS_FILE_NAME );
+		}
+
+		@Override
+		public OutputStream getRawLabelTableOutputStream() throws IOException
+		{
+			return zip.getOutputStream( RAW_LABEL_TABLE_FILE_NAME );
+		}
+
 		@Override
 		public OutputStream getRawTagsOutputStream() throws IOException
 		{
@@ -29,6 +29,7 @@
 package org.mastodon.mamut.project;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -68,6 +69,40 @@ public class ReadZip implements Closeable
 		throw new FileNotFoundException( "Entry \"" + fn + "\" not found in \"" + zipFile.getName() + "\"" );
 	}
 
+	public boolean contains( final String fn )
+	{
+		return zipFile.getEntry( fn ) != null;
+	}
+
+	/**
+	 * Reads the entire content of the specified entry into heap memory. The
+	 * entry may be larger than 2 GB.
+	 *
+	 * @param fn
+	 *            the entry name.
+	 * @return a buffer holding the uncompressed entry content.
+	 * @throws IOException
+	 *             if the entry cannot be found or read.
+	 */
+	public LargeByteBuffer getLargeByteBuffer( final String fn ) throws IOException
+	{
+		final ZipEntry entry = zipFile.getEntry( fn );
+		if ( entry == null )
+			throw new FileNotFoundException( "Entry \"" + fn + "\" not found in \"" + zipFile.getName() + "\"" );
+		final long size = entry.getSize();
+		if ( size < 0 )
+			throw new IOException( "Entry \"" + fn + "\" in \"" + zipFile.getName() + "\" has unknown size" );
+
+		try (final InputStream is = zipFile.getInputStream( entry ))
+		{
+			return LargeByteBuffer.read( is, size );
+		}
+		catch ( final EOFException e )
+		{
+			throw new IOException( "Unexpected end of entry \"" + fn + "\" in \"" + zipFile.getName() + "\"", e );
+		}
+	}
+
 	public Collection< String > listFile( final String fn )
 	{
 		return Collections.list( zipFile.entries() )
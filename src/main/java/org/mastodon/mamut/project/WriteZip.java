@@ -28,88 +28,669 @@
  */
 package org.mastodon.mamut.project;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
+/**
+ * Writes a zip file whose entries can be written concurrently.
+ * <p>
+ * Each entry is buffered in memory until its {@link OutputStream} is closed.
+ * It is then compressed on an executor, so that entries are compressed in
+ * parallel with each other and with the serialization of further entries.
+ * The executor is either created for this zip file, or shared with the
+ * caller, for instance with the threads that serialize the entries.
+ * Compressed entries are appended to the zip file as soon as they are ready,
+ * and the central directory is written when this {@link WriteZip} is closed.
+ * <p>
+ * Entries larger than {@link #SPILL_THRESHOLD} are not buffered in memory.
+ * They are compressed on the writing thread as they are written, into a
+ * temporary file that is copied to the zip file when the entry is closed.
+ * <p>
+ * With compression level 0, entries are stored without compression.
+ * Otherwise they are deflated with the specified level. The zip64 extensions
+ * are used when an entry or the archive grows beyond 4 GB, or the archive has
+ * more than 65535 entries.
+ */
 public class WriteZip implements Closeable
 {
-	private final ZipOutputStream zos;
+	/**
+	 * The compression level used when none is specified. Favors speed, but
+	 * still gives substantially smaller files than storing uncompressed.
+	 */
+	public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+	/**
+	 * Entries that grow beyond this size are compressed to a temporary file
+	 * instead of being buffered in memory.
+	 */
+	static final int SPILL_THRESHOLD = 64 * 1024 * 1024;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private final OutputStream os;
+
+	private final int level;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Whether {@link #executor} was created for this zip file, and is shut
+	 * down when it is closed.
+	 */
+	private final boolean ownsExecutor;
+
+	private final int dosTime;
+
+	/**
+	 * Open entries, not yet closed.
+	 */
+	private final Set< ZipEntryStream > open = new HashSet<>();
 
-	private ZipEntryStream current;
+	/**
+	 * Closed entries, being compressed, in the order they were closed.
+	 */
+	private final ArrayDeque< Future< CompressedEntry > > pending = new ArrayDeque<>();
 
-	public WriteZip( String fn ) throws IOException
+	/**
+	 * Entries written to the zip file, for the central directory.
+	 */
+	private final List< CompressedEntry > written = new ArrayList<>();
+
+	private long offset;
+
+	private boolean closed;
+
+	public WriteZip( final String fn ) throws IOException
 	{
 		this( new File( fn ) );
 	}
 
-	public WriteZip( File f ) throws IOException
+	public WriteZip( final File f ) throws IOException
 	{
-		zos = new ZipOutputStream( new FileOutputStream( f ) );
-		zos.setMethod( ZipOutputStream.DEFLATED );
-		zos.setLevel( 0 );
-		current = null;
+		this( f, DEFAULT_COMPRESSION_LEVEL, Runtime.getRuntime().availableProcessors() );
 	}
 
-	public OutputStream getOutputStream( String fn ) throws IOException
+	/**
+	 * Creates a new zip file.
+	 *
+	 * @param f
+	 *            the file to write.
+	 * @param level
+	 *            the compression level, from 0 (no compression) to 9 (best
+	 *            compression).
+	 * @param numThreads
+	 *            the number of threads used to compress entries.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public WriteZip( final File f, final int level, final int numThreads ) throws IOException
 	{
-		if ( current != null && current.isOpen )
-			throw new IOException( "OutputStream for previous entry \"" + current.entry + "\" is still open" );
-		current = new ZipEntryStream( new ZipEntry( fn ) );
-		return current;
+		this( f, level, Executors.newFixedThreadPool( Math.max( 1, numThreads ) ), true );
+	}
+
+	/**
+	 * Creates a new zip file, whose entries are compressed on the specified
+	 * executor. The executor is not shut down when this {@link WriteZip} is
+	 * closed. Compression tasks never wait for other tasks, so the executor
+	 * can be shared with the tasks that write the entries.
+	 *
+	 * @param f
+	 *            the file to write.
+	 * @param level
+	 *            the compression level, from 0 (no compression) to 9 (best
+	 *            compression).
+	 * @param executor
+	 *            the executor to compress entries on.
+	 * @throws IOException
+	 *             if the file cannot be created.
+	 */
+	public WriteZip( final File f, final int level, final ExecutorService executor ) throws IOException
+	{
+		this( f, level, executor, false );
+	}
+
+	private WriteZip( final File f, final int level, final ExecutorService executor, final boolean ownsExecutor ) throws IOException
+	{
+		if ( level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+		{
+			if ( ownsExecutor )
+				executor.shutdown();
+			throw new IllegalArgumentException( "Invalid compression level: " + level );
+		}
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		try
+		{
+			this.os = new BufferedOutputStream( new FileOutputStream( f ), 1024 * 1024 );
+		}
+		catch ( final IOException e )
+		{
+			if ( ownsExecutor )
+				executor.shutdown();
+			throw e;
+		}
+		this.level = level;
+		this.dosTime = dosTime( System.currentTimeMillis() );
+		this.offset = 0;
+		this.closed = false;
+	}
+
+	/**
+	 * Returns a new stream for the specified entry. Several entries can be
+	 * open at the same time, and can be written to from different threads.
+	 * The entry is compressed and appended to the zip file when the stream is
+	 * closed.
+	 *
+	 * @param fn
+	 *            the entry name.
+	 * @return a new stream.
+	 * @throws IOException
+	 *             if this {@link WriteZip} is already closed.
+	 */
+	public synchronized OutputStream getOutputStream( final String fn ) throws IOException
+	{
+		if ( closed )
+			throw new IOException( "Cannot add entry \"" + fn + "\" to closed zip file." );
+		final ZipEntryStream entry = new ZipEntryStream( fn );
+		open.add( entry );
+		return entry;
 	}
 
 	@Override
 	public void close() throws IOException
 	{
-		zos.close();
+		final List< ZipEntryStream > unclosed;
+		synchronized ( this )
+		{
+			if ( closed )
+				return;
+			unclosed = new ArrayList<>( open );
+		}
+		for ( final ZipEntryStream entry : unclosed )
+			entry.close();
+
+		synchronized ( this )
+		{
+			closed = true;
+			try
+			{
+				while ( !pending.isEmpty() )
+					writeEntry( get( pending.poll() ) );
+				writeCentralDirectory();
+			}
+			finally
+			{
+				for ( final Future< CompressedEntry > future : pending )
+					future.cancel( true );
+				if ( ownsExecutor )
+					executor.shutdownNow();
+				os.close();
+				for ( final Future< CompressedEntry > future : pending )
+					if ( future.isDone() && !future.isCancelled() )
+						deleteSpill( future );
+			}
+		}
+	}
+
+	private synchronized void submit( final ZipEntryStream entry ) throws IOException
+	{
+		open.remove( entry );
+		if ( entry.spill != null )
+			pending.add( CompletableFuture.completedFuture( entry.spill.finish() ) );
+		else
+			pending.add( executor.submit( () -> compress( entry.name, entry.buffer ) ) );
+
+		// Append the entries that are ready, in order.
+		while ( !pending.isEmpty() && pending.peek().isDone() )
+			writeEntry( get( pending.poll() ) );
+	}
+
+	private CompressedEntry compress( final String name, final Buffer buffer )
+	{
+		final byte[] data = buffer.array();
+		final int size = buffer.size();
+
+		final CRC32 crc = new CRC32();
+		crc.update( data, 0, size );
+
+		if ( level == Deflater.NO_COMPRESSION )
+			return new CompressedEntry( name, 0, crc.getValue(), size, size, data, null );
+
+		final Deflater deflater = new Deflater( level, true );
+		final Buffer out = new Buffer( Math.max( 64, size / 2 ) );
+		final byte[] chunk = new byte[ 64 * 1024 ];
+		try
+		{
+			deflater.setInput( data, 0, size );
+			deflater.finish();
+			while ( !deflater.finished() )
+			{
+				final int n = deflater.deflate( chunk );
+				out.write( chunk, 0, n );
+			}
+		}
+		finally
+		{
+			deflater.end();
+		}
+		return new CompressedEntry( name, 8, crc.getValue(), size, out.size(), out.array(), null );
+	}
+
+	private static CompressedEntry get( final Future< CompressedEntry > future ) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	private static void deleteSpill( final Future< CompressedEntry > future )
+	{
+		try
+		{
+			final File file = future.get().file;
+			if ( file != null )
+				file.delete();
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			// Nothing to delete.
+		}
+	}
+
+	private void writeEntry( final CompressedEntry entry ) throws IOException
+	{
+		entry.offset = offset;
+		final byte[] name = entry.name.getBytes( StandardCharsets.UTF_8 );
+
+		// Local file header. The zip64 extra field must hold both sizes.
+		final boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+		writeInt( 0x04034b50 );
+		writeShort( zip64 ? 45 : 20 ); // version needed to extract
+		writeShort( 0x0800 ); // flags: UTF-8 names
+		writeShort( entry.method );
+		writeInt( dosTime );
+		writeInt( ( int ) entry.crc );
+		writeInt( zip64 ? ( int ) ZIP64_MAGIC : ( int ) entry.compressedSize );
+		writeInt( zip64 ? ( int ) ZIP64_MAGIC : ( int ) entry.size );
+		writeShort( name.length );
+		writeShort( zip64 ? 20 : 0 ); // extra field length
+		write( name );
+		if ( zip64 )
+		{
+			writeShort( 0x0001 );
+			writeShort( 16 );
+			writeLong( entry.size );
+			writeLong( entry.compressedSize );
+		}
+		if ( entry.file != null )
+		{
+			Files.copy( entry.file.toPath(), os );
+			entry.file.delete();
+			entry.file = null;
+		}
+		else
+			os.write( entry.data, 0, ( int ) entry.compressedSize );
+		offset += entry.compressedSize;
+
+		entry.data = null;
+		written.add( entry );
+	}
+
+	private void writeCentralDirectory() throws IOException
+	{
+		final long start = offset;
+		for ( final CompressedEntry entry : written )
+		{
+			final byte[] name = entry.name.getBytes( StandardCharsets.UTF_8 );
+			// The zip64 extra field holds only the values that do not fit.
+			final boolean zip64Size = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+			final boolean zip64Offset = entry.offset >= ZIP64_MAGIC;
+			final boolean zip64 = zip64Size || zip64Offset;
+			final int extraSize = ( zip64Size ? 16 : 0 ) + ( zip64Offset ? 8 : 0 );
+			writeInt( 0x02014b50 );
+			writeShort( zip64 ? 45 : 20 ); // version made by
+			writeShort( zip64 ? 45 : 20 ); // version needed to extract
+			writeShort( 0x0800 );
+			writeShort( entry.method );
+			writeInt( dosTime );
+			writeInt( ( int ) entry.crc );
+			writeInt( zip64Size ? ( int ) ZIP64_MAGIC : ( int ) entry.compressedSize );
+			writeInt( zip64Size ? ( int ) ZIP64_MAGIC : ( int ) entry.size );
+			writeShort( name.length );
+			writeShort( zip64 ? 4 + extraSize : 0 ); // extra field length
+			writeShort( 0 ); // comment length
+			writeShort( 0 ); // disk number start
+			writeShort( 0 ); // internal attributes
+			writeInt( 0 ); // external attributes
+			writeInt( zip64Offset ? ( int ) ZIP64_MAGIC : ( int ) entry.offset );
+			write( name );
+			if ( zip64 )
+			{
+				writeShort( 0x0001 );
+				writeShort( extraSize );
+				if ( zip64Size )
+				{
+					writeLong( entry.size );
+					writeLong( entry.compressedSize );
+				}
+				if ( zip64Offset )
+					writeLong( entry.offset );
+			}
+		}
+		final long end = offset;
+		final long size = end - start;
+		final int count = written.size();
+
+		if ( count >= ZIP64_MAGIC_COUNT || start >= ZIP64_MAGIC || size >= ZIP64_MAGIC )
+		{
+			// Zip64 end of central directory record.
+			writeInt( 0x06064b50 );
+			writeLong( 44 );
+			writeShort( 45 );
+			writeShort( 45 );
+			writeInt( 0 );
+			writeInt( 0 );
+			writeLong( count );
+			writeLong( count );
+			writeLong( size );
+			writeLong( start );
+			// Zip64 end of central directory locator.
+			writeInt( 0x07064b50 );
+			writeInt( 0 );
+			writeLong( end );
+			writeInt( 1 );
+		}
+
+		// End of central directory record.
+		writeInt( 0x06054b50 );
+		writeShort( 0 );
+		writeShort( 0 );
+		writeShort( Math.min( count, ZIP64_MAGIC_COUNT ) );
+		writeShort( Math.min( count, ZIP64_MAGIC_COUNT ) );
+		writeInt( ( int ) Math.min( size, ZIP64_MAGIC ) );
+		writeInt( ( int ) Math.min( start, ZIP64_MAGIC ) );
+		writeShort( 0 );
+		os.flush();
+	}
+
+	private void writeShort( final int v ) throws IOException
+	{
+		os.write( v & 0xff );
+		os.write( ( v >>> 8 ) & 0xff );
+		offset += 2;
+	}
+
+	private void writeInt( final int v ) throws IOException
+	{
+		writeShort( v & 0xffff );
+		writeShort( ( v >>> 16 ) & 0xffff );
+	}
+
+	private void writeLong( final long v ) throws IOException
+	{
+		writeInt( ( int ) v );
+		writeInt( ( int ) ( v >>> 32 ) );
+	}
+
+	private void write( final byte[] b ) throws IOException
+	{
+		os.write( b );
+		offset += b.length;
+	}
+
+	private static int dosTime( final long millis )
+	{
+		final Calendar c = Calendar.getInstance();
+		c.setTimeInMillis( millis );
+		final int year = c.get( Calendar.YEAR );
+		if ( year < 1980 )
+			return ( 1 << 21 ) | ( 1 << 16 );
+		return ( year - 1980 ) << 25
+				| ( c.get( Calendar.MONTH ) + 1 ) << 21
+				| c.get( Calendar.DAY_OF_MONTH ) << 16
+				| c.get( Calendar.HOUR_OF_DAY ) << 11
+				| c.get( Calendar.MINUTE ) << 5
+				| c.get( Calendar.SECOND ) >> 1;
+	}
+
+	/**
+	 * Exposes the backing array, to avoid copying entry content.
+	 */
+	private static class Buffer extends ByteArrayOutputStream
+	{
+		Buffer( final int size )
+		{
+			super( size );
+		}
+
+		byte[] array()
+		{
+			return buf;
+		}
+	}
+
+	private static class CompressedEntry
+	{
+		final String name;
+
+		final int method;
+
+		final long crc;
+
+		final long size;
+
+		final long compressedSize;
+
+		/**
+		 * The compressed data, if it is in memory.
+		 */
+		byte[] data;
+
+		/**
+		 * The file holding the compressed data, if it was spilled.
+		 */
+		File file;
+
+		long offset;
+
+		CompressedEntry( final String name, final int method, final long crc, final long size, final long compressedSize, final byte[] data, final File file )
+		{
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.data = data;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Compresses the content of an entry to a temporary file as it is
+	 * written.
+	 */
+	private class Spill
+	{
+		final String name;
+
+		final File file;
+
+		final CRC32 crc = new CRC32();
+
+		final Deflater deflater;
+
+		final OutputStream out;
+
+		/**
+		 * Single bytes written with {@link #write(int)}, not yet passed to
+		 * {@link #crc} and {@link #out}.
+		 */
+		final byte[] bytes = new byte[ 8192 ];
+
+		int numBytes = 0;
+
+		long size = 0;
+
+		Spill( final String name ) throws IOException
+		{
+			this.name = name;
+			this.file = File.createTempFile( "mastodon-zip", ".tmp" );
+			file.deleteOnExit();
+			final OutputStream fos = new BufferedOutputStream( new FileOutputStream( file ), 1024 * 1024 );
+			if ( level == Deflater.NO_COMPRESSION )
+			{
+				this.deflater = null;
+				this.out = fos;
+			}
+			else
+			{
+				this.deflater = new Deflater( level, true );
+				this.out = new DeflaterOutputStream( fos, deflater, 64 * 1024 );
+			}
+		}
+
+		void write( final int b ) throws IOException
+		{
+			if ( numBytes == bytes.length )
+				flushBytes();
+			bytes[ numBytes++ ] = ( byte ) b;
+		}
+
+		void write( final byte[] b, final int off, final int len ) throws IOException
+		{
+			flushBytes();
+			crc.update( b, off, len );
+			out.write( b, off, len );
+			size += len;
+		}
+
+		private void flushBytes() throws IOException
+		{
+			if ( numBytes == 0 )
+				return;
+			final int len = numBytes;
+			numBytes = 0;
+			write( bytes, 0, len );
+		}
+
+		CompressedEntry finish() throws IOException
+		{
+			try
+			{
+				flushBytes();
+				out.close();
+			}
+			finally
+			{
+				if ( deflater != null )
+					deflater.end();
+			}
+			final int method = deflater == null ? 0 : 8;
+			return new CompressedEntry( name, method, crc.getValue(), size, file.length(), null, file );
+		}
 	}
 
 	private class ZipEntryStream extends OutputStream
 	{
-		boolean isOpen;
+		final String name;
 
-		ZipEntry entry;
+		Buffer buffer;
 
-		ZipEntryStream( ZipEntry entry ) throws IOException
+		/**
+		 * Where the content goes once it exceeds {@link #SPILL_THRESHOLD},
+		 * {@code null} before.
+		 */
+		Spill spill;
+
+		boolean isOpen;
+
+		ZipEntryStream( final String name )
 		{
-			zos.putNextEntry( entry );
-			isOpen = true;
+			this.name = name;
+			this.buffer = new Buffer( 64 * 1024 );
+			this.spill = null;
+			this.isOpen = true;
 		}
 
 		@Override
 		public void write( final int b ) throws IOException
 		{
-			zos.write( b );
+			if ( spill == null && buffer.size() < SPILL_THRESHOLD )
+				buffer.write( b );
+			else
+				spill().write( b );
 		}
 
 		@Override
 		public void write( final byte[] b ) throws IOException
 		{
-			zos.write( b );
+			write( b, 0, b.length );
 		}
 
 		@Override
 		public void write( final byte[] b, final int off, final int len ) throws IOException
 		{
-			zos.write( b, off, len );
+			if ( spill == null && buffer.size() + ( long ) len <= SPILL_THRESHOLD )
+				buffer.write( b, off, len );
+			else
+				spill().write( b, off, len );
 		}
 
-		@Override
-		public void flush() throws IOException
+		/**
+		 * Returns the {@link Spill} of this entry, creating it and moving the
+		 * buffered content to it on the first call.
+		 */
+		private Spill spill() throws IOException
 		{
-			zos.flush();
+			if ( spill == null )
+			{
+				spill = new Spill( name );
+				spill.write( buffer.array(), 0, buffer.size() );
+				buffer = null;
+			}
+			return spill;
 		}
 
 		@Override
-		public void close() throws IOException
+		public synchronized void close() throws IOException
 		{
-			zos.closeEntry();
+			if ( !isOpen )
+				return;
 			isOpen = false;
+			submit( this );
 		}
 	}
 }
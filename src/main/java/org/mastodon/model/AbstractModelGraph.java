@@ -74,6 +74,8 @@ public class AbstractModelGraph<
 
 	protected final ReentrantReadWriteLock lock;
 
+	private volatile int modificationStamp;
+
 	public AbstractModelGraph( final EP edgePool )
 	{
 		super( edgePool );
@@ -166,6 +168,21 @@ public class AbstractModelGraph<
 		return lock;
 	}
 
+	/**
+	 * Returns a stamp that changes whenever the graph and its properties may
+	 * have been modified without notifying the property change listeners:
+	 * when listeners are paused and resumed, and when the graph is rebuilt.
+	 * <p>
+	 * Structures derived from property maps that are kept up to date by
+	 * listening to them have to be recomputed when this stamp changes.
+	 *
+	 * @return the modification stamp.
+	 */
+	public int getModificationStamp()
+	{
+		return modificationStamp;
+	}
+
 	@Override
 	protected void clear()
 	{
@@ -175,6 +192,7 @@ public class AbstractModelGraph<
 	@Override
 	protected void pauseListeners()
 	{
+		++modificationStamp;
 		super.pauseListeners();
 		vertexPool.getPropertyMaps().pauseListeners();
 		edgePool.getPropertyMaps().pauseListeners();
@@ -186,12 +204,17 @@ public class AbstractModelGraph<
 		edgePool.getPropertyMaps().resumeListeners();
 		vertexPool.getPropertyMaps().resumeListeners();
 		super.resumeListeners();
+		++modificationStamp;
 	}
 
 	@Override
 	public void notifyGraphChanged()
 	{
+		// Listeners rebuild derived graphs, e.g. the branch graph, and their
+		// properties, without notifying property listeners.
+		++modificationStamp;
 		super.notifyGraphChanged();
+		++modificationStamp;
 	}
 
 	/**
@@ -28,9 +28,30 @@
  */
 package org.mastodon.model;
 
+import java.util.concurrent.locks.Lock;
+
 /**
  * Provides access to {@link AbstractModelGraph} methods that we don't want to
  * be {@code public} but that are needed by importers.
+ * <p>
+ * Importers add objects to the model between {@link #startImport(boolean)}
+ * and {@link #finishImport()}, in a bulk-load session. During the session,
+ * graph and property listeners are paused: objects are appended to the graph
+ * pools without notifying the spatial index, the undo recorder, statistics or
+ * views for each of them. Instead, listeners are notified that the graph was
+ * rebuilt, and rebuild their derived structures from scratch.
+ * <p>
+ * Importers add objects in batches, between {@link #startInsertion()} and
+ * {@link #finishInsertion()}, which hold the write lock of the model graph.
+ * They read and parse their input without holding it, so that views are not
+ * blocked during long imports. After a batch, the objects imported so far are
+ * published to the derived structures (by notifying that the graph was
+ * rebuilt) if enough time has passed since the previous publication. The
+ * interval grows with the time the listeners take to rebuild, so that
+ * publications take at most about a tenth of the import time. Readers of the
+ * model therefore see derived structures that lag behind the graph during the
+ * session, but never reference objects removed by the import, and are
+ * complete once the session is finished.
  *
  * @param <M>
  *            the type of model to import.
@@ -39,19 +60,111 @@ package org.mastodon.model;
  */
 public abstract class AbstractModelImporter< M extends AbstractModel< ?, ?, ? > >
 {
+	/**
+	 * Minimal time between two publications of the imported objects, in
+	 * nanoseconds.
+	 */
+	private static final long MIN_PUBLICATION_INTERVAL = 1_000_000_000L;
+
+	/**
+	 * Ratio of the time between two publications to the duration of the last
+	 * publication.
+	 */
+	private static final int PUBLICATION_INTERVAL_RATIO = 10;
+
 	private final M model;
 
+	private long nextPublication;
+
 	protected AbstractModelImporter( final M model )
 	{
 		this.model = model;
 	}
 
+	/**
+	 * Starts a bulk-load session that replaces the content of the model.
+	 */
 	protected void startImport()
 	{
+		startImport( true );
+	}
+
+	/**
+	 * Starts a bulk-load session.
+	 *
+	 * @param clear
+	 *            if {@code true}, the model graph is cleared. Otherwise, the
+	 *            imported objects are appended to the existing ones.
+	 */
+	protected void startImport( final boolean clear )
+	{
+		if ( clear )
+		{
+			final Lock lock = model.modelGraph.getLock().writeLock();
+			lock.lock();
+			try
+			{
+				model.modelGraph.pauseListeners();
+				model.modelGraph.clear();
+				model.modelGraph.resumeListeners();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			// Derived structures forget the removed objects before the session,
+			// because the model can be read while objects are imported.
+			model.modelGraph.notifyGraphChanged();
+		}
 		model.modelGraph.pauseListeners();
-		model.modelGraph.clear();
+		nextPublication = System.nanoTime() + MIN_PUBLICATION_INTERVAL;
+	}
+
+	/**
+	 * Locks the model graph for writing, before adding a batch of imported
+	 * objects to it. Must be followed by {@link #finishInsertion()}, also if
+	 * the insertion failed.
+	 */
+	protected void startInsertion()
+	{
+		model.modelGraph.getLock().writeLock().lock();
+	}
+
+	/**
+	 * Unlocks the model graph after adding a batch of imported objects to it,
+	 * and publishes the objects imported so far if it is time to.
+	 */
+	protected void finishInsertion()
+	{
+		model.modelGraph.getLock().writeLock().unlock();
+		if ( System.nanoTime() - nextPublication >= 0 )
+			publishInsertions();
+	}
+
+	/**
+	 * Notifies the listeners that the graph was rebuilt, so that the derived
+	 * structures include the objects imported so far.
+	 */
+	protected void publishInsertions()
+	{
+		final long start = System.nanoTime();
+		model.modelGraph.resumeListeners();
+		try
+		{
+			model.modelGraph.notifyGraphChanged();
+		}
+		finally
+		{
+			model.modelGraph.pauseListeners();
+		}
+		final long end = System.nanoTime();
+		nextPublication = end + Math.max( MIN_PUBLICATION_INTERVAL, PUBLICATION_INTERVAL_RATIO * ( end - start ) );
 	}
 
+	/**
+	 * Finishes the bulk-load session. Must be called also if the import
+	 * failed.
+	 */
 	protected void finishImport()
 	{
 		model.modelGraph.resumeListeners();
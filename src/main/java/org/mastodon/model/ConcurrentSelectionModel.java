@@ -0,0 +1,587 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.scijava.listeners.Listeners;
+
+/**
+ * A class that manages a selection of vertices and edges of a graph, and can
+ * be read concurrently without locking.
+ * <p>
+ * The selected state is stored in bitsets indexed by vertex and edge id.
+ * {@link #isSelected(Vertex)} and {@link #isSelected(Edge)} are wait-free, so
+ * that render loops do not compete with edits for a lock. Modifications are
+ * serialized, and applied in place: a reader running concurrently with the
+ * modification of a collection of vertices or edges can see part of it.
+ * <p>
+ * Listeners are notified once per modifying call, outside of the lock. By
+ * default they are notified as with {@link DefaultSelectionModel}: on the
+ * thread that made the change, before the modifying call returns.
+ * <p>
+ * Notifications can optionally be coalesced: notifications requested while
+ * listeners are being notified (from another thread, or from a listener) are
+ * then merged into a single additional notification. Listeners are then not
+ * always notified on the thread that made a change, and not always before the
+ * modifying call returns. If thread A is notifying listeners when thread B
+ * changes the selection, B returns immediately and A notifies listeners once
+ * more after the current round.
+ * <p>
+ * Derived data can be maintained incrementally by listening to the changes of
+ * individual vertices and edges through {@link #selectionChangeListeners()}.
+ * <p>
+ * Created instances must be registered as a {@link GraphListener} to always
+ * return consistent results, as for {@link DefaultSelectionModel}.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ */
+public class ConcurrentSelectionModel< V extends Vertex< E >, E extends Edge< V > >
+		implements SelectionModel< V, E >, GraphListener< V, E >
+{
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	private final Bits vertexBits;
+
+	private final Bits edgeBits;
+
+	private final Listeners.List< SelectionListener > listeners;
+
+	private final Listeners.List< SelectionChangeListener< V, E > > changeListeners;
+
+	/**
+	 * Whether notifications requested while listeners are being notified are
+	 * coalesced.
+	 */
+	private final boolean coalesceNotifications;
+
+	/**
+	 * Number of notifications requested since listeners were last notified,
+	 * when they are coalesced.
+	 * The thread that increments this from 0 notifies listeners until it is
+	 * back to 0.
+	 */
+	private final AtomicInteger pendingEvents;
+
+	/**
+	 * If <code>false</code>, listeners will not be notified when a
+	 * selection-change event happens.
+	 */
+	private volatile boolean emitEvents;
+
+	/**
+	 * Is <code>true</code> if a selection-change event happened while the
+	 * listeners were paused.
+	 */
+	private volatile boolean shouldEmitEvent;
+
+	/**
+	 * Creates a new selection for the specified graph, that notifies its
+	 * listeners synchronously.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param idmap
+	 *            the bidirectional id map, used to efficiently stores the
+	 *            selected state of edges and vertices.
+	 */
+	public ConcurrentSelectionModel( final ListenableReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap )
+	{
+		this( graph, idmap, false );
+	}
+
+	/**
+	 * Creates a new selection for the specified graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param idmap
+	 *            the bidirectional id map, used to efficiently stores the
+	 *            selected state of edges and vertices.
+	 * @param coalesceNotifications
+	 *            whether notifications requested while listeners are being
+	 *            notified are coalesced. If {@code true}, listeners are not
+	 *            always notified before the modifying call returns.
+	 */
+	public ConcurrentSelectionModel( final ListenableReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap, final boolean coalesceNotifications )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		this.coalesceNotifications = coalesceNotifications;
+		vertexBits = new Bits();
+		edgeBits = new Bits();
+		listeners = new Listeners.SynchronizedList<>();
+		changeListeners = new Listeners.SynchronizedList<>();
+		pendingEvents = new AtomicInteger();
+		emitEvents = true;
+		shouldEmitEvent = false;
+	}
+
+	/**
+	 * Interface for listeners notified of the changes of the selected state of
+	 * individual vertices and edges.
+	 * <p>
+	 * Listeners are called while holding the lock of the selection model, its
+	 * monitor, after the change was applied. They must not modify the
+	 * selection. Code that synchronizes on the selection model sees a state
+	 * consistent with the changes reported so far.
+	 * <p>
+	 * Vertices and edges that are deselected because they are removed from the
+	 * graph are not reported.
+	 *
+	 * @param <V>
+	 *            the type of vertices.
+	 * @param <E>
+	 *            the type of edges.
+	 */
+	public interface SelectionChangeListener< V, E >
+	{
+		/**
+		 * Called when the selected state of the specified vertex has changed.
+		 *
+		 * @param vertex
+		 *            the vertex.
+		 * @param selected
+		 *            its new selected state.
+		 */
+		void vertexSelectionChanged( V vertex, boolean selected );
+
+		/**
+		 * Called when the selected state of the specified edge has changed.
+		 *
+		 * @param edge
+		 *            the edge.
+		 * @param selected
+		 *            its new selected state.
+		 */
+		void edgeSelectionChanged( E edge, boolean selected );
+
+		/**
+		 * Called when all vertices and edges have been deselected.
+		 */
+		void selectionCleared();
+	}
+
+	/**
+	 * Get the list of {@link SelectionChangeListener}s. Add a listener to be
+	 * notified of the changes of individual vertices and edges.
+	 *
+	 * @return the list of listeners.
+	 */
+	public Listeners< SelectionChangeListener< V, E > > selectionChangeListeners()
+	{
+		return changeListeners;
+	}
+
+	/**
+	 * Sets the selected state of a vertex, and reports the change. Must be
+	 * called while holding the lock.
+	 */
+	private boolean setVertexBit( final V v, final boolean selected )
+	{
+		if ( !vertexBits.set( idmap.getVertexId( v ), selected ) )
+			return false;
+		for ( final SelectionChangeListener< V, E > l : changeListeners.list )
+			l.vertexSelectionChanged( v, selected );
+		return true;
+	}
+
+	/**
+	 * Sets the selected state of an edge, and reports the change. Must be
+	 * called while holding the lock.
+	 */
+	private boolean setEdgeBit( final E e, final boolean selected )
+	{
+		if ( !edgeBits.set( idmap.getEdgeId( e ), selected ) )
+			return false;
+		for ( final SelectionChangeListener< V, E > l : changeListeners.list )
+			l.edgeSelectionChanged( e, selected );
+		return true;
+	}
+
+	@Override
+	public boolean isSelected( final V v )
+	{
+		return vertexBits.get( idmap.getVertexId( v ) );
+	}
+
+	@Override
+	public boolean isSelected( final E e )
+	{
+		return edgeBits.get( idmap.getEdgeId( e ) );
+	}
+
+	@Override
+	public void setSelected( final V v, final boolean selected )
+	{
+		final boolean changed;
+		synchronized ( this )
+		{
+			changed = setVertexBit( v, selected );
+		}
+		if ( changed )
+			notifyListeners();
+	}
+
+	@Override
+	public void setSelected( final E e, final boolean selected )
+	{
+		final boolean changed;
+		synchronized ( this )
+		{
+			changed = setEdgeBit( e, selected );
+		}
+		if ( changed )
+			notifyListeners();
+	}
+
+	@Override
+	public void toggle( final V v )
+	{
+		synchronized ( this )
+		{
+			setVertexBit( v, !vertexBits.get( idmap.getVertexId( v ) ) );
+		}
+		notifyListeners();
+	}
+
+	@Override
+	public void toggle( final E e )
+	{
+		synchronized ( this )
+		{
+			setEdgeBit( e, !edgeBits.get( idmap.getEdgeId( e ) ) );
+		}
+		notifyListeners();
+	}
+
+	@Override
+	public boolean setEdgesSelected( final Collection< E > edges, final boolean selected )
+	{
+		boolean changed = false;
+		synchronized ( this )
+		{
+			for ( final E e : edges )
+				changed |= setEdgeBit( e, selected );
+		}
+		if ( changed )
+			notifyListeners();
+		return changed;
+	}
+
+	@Override
+	public boolean setVerticesSelected( final Collection< V > vertices, final boolean selected )
+	{
+		boolean changed = false;
+		synchronized ( this )
+		{
+			for ( final V v : vertices )
+				changed |= setVertexBit( v, selected );
+		}
+		if ( changed )
+			notifyListeners();
+		return changed;
+	}
+
+	@Override
+	public boolean clearSelection()
+	{
+		synchronized ( this )
+		{
+			if ( vertexBits.isEmpty() && edgeBits.isEmpty() )
+				return false;
+			vertexBits.clear();
+			edgeBits.clear();
+			for ( final SelectionChangeListener< V, E > l : changeListeners.list )
+				l.selectionCleared();
+		}
+		notifyListeners();
+		return true;
+	}
+
+	/**
+	 * Get the selected edges.
+	 *
+	 * @return a <b>new</b> {@link RefSet} containing the selected edges.
+	 */
+	@Override
+	public RefSet< E > getSelectedEdges()
+	{
+		final RefSet< E > set = RefCollections.createRefSet( graph.edges() );
+		final E ref = graph.edgeRef();
+		final AtomicLongArray words = edgeBits.words;
+		for ( int id = Bits.nextSetBit( words, 0 ); id >= 0; id = Bits.nextSetBit( words, id + 1 ) )
+			set.add( idmap.getEdge( id, ref ) );
+		graph.releaseRef( ref );
+		return set;
+	}
+
+	/**
+	 * Get the selected vertices.
+	 *
+	 * @return a <b>new</b> {@link RefSet} containing the selected vertices.
+	 */
+	@Override
+	public RefSet< V > getSelectedVertices()
+	{
+		final RefSet< V > set = RefCollections.createRefSet( graph.vertices() );
+		final V ref = graph.vertexRef();
+		final AtomicLongArray words = vertexBits.words;
+		for ( int id = Bits.nextSetBit( words, 0 ); id >= 0; id = Bits.nextSetBit( words, id + 1 ) )
+			set.add( idmap.getVertex( id, ref ) );
+		graph.releaseRef( ref );
+		return set;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return vertexBits.isEmpty() && edgeBits.isEmpty();
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append( super.toString() );
+		sb.append( "\nVertices: " + getSelectedVertices() );
+		sb.append( "\nEdges:    " + getSelectedEdges() );
+		return sb.toString();
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public void vertexAdded( final V v )
+	{}
+
+	@Override
+	public void vertexRemoved( final V v )
+	{
+		final boolean changed;
+		synchronized ( this )
+		{
+			changed = vertexBits.set( idmap.getVertexId( v ), false );
+		}
+		if ( changed )
+			notifyListeners();
+	}
+
+	@Override
+	public void edgeAdded( final E e )
+	{}
+
+	@Override
+	public void edgeRemoved( final E e )
+	{
+		final boolean changed;
+		synchronized ( this )
+		{
+			changed = edgeBits.set( idmap.getEdgeId( e ), false );
+		}
+		if ( changed )
+			notifyListeners();
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		clearSelection();
+	}
+
+	@Override
+	public Listeners< SelectionListener > listeners()
+	{
+		return listeners;
+	}
+
+	private void notifyListeners()
+	{
+		if ( !emitEvents )
+		{
+			shouldEmitEvent = true;
+			return;
+		}
+		if ( !coalesceNotifications )
+		{
+			for ( final SelectionListener l : listeners.list )
+				l.selectionChanged();
+			return;
+		}
+		if ( pendingEvents.getAndIncrement() != 0 )
+			return;
+		boolean done = false;
+		try
+		{
+			int n;
+			do
+			{
+				n = pendingEvents.get();
+				for ( final SelectionListener l : listeners.list )
+					l.selectionChanged();
+			}
+			while ( !pendingEvents.compareAndSet( n, 0 ) );
+			done = true;
+		}
+		finally
+		{
+			// A failing listener must not stop later notifications.
+			if ( !done )
+				pendingEvents.set( 0 );
+		}
+	}
+
+	@Override
+	public void resumeListeners()
+	{
+		emitEvents = true;
+		if ( shouldEmitEvent )
+		{
+			// Catchup.
+			shouldEmitEvent = false;
+			notifyListeners();
+		}
+	}
+
+	@Override
+	public void pauseListeners()
+	{
+		emitEvents = false;
+	}
+
+	/**
+	 * A bitset that can be read without locking. Modifying methods must be
+	 * called while holding the lock of the enclosing selection model.
+	 */
+	private static final class Bits
+	{
+		/**
+		 * The current words, modified in place. Replaced by a larger copy
+		 * when a bit beyond the end is set.
+		 */
+		private volatile AtomicLongArray words;
+
+		private volatile int cardinality;
+
+		Bits()
+		{
+			words = new AtomicLongArray( 16 );
+			cardinality = 0;
+		}
+
+		boolean get( final int i )
+		{
+			if ( i < 0 )
+				return false;
+			final AtomicLongArray w = words;
+			final int wi = i >>> 6;
+			return wi < w.length() && ( w.get( wi ) & ( 1L << i ) ) != 0;
+		}
+
+		boolean isEmpty()
+		{
+			return cardinality == 0;
+		}
+
+		/**
+		 * Sets bit {@code i} to {@code value}.
+		 *
+		 * @return {@code true} if the bit changed.
+		 */
+		boolean set( final int i, final boolean value )
+		{
+			final int wi = i >>> 6;
+			AtomicLongArray w = words;
+			if ( wi >= w.length() )
+			{
+				if ( !value )
+					return false;
+				w = grow( w, wi + 1 );
+				words = w;
+			}
+			final long old = w.get( wi );
+			final long mask = 1L << i;
+			final long updated = value ? old | mask : old & ~mask;
+			if ( updated == old )
+				return false;
+			w.set( wi, updated );
+			cardinality += value ? 1 : -1;
+			return true;
+		}
+
+		void clear()
+		{
+			final AtomicLongArray w = words;
+			for ( int i = 0; i < w.length(); ++i )
+				if ( w.get( i ) != 0 )
+					w.set( i, 0 );
+			cardinality = 0;
+		}
+
+		private static AtomicLongArray grow( final AtomicLongArray w, final int minLength )
+		{
+			final AtomicLongArray copy = new AtomicLongArray( Math.max( minLength, 2 * w.length() ) );
+			for ( int i = 0; i < w.length(); ++i )
+				copy.lazySet( i, w.get( i ) );
+			return copy;
+		}
+
+		static int nextSetBit( final AtomicLongArray w, final int from )
+		{
+			int wi = from >>> 6;
+			if ( wi >= w.length() )
+				return -1;
+			long word = w.get( wi ) & ( -1L << from );
+			while ( true )
+			{
+				if ( word != 0 )
+					return ( wi << 6 ) + Long.numberOfTrailingZeros( word );
+				if ( ++wi >= w.length() )
+					return -1;
+				word = w.get( wi );
+			}
+		}
+	}
+}
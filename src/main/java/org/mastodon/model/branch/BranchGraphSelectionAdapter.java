@@ -32,16 +32,48 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefMaps;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
 import org.mastodon.graph.branch.BranchGraph;
+import org.mastodon.model.ConcurrentSelectionModel;
 import org.mastodon.model.SelectionListener;
 import org.mastodon.model.SelectionModel;
 import org.scijava.listeners.Listeners;
 
+/**
+ * Adapts a {@link SelectionModel} of a core graph to its branch graph.
+ * <p>
+ * A branch vertex is selected if all the vertices and edges of its branch are
+ * selected. If the core selection model is a {@link ConcurrentSelectionModel},
+ * the adapter caches the number of objects and the number of selected objects
+ * per branch, so that {@link #isSelected(Vertex)} runs in constant time. The
+ * selected counts are updated from the changes of individual objects the core
+ * selection model reports, while holding its lock, so that they are always
+ * consistent with the core selection. The entries of a branch are computed
+ * when first needed, and recomputed when the first or last vertex of the
+ * branch changed. Otherwise, {@link #isSelected(Vertex)} checks the objects of
+ * the branch until it finds one that is not selected.
+ * <p>
+ * The adapter registers listeners on the core selection model and graph, and
+ * on the branch graph; {@link #close()} should be called when it is not used
+ * anymore.
+ *
+ * @param <V>
+ *            the type of vertices in the core graph.
+ * @param <E>
+ *            the type of edges in the core graph.
+ * @param <BV>
+ *            the type of vertices in the branch graph.
+ * @param <BE>
+ *            the type of edges in the branch graph.
+ */
 public class BranchGraphSelectionAdapter< 
 	V extends Vertex< E >, 
 	E extends Edge< V >, 
@@ -53,6 +85,43 @@ public class BranchGraphSelectionAdapter<
 
 	private final SelectionModel< V, E > selection;
 
+	/**
+	 * Guards the cached counts. The core selection model, which reports its
+	 * changes while holding its own lock.
+	 */
+	private final Object lock;
+
+	/**
+	 * Number of vertices and edges per branch vertex. Missing entries have not
+	 * been computed yet. {@code null} if the core selection model does not
+	 * report its changes, in which case nothing is cached.
+	 */
+	private final RefIntMap< BV > branchSizes;
+
+	/**
+	 * Number of selected vertices and edges per branch vertex, for the branch
+	 * vertices that have a {@link #branchSizes} entry.
+	 */
+	private final RefIntMap< BV > selectedCounts;
+
+	/**
+	 * Ids of the first and last core vertices of each branch, when its entries
+	 * were computed.
+	 */
+	private final RefIntMap< BV > firstVertexIds;
+
+	private final RefIntMap< BV > lastVertexIds;
+
+	private final ConcurrentSelectionModel.SelectionChangeListener< V, E > changeListener;
+
+	private final GraphListener< V, E > graphListener;
+
+	private final GraphListener< BV, BE > branchGraphListener;
+
+	private final BV bvRef;
+
+	private final V vRef;
+
 	public BranchGraphSelectionAdapter(
 			final BranchGraph< BV, BE, V, E > branchGraph,
 			final ReadOnlyGraph< V, E > graph,
@@ -61,41 +130,146 @@ public class BranchGraphSelectionAdapter<
 	{
 		super( branchGraph, graph, idmap );
 		this.selection = selection;
+		if ( selection instanceof ConcurrentSelectionModel )
+		{
+			this.lock = selection;
+			this.branchSizes = RefMaps.createRefIntMap( branchGraph.vertices(), -1 );
+			this.selectedCounts = RefMaps.createRefIntMap( branchGraph.vertices(), 0 );
+			this.firstVertexIds = RefMaps.createRefIntMap( branchGraph.vertices(), -1 );
+			this.lastVertexIds = RefMaps.createRefIntMap( branchGraph.vertices(), -1 );
+			this.bvRef = branchGraph.vertexRef();
+			this.vRef = graph.vertexRef();
+			this.changeListener = new SelectedCounter();
+			( ( ConcurrentSelectionModel< V, E > ) selection ).selectionChangeListeners().add( changeListener );
+			this.graphListener = new GraphInvalidator();
+			if ( graph instanceof ListenableReadOnlyGraph )
+				( ( ListenableReadOnlyGraph< V, E > ) graph ).addGraphListener( graphListener );
+			this.branchGraphListener = new BranchInvalidator();
+			if ( branchGraph instanceof ListenableReadOnlyGraph )
+				( ( ListenableReadOnlyGraph< BV, BE > ) branchGraph ).addGraphListener( branchGraphListener );
+		}
+		else
+		{
+			this.lock = this;
+			this.branchSizes = null;
+			this.selectedCounts = null;
+			this.firstVertexIds = null;
+			this.lastVertexIds = null;
+			this.bvRef = null;
+			this.vRef = null;
+			this.changeListener = null;
+			this.graphListener = null;
+			this.branchGraphListener = null;
+		}
 	}
 
-	@Override
-	public void resumeListeners()
+	/**
+	 * Unregisters the listeners this adapter registered on the core selection
+	 * model and graph, and on the branch graph.
+	 */
+	public void close()
 	{
-		selection.resumeListeners();
+		if ( branchSizes == null )
+			return;
+		( ( ConcurrentSelectionModel< V, E > ) selection ).selectionChangeListeners().remove( changeListener );
+		if ( graph instanceof ListenableReadOnlyGraph )
+			( ( ListenableReadOnlyGraph< V, E > ) graph ).removeGraphListener( graphListener );
+		if ( branchGraph instanceof ListenableReadOnlyGraph )
+			( ( ListenableReadOnlyGraph< BV, BE > ) branchGraph ).removeGraphListener( branchGraphListener );
 	}
 
-	@Override
-	public void pauseListeners()
+	private void invalidateAll()
 	{
-		selection.pauseListeners();
+		synchronized ( lock )
+		{
+			branchSizes.clear();
+			selectedCounts.clear();
+			firstVertexIds.clear();
+			lastVertexIds.clear();
+		}
 	}
 
-	@Override
-	public boolean isSelected( final BV vertex )
+	private void invalidate( final BV branchVertex )
+	{
+		synchronized ( lock )
+		{
+			branchSizes.remove( branchVertex );
+			selectedCounts.remove( branchVertex );
+			firstVertexIds.remove( branchVertex );
+			lastVertexIds.remove( branchVertex );
+		}
+	}
+
+	/**
+	 * Whether the cached entries of the specified branch vertex are up to
+	 * date. Must be called while holding {@link #lock}.
+	 */
+	private boolean isCached( final BV branchVertex )
+	{
+		if ( branchSizes.get( branchVertex ) < 0 )
+			return false;
+		final V first = branchGraph.getFirstLinkedVertex( branchVertex, vRef );
+		if ( first == null || idmap.getVertexId( first ) != firstVertexIds.get( branchVertex ) )
+			return false;
+		final V last = branchGraph.getLastLinkedVertex( branchVertex, vRef );
+		return last != null && idmap.getVertexId( last ) == lastVertexIds.get( branchVertex );
+	}
+
+	/**
+	 * Counts the objects and the selected objects of the specified branch. Must
+	 * be called while holding {@link #lock}.
+	 */
+	private void count( final BV branchVertex )
 	{
-		Iterator<V> vIter = branchGraph.vertexBranchIterator( vertex );
-		Iterator<E> eIter = branchGraph.edgeBranchIterator( vertex );
+		int size = 0;
+		int selected = 0;
+		final Iterator< V > vIter = branchGraph.vertexBranchIterator( branchVertex );
+		final Iterator< E > eIter = branchGraph.edgeBranchIterator( branchVertex );
 		try
 		{
 			while ( vIter.hasNext() )
 			{
-				V v = vIter.next();
-				if ( !selection.isSelected( v ) )
-					return false;
+				++size;
+				if ( selection.isSelected( vIter.next() ) )
+					++selected;
 			}
-
 			while ( eIter.hasNext() )
 			{
-				E e = eIter.next();
-				if ( !selection.isSelected( e ) )
-					return false;
+				++size;
+				if ( selection.isSelected( eIter.next() ) )
+					++selected;
 			}
+		}
+		finally
+		{
+			branchGraph.releaseIterator( vIter );
+			branchGraph.releaseIterator( eIter );
+		}
+		branchSizes.put( branchVertex, size );
+		selectedCounts.put( branchVertex, selected );
+		firstVertexIds.put( branchVertex, idmap.getVertexId( branchGraph.getFirstLinkedVertex( branchVertex, vRef ) ) );
+		lastVertexIds.put( branchVertex, idmap.getVertexId( branchGraph.getLastLinkedVertex( branchVertex, vRef ) ) );
+	}
 
+	/**
+	 * Checks whether all the objects of the specified branch are selected,
+	 * without caching.
+	 */
+	private boolean isBranchSelected( final BV branchVertex )
+	{
+		final Iterator< V > vIter = branchGraph.vertexBranchIterator( branchVertex );
+		final Iterator< E > eIter = branchGraph.edgeBranchIterator( branchVertex );
+		try
+		{
+			// A branch has at least one vertex.
+			if ( !vIter.hasNext() )
+				return false;
+			while ( vIter.hasNext() )
+				if ( !selection.isSelected( vIter.next() ) )
+					return false;
+			while ( eIter.hasNext() )
+				if ( !selection.isSelected( eIter.next() ) )
+					return false;
 			return true;
 		}
 		finally
@@ -105,6 +279,132 @@ public class BranchGraphSelectionAdapter<
 		}
 	}
 
+	/**
+	 * Updates the selected count of the branch of each object whose selected
+	 * state changed. Called while holding the lock of the core selection
+	 * model.
+	 */
+	private class SelectedCounter implements ConcurrentSelectionModel.SelectionChangeListener< V, E >
+	{
+		@Override
+		public void vertexSelectionChanged( final V vertex, final boolean selected )
+		{
+			update( branchGraph.getBranchVertex( vertex, bvRef ), selected );
+		}
+
+		@Override
+		public void edgeSelectionChanged( final E edge, final boolean selected )
+		{
+			update( branchGraph.getBranchVertex( edge, bvRef ), selected );
+		}
+
+		private void update( final BV branchVertex, final boolean selected )
+		{
+			if ( branchVertex == null || branchSizes.get( branchVertex ) < 0 )
+				return;
+			if ( isCached( branchVertex ) )
+				selectedCounts.put( branchVertex, selectedCounts.get( branchVertex ) + ( selected ? 1 : -1 ) );
+			else
+				invalidate( branchVertex );
+		}
+
+		@Override
+		public void selectionCleared()
+		{
+			// The branch sizes stay valid, all counts are 0.
+			selectedCounts.clear();
+		}
+	}
+
+	/**
+	 * Discards the cached entries when the core graph is rebuilt. Other
+	 * changes of the core graph change the first or last vertex of the
+	 * branches they affect, or remove these branches.
+	 */
+	private class GraphInvalidator implements GraphListener< V, E >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{}
+	}
+
+	/**
+	 * Discards the cached entries of branch vertices that are added or removed,
+	 * so that entries are not inherited by a new branch vertex reusing the
+	 * same index.
+	 */
+	private class BranchInvalidator implements GraphListener< BV, BE >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final BV vertex )
+		{
+			invalidate( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final BV vertex )
+		{
+			invalidate( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final BE edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final BE edge )
+		{}
+	}
+
+	@Override
+	public void resumeListeners()
+	{
+		selection.resumeListeners();
+	}
+
+	@Override
+	public void pauseListeners()
+	{
+		selection.pauseListeners();
+	}
+
+	@Override
+	public boolean isSelected( final BV vertex )
+	{
+		if ( branchSizes == null )
+			return isBranchSelected( vertex );
+		synchronized ( lock )
+		{
+			if ( !isCached( vertex ) )
+				count( vertex );
+			return selectedCounts.get( vertex ) == branchSizes.get( vertex );
+		}
+	}
+
 	@Override
 	public boolean isSelected( final BE edge )
 	{
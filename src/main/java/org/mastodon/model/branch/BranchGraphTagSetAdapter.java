@@ -29,14 +29,24 @@
 package org.mastodon.model.branch;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 import org.mastodon.adapter.RefBimap;
+import org.mastodon.collection.RefIntMap;
+import org.mastodon.collection.RefMaps;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
 import org.mastodon.graph.branch.BranchGraph;
+import org.mastodon.model.tag.DefaultObjTags;
+import org.mastodon.model.tag.DefaultObjTags.TagChangeListener;
 import org.mastodon.model.tag.ObjTagMap;
 import org.mastodon.model.tag.ObjTags;
 import org.mastodon.model.tag.ObjTagsAdapter;
@@ -46,6 +56,30 @@ import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.scijava.listeners.Listeners;
 
+/**
+ * Adapts a {@link TagSetModel} of a core graph to its branch graph.
+ * <p>
+ * A branch vertex has a tag only if all the vertices and edges of its branch
+ * have this tag. If the core tags are {@link DefaultObjTags}, this uniform tag
+ * is cached per branch vertex and tag set. The cache entries of a branch are
+ * invalidated when the tags of its core objects change, when its first or last
+ * vertex changed, or when its branch vertex is added or removed. The whole
+ * cache is discarded when the core graph is rebuilt or the tag set structure
+ * changes.
+ * <p>
+ * The adapter registers listeners on the core tags and graph, and on the
+ * branch graph; {@link #close()} should be called when it is not used
+ * anymore.
+ *
+ * @param <V>
+ *            the type of vertices in the core graph.
+ * @param <E>
+ *            the type of edges in the core graph.
+ * @param <BV>
+ *            the type of vertices in the branch graph.
+ * @param <BE>
+ *            the type of edges in the branch graph.
+ */
 public class BranchGraphTagSetAdapter< 
 	V extends Vertex< E >, 
 	E extends Edge< V >, 
@@ -61,6 +95,44 @@ public class BranchGraphTagSetAdapter<
 
 	private final ObjTags< E > edgeTags;
 
+	/**
+	 * Value of {@link #uniformTags} entries that have not been computed.
+	 */
+	private static final int UNKNOWN = -2;
+
+	/**
+	 * Value of {@link #uniformTags} entries for branches that do not have a
+	 * uniform tag.
+	 */
+	private static final int NO_TAG = -1;
+
+	/**
+	 * Maps tag sets to the index, in the tag set, of the uniform tag of each
+	 * branch vertex. {@code null} if the core tags do not notify changes, in
+	 * which case nothing is cached.
+	 */
+	private final Map< TagSet, RefIntMap< BV > > uniformTags;
+
+	/**
+	 * Ids of the first and last core vertices of each branch, when its
+	 * {@link #uniformTags} entries were computed.
+	 */
+	private final RefIntMap< BV > firstVertexIds;
+
+	private final RefIntMap< BV > lastVertexIds;
+
+	private final V vRef;
+
+	private final BranchCacheInvalidator< V > vertexInvalidator;
+
+	private final BranchCacheInvalidator< E > edgeInvalidator;
+
+	private final GraphListener< V, E > graphListener;
+
+	private final GraphListener< BV, BE > branchGraphListener;
+
+	private final TagSetModelListener tagSetModelListener;
+
 	public BranchGraphTagSetAdapter(
 			final BranchGraph< BV, BE, V, E > branchGraph,
 			final ReadOnlyGraph< V, E > graph,
@@ -71,6 +143,182 @@ public class BranchGraphTagSetAdapter<
 		this.tagsetModel = tagsetModel;
 		this.vertexTags = tagsetModel.getVertexTags();
 		this.edgeTags = tagsetModel.getEdgeTags();
+		if ( vertexTags instanceof DefaultObjTags && edgeTags instanceof DefaultObjTags )
+		{
+			this.uniformTags = new HashMap<>();
+			this.firstVertexIds = RefMaps.createRefIntMap( branchGraph.vertices(), -1 );
+			this.lastVertexIds = RefMaps.createRefIntMap( branchGraph.vertices(), -1 );
+			this.vRef = graph.vertexRef();
+			final BV bvRef = branchGraph.vertexRef();
+			this.vertexInvalidator = new BranchCacheInvalidator<>( v -> branchGraph.getBranchVertex( v, bvRef ) );
+			this.edgeInvalidator = new BranchCacheInvalidator<>( e -> branchGraph.getBranchVertex( e, bvRef ) );
+			( ( DefaultObjTags< V > ) vertexTags ).tagChangeListeners().add( vertexInvalidator );
+			( ( DefaultObjTags< E > ) edgeTags ).tagChangeListeners().add( edgeInvalidator );
+			this.tagSetModelListener = this::invalidateAll;
+			tagsetModel.listeners().add( tagSetModelListener );
+			this.graphListener = new GraphInvalidator();
+			if ( graph instanceof ListenableReadOnlyGraph )
+				( ( ListenableReadOnlyGraph< V, E > ) graph ).addGraphListener( graphListener );
+			this.branchGraphListener = new BranchInvalidator();
+			if ( branchGraph instanceof ListenableReadOnlyGraph )
+				( ( ListenableReadOnlyGraph< BV, BE > ) branchGraph ).addGraphListener( branchGraphListener );
+		}
+		else
+		{
+			this.uniformTags = null;
+			this.firstVertexIds = null;
+			this.lastVertexIds = null;
+			this.vRef = null;
+			this.vertexInvalidator = null;
+			this.edgeInvalidator = null;
+			this.tagSetModelListener = null;
+			this.graphListener = null;
+			this.branchGraphListener = null;
+		}
+	}
+
+	/**
+	 * Unregisters the listeners this adapter registered on the core tags and
+	 * graph, and on the branch graph.
+	 */
+	public void close()
+	{
+		if ( uniformTags == null )
+			return;
+		( ( DefaultObjTags< V > ) vertexTags ).tagChangeListeners().remove( vertexInvalidator );
+		( ( DefaultObjTags< E > ) edgeTags ).tagChangeListeners().remove( edgeInvalidator );
+		tagsetModel.listeners().remove( tagSetModelListener );
+		if ( graph instanceof ListenableReadOnlyGraph )
+			( ( ListenableReadOnlyGraph< V, E > ) graph ).removeGraphListener( graphListener );
+		if ( branchGraph instanceof ListenableReadOnlyGraph )
+			( ( ListenableReadOnlyGraph< BV, BE > ) branchGraph ).removeGraphListener( branchGraphListener );
+	}
+
+	private synchronized void invalidateAll()
+	{
+		uniformTags.clear();
+		firstVertexIds.clear();
+		lastVertexIds.clear();
+	}
+
+	private synchronized void invalidate( final BV branchVertex )
+	{
+		for ( final RefIntMap< BV > map : uniformTags.values() )
+			map.remove( branchVertex );
+		firstVertexIds.remove( branchVertex );
+		lastVertexIds.remove( branchVertex );
+	}
+
+	/**
+	 * Invalidates the cached uniform tags of the specified branch if its first
+	 * or last vertex changed since they were computed, and records its current
+	 * first and last vertices. Must be called while holding the lock of this
+	 * adapter.
+	 */
+	private void validate( final BV branchVertex )
+	{
+		final int first = idmap.getVertexId( branchGraph.getFirstLinkedVertex( branchVertex, vRef ) );
+		final int last = idmap.getVertexId( branchGraph.getLastLinkedVertex( branchVertex, vRef ) );
+		if ( first == firstVertexIds.get( branchVertex ) && last == lastVertexIds.get( branchVertex ) )
+			return;
+		invalidate( branchVertex );
+		firstVertexIds.put( branchVertex, first );
+		lastVertexIds.put( branchVertex, last );
+	}
+
+	/**
+	 * Invalidates the cached uniform tags of the branch containing the objects
+	 * whose tags changed.
+	 */
+	private class BranchCacheInvalidator< O > implements TagChangeListener< O >
+	{
+		private final Function< O, BV > branchOf;
+
+		BranchCacheInvalidator( final Function< O, BV > branchOf )
+		{
+			this.branchOf = branchOf;
+		}
+
+		@Override
+		public void tagsChanged( final O object )
+		{
+			synchronized ( BranchGraphTagSetAdapter.this )
+			{
+				final BV bv = branchOf.apply( object );
+				if ( bv != null )
+					invalidate( bv );
+			}
+		}
+
+		@Override
+		public void tagsRebuilt()
+		{
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Discards the cache when the core graph is rebuilt. Other changes of the
+	 * core graph change the first or last vertex of the branches they affect,
+	 * or remove these branches.
+	 */
+	private class GraphInvalidator implements GraphListener< V, E >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{}
+	}
+
+	/**
+	 * Invalidates the cached uniform tags of branch vertices that are added or
+	 * removed, so that entries are not inherited by a new branch vertex reusing
+	 * the same index.
+	 */
+	private class BranchInvalidator implements GraphListener< BV, BE >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final BV vertex )
+		{
+			invalidate( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final BV vertex )
+		{
+			invalidate( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final BE edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final BE edge )
+		{}
 	}
 
 	@Override
@@ -158,7 +406,7 @@ public class BranchGraphTagSetAdapter<
 			// Wrap to ensure many to 1 correspondence
 			final ObjTagMap< V, Tag > vertexTagMap = vertexTags.tags( tagSet );
 			final ObjTagMap< E, Tag > edgeTagMap = edgeTags.tags( tagSet );
-			return new MyObjTagMap( vertexTagMap, edgeTagMap );
+			return new MyObjTagMap( tagSet, vertexTagMap, edgeTagMap );
 		}
 
 		@Override
@@ -181,8 +429,11 @@ public class BranchGraphTagSetAdapter<
 
 		private final ObjTagMap< V, Tag > vertexTagMap;
 
-		public MyObjTagMap( final ObjTagMap< V, Tag > vertexTagMap, final ObjTagMap< E, Tag > edgeTagMap )
+		private final TagSet tagSet;
+
+		public MyObjTagMap( final TagSet tagSet, final ObjTagMap< V, Tag > vertexTagMap, final ObjTagMap< E, Tag > edgeTagMap )
 		{
+			this.tagSet = tagSet;
 			this.vertexTagMap = vertexTagMap;
 			this.edgeTagMap = edgeTagMap;
 		}
@@ -221,6 +472,28 @@ public class BranchGraphTagSetAdapter<
 
 		@Override
 		public Tag get( final BV branchVertex )
+		{
+			if ( uniformTags == null )
+				return computeUniformTag( branchVertex );
+
+			synchronized ( BranchGraphTagSetAdapter.this )
+			{
+				validate( branchVertex );
+				final RefIntMap< BV > cache = uniformTags.computeIfAbsent( tagSet,
+						ts -> RefMaps.createRefIntMap( branchGraph.vertices(), UNKNOWN ) );
+				final List< Tag > tags = tagSet.getTags();
+				int index = cache.get( branchVertex );
+				if ( index == UNKNOWN )
+				{
+					final Tag tag = computeUniformTag( branchVertex );
+					index = tag == null ? NO_TAG : tags.indexOf( tag );
+					cache.put( branchVertex, index );
+				}
+				return index < 0 ? null : tags.get( index );
+			}
+		}
+
+		private Tag computeUniformTag( final BV branchVertex )
 		{
 			final V vRef = graph.vertexRef();
 			try
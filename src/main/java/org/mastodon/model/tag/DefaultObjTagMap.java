@@ -34,10 +34,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
-import org.mastodon.labels.LabelSet;
-import org.mastodon.labels.LabelSets;
+import org.mastodon.collection.ref.RefArrayList;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.properties.ObjPropertyMap;
 
@@ -53,8 +51,11 @@ import org.mastodon.properties.ObjPropertyMap;
  * been tagged with a certain tag.
  * <p>
  * Tags must map to {@link Integer} IDs that are globally unique across all tag
- * sets. {@code DefaultObjTagMap} is backed a {@link LabelSets} property of the
- * objects (which can be shared among all {@code DefaultObjTagMap}s).
+ * sets. {@code DefaultObjTagMap} is backed by an {@link ObjTagStore}, shared
+ * among all {@code DefaultObjTagMap}s of a type of objects, which maps each
+ * object to the combination of tags it has in all tag sets. This map caches,
+ * for each combination, the tag it contains from this tag set, so that
+ * {@link #get(Object)} is one lookup in the store and one array read.
  *
  * @param <O>
  *            the type of object to tag.
@@ -66,7 +67,7 @@ import org.mastodon.properties.ObjPropertyMap;
  */
 public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 {
-	private final LabelSets< O, Integer > idLabelSets;
+	private final ObjTagStore< O > store;
 
 	private final Function< T, Integer > tagToIdFunction;
 
@@ -74,74 +75,69 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 
 	private final HashMap< T, Integer > tagToId = new HashMap<>();
 
-	private final HashMap< Integer, T > idToTag = new HashMap<>();
+	private final HashMap< Integer, Integer > idToSlot = new HashMap<>();
 
-	private final HashMap< Integer, List< Integer > > idToOtherIds = new HashMap<>();
+	private final ArrayList< T > slotToTag = new ArrayList<>();
+
+	/**
+	 * Maps combination indices of the {@link #store} to the (1-based) position
+	 * of the tag they contain in {@link #slotToTag}, {@code 0} meaning "no
+	 * tag". Only ever replaced by a longer copy, when new combinations have
+	 * been interned.
+	 */
+	private volatile int[] combinationToSlot = new int[ 0 ];
 
 	/**
 	 * Create a tag map with the given set of mutually exclusive {@code tags},
 	 * mapped to IDs by the specified {@code tagToIdFunction} and backed by the
-	 * specified {@code idLabelSets} property.
+	 * specified {@code store}.
 	 *
-	 * @param idLabelSets
-	 *            the backing {@code LabelSets} property.
+	 * @param store
+	 *            the backing store.
 	 * @param tags
 	 *            set of mutually exclusive {@code tags}.
 	 * @param tagToIdFunction
 	 *            maps tags to integer IDs (globally unique across all tag sets).
 	 */
-	public DefaultObjTagMap(
-			final LabelSets< O, Integer > idLabelSets,
+	DefaultObjTagMap(
+			final ObjTagStore< O > store,
 			final Collection< T > tags,
 			final Function< T, Integer > tagToIdFunction )
 	{
-		this.idLabelSets = idLabelSets;
+		this.store = store;
 		this.tagToIdFunction = tagToIdFunction;
-		update( tags );
+		for ( final T tag : tags )
+		{
+			final Integer id = tagToIdFunction.apply( tag );
+			if ( ids.contains( id ) )
+				throw new IllegalArgumentException( "inconsistent tag set: ids are not unique" );
+			ids.add( id );
+			tagToId.put( tag, id );
+			slotToTag.add( tag );
+			idToSlot.put( id, slotToTag.size() );
+		}
 	}
 
 	@Override
 	public void set( final O object, final T tag )
 	{
 		if ( tag == null )
-		{
 			remove( object );
-		}
 		else
-		{
-			final LabelSet< O, Integer > ref = idLabelSets.createRef();
-			final Integer id = tagToIdFunction.apply( tag );
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			labels.removeAll( idToOtherIds.get( id ) );
-			labels.add( id );
-			idLabelSets.releaseRef( ref );
-		}
+			store.set( object, store.modify( store.get( object ), ids, tagToIdFunction.apply( tag ) ) );
 	}
 
 	@Override
 	public void remove( final O object )
 	{
-		final LabelSet< O, Integer > ref = idLabelSets.createRef();
-		idLabelSets.getLabels( object, ref ).removeAll( ids );
-		idLabelSets.releaseRef( ref );
+		store.set( object, store.modify( store.get( object ), ids, null ) );
 	}
 
 	@Override
 	public T get( final O object )
 	{
-		final LabelSet< O, Integer > ref = idLabelSets.createRef();
-		try
-		{
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			for ( final Integer id : ids )
-				if ( labels.contains( id ) )
-					return idToTag.get( id );
-			return null;
-		}
-		finally
-		{
-			idLabelSets.releaseRef( ref );
-		}
+		final int slot = slot( store.get( object ) );
+		return slot == 0 ? null : slotToTag.get( slot - 1 );
 	}
 
 	@Override
@@ -150,29 +146,48 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		final Integer id = tagToId.get( tag );
 		if ( id == null )
 			throw new IllegalArgumentException( "tag is not in tag set" );
-		return Collections.unmodifiableCollection( idLabelSets.getLabeledWith( id ) );
+		final int slot = idToSlot.get( id );
+		final RefArrayList< O > objects = new RefArrayList<>( store.getPool() );
+		for ( final O object : store.getTagged() )
+			if ( slot( store.get( object ) ) == slot )
+				objects.add( object );
+		return Collections.unmodifiableCollection( objects );
 	}
 
 	/**
-	 * Rebuild internal data structures to handle the given tag set.
+	 * Returns the position of the tag of this tag set in the specified
+	 * combination, or 0 if the combination has no tag of this tag set.
 	 */
-	private void update( final Collection< T > tags )
+	private int slot( final int combination )
 	{
-		ids.clear();
-		tagToId.clear();
-		idToTag.clear();
-		idToOtherIds.clear();
-		for ( final T tag : tags )
+		final int[] slots = combinationToSlot;
+		return combination < slots.length
+				? slots[ combination ]
+				: extend( combination );
+	}
+
+	private synchronized int extend( final int combination )
+	{
+		final int[] slots = combinationToSlot;
+		if ( combination < slots.length )
+			return slots[ combination ];
+		final int n = store.numCombinations();
+		final int[] extended = new int[ n ];
+		System.arraycopy( slots, 0, extended, 0, slots.length );
+		for ( int c = slots.length; c < n; ++c )
 		{
-			final Integer id = tagToIdFunction.apply( tag );
-			if ( ids.contains( id ) )
-				throw new IllegalArgumentException( "inconsistent tag set: ids are not unique" );
-			ids.add( id );
-			tagToId.put( tag, id );
-			idToTag.put( id, tag );
+			// The first tag of this tag set wins, if there are several.
+			final List< Integer > cids = store.getIds( c );
+			for ( final Integer id : ids )
+			{
+				if ( cids.contains( id ) )
+				{
+					extended[ c ] = idToSlot.get( id );
+					break;
+				}
+			}
 		}
-		idToTag.keySet().forEach( id ->
-				idToOtherIds.put( id,
-						idToTag.keySet().stream().filter( oid -> oid != id ).collect( Collectors.toList() ) ) );
+		combinationToSlot = extended;
+		return extended[ combination ];
 	}
 }
@@ -32,33 +32,79 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.mastodon.labels.LabelSets;
+import org.mastodon.RefPool;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.properties.PropertyChangeListener;
+import org.scijava.listeners.Listeners;
 
 /**
  * Default implementation of {@link ObjTags}.
  * <p>
  * Manages tags for a collection of objects, according to a specified
- * {@link TagSetStructure}.
+ * {@link TagSetStructure}. The tags of all tag sets are stored in a single
+ * {@link ObjTagStore}, which the {@link DefaultObjTagMap}s of the tag sets
+ * read and write.
+ * <p>
+ * Changes to the tags of individual objects, and bulk changes, are forwarded
+ * to {@link #tagChangeListeners()}, so that derived data (e.g. branch-level tag
+ * aggregates) can be maintained incrementally.
  *
  * @param <O>
  *            the type of object to tag.
  */
 public class DefaultObjTags< O > implements ObjTags< O >
 {
-	private final LabelSets< O, Integer > idLabelSets;
+	private final ObjTagStore< O > store;
 
 	private final Map< Tag, TagSet > tagToTagSet = new HashMap<>();
 
+	private final Listeners.List< TagChangeListener< O > > tagChangeListeners = new Listeners.SynchronizedList<>();
+
 	private final Map< TagSet, DefaultObjTagMap< O, Tag > > tagSetToTagMap = new HashMap<>();
 
 	public DefaultObjTags(
-			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
 			final TagSetStructure tagSetStructure )
 	{
-		this.idLabelSets = idLabelSets;
+		this.store = new ObjTagStore<>( pool );
 		update( tagSetStructure );
+		store.getProperty().propertyChangeListeners().add( new StoreChangeListener() );
+	}
+
+	/**
+	 * Interface for listeners notified when the tags of objects change.
+	 *
+	 * @param <O>
+	 *            the type of tagged object.
+	 */
+	public interface TagChangeListener< O >
+	{
+		/**
+		 * Called when the tags of the specified object have changed.
+		 *
+		 * @param object
+		 *            the object whose tags changed.
+		 */
+		void tagsChanged( O object );
+
+		/**
+		 * Called when the tags of any number of objects may have changed, for
+		 * instance after the tag set structure was modified, or the tags were
+		 * cleared or deserialized.
+		 */
+		void tagsRebuilt();
+	}
+
+	/**
+	 * Get the list of {@link TagChangeListener}s. Add a listener to be notified
+	 * when the tags of objects change.
+	 *
+	 * @return the list of listeners.
+	 */
+	public Listeners< TagChangeListener< O > > tagChangeListeners()
+	{
+		return tagChangeListeners;
 	}
 
 	@Override
@@ -97,9 +143,37 @@ public class DefaultObjTags< O > implements ObjTags< O >
 		tagSetToTagMap.clear();
 		for ( final TagSet tagSet : tagSetStructure.getTagSets() )
 		{
-			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( idLabelSets, tagSet.getTags(), Tag::id ) );
+			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( store, tagSet.getTags(), Tag::id ) );
 			for ( final Tag tag : tagSet.getTags() )
 				tagToTagSet.put( tag, tagSet );
 		}
+		tagChangeListeners.list.forEach( TagChangeListener::tagsRebuilt );
+	}
+
+	/**
+	 * Returns the storage of the tags.
+	 */
+	ObjTagStore< O > getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Notifies {@link #tagChangeListeners()} that the tags of any number of
+	 * objects may have changed.
+	 */
+	void rebuild()
+	{
+		tagChangeListeners.list.forEach( TagChangeListener::tagsRebuilt );
+	}
+
+	private class StoreChangeListener implements PropertyChangeListener< O >
+	{
+		@Override
+		public void propertyChanged( final O object )
+		{
+			for ( final TagChangeListener< O > l : tagChangeListeners.list )
+				l.tagsChanged( object );
+		}
 	}
 }
@@ -33,14 +33,13 @@ import java.util.stream.Collectors;
 
 import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollections;
-import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
-import org.mastodon.labels.LabelSet;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.properties.IntPropertyMap;
 import org.mastodon.undo.Recorder;
 import org.mastodon.undo.UndoableEdit;
 import org.scijava.listeners.Listeners;
@@ -62,12 +61,16 @@ import org.scijava.listeners.Listeners;
  */
 public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > implements TagSetModel< V, E >
 {
-	private final ReadOnlyGraph< V, E > graph;
-
 	private final TagSetStructure tagSetStructure;
 
+	/**
+	 * Copy of the vertex tags, only filled for serialization.
+	 */
 	private final LabelSets< V, Integer > vertexIdLabelSets;
 
+	/**
+	 * Copy of the edge tags, only filled for serialization.
+	 */
 	private final LabelSets< E, Integer > edgeIdLabelSets;
 
 	private final DefaultObjTags< V > vertexTags;
@@ -87,12 +90,11 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 
 	public DefaultTagSetModel( final ReadOnlyGraph< V, E > graph, final RefPool< V > vertexPool, final RefPool< E > edgePool )
 	{
-		this.graph = graph;
 		this.tagSetStructure = new TagSetStructure();
 		vertexIdLabelSets = new LabelSets<>( vertexPool );
 		edgeIdLabelSets = new LabelSets<>( edgePool );
-		vertexTags = new DefaultObjTags<>( vertexIdLabelSets, tagSetStructure );
-		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, tagSetStructure );
+		vertexTags = new DefaultObjTags<>( vertexPool, tagSetStructure );
+		edgeTags = new DefaultObjTags<>( edgePool, tagSetStructure );
 		listeners = new Listeners.SynchronizedList<>();
 		emitEvents = true;
 	}
@@ -111,25 +113,9 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		final Set< Integer > newIds = tss.getTagSets().stream().flatMap( ts -> ts.getTags().stream() ).map( Tag::id ).collect( Collectors.toSet() );
 		removedIds.removeAll( newIds );
 
-		// remove those tags from all vertices ...
-		final LabelSet< V, Integer > vref = vertexIdLabelSets.createRef();
-		for ( final Integer id : removedIds )
-		{
-			final RefSet< V > labeledWithId = RefCollections.createRefSet( graph.vertices() );
-			labeledWithId.addAll( vertexIdLabelSets.getLabeledWith( id ) );
-			labeledWithId.forEach( v -> vertexIdLabelSets.getLabels( v, vref ).remove( id ) );
-		}
-		vertexIdLabelSets.releaseRef( vref );
-
-		// ... and edges
-		final LabelSet< E, Integer > eref = edgeIdLabelSets.createRef();
-		for ( final Integer id : removedIds )
-		{
-			final RefSet< E > labeledWithId = RefCollections.createRefSet( graph.edges() );
-			labeledWithId.addAll( edgeIdLabelSets.getLabeledWith( id ) );
-			labeledWithId.forEach( e -> edgeIdLabelSets.getLabels( e, eref ).remove( id ) );
-		}
-		edgeIdLabelSets.releaseRef( eref );
+		// remove those tags from all vertices and edges
+		vertexTags.getStore().removeAll( removedIds );
+		edgeTags.getStore().removeAll( removedIds );
 
 		if ( editRecorder != null && emitEvents )
 		{
@@ -184,8 +170,10 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 	@Override
 	public void clear()
 	{
-		vertexIdLabelSets.clear();
-		edgeIdLabelSets.clear();
+		vertexTags.getStore().clear();
+		edgeTags.getStore().clear();
+		vertexTags.rebuild();
+		edgeTags.rebuild();
 	}
 
 	/**
@@ -206,16 +194,75 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 			this.tagSetModel = tagSetModel;
 		}
 
+		/**
+		 * Returns the property storing the vertex tags, to be recorded for
+		 * undo/redo.
+		 */
+		protected IntPropertyMap< V > getVertexTagProperty()
+		{
+			return tagSetModel.vertexTags.getStore().getProperty();
+		}
+
+		/**
+		 * Returns the property storing the edge tags, to be recorded for
+		 * undo/redo.
+		 */
+		protected IntPropertyMap< E > getEdgeTagProperty()
+		{
+			return tagSetModel.edgeTags.getStore().getProperty();
+		}
+
+		/**
+		 * Returns the {@link LabelSets} used to serialize the vertex tags.
+		 * They are empty, except between {@link #copyTagsToIdLabelSets()} or
+		 * deserialization, and {@link #clearIdLabelSets()}.
+		 */
 		protected LabelSets< V, Integer > getVertexIdLabelSets()
 		{
 			return tagSetModel.vertexIdLabelSets;
 		}
 
+		/**
+		 * Returns the {@link LabelSets} used to serialize the edge tags.
+		 * They are empty, except between {@link #copyTagsToIdLabelSets()} or
+		 * deserialization, and {@link #clearIdLabelSets()}.
+		 */
 		protected LabelSets< E, Integer > getEdgeIdLabelSets()
 		{
 			return tagSetModel.edgeIdLabelSets;
 		}
 
+		/**
+		 * Fills the {@link LabelSets} with the current tags, for
+		 * serialization.
+		 */
+		protected void copyTagsToIdLabelSets()
+		{
+			tagSetModel.vertexTags.getStore().copyTo( tagSetModel.vertexIdLabelSets );
+			tagSetModel.edgeTags.getStore().copyTo( tagSetModel.edgeIdLabelSets );
+		}
+
+		/**
+		 * Replaces the current tags with the content of the deserialized
+		 * {@link LabelSets}. Only the tags of the current
+		 * {@link TagSetStructure} are read.
+		 */
+		protected void copyTagsFromIdLabelSets()
+		{
+			final Set< Integer > ids = tagSetModel.tagSetStructure.getTagSets().stream().flatMap( ts -> ts.getTags().stream() ).map( Tag::id ).collect( Collectors.toSet() );
+			tagSetModel.vertexTags.getStore().copyFrom( tagSetModel.vertexIdLabelSets, ids );
+			tagSetModel.edgeTags.getStore().copyFrom( tagSetModel.edgeIdLabelSets, ids );
+		}
+
+		/**
+		 * Empties the {@link LabelSets} once serialization is done.
+		 */
+		protected void clearIdLabelSets()
+		{
+			tagSetModel.vertexIdLabelSets.clear();
+			tagSetModel.edgeIdLabelSets.clear();
+		}
+
 		protected void updateObjTags()
 		{
 			tagSetModel.vertexTags.update( tagSetModel.tagSetStructure );
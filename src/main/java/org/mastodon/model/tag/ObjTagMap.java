@@ -30,7 +30,6 @@ package org.mastodon.model.tag;
 
 import java.util.Collection;
 
-import org.mastodon.labels.LabelSets;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.properties.ObjPropertyMap;
 
@@ -46,8 +45,8 @@ import org.mastodon.properties.ObjPropertyMap;
  * <p>
  * Tags must map to {@link Integer} IDs that are globally unique across all tag
  * sets. The default implementation ({@code DefaultObjTagMap}) is backed by a
- * {@link LabelSets} property of the objects (which can be shared among all
- * {@code DefaultObjTagMap}s).
+ * primitive property of the objects, storing their tags in all tag sets (which
+ * is shared among all {@code DefaultObjTagMap}s).
  * </p>
  *
  * @param <O>
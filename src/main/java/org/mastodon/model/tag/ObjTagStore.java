@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model.tag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.labels.LabelSet;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * Stores the tags of objects of one type, for all tag sets.
+ * <p>
+ * Each object is mapped, in an {@link IntPropertyMap}, to the index of the
+ * combination of tag ids it is tagged with. Combinations are interned in an
+ * append-only table, index {@code 0} being the empty combination (objects
+ * without tags are not in the map). The table is never pruned, so that the
+ * indices recorded by undo/redo stay valid, also across changes of the
+ * {@link TagSetStructure}.
+ * <p>
+ * The {@link IntPropertyMap} is the only storage of the tags. It is what
+ * undo/redo records, and {@link LabelSets} are only filled from it (and read
+ * back into it) for serialization.
+ *
+ * @param <O>
+ *            the type of object to tag.
+ */
+final class ObjTagStore< O >
+{
+	private final RefPool< O > pool;
+
+	private final IntPropertyMap< O > combinations;
+
+	/**
+	 * Maps combination indices to the sorted ids of the tags in the
+	 * combination.
+	 */
+	private final List< List< Integer > > combinationToIds = new ArrayList<>();
+
+	private final Map< List< Integer >, Integer > idsToCombination = new HashMap<>();
+
+	ObjTagStore( final RefPool< O > pool )
+	{
+		this.pool = pool;
+		this.combinations = new IntPropertyMap<>( pool, 0 );
+		intern( Collections.emptyList() );
+	}
+
+	/**
+	 * Returns the property storing the combination index of each object.
+	 */
+	IntPropertyMap< O > getProperty()
+	{
+		return combinations;
+	}
+
+	RefPool< O > getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Returns the index of the combination of tags of the specified object.
+	 */
+	int get( final O object )
+	{
+		return combinations.getInt( object );
+	}
+
+	/**
+	 * Sets the index of the combination of tags of the specified object.
+	 */
+	void set( final O object, final int combination )
+	{
+		if ( combinations.getInt( object ) == combination )
+			return;
+		if ( combination == 0 )
+			combinations.remove( object );
+		else
+			combinations.set( object, combination );
+	}
+
+	/**
+	 * Returns the number of combinations interned so far.
+	 */
+	synchronized int numCombinations()
+	{
+		return combinationToIds.size();
+	}
+
+	/**
+	 * Returns the sorted ids of the tags in the specified combination.
+	 */
+	synchronized List< Integer > getIds( final int combination )
+	{
+		return combinationToIds.get( combination );
+	}
+
+	/**
+	 * Returns the index of the combination obtained by removing
+	 * {@code removeIds} from, and adding {@code addId} to, the specified
+	 * combination.
+	 *
+	 * @param combination
+	 *            the combination to modify.
+	 * @param removeIds
+	 *            the ids to remove.
+	 * @param addId
+	 *            the id to add, or {@code null}.
+	 * @return the index of the resulting combination.
+	 */
+	synchronized int modify( final int combination, final Collection< Integer > removeIds, final Integer addId )
+	{
+		final List< Integer > ids = new ArrayList<>( combinationToIds.get( combination ) );
+		ids.removeAll( removeIds );
+		if ( addId != null && !ids.contains( addId ) )
+		{
+			ids.add( addId );
+			Collections.sort( ids );
+		}
+		return intern( ids );
+	}
+
+	private int intern( final List< Integer > ids )
+	{
+		final Integer combination = idsToCombination.get( ids );
+		if ( combination != null )
+			return combination;
+		final List< Integer > key = Collections.unmodifiableList( ids );
+		combinationToIds.add( key );
+		idsToCombination.put( key, combinationToIds.size() - 1 );
+		return combinationToIds.size() - 1;
+	}
+
+	/**
+	 * Returns the objects that have at least one tag. The returned collection
+	 * is a view that must not be modified and must not be iterated while tags
+	 * are modified.
+	 */
+	Collection< O > getTagged()
+	{
+		return combinations.getMap().keySet();
+	}
+
+	/**
+	 * Removes the tags with the specified ids from all objects.
+	 */
+	void removeAll( final Collection< Integer > ids )
+	{
+		if ( ids.isEmpty() )
+			return;
+		final RefArrayList< O > objects = new RefArrayList<>( pool );
+		for ( final O object : getTagged() )
+			if ( !Collections.disjoint( getIds( get( object ) ), ids ) )
+				objects.add( object );
+		for ( final O object : objects )
+			set( object, modify( get( object ), ids, null ) );
+	}
+
+	/**
+	 * Removes the tags of all objects. This is not recorded for undo/redo.
+	 */
+	void clear()
+	{
+		combinations.beforeClearPool();
+	}
+
+	/**
+	 * Replaces the content of {@code labelSets} with the tags of all objects.
+	 */
+	void copyTo( final LabelSets< O, Integer > labelSets )
+	{
+		labelSets.clear();
+		final LabelSet< O, Integer > ref = labelSets.createRef();
+		for ( final O object : getTagged() )
+			labelSets.getLabels( object, ref ).addAll( getIds( get( object ) ) );
+		labelSets.releaseRef( ref );
+	}
+
+	/**
+	 * Replaces the tags of all objects with the content of {@code labelSets}.
+	 * Only the tags with the specified ids are read.
+	 */
+	void copyFrom( final LabelSets< O, Integer > labelSets, final Collection< Integer > ids )
+	{
+		clear();
+		for ( final Integer id : ids )
+			for ( final O object : labelSets.getLabeledWith( id ) )
+				set( object, modify( get( object ), Collections.emptyList(), id ) );
+	}
+}
@@ -51,9 +51,17 @@ public class RawTagSetModelIO
 			void read() throws IOException
 			{
 				tagSetModel.getTagSetStructure().loadRaw( ois );
-				LabelSetsSerializer.readPropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), ois );
-				LabelSetsSerializer.readPropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), ois );
-				updateObjTags();
+				try
+				{
+					LabelSetsSerializer.readPropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), ois );
+					LabelSetsSerializer.readPropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), ois );
+					copyTagsFromIdLabelSets();
+					updateObjTags();
+				}
+				finally
+				{
+					clearIdLabelSets();
+				}
 			}
 		}.read();
 	}
@@ -69,8 +77,16 @@ public class RawTagSetModelIO
 			void write() throws IOException
 			{
 				tagSetModel.getTagSetStructure().saveRaw( oos );
-				LabelSetsSerializer.writePropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), oos );
-				LabelSetsSerializer.writePropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), oos );
+				try
+				{
+					copyTagsToIdLabelSets();
+					LabelSetsSerializer.writePropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), oos );
+					LabelSetsSerializer.writePropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), oos );
+				}
+				finally
+				{
+					clearIdLabelSets();
+				}
 			}
 		}.write();
 	}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui;
+
+import java.util.function.Consumer;
+
+/**
+ * A {@link ProgressListener} that reports progress as text messages, at most
+ * once every 10 percent.
+ */
+public class LoggingProgressListener implements ProgressListener
+{
+
+	private static final int STEP = 10;
+
+	private final Consumer< String > log;
+
+	private String status = "";
+
+	private int lastReported = -STEP;
+
+	/**
+	 * Creates a new listener.
+	 *
+	 * @param log
+	 *            receives the messages, for instance {@code System.out::println}.
+	 */
+	public LoggingProgressListener( final Consumer< String > log )
+	{
+		this.log = log;
+	}
+
+	@Override
+	public synchronized void showStatus( final String string )
+	{
+		status = string;
+		lastReported = -STEP;
+		log.accept( string );
+	}
+
+	@Override
+	public synchronized void showProgress( final int current, final int total )
+	{
+		final int percent = total <= 0 ? 100 : ( int ) ( 100L * current / total );
+		if ( percent == lastReported || ( percent < lastReported + STEP && percent < 100 ) )
+			return;
+		lastReported = percent;
+		log.accept( String.format( "%s: %d%%", status, percent ) );
+	}
+
+	@Override
+	public synchronized void clearStatus()
+	{
+		status = "";
+		lastReported = -STEP;
+	}
+}
@@ -0,0 +1,229 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphChangeListener;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.Vertex;
+
+/**
+ * A {@link GraphColorGenerator} that remembers the colors computed by another
+ * generator, in arrays indexed by the ids of vertices and edges.
+ * <p>
+ * Coloring by features is computed from feature values, and possibly from the
+ * branch graph, for every object at every repaint. When the model does not
+ * change, this generator reduces it to an array lookup.
+ * <p>
+ * All the cached colors are discarded when the generator is changed, and when
+ * this instance is notified of a graph change or a feature model change. It
+ * has to be registered as a {@link GraphListener}, a
+ * {@link GraphChangeListener} and a {@link FeatureModelListener} for this.
+ * <p>
+ * This class is thread-safe provided the underlying generator is.
+ *
+ * @param <V>
+ *            the type of vertices.
+ * @param <E>
+ *            the type of edges.
+ */
+public class CachingGraphColorGenerator< V extends Vertex< E >, E extends Edge< V > >
+		implements GraphColorGenerator< V, E >, GraphListener< V, E >, GraphChangeListener, FeatureModelListener
+{
+
+	/**
+	 * Marks entries that have not been computed. It is a fully transparent
+	 * color; if a generator ever returns it, it is just not cached.
+	 */
+	private static final int UNCACHED = 0x00ABCDEF;
+
+	private static final int[] EMPTY = new int[ 0 ];
+
+	private final GraphIdBimap< V, E > idmap;
+
+	/**
+	 * The current generator and its cached colors. A new generation is set
+	 * whenever the cache is cleared, so that colors computed for a previous
+	 * generation are never stored in the current one.
+	 */
+	private final AtomicReference< Generation< V, E > > generation;
+
+	public CachingGraphColorGenerator( final GraphIdBimap< V, E > idmap )
+	{
+		this.idmap = idmap;
+		this.generation = new AtomicReference<>( new Generation<>( null, EMPTY, EMPTY ) );
+	}
+
+	/**
+	 * Sets the generator whose colors are cached, and clears the cache.
+	 *
+	 * @param colorGenerator
+	 *            the generator, or {@code null} for no coloring.
+	 */
+	public void setColorGenerator( final GraphColorGenerator< V, E > colorGenerator )
+	{
+		generation.set( new Generation<>( colorGenerator, EMPTY, EMPTY ) );
+	}
+
+	/**
+	 * Clears the cache. The colors will be recomputed when they are next
+	 * requested.
+	 */
+	public void invalidate()
+	{
+		generation.updateAndGet( g -> new Generation<>( g.colorGenerator, EMPTY, EMPTY ) );
+	}
+
+	@Override
+	public int color( final V vertex )
+	{
+		final Generation< V, E > g = generation.get();
+		if ( g.colorGenerator == null )
+			return 0;
+
+		final int id = idmap.getVertexId( vertex );
+		final int[] colors = g.vertexColors;
+		if ( id < colors.length )
+		{
+			final int cached = colors[ id ];
+			if ( cached != UNCACHED )
+				return cached;
+		}
+
+		final int color = g.colorGenerator.color( vertex );
+		store( g, id, color, true );
+		return color;
+	}
+
+	@Override
+	public int color( final E edge, final V source, final V target )
+	{
+		final Generation< V, E > g = generation.get();
+		if ( g.colorGenerator == null )
+			return 0;
+
+		final int id = idmap.getEdgeId( edge );
+		final int[] colors = g.edgeColors;
+		if ( id < colors.length )
+		{
+			final int cached = colors[ id ];
+			if ( cached != UNCACHED )
+				return cached;
+		}
+
+		final int color = g.colorGenerator.color( edge, source, target );
+		store( g, id, color, false );
+		return color;
+	}
+
+	/**
+	 * Stores a color computed for generation {@code g}, growing its cache if
+	 * needed.
+	 */
+	private void store( final Generation< V, E > g, final int id, final int color, final boolean vertex )
+	{
+		final int[] colors = vertex ? g.vertexColors : g.edgeColors;
+		if ( id < colors.length )
+		{
+			// If the cache was cleared meanwhile, this writes to a discarded generation.
+			colors[ id ] = color;
+			return;
+		}
+		final int[] grown = Arrays.copyOf( colors, Math.max( id + 1, 2 * colors.length ) );
+		Arrays.fill( grown, colors.length, grown.length, UNCACHED );
+		grown[ id ] = color;
+		// Do not resurrect a cache cleared while the color was computed.
+		generation.compareAndSet( g, vertex
+				? new Generation<>( g.colorGenerator, grown, g.edgeColors )
+				: new Generation<>( g.colorGenerator, g.vertexColors, grown ) );
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		invalidate();
+	}
+
+	@Override
+	public void vertexAdded( final V vertex )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void vertexRemoved( final V vertex )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{
+		invalidate();
+	}
+
+	@Override
+	public void graphChanged()
+	{
+		invalidate();
+	}
+
+	@Override
+	public void featureModelChanged()
+	{
+		invalidate();
+	}
+
+	private static final class Generation< V extends Vertex< E >, E extends Edge< V > >
+	{
+		private final GraphColorGenerator< V, E > colorGenerator;
+
+		private final int[] vertexColors;
+
+		private final int[] edgeColors;
+
+		private Generation( final GraphColorGenerator< V, E > colorGenerator, final int[] vertexColors, final int[] edgeColors )
+		{
+			this.colorGenerator = colorGenerator;
+			this.vertexColors = vertexColors;
+			this.edgeColors = edgeColors;
+		}
+	}
+}
@@ -63,6 +63,6 @@ public class FeatureColorGeneratorIncomingEdge< V extends Vertex< E >, E extends
 			return 0;
 
 		final double alpha = ( featureProjection.value( e ) - min ) / ( max - min );
-		return colorMap.get( alpha );
+		return colorMap.getQuantized( alpha );
 	}
 }
@@ -57,6 +57,6 @@ public class FeatureColorGeneratorTargetVertex< V extends Vertex< E >, E extends
 			return 0;
 
 		final double alpha = ( featureProjection.value( target ) - min ) / ( max - min );
-		return colorMap.get( alpha );
+		return colorMap.getQuantized( alpha );
 	}
 }
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring.feature;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjections;
+import org.mastodon.properties.AbstractPropertyMap;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * A {@link FeatureRangeCalculator} computing statistics over all the objects of
+ * one specific target type {@code O}, directly from the property maps storing
+ * the feature values.
+ * <p>
+ * For projections backed by a {@link DoublePropertyMap} or an
+ * {@link IntPropertyMap}, the min and max are maintained incrementally as
+ * feature values are written, and recomputed when needed, in parallel over
+ * chunks of the pool of the objects for large pools. Other projections are handled by a
+ * {@link DefaultFeatureRangeCalculator}.
+ * <p>
+ * The property maps store values for all the objects of a pool, so the
+ * specified collection must contain all of them, e.g. all the vertices or
+ * edges of a graph.
+ * <p>
+ * This instance has to be registered as a {@link FeatureModelListener}, so
+ * that it stops tracking the maps of features that are removed or replaced.
+ *
+ * @param <O>
+ *            target type.
+ */
+public class PropertyMapFeatureRangeCalculator< O > implements FeatureRangeCalculator, FeatureModelListener
+{
+	private final Collection< O > objs;
+
+	private final Projections projections;
+
+	private final DefaultFeatureRangeCalculator< O > fallback;
+
+	private final IntSupplier modificationStamp;
+
+	private final Map< FeatureProjectionId, PropertyMapRange< O > > ranges;
+
+	/**
+	 * Creates a new calculator.
+	 *
+	 * @param objs
+	 *            all the objects of the pool the feature values are stored
+	 *            for.
+	 * @param projections
+	 *            the feature projections.
+	 * @param modificationStamp
+	 *            supplies a stamp that changes whenever the property maps may
+	 *            have been modified without notifying their listeners, e.g.
+	 *            {@code AbstractModelGraph.getModificationStamp()}.
+	 */
+	public PropertyMapFeatureRangeCalculator( final Collection< O > objs, final Projections projections, final IntSupplier modificationStamp )
+	{
+		this.objs = objs;
+		this.projections = projections;
+		this.modificationStamp = modificationStamp;
+		this.fallback = new DefaultFeatureRangeCalculator<>( objs, projections );
+		this.ranges = new HashMap<>();
+	}
+
+	@Override
+	public double[] computeMinMax( final FeatureProjectionId id )
+	{
+		final FeatureProjection< O > projection = getFeatureProjection( id );
+		if ( null == projection )
+			return null;
+
+		final DoublePropertyMap< O > doubleMap = FeatureProjections.getDoublePropertyMap( projection );
+		final IntPropertyMap< O > intMap = FeatureProjections.getIntPropertyMap( projection );
+		final AbstractPropertyMap< O, ? > map = doubleMap != null ? doubleMap : intMap;
+		if ( map == null )
+			return fallback.computeMinMax( id );
+
+		final PropertyMapRange< O > range;
+		synchronized ( ranges )
+		{
+			final PropertyMapRange< O > previous = ranges.get( id );
+			if ( previous != null && previous.isFor( map ) )
+			{
+				range = previous;
+			}
+			else
+			{
+				// The feature was recomputed or redeclared with a new map.
+				if ( previous != null )
+					previous.close();
+				range = doubleMap != null
+						? PropertyMapRange.of( doubleMap, objs, modificationStamp )
+						: PropertyMapRange.of( intMap, objs, modificationStamp );
+				ranges.put( id, range );
+			}
+		}
+		return range.getMinMax();
+	}
+
+	/**
+	 * Stops tracking the property maps that no longer back the projections
+	 * they were tracked for, so that they can be garbage collected.
+	 */
+	@Override
+	public void featureModelChanged()
+	{
+		synchronized ( ranges )
+		{
+			final Iterator< Map.Entry< FeatureProjectionId, PropertyMapRange< O > > > it = ranges.entrySet().iterator();
+			while ( it.hasNext() )
+			{
+				final Map.Entry< FeatureProjectionId, PropertyMapRange< O > > entry = it.next();
+				final FeatureProjection< O > projection = getFeatureProjection( entry.getKey() );
+				final DoublePropertyMap< O > doubleMap = projection == null ? null : FeatureProjections.getDoublePropertyMap( projection );
+				final IntPropertyMap< O > intMap = projection == null ? null : FeatureProjections.getIntPropertyMap( projection );
+				final AbstractPropertyMap< O, ? > map = doubleMap != null ? doubleMap : intMap;
+				if ( map == null || !entry.getValue().isFor( map ) )
+				{
+					entry.getValue().close();
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private FeatureProjection< O > getFeatureProjection( final FeatureProjectionId id )
+	{
+		if ( objs.isEmpty() )
+			return null;
+
+		@SuppressWarnings( "unchecked" )
+		final Class< O > target = ( Class< O > ) objs.iterator().next().getClass();
+		return projections.getFeatureProjection( id, target );
+	}
+}
@@ -0,0 +1,331 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring.feature;
+
+import java.util.Collection;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.properties.AbstractPropertyMap;
+import org.mastodon.properties.BeforePropertyChangeListener;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Min and max of the values stored in a {@link DoublePropertyMap} or an
+ * {@link IntPropertyMap}, maintained as values are written.
+ * <p>
+ * Writing a value that extends the range updates it in constant time. Removing
+ * or overwriting a value at one of the bounds marks the range as invalid, and
+ * the next {@link #getMinMax()} call recomputes it, without copying the values
+ * of the map. The range is recomputed too when the modification stamp it was
+ * created with changed, because values may then have been written while the
+ * map listeners were paused.
+ * <p>
+ * If the pool of the objects is known and holds enough objects, the range is
+ * recomputed in parallel, over chunks of the range of pool indices below the
+ * number of objects. If some values were not found there (because deleted
+ * objects left free pool indices below the ones of live objects), or
+ * otherwise, the range is recomputed with a single sequential pass over the
+ * values of the map.
+ *
+ * @param <O>
+ *            the type of objects the map is defined on.
+ */
+final class PropertyMapRange< O > implements BeforePropertyChangeListener< O >, PropertyChangeListener< O >
+{
+	/**
+	 * Minimal number of objects for recomputing the range in parallel.
+	 */
+	static final int MIN_PARALLEL_SIZE = 1 << 16;
+
+	/**
+	 * Number of pool indices in a chunk reduced by one task.
+	 */
+	private static final int CHUNK_SIZE = 1 << 14;
+
+	private final AbstractPropertyMap< O, ? > map;
+
+	private final Predicate< O > isSet;
+
+	private final ToDoubleFunction< O > value;
+
+	private final IntSupplier modificationStamp;
+
+	/**
+	 * Returns {@code min, max} of all the values of the map.
+	 */
+	private final Supplier< double[] > reduce;
+
+	private boolean valid;
+
+	private double min;
+
+	private double max;
+
+	private int stamp;
+
+	private PropertyMapRange(
+			final AbstractPropertyMap< O, ? > map,
+			final Predicate< O > isSet,
+			final ToDoubleFunction< O > value,
+			final IntSupplier modificationStamp,
+			final Supplier< double[] > reduce )
+	{
+		this.map = map;
+		this.isSet = isSet;
+		this.value = value;
+		this.modificationStamp = modificationStamp;
+		this.reduce = reduce;
+		this.valid = false;
+		map.beforePropertyChangeListeners().add( this );
+		map.propertyChangeListeners().add( this );
+	}
+
+	/**
+	 * Creates a range tracking the values of a {@link DoublePropertyMap},
+	 * recomputed sequentially.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param modificationStamp
+	 *            supplies a stamp that changes whenever the map may have been
+	 *            modified without notifying its listeners.
+	 */
+	static < O > PropertyMapRange< O > of( final DoublePropertyMap< O > map, final IntSupplier modificationStamp )
+	{
+		return of( map, null, modificationStamp );
+	}
+
+	/**
+	 * Creates a range tracking the values of a {@link DoublePropertyMap}.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param objs
+	 *            all the objects of the pool the values are stored for, or
+	 *            {@code null}. If it is a {@link RefCollection}, the range is
+	 *            recomputed in parallel over its pool.
+	 * @param modificationStamp
+	 *            supplies a stamp that changes whenever the map may have been
+	 *            modified without notifying its listeners.
+	 */
+	static < O > PropertyMapRange< O > of( final DoublePropertyMap< O > map, final Collection< O > objs, final IntSupplier modificationStamp )
+	{
+		final Supplier< double[] > sequential = () -> {
+			final double[] minMax = new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			map.getMap().forEachValue( v -> {
+				minMax[ 0 ] = Math.min( minMax[ 0 ], v );
+				minMax[ 1 ] = Math.max( minMax[ 1 ], v );
+				return true;
+			} );
+			return minMax;
+		};
+		return new PropertyMapRange<>( map, map::isSet, map::getDouble, modificationStamp,
+				reduce( objs, () -> map.getMap().size(), map::isSet, map::getDouble, sequential ) );
+	}
+
+	/**
+	 * Creates a range tracking the values of an {@link IntPropertyMap},
+	 * recomputed sequentially.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param modificationStamp
+	 *            supplies a stamp that changes whenever the map may have been
+	 *            modified without notifying its listeners.
+	 */
+	static < O > PropertyMapRange< O > of( final IntPropertyMap< O > map, final IntSupplier modificationStamp )
+	{
+		return of( map, null, modificationStamp );
+	}
+
+	/**
+	 * Creates a range tracking the values of an {@link IntPropertyMap}.
+	 *
+	 * @param map
+	 *            the map.
+	 * @param objs
+	 *            all the objects of the pool the values are stored for, or
+	 *            {@code null}. If it is a {@link RefCollection}, the range is
+	 *            recomputed in parallel over its pool.
+	 * @param modificationStamp
+	 *            supplies a stamp that changes whenever the map may have been
+	 *            modified without notifying its listeners.
+	 */
+	static < O > PropertyMapRange< O > of( final IntPropertyMap< O > map, final Collection< O > objs, final IntSupplier modificationStamp )
+	{
+		final Supplier< double[] > sequential = () -> {
+			final double[] minMax = new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			map.getMap().forEachValue( v -> {
+				minMax[ 0 ] = Math.min( minMax[ 0 ], v );
+				minMax[ 1 ] = Math.max( minMax[ 1 ], v );
+				return true;
+			} );
+			return minMax;
+		};
+		return new PropertyMapRange<>( map, map::isSet, map::getInt, modificationStamp,
+				reduce( objs, () -> map.getMap().size(), map::isSet, map::getInt, sequential ) );
+	}
+
+	/**
+	 * Returns a supplier of {@code min, max} of the values of a map, that
+	 * reduces chunks of pool indices in parallel when possible, and calls
+	 * {@code sequential} otherwise.
+	 *
+	 * @param objs
+	 *            all the objects of the pool, or {@code null}.
+	 * @param numValues
+	 *            supplies the number of values in the map.
+	 * @param isSet
+	 *            whether the map has a value for an object.
+	 * @param value
+	 *            the value of the map for an object.
+	 * @param sequential
+	 *            reduces all the values of the map sequentially.
+	 */
+	private static < O > Supplier< double[] > reduce(
+			final Collection< O > objs,
+			final IntSupplier numValues,
+			final Predicate< O > isSet,
+			final ToDoubleFunction< O > value,
+			final Supplier< double[] > sequential )
+	{
+		final RefPool< O > pool = objs instanceof RefCollection
+				? RefCollections.tryGetRefPool( ( RefCollection< O > ) objs )
+				: null;
+		if ( pool == null )
+			return sequential;
+
+		return () -> {
+			// Live objects are allocated at indices below their number, unless
+			// deletions left free indices there. The latter case is detected
+			// by counting the values found.
+			final int numObjects = objs.size();
+			if ( numObjects < MIN_PARALLEL_SIZE )
+				return sequential.get();
+			final int numChunks = ( numObjects + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+			final double[] result = IntStream.range( 0, numChunks ).parallel().mapToObj( chunk -> {
+				// min, max, number of values
+				final double[] partial = new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0 };
+				final O ref = pool.createRef();
+				final int end = Math.min( numObjects, ( chunk + 1 ) * CHUNK_SIZE );
+				for ( int i = chunk * CHUNK_SIZE; i < end; i++ )
+				{
+					final O o = pool.getObjectIfExists( i, ref );
+					if ( o != null && isSet.test( o ) )
+					{
+						final double v = value.applyAsDouble( o );
+						partial[ 0 ] = Math.min( partial[ 0 ], v );
+						partial[ 1 ] = Math.max( partial[ 1 ], v );
+						partial[ 2 ]++;
+					}
+				}
+				pool.releaseRef( ref );
+				return partial;
+			} ).reduce( ( a, b ) -> new double[] {
+					Math.min( a[ 0 ], b[ 0 ] ),
+					Math.max( a[ 1 ], b[ 1 ] ),
+					a[ 2 ] + b[ 2 ] } )
+					.get();
+			if ( result[ 2 ] < numValues.getAsInt() )
+				return sequential.get();
+			return new double[] { result[ 0 ], result[ 1 ] };
+		};
+	}
+
+	/**
+	 * Returns {@code true} if this range tracks the values of the specified
+	 * map.
+	 */
+	boolean isFor( final AbstractPropertyMap< ?, ? > map )
+	{
+		return this.map == map;
+	}
+
+	/**
+	 * Stops listening to the map.
+	 */
+	void close()
+	{
+		map.beforePropertyChangeListeners().remove( this );
+		map.propertyChangeListeners().remove( this );
+	}
+
+	/**
+	 * Returns the min and max of the values of the map, as a new 2-element
+	 * array. If the map is empty, min is {@link Double#POSITIVE_INFINITY} and
+	 * max is {@link Double#NEGATIVE_INFINITY}.
+	 */
+	synchronized double[] getMinMax()
+	{
+		final int current = modificationStamp.getAsInt();
+		if ( !valid || stamp != current )
+		{
+			final double[] minMax = reduce.get();
+			min = minMax[ 0 ];
+			max = minMax[ 1 ];
+			stamp = current;
+			valid = true;
+		}
+		return new double[] { min, max };
+	}
+
+	@Override
+	public synchronized void beforePropertyChange( final O obj )
+	{
+		if ( !valid || !isSet.test( obj ) )
+			return;
+		final double v = value.applyAsDouble( obj );
+		if ( v <= min || v >= max || Double.isNaN( v ) )
+			valid = false;
+	}
+
+	@Override
+	public synchronized void propertyChanged( final O obj )
+	{
+		if ( !valid || !isSet.test( obj ) )
+			return;
+		final double v = value.applyAsDouble( obj );
+		if ( Double.isNaN( v ) )
+		{
+			valid = false;
+			return;
+		}
+		min = Math.min( min, v );
+		max = Math.max( max, v );
+	}
+}
@@ -32,6 +32,15 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.mastodon.views.bdv.overlay.OverlayGraphRenderer;
 import org.mastodon.views.trackscheme.display.ColorBarOverlay;
@@ -54,6 +63,15 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.LinAlgHelpers;
 
+/**
+ * Base class for recorders of BDV movies.
+ * <p>
+ * Frames are rendered concurrently by several workers, each with its own
+ * viewer state, BDV renderer and copy of the tracks overlay. The rendered
+ * frames are passed to {@link #writeFrame(BufferedImage, int)} in timepoint
+ * order, from the thread that called the record method, so implementations of
+ * {@link #writeFrame(BufferedImage, int)} do not need to be thread-safe.
+ */
 public abstract class AbstractBDVRecorder
 {
 	protected final ViewerPanel viewer;
@@ -64,6 +82,12 @@ public abstract class AbstractBDVRecorder
 
 	protected final ProgressWriter progressWriter;
 
+	private int numThreads;
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
 	protected AbstractBDVRecorder(
 			final ViewerPanel viewer,
 			final OverlayGraphRenderer< ?, ? > tracksOverlay,
@@ -74,6 +98,46 @@ public abstract class AbstractBDVRecorder
 		this.tracksOverlay = tracksOverlay;
 		this.colorBarOverlay = colorBarOverlay;
 		this.progressWriter = progressWriter;
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the number of frames rendered concurrently. Each rendering thread
+	 * holds its own BDV renderer and frame buffer, so memory usage grows with
+	 * the number of threads.
+	 *
+	 * @param numThreads
+	 *            the number of rendering threads, at least 1.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Sets the size of the canvas the viewer transform refers to. By default,
+	 * the current size of the viewer display is used. This must be set when
+	 * the viewer is not displayed, for instance when recording headless.
+	 *
+	 * @param width
+	 *            the canvas width.
+	 * @param height
+	 *            the canvas height.
+	 */
+	public void setCanvasSize( final int width, final int height )
+	{
+		this.canvasWidth = width;
+		this.canvasHeight = height;
+	}
+
+	private int getCanvasWidth()
+	{
+		return canvasWidth > 0 ? canvasWidth : viewer.getDisplay().getWidth();
+	}
+
+	private int getCanvasHeight()
+	{
+		return canvasHeight > 0 ? canvasHeight : viewer.getDisplay().getHeight();
 	}
 
 	public void recordMaxProjectionMovie(
@@ -82,25 +146,21 @@ public abstract class AbstractBDVRecorder
 			final double stepSize, final int numSteps,
 			final boolean projectOverlay )
 	{
-		initializeRecorder( width, height );
-
-		final ViewerState renderState = new BasicViewerState( viewer.state().snapshot() );
-		final int canvasW = viewer.getDisplay().getWidth();
-		final int canvasH = viewer.getDisplay().getHeight();
+		final ViewerState state = viewer.state().snapshot();
+		final int canvasW = getCanvasWidth();
+		final int canvasH = getCanvasHeight();
 
 		final AffineTransform3D tGV = new AffineTransform3D();
-		renderState.getViewerTransform( tGV );
+		state.getViewerTransform( tGV );
 		tGV.set( tGV.get( 0, 3 ) - canvasW / 2, 0, 3 );
 		tGV.set( tGV.get( 1, 3 ) - canvasH / 2, 1, 3 );
 		tGV.scale( ( double ) width / canvasW );
 		tGV.set( tGV.get( 0, 3 ) + width / 2, 0, 3 );
 		tGV.set( tGV.get( 1, 3 ) + height / 2, 1, 3 );
 
-		final AffineTransform3D affine = new AffineTransform3D();
-
 		// get voxel width transformed to current viewer coordinates
 		final AffineTransform3D tSV = new AffineTransform3D();
-		renderState.getSources().get( 0 ).getSpimSource().getSourceTransform( 0, 0, tSV );
+		state.getSources().get( 0 ).getSpimSource().getSourceTransform( 0, 0, tSV );
 		tSV.preConcatenate( tGV );
 		final double[] sO = new double[] { 0, 0, 0 };
 		final double[] sX = new double[] { 1, 0, 0 };
@@ -111,98 +171,155 @@ public abstract class AbstractBDVRecorder
 		LinAlgHelpers.subtract( vO, vX, vO );
 		final double dd = LinAlgHelpers.length( vO );
 
-		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
-
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
-		{
-			final ARGBScreenImage accumulated = new ARGBScreenImage( width, height );
+		record( width, height, minTimepointIndex, maxTimepointIndex,
+				() -> new MaxProjectionFrameRenderer( state, width, height, tGV, dd, stepSize, numSteps, projectOverlay ) );
+	}
 
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
+	public void record(
+			final int width,
+			final int height,
+			final int minTimepointIndex,
+			final int maxTimepointIndex )
+	{
+		final ViewerState state = viewer.state().snapshot();
+		final int canvasW = getCanvasWidth();
+		final int canvasH = getCanvasHeight();
 
-			public void clear()
-			{
-				for ( final ARGBType acc : accumulated )
-					acc.setZero();
-			}
+		final AffineTransform3D affine = new AffineTransform3D();
+		state.getViewerTransform( affine );
+		affine.set( affine.get( 0, 3 ) - canvasW / 2, 0, 3 );
+		affine.set( affine.get( 1, 3 ) - canvasH / 2, 1, 3 );
+		affine.scale( ( double ) width / canvasW );
+		affine.set( affine.get( 0, 3 ) + width / 2, 0, 3 );
+		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
 
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
-			{
-				return renderResult;
-			}
+		record( width, height, minTimepointIndex, maxTimepointIndex,
+				() -> new SliceFrameRenderer( state, width, height, affine ) );
+	}
 
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
+	/**
+	 * Renders the frames of the specified timepoints with a pool of
+	 * {@link FrameRenderer}s, and writes them in order.
+	 * <p>
+	 * At most two frames per rendering thread are in flight at any time, so
+	 * that rendered frames do not pile up when writing is slower than
+	 * rendering.
+	 */
+	private void record(
+			final int width,
+			final int height,
+			final int minTimepointIndex,
+			final int maxTimepointIndex,
+			final Supplier< FrameRenderer > frameRendererFactory )
+	{
+		final int nFrames = maxTimepointIndex - minTimepointIndex + 1;
+		final int nThreads = Math.max( 1, Math.min( numThreads, nFrames ) );
+		final BlockingQueue< FrameRenderer > frameRenderers = new ArrayBlockingQueue<>( nThreads );
+		for ( int i = 0; i < nThreads; ++i )
+			frameRenderers.add( frameRendererFactory.get() );
 
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
+		initializeRecorder( width, height );
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		try
+		{
+			final ArrayDeque< Future< BufferedImage > > pending = new ArrayDeque<>();
+			int next = minTimepointIndex;
+			progressWriter.setProgress( 0 );
+			for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
 			{
-				final BufferedImage bufferedImage = renderResult.getBufferedImage();
-				final Img< ARGBType > argbs = ArrayImgs.argbs( ( ( DataBufferInt ) bufferedImage.getData().getDataBuffer() ).getData(), width, height );
-				final Cursor< ARGBType > c = argbs.cursor();
-				for ( final ARGBType acc : accumulated )
+				while ( next <= maxTimepointIndex && pending.size() < 2 * nThreads )
 				{
-					final int current = acc.get();
-					final int in = c.next().get();
-					acc.set( ARGBType.rgba(
-							Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
-							Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
-							Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
-							Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) ) ) );
+					final int t = next++;
+					pending.add( executor.submit( () -> {
+						final FrameRenderer frameRenderer = frameRenderers.take();
+						try
+						{
+							return frameRenderer.render( t );
+						}
+						finally
+						{
+							frameRenderers.put( frameRenderer );
+						}
+					} ) );
 				}
-			}
 
-			@Override
-			public final int getWidth()
-			{
-				return width;
+				writeFrame( getFrame( pending.poll() ), timepoint );
+				progressWriter.setProgress( ( double ) ( timepoint - minTimepointIndex + 1 ) / nFrames );
 			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			closeRecorder();
+		}
+	}
 
-			@Override
-			public int getHeight()
-			{
-				return height;
-			}
+	private static BufferedImage getFrame( final Future< BufferedImage > future )
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while recording movie.", e );
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			throw new RuntimeException( cause );
 		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
+	}
 
-		// Mastodon overlays.
-		if ( tracksOverlay != null )
-			tracksOverlay.setCanvasSize( width, height );
+	/**
+	 * Renders frames for a movie. Each instance holds its own viewer state,
+	 * renderer and overlay, and is used by one thread at a time.
+	 */
+	private abstract class FrameRenderer
+	{
+		final int width;
 
-		if ( colorBarOverlay != null )
-			colorBarOverlay.setCanvasSize( width, height );
+		final int height;
 
-		// Loop over time.
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
-		{
-			target.clear();
-			renderState.setCurrentTimepoint( timepoint );
+		final ViewerState renderState;
 
-			for ( int step = 0; step < numSteps; ++step )
-			{
-				affine.set(
-						1, 0, 0, 0,
-						0, 1, 0, 0,
-						0, 0, 1, -dd * stepSize * ( step - numSteps / 2 ) );
-				affine.concatenate( tGV );
-				renderState.setViewerTransform( affine );
-				renderer.requestRepaint();
-				renderer.paint( renderState );
-			}
+		final OverlayGraphRenderer< ?, ? > overlay;
+
+		final ScaleBarOverlayRenderer scalebar;
 
-			final BufferedImage bi = target.accumulated.image();
+		FrameRenderer( final ViewerState state, final int width, final int height )
+		{
+			this.width = width;
+			this.height = height;
+			this.renderState = new BasicViewerState( state );
+			this.overlay = tracksOverlay == null ? null : tracksOverlay.copy();
+			if ( overlay != null )
+				overlay.setCanvasSize( width, height );
+			this.scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
+		}
+
+		/**
+		 * Renders the frame of the specified timepoint.
+		 *
+		 * @param timepoint
+		 *            the timepoint.
+		 * @return a new image, that is not modified by subsequent calls.
+		 */
+		abstract BufferedImage render( int timepoint );
+
+		/**
+		 * Draws the scale bar, the tracks overlay and the color bar on the
+		 * specified image, and returns a copy of it.
+		 */
+		BufferedImage drawOverlays( final BufferedImage bi, final Consumer< Graphics2D > drawTracks )
+		{
 			final Graphics2D g2 = bi.createGraphics();
 			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
 
-			if ( Prefs.showScaleBarInMovie() )
+			if ( scalebar != null )
 			{
 				g2.setClip( 0, 0, width, height );
 				scalebar.setViewerState( renderState );
@@ -216,156 +333,214 @@ public abstract class AbstractBDVRecorder
 			g2.setClip( 0, 0, width, height );
 			g2.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
 
-			if ( tracksOverlay != null )
+			if ( overlay != null )
+				drawTracks.accept( g2 );
+			if ( colorBarOverlay != null )
 			{
-				tracksOverlay.timePointChanged( timepoint );
-				if ( projectOverlay )
+				// The color bar overlay is shared by all rendering threads.
+				synchronized ( colorBarOverlay )
 				{
-					for ( int step = 0; step < numSteps; ++step )
-					{
-						affine.set(
-								1, 0, 0, 0,
-								0, 1, 0, 0,
-								0, 0, 1, -dd * stepSize * ( step - numSteps / 2 ) );
-						affine.concatenate( tGV );
-
-						if ( tracksOverlay != null )
-						{
-							tracksOverlay.transformChanged( affine );
-							tracksOverlay.drawOverlays( g2 );
-						}
-					}
-				}
-				else
-				{
-					tracksOverlay.transformChanged( tGV );
-					tracksOverlay.drawOverlays( g2 );
+					colorBarOverlay.setCanvasSize( width, height );
+					colorBarOverlay.drawOverlays( g2 );
 				}
 			}
-			if ( colorBarOverlay != null )
-				colorBarOverlay.drawOverlays( g2 );
+			g2.dispose();
 
-			writeFrame( bi, timepoint );
-			progressWriter.setProgress( ( double ) ( timepoint - minTimepointIndex + 1 ) / ( maxTimepointIndex - minTimepointIndex + 1 ) );
+			return new BufferedImage( bi.getColorModel(), bi.copyData( null ), bi.isAlphaPremultiplied(), null );
 		}
-
-		closeRecorder();
 	}
 
-	public void record(
-			final int width,
-			final int height,
-			final int minTimepointIndex,
-			final int maxTimepointIndex )
+	private class SliceFrameRenderer extends FrameRenderer
 	{
-		initializeRecorder( width, height );
-
-		final ViewerState renderState = new BasicViewerState( viewer.state().snapshot() );
-		final int canvasW = viewer.getDisplay().getWidth();
-		final int canvasH = viewer.getDisplay().getHeight();
-
-		final AffineTransform3D affine = new AffineTransform3D();
-		renderState.getViewerTransform( affine );
-		affine.set( affine.get( 0, 3 ) - canvasW / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) - canvasH / 2, 1, 3 );
-		affine.scale( ( double ) width / canvasW );
-		affine.set( affine.get( 0, 3 ) + width / 2, 0, 3 );
-		affine.set( affine.get( 1, 3 ) + height / 2, 1, 3 );
-		renderState.setViewerTransform( affine );
+		private final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
 
-		// Scale bar.
-		final ScaleBarOverlayRenderer scalebar = Prefs.showScaleBarInMovie() ? new ScaleBarOverlayRenderer() : null;
+		private final MultiResolutionRenderer renderer;
 
-		// BDV image.
-		class MyTarget implements RenderTarget< BufferedImageRenderResult >
+		SliceFrameRenderer( final ViewerState state, final int width, final int height, final AffineTransform3D affine )
 		{
-			final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
+			super( state, width, height );
+			renderState.setViewerTransform( affine );
+			if ( overlay != null )
+				overlay.transformChanged( affine );
 
-			@Override
-			public BufferedImageRenderResult getReusableRenderResult()
+			// BDV image.
+			class MyTarget implements RenderTarget< BufferedImageRenderResult >
 			{
-				return renderResult;
-			}
+				@Override
+				public BufferedImageRenderResult getReusableRenderResult()
+				{
+					return renderResult;
+				}
 
-			@Override
-			public BufferedImageRenderResult createRenderResult()
-			{
-				return new BufferedImageRenderResult();
-			}
+				@Override
+				public BufferedImageRenderResult createRenderResult()
+				{
+					return new BufferedImageRenderResult();
+				}
 
-			@Override
-			public void setRenderResult( final BufferedImageRenderResult renderResult )
-			{}
+				@Override
+				public void setRenderResult( final BufferedImageRenderResult renderResult )
+				{}
 
-			@Override
-			public int getWidth()
-			{
-				return width;
-			}
+				@Override
+				public int getWidth()
+				{
+					return width;
+				}
 
-			@Override
-			public int getHeight()
-			{
-				return height;
+				@Override
+				public int getHeight()
+				{
+					return height;
+				}
 			}
-		}
-		final MyTarget target = new MyTarget();
-		final MultiResolutionRenderer renderer = new MultiResolutionRenderer(
-				target, () -> {}, new double[] { 1 }, 0, 1, null, false,
-				viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
-
-		// Mastodon overlays.
-		if ( tracksOverlay != null )
-		{
-			tracksOverlay.setCanvasSize( width, height );
-			tracksOverlay.transformChanged( affine );
-		}
-		if ( colorBarOverlay != null )
-		{
-			colorBarOverlay.setCanvasSize( width, height );
+			renderer = new MultiResolutionRenderer(
+					new MyTarget(), () -> {}, new double[] { 1 }, 0, 1, null, false,
+					viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
 		}
 
-		// Loop over time.
-		progressWriter.setProgress( 0 );
-		for ( int timepoint = minTimepointIndex; timepoint <= maxTimepointIndex; ++timepoint )
+		@Override
+		BufferedImage render( final int timepoint )
 		{
 			renderState.setCurrentTimepoint( timepoint );
 			renderer.requestRepaint();
 			renderer.paint( renderState );
 
-			final BufferedImage bi = target.renderResult.getBufferedImage();
-			final Graphics2D g2 = bi.createGraphics();
-			g2.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+			return drawOverlays( renderResult.getBufferedImage(), g2 -> {
+				overlay.timePointChanged( timepoint );
+				overlay.drawOverlays( g2 );
+			} );
+		}
+	}
 
-			if ( Prefs.showScaleBarInMovie() )
-			{
-				g2.setClip( 0, 0, width, height );
-				scalebar.setViewerState( renderState );
-				scalebar.paint( g2 );
-			}
+	private class MaxProjectionFrameRenderer extends FrameRenderer
+	{
+		private final AffineTransform3D tGV;
 
-			/*
-			 * Mastodon overlays.
-			 */
+		private final double dd;
 
-			g2.setClip( 0, 0, width, height );
-			g2.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
+		private final double stepSize;
+
+		private final int numSteps;
+
+		private final boolean projectOverlay;
+
+		private final AffineTransform3D affine = new AffineTransform3D();
+
+		private final ARGBScreenImage accumulated;
+
+		private final MultiResolutionRenderer renderer;
 
-			if ( tracksOverlay != null )
+		MaxProjectionFrameRenderer(
+				final ViewerState state,
+				final int width, final int height,
+				final AffineTransform3D tGV,
+				final double dd,
+				final double stepSize,
+				final int numSteps,
+				final boolean projectOverlay )
+		{
+			super( state, width, height );
+			this.tGV = tGV;
+			this.dd = dd;
+			this.stepSize = stepSize;
+			this.numSteps = numSteps;
+			this.projectOverlay = projectOverlay;
+			this.accumulated = new ARGBScreenImage( width, height );
+
+			class MyTarget implements RenderTarget< BufferedImageRenderResult >
 			{
-				tracksOverlay.timePointChanged( timepoint );
-				tracksOverlay.drawOverlays( g2 );
+				final BufferedImageRenderResult renderResult = new BufferedImageRenderResult();
+
+				@Override
+				public BufferedImageRenderResult getReusableRenderResult()
+				{
+					return renderResult;
+				}
+
+				@Override
+				public BufferedImageRenderResult createRenderResult()
+				{
+					return new BufferedImageRenderResult();
+				}
+
+				@Override
+				public void setRenderResult( final BufferedImageRenderResult renderResult )
+				{
+					final BufferedImage bufferedImage = renderResult.getBufferedImage();
+					final Img< ARGBType > argbs = ArrayImgs.argbs( ( ( DataBufferInt ) bufferedImage.getData().getDataBuffer() ).getData(), width, height );
+					final Cursor< ARGBType > c = argbs.cursor();
+					for ( final ARGBType acc : accumulated )
+					{
+						final int current = acc.get();
+						final int in = c.next().get();
+						acc.set( ARGBType.rgba(
+								Math.max( ARGBType.red( in ), ARGBType.red( current ) ),
+								Math.max( ARGBType.green( in ), ARGBType.green( current ) ),
+								Math.max( ARGBType.blue( in ), ARGBType.blue( current ) ),
+								Math.max( ARGBType.alpha( in ), ARGBType.alpha( current ) ) ) );
+					}
+				}
+
+				@Override
+				public final int getWidth()
+				{
+					return width;
+				}
+
+				@Override
+				public int getHeight()
+				{
+					return height;
+				}
 			}
-			if ( colorBarOverlay != null )
+			renderer = new MultiResolutionRenderer(
+					new MyTarget(), () -> {}, new double[] { 1 }, 0, 1, null, false,
+					viewer.getOptionValues().getAccumulateProjectorFactory(), new CacheControl.Dummy() );
+		}
+
+		private void setStep( final int step )
+		{
+			affine.set(
+					1, 0, 0, 0,
+					0, 1, 0, 0,
+					0, 0, 1, -dd * stepSize * ( step - numSteps / 2 ) );
+			affine.concatenate( tGV );
+		}
+
+		@Override
+		BufferedImage render( final int timepoint )
+		{
+			for ( final ARGBType acc : accumulated )
+				acc.setZero();
+			renderState.setCurrentTimepoint( timepoint );
+
+			for ( int step = 0; step < numSteps; ++step )
 			{
-				colorBarOverlay.drawOverlays( g2 );
+				setStep( step );
+				renderState.setViewerTransform( affine );
+				renderer.requestRepaint();
+				renderer.paint( renderState );
 			}
 
-			writeFrame( bi, timepoint );
-			progressWriter.setProgress( ( double ) ( timepoint - minTimepointIndex + 1 ) / ( maxTimepointIndex - minTimepointIndex + 1 ) );
+			return drawOverlays( accumulated.image(), g2 -> {
+				overlay.timePointChanged( timepoint );
+				if ( projectOverlay )
+				{
+					for ( int step = 0; step < numSteps; ++step )
+					{
+						setStep( step );
+						overlay.transformChanged( affine );
+						overlay.drawOverlays( g2 );
+					}
+				}
+				else
+				{
+					overlay.transformChanged( tGV );
+					overlay.drawOverlays( g2 );
+				}
+			} );
 		}
-
-		closeRecorder();
 	}
 
 	protected abstract void closeRecorder();
@@ -64,7 +64,7 @@ public class MovieFileBDVRecorder extends AbstractBDVRecorder
 
 	private MediaPacket packet;
 
-	protected MovieFileBDVRecorder(
+	public MovieFileBDVRecorder(
 			final ViewerPanel viewer,
 			final OverlayGraphRenderer< ?, ? > tracksOverlay,
 			final ColorBarOverlay colorBarOverlay,
@@ -45,7 +45,7 @@ public class PNGFolderBDVRecorder extends AbstractBDVRecorder
 
 	private final File targetFolder;
 
-	protected PNGFolderBDVRecorder(
+	public PNGFolderBDVRecorder(
 			final ViewerPanel viewer,
 			final OverlayGraphRenderer< ?, ? > tracksOverlay,
 			final ColorBarOverlay colorBarOverlay,
@@ -28,13 +28,9 @@
  */
 package org.mastodon.views.bdv.overlay;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
 
 import org.mastodon.kdtree.ClipConvexPolytope;
 import org.mastodon.model.FocusModel;
@@ -62,15 +58,21 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 		super( graph, highlight, focus, selection, coloring );
 	}
 
+	protected OverlayBranchGraphRenderer( final OverlayBranchGraphRenderer< BV, BE, V, E > other )
+	{
+		super( other );
+	}
+
+	@Override
+	public OverlayBranchGraphRenderer< BV, BE, V, E > copy()
+	{
+		return new OverlayBranchGraphRenderer<>( this );
+	}
+
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
 		final Graphics2D graphics = ( Graphics2D ) g;
-		final BasicStroke defaultVertexStroke = new BasicStroke( ( float ) settings.getSpotStrokeWidth() );
-		final BasicStroke highlightedVertexStroke = new BasicStroke( 4f );
-		final BasicStroke focusedVertexStroke = new BasicStroke( 2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1f, new float[] { 8f, 3f }, 0 );
-		final BasicStroke defaultEdgeStroke = new BasicStroke( ( float ) settings.getLinkStrokeWidth() );
-		final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
 
 		final AffineTransform3D transform = getRenderTransformCopy();
 		final int currentTimepoint = renderTimepoint;
@@ -95,78 +97,53 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 		final boolean drawPointsAlways = drawPointsAlways();
 		final boolean drawPointsMaybe = drawPointsMaybe();
 		final boolean useGradient = settings.getUseGradient();
-		final boolean drawArrowHeads = settings.getDrawArrowHeads();
 		final int colorSpot = settings.getColorSpot();
 		final int colorPast = settings.getColorPast();
 		final int colorFuture = settings.getColorFuture();
 
+		drawList.clear( settings.getLinkStrokeWidth(), settings.getSpotStrokeWidth(), settings.getDrawArrowHeads() );
+
 		index.readLock().lock();
 		try
 		{
 			if ( settings.getDrawLinks() )
 			{
 				final BE highlighted = highlight.getHighlightedEdge( ref3 );
-
-				graphics.setStroke( defaultEdgeStroke );
 				forEachVisibleEdge( transform, currentTimepoint, ( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 ) -> {
 					final boolean isHighlighted = edge.equals( highlighted );
+					final boolean isSelected = selection.isSelected( edge );
 
 					edge.getSource( source );
 					edge.getTarget( target );
 					final int edgeColor = coloring.color( edge, source, target );
-					final Color c1 = getColor(
+					final int c1 = getColor(
 							sd1,
 							td1,
 							sliceDistanceFade,
 							timepointDistanceFade,
-							selection.isSelected( edge ),
+							isSelected,
 							isHighlighted,
 							colorSpot,
 							colorPast,
 							colorFuture,
 							edgeColor );
-					if ( useGradient )
-					{
-						final Color c0 = getColor(
-								sd0,
-								td0,
-								sliceDistanceFade,
-								timepointDistanceFade,
-								selection.isSelected( edge ),
-								isHighlighted,
-								colorSpot,
-								colorPast,
-								colorFuture,
-								edgeColor );
-						graphics.setPaint( new GradientPaint( x0, y0, c0, x1, y1, c1 ) );
-					}
-					else
-					{
-						graphics.setPaint( c1 );
-					}
-					if ( isHighlighted )
-						graphics.setStroke( highlightedEdgeStroke );
-					graphics.drawLine( x0, y0, x1, y1 );
-
-					// Draw arrows for edge direction.
-					if ( drawArrowHeads )
-					{
-						final double dx = x1 - x0;
-						final double dy = y1 - y0;
-						final double alpha = Math.atan2( dy, dx );
-						final double l = 5;
-						final double theta = Math.PI / 6.;
-						final int x1a = ( int ) Math.round( x1 - l * Math.cos( alpha - theta ) );
-						final int x1b = ( int ) Math.round( x1 - l * Math.cos( alpha + theta ) );
-						final int y1a = ( int ) Math.round( y1 - l * Math.sin( alpha - theta ) );
-						final int y1b = ( int ) Math.round( y1 - l * Math.sin( alpha + theta ) );
-						graphics.drawLine( x1, y1, x1a, y1a );
-						graphics.drawLine( x1, y1, x1b, y1b );
-					}
-
-					if ( isHighlighted )
-						graphics.setStroke( defaultEdgeStroke );
-				});
+					final int c0 = useGradient
+							? getColor(
+									sd0,
+									td0,
+									sliceDistanceFade,
+									timepointDistanceFade,
+									isSelected,
+									isHighlighted,
+									colorSpot,
+									colorPast,
+									colorFuture,
+									edgeColor )
+							: c1;
+					drawList.addLink( x0, y0, x1, y1, c0, c1, isHighlighted
+							? OverlayDrawList.LINK_HIGHLIGHTED
+							: OverlayDrawList.LINK );
+				} );
 			}
 
 			if ( settings.getDrawSpots() )
@@ -176,18 +153,14 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 				final boolean drawEllipsoidSliceIntersection = settings.getDrawEllipsoidSliceIntersection();
 				final boolean drawEllipsoidSliceProjection = settings.getDrawEllipsoidSliceProjection();
 				final double pointFadeDepth = settings.getPointFadeDepth();
-				final boolean fillSpots = settings.getFillSpots();
 				final Visibility< BV, BE > visibility = visibilities.getVisibility();
-				
+
 				final BV highlighted = highlight.getHighlightedVertex( ref1 );
 				final BV focused = focus.getFocusedVertex( ref2 );
 
-				graphics.setStroke( defaultVertexStroke );
-				final AffineTransform torig = graphics.getTransform();
-
-				final SpatialIndex< BV > si = index.getSpatialIndex( currentTimepoint );
-				final ClipConvexPolytope< BV > ccp = si.getClipConvexPolytope();
-				ccp.clip( getVisiblePolytopeGlobal( transform, currentTimepoint ) );
+				final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, currentTimepoint );
+				final ClipConvexPolytope< V > ccp = index.getSpatialIndex( currentTimepoint ).getClipConvexPolytope();
+				ccp.clip( cropPolytopeGlobal );
 				for ( final BV vertex : ccp.getInsideValues() )
 				{
 					if ( !visibility.isVisible( vertex ) )
@@ -196,6 +169,12 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 					final int color = coloring.color( vertex );
 					final boolean isHighlighted = vertex.equals( highlighted );
 					final boolean isFocused = vertex.equals( focused );
+					final boolean isSelected = selection.isSelected( vertex );
+					final int stroke = isHighlighted
+							? OverlayDrawList.SPOT_HIGHLIGHTED
+							: isFocused
+									? OverlayDrawList.SPOT_FOCUSED
+									: OverlayDrawList.SPOT;
 
 					screenVertexMath.init( vertex, transform );
 
@@ -209,28 +188,21 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 						if ( screenVertexMath.intersectsViewPlane() )
 						{
 							final Ellipse ellipse = screenVertexMath.getIntersectEllipse();
-
-							graphics.setColor( getColor(
+							final int c = getColor(
 									0,
 									0,
 									ellipsoidFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig, fillSpots );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( !drawEllipsoidSliceProjection && drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
+									color );
+							final String label = !drawEllipsoidSliceProjection && drawSpotLabels
+									? vertex.getLabel()
+									: null;
+							drawList.addEllipse( ellipse, c, stroke, label );
 						}
 					}
 
@@ -239,55 +211,40 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 						if ( drawEllipsoidSliceProjection )
 						{
 							final Ellipse ellipse = screenVertexMath.getProjectEllipse();
-
-							graphics.setColor( getColor(
+							final int c = getColor(
 									sd,
 									0,
 									ellipsoidFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig, fillSpots );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
-
-							graphics.setTransform( torig );
+									color );
+							drawList.addEllipse( ellipse, c, stroke, drawSpotLabels ? vertex.getLabel() : null );
 						}
 
 						if ( drawPointsAlways || ( drawPointsMaybe && !screenVertexMath.intersectsViewPlane() ) )
 						{
-							graphics.setColor( getColor(
+							final int c = getColor(
 									sd,
 									0,
 									pointFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
+									color );
 							double radius = pointRadius;
 							if ( isHighlighted || isFocused )
 								radius *= 2;
 							final int ox = ( int ) ( x - radius );
 							final int oy = ( int ) ( y - radius );
 							final int ow = ( int ) ( 2 * radius );
-							if ( isFocused )
-								graphics.fillRect( ox, oy, ow, ow );
-							else
-								graphics.fillOval( ox, oy, ow, ow );
+							drawList.addPoint( ox, oy, ow, c, isFocused );
 						}
 					}
 				}
@@ -299,6 +256,11 @@ public class OverlayBranchGraphRenderer< BV extends OverlayVertex< BV, BE >, BE
 		}
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
+		graph.releaseRef( ref3 );
+		graph.releaseRef( source );
+		graph.releaseRef( target );
+
+		drawList.draw( graphics, settings.getFillSpots() );
 	}
 
 	@Override
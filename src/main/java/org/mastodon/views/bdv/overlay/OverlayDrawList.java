@@ -0,0 +1,723 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.bdv.overlay;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.PaintContext;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+/**
+ * The primitives of one frame of a BDV graph overlay: links, spot ellipses,
+ * spot centers and spot labels, stored in reusable arrays and painted in
+ * batches of equal stroke and color.
+ * <p>
+ * The overlay renderers fill the draw list while they hold the graph lock, and
+ * paint it after they released it. The arrays, the shape and the paint used for
+ * gradient links, and the {@link Color}s (cached by their ARGB value) are
+ * reused from one frame to the next, so that a repaint does not create garbage
+ * in proportion to the number of visible spots and links.
+ * <p>
+ * Primitives are painted in layers: links, ellipses, spot centers and then
+ * labels. Within a layer, they are sorted by stroke and color, so that the
+ * stroke and color are set once per group, and keep their insertion order
+ * within a group. Overlapping primitives of different colors can therefore be
+ * blended in a different order than they were added. The primitives of a
+ * group are still painted one by one: merging them into a single shape makes
+ * the rasterizer slower, because the shape then covers the whole screen.
+ * <p>
+ * A draw list is not thread-safe. Each renderer uses its own.
+ *
+ * @author Tobias Pietzsch
+ */
+final class OverlayDrawList
+{
+	/**
+	 * Stroke of a link.
+	 */
+	static final int LINK = 0;
+
+	/**
+	 * Stroke of the highlighted link.
+	 */
+	static final int LINK_HIGHLIGHTED = 1;
+
+	/**
+	 * Stroke of a spot ellipse.
+	 */
+	static final int SPOT = 2;
+
+	/**
+	 * Stroke of the highlighted spot ellipse.
+	 */
+	static final int SPOT_HIGHLIGHTED = 3;
+
+	/**
+	 * Stroke of the focused spot ellipse.
+	 */
+	static final int SPOT_FOCUSED = 4;
+
+	/**
+	 * Sort keys pack the stroke (3 bits), the ARGB color (32 bits) and the
+	 * index of the primitive (28 bits) in a {@code long}, so that sorting the
+	 * keys groups primitives by stroke and color, and keeps the insertion order
+	 * within a group.
+	 */
+	private static final int INDEX_BITS = 28;
+
+	private static final long INDEX_MASK = ( 1L << INDEX_BITS ) - 1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final BasicStroke[] strokes = new BasicStroke[] {
+			null,
+			new BasicStroke( 3f ),
+			null,
+			new BasicStroke( 4f ),
+			new BasicStroke( 2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1f, new float[] { 8f, 3f }, 0 )
+	};
+
+	private float linkStrokeWidth = Float.NaN;
+
+	private float spotStrokeWidth = Float.NaN;
+
+	private final ColorCache colors = new ColorCache();
+
+	private final LinkGradientPaint gradient = new LinkGradientPaint();
+
+	private final Ellipse2D.Double ellipse2D = new Ellipse2D.Double();
+
+	private long[] keys = new long[ INITIAL_CAPACITY ];
+
+	/*
+	 * Links.
+	 */
+
+	private int numLinks;
+
+	private int[] linkX0 = new int[ INITIAL_CAPACITY ];
+
+	private int[] linkY0 = new int[ INITIAL_CAPACITY ];
+
+	private int[] linkX1 = new int[ INITIAL_CAPACITY ];
+
+	private int[] linkY1 = new int[ INITIAL_CAPACITY ];
+
+	private int[] linkColor0 = new int[ INITIAL_CAPACITY ];
+
+	private int[] linkColor1 = new int[ INITIAL_CAPACITY ];
+
+	private byte[] linkStroke = new byte[ INITIAL_CAPACITY ];
+
+	private boolean drawArrowHeads;
+
+	/*
+	 * Ellipses.
+	 */
+
+	private int numEllipses;
+
+	private double[] ellipseX = new double[ INITIAL_CAPACITY ];
+
+	private double[] ellipseY = new double[ INITIAL_CAPACITY ];
+
+	private double[] ellipseTheta = new double[ INITIAL_CAPACITY ];
+
+	private double[] ellipseHalfWidth = new double[ INITIAL_CAPACITY ];
+
+	private double[] ellipseHalfHeight = new double[ INITIAL_CAPACITY ];
+
+	private int[] ellipseColor = new int[ INITIAL_CAPACITY ];
+
+	private byte[] ellipseStroke = new byte[ INITIAL_CAPACITY ];
+
+	private String[] ellipseLabel = new String[ INITIAL_CAPACITY ];
+
+	private int numLabels;
+
+	/*
+	 * Spot centers.
+	 */
+
+	private int numPoints;
+
+	private int[] pointX = new int[ INITIAL_CAPACITY ];
+
+	private int[] pointY = new int[ INITIAL_CAPACITY ];
+
+	private int[] pointSize = new int[ INITIAL_CAPACITY ];
+
+	private int[] pointColor = new int[ INITIAL_CAPACITY ];
+
+	private boolean[] pointSquare = new boolean[ INITIAL_CAPACITY ];
+
+	/**
+	 * Removes all primitives and prepares the draw list for a new frame.
+	 *
+	 * @param linkStrokeWidth
+	 *            the width of the stroke of links that are not highlighted.
+	 * @param spotStrokeWidth
+	 *            the width of the stroke of ellipses that are not highlighted
+	 *            nor focused.
+	 * @param drawArrowHeads
+	 *            whether to draw an arrow head at the target end of links.
+	 */
+	void clear( final double linkStrokeWidth, final double spotStrokeWidth, final boolean drawArrowHeads )
+	{
+		if ( ( float ) linkStrokeWidth != this.linkStrokeWidth )
+		{
+			this.linkStrokeWidth = ( float ) linkStrokeWidth;
+			strokes[ LINK ] = new BasicStroke( this.linkStrokeWidth );
+		}
+		if ( ( float ) spotStrokeWidth != this.spotStrokeWidth )
+		{
+			this.spotStrokeWidth = ( float ) spotStrokeWidth;
+			strokes[ SPOT ] = new BasicStroke( this.spotStrokeWidth );
+		}
+		this.drawArrowHeads = drawArrowHeads;
+		Arrays.fill( ellipseLabel, 0, numEllipses, null );
+		numLinks = 0;
+		numEllipses = 0;
+		numLabels = 0;
+		numPoints = 0;
+	}
+
+	/**
+	 * Adds a link.
+	 *
+	 * @param x0
+	 *            the x position of the source, in viewer coordinates.
+	 * @param y0
+	 *            the y position of the source, in viewer coordinates.
+	 * @param x1
+	 *            the x position of the target, in viewer coordinates.
+	 * @param y1
+	 *            the y position of the target, in viewer coordinates.
+	 * @param color0
+	 *            the ARGB color at the source.
+	 * @param color1
+	 *            the ARGB color at the target. If it differs from
+	 *            {@code color0}, the link is painted with a gradient.
+	 * @param stroke
+	 *            {@link #LINK} or {@link #LINK_HIGHLIGHTED}.
+	 */
+	void addLink( final int x0, final int y0, final int x1, final int y1, final int color0, final int color1, final int stroke )
+	{
+		if ( numLinks == linkX0.length )
+		{
+			final int capacity = grow( numLinks );
+			linkX0 = Arrays.copyOf( linkX0, capacity );
+			linkY0 = Arrays.copyOf( linkY0, capacity );
+			linkX1 = Arrays.copyOf( linkX1, capacity );
+			linkY1 = Arrays.copyOf( linkY1, capacity );
+			linkColor0 = Arrays.copyOf( linkColor0, capacity );
+			linkColor1 = Arrays.copyOf( linkColor1, capacity );
+			linkStroke = Arrays.copyOf( linkStroke, capacity );
+		}
+		final int i = numLinks++;
+		linkX0[ i ] = x0;
+		linkY0[ i ] = y0;
+		linkX1[ i ] = x1;
+		linkY1[ i ] = y1;
+		linkColor0[ i ] = color0;
+		linkColor1[ i ] = color1;
+		linkStroke[ i ] = ( byte ) stroke;
+	}
+
+	/**
+	 * Adds a spot ellipse.
+	 *
+	 * @param ellipse
+	 *            the ellipse, in viewer coordinates. Its values are copied.
+	 * @param color
+	 *            the ARGB color.
+	 * @param stroke
+	 *            {@link #SPOT}, {@link #SPOT_HIGHLIGHTED} or
+	 *            {@link #SPOT_FOCUSED}.
+	 * @param label
+	 *            the label to paint at the center of the ellipse, or
+	 *            {@code null}.
+	 */
+	void addEllipse( final Ellipse ellipse, final int color, final int stroke, final String label )
+	{
+		if ( numEllipses == ellipseX.length )
+		{
+			final int capacity = grow( numEllipses );
+			ellipseX = Arrays.copyOf( ellipseX, capacity );
+			ellipseY = Arrays.copyOf( ellipseY, capacity );
+			ellipseTheta = Arrays.copyOf( ellipseTheta, capacity );
+			ellipseHalfWidth = Arrays.copyOf( ellipseHalfWidth, capacity );
+			ellipseHalfHeight = Arrays.copyOf( ellipseHalfHeight, capacity );
+			ellipseColor = Arrays.copyOf( ellipseColor, capacity );
+			ellipseStroke = Arrays.copyOf( ellipseStroke, capacity );
+			ellipseLabel = Arrays.copyOf( ellipseLabel, capacity );
+		}
+		final int i = numEllipses++;
+		final double[] center = ellipse.getCenter();
+		ellipseX[ i ] = center[ 0 ];
+		ellipseY[ i ] = center[ 1 ];
+		ellipseTheta[ i ] = ellipse.getTheta();
+		ellipseHalfWidth[ i ] = ellipse.getHalfWidth();
+		ellipseHalfHeight[ i ] = ellipse.getHalfHeight();
+		ellipseColor[ i ] = color;
+		ellipseStroke[ i ] = ( byte ) stroke;
+		ellipseLabel[ i ] = label;
+		if ( label != null )
+			++numLabels;
+	}
+
+	/**
+	 * Adds a spot center.
+	 *
+	 * @param x
+	 *            the x position of the upper left corner, in viewer
+	 *            coordinates.
+	 * @param y
+	 *            the y position of the upper left corner, in viewer
+	 *            coordinates.
+	 * @param size
+	 *            the width and height.
+	 * @param color
+	 *            the ARGB color.
+	 * @param square
+	 *            whether to paint a square instead of a disk.
+	 */
+	void addPoint( final int x, final int y, final int size, final int color, final boolean square )
+	{
+		if ( numPoints == pointX.length )
+		{
+			final int capacity = grow( numPoints );
+			pointX = Arrays.copyOf( pointX, capacity );
+			pointY = Arrays.copyOf( pointY, capacity );
+			pointSize = Arrays.copyOf( pointSize, capacity );
+			pointColor = Arrays.copyOf( pointColor, capacity );
+			pointSquare = Arrays.copyOf( pointSquare, capacity );
+		}
+		final int i = numPoints++;
+		pointX[ i ] = x;
+		pointY[ i ] = y;
+		pointSize[ i ] = size;
+		pointColor[ i ] = color;
+		pointSquare[ i ] = square;
+	}
+
+	/**
+	 * Paints all primitives added since the last {@link #clear}.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @param fillSpots
+	 *            whether to fill the ellipses and outline them in black, or to
+	 *            only draw their outline.
+	 */
+	void draw( final Graphics2D graphics, final boolean fillSpots )
+	{
+		drawLinks( graphics );
+		drawEllipses( graphics, fillSpots );
+		drawPoints( graphics );
+		drawLabels( graphics );
+	}
+
+	private void drawLinks( final Graphics2D graphics )
+	{
+		final int n = numLinks;
+		final long[] keys = keys( n );
+		for ( int i = 0; i < n; i++ )
+			keys[ i ] = key( linkStroke[ i ], linkColor1[ i ], i );
+		Arrays.sort( keys, 0, n );
+
+		long group = -1;
+		for ( int k = 0; k < n; k++ )
+		{
+			if ( group( keys[ k ] ) != group )
+			{
+				group = group( keys[ k ] );
+				graphics.setStroke( strokes[ stroke( group ) ] );
+				graphics.setColor( colors.get( color( group ) ) );
+			}
+			final int i = index( keys[ k ] );
+			if ( linkColor0[ i ] == linkColor1[ i ] )
+			{
+				drawLink( graphics, i );
+			}
+			else
+			{
+				gradient.set( linkX0[ i ], linkY0[ i ], linkColor0[ i ], linkX1[ i ], linkY1[ i ], linkColor1[ i ] );
+				graphics.setPaint( gradient );
+				drawLink( graphics, i );
+				graphics.setColor( colors.get( color( group ) ) );
+			}
+		}
+	}
+
+	private void drawLink( final Graphics2D graphics, final int i )
+	{
+		final int x0 = linkX0[ i ];
+		final int y0 = linkY0[ i ];
+		final int x1 = linkX1[ i ];
+		final int y1 = linkY1[ i ];
+		graphics.drawLine( x0, y0, x1, y1 );
+
+		// Draw arrows for edge direction.
+		if ( drawArrowHeads )
+		{
+			final double alpha = Math.atan2( y1 - y0, x1 - x0 );
+			final double l = 5;
+			final double theta = Math.PI / 6.;
+			final int x1a = ( int ) Math.round( x1 - l * Math.cos( alpha - theta ) );
+			final int x1b = ( int ) Math.round( x1 - l * Math.cos( alpha + theta ) );
+			final int y1a = ( int ) Math.round( y1 - l * Math.sin( alpha - theta ) );
+			final int y1b = ( int ) Math.round( y1 - l * Math.sin( alpha + theta ) );
+			graphics.drawLine( x1, y1, x1a, y1a );
+			graphics.drawLine( x1, y1, x1b, y1b );
+		}
+	}
+
+	private void drawEllipses( final Graphics2D graphics, final boolean fillSpots )
+	{
+		final int n = numEllipses;
+		final long[] keys = keys( n );
+		for ( int i = 0; i < n; i++ )
+			keys[ i ] = key( ellipseStroke[ i ], ellipseColor[ i ], i );
+		Arrays.sort( keys, 0, n );
+
+		final AffineTransform torig = graphics.getTransform();
+		Color color = null;
+		long group = -1;
+		for ( int k = 0; k < n; k++ )
+		{
+			if ( group( keys[ k ] ) != group )
+			{
+				group = group( keys[ k ] );
+				graphics.setStroke( strokes[ stroke( group ) ] );
+				color = colors.get( color( group ) );
+				graphics.setColor( color );
+			}
+			final int i = index( keys[ k ] );
+			final double w = ellipseHalfWidth[ i ];
+			final double h = ellipseHalfHeight[ i ];
+			ellipse2D.setFrame( -w, -h, 2. * w, 2. * h );
+			graphics.translate( ellipseX[ i ], ellipseY[ i ] );
+			graphics.rotate( ellipseTheta[ i ] );
+			if ( fillSpots )
+			{
+				graphics.fill( ellipse2D );
+				graphics.setColor( Color.BLACK );
+				graphics.draw( ellipse2D );
+				graphics.setColor( color );
+			}
+			else
+			{
+				graphics.draw( ellipse2D );
+			}
+			graphics.setTransform( torig );
+		}
+	}
+
+	private void drawPoints( final Graphics2D graphics )
+	{
+		final int n = numPoints;
+		final long[] keys = keys( n );
+		for ( int i = 0; i < n; i++ )
+			keys[ i ] = key( 0, pointColor[ i ], i );
+		Arrays.sort( keys, 0, n );
+
+		long group = -1;
+		for ( int k = 0; k < n; k++ )
+		{
+			if ( group( keys[ k ] ) != group )
+			{
+				group = group( keys[ k ] );
+				graphics.setColor( colors.get( color( group ) ) );
+			}
+			final int i = index( keys[ k ] );
+			final int size = pointSize[ i ];
+			if ( pointSquare[ i ] )
+				graphics.fillRect( pointX[ i ], pointY[ i ], size, size );
+			else
+				graphics.fillOval( pointX[ i ], pointY[ i ], size, size );
+		}
+	}
+
+	private void drawLabels( final Graphics2D graphics )
+	{
+		final int n = numLabels;
+		final long[] keys = keys( n );
+		for ( int i = 0, k = 0; k < n; i++ )
+			if ( ellipseLabel[ i ] != null )
+				keys[ k++ ] = key( 0, ellipseColor[ i ], i );
+		Arrays.sort( keys, 0, n );
+
+		long group = -1;
+		for ( int k = 0; k < n; k++ )
+		{
+			if ( group( keys[ k ] ) != group )
+			{
+				group = group( keys[ k ] );
+				graphics.setColor( colors.get( color( group ) ) );
+			}
+			final int i = index( keys[ k ] );
+			OverlayGraphRenderer.drawLabel( graphics, ellipseX[ i ], ellipseY[ i ], ellipseLabel[ i ] );
+		}
+	}
+
+	private long[] keys( final int n )
+	{
+		if ( keys.length < n )
+			keys = new long[ grow( n ) ];
+		return keys;
+	}
+
+	private static int grow( final int size )
+	{
+		final int capacity = size + ( size >> 1 ) + 1;
+		if ( capacity > INDEX_MASK + 1 )
+			throw new IllegalStateException( "Too many overlay primitives: " + size );
+		return capacity;
+	}
+
+	private static long key( final int stroke, final int color, final int index )
+	{
+		return ( ( long ) stroke << ( INDEX_BITS + 32 ) ) | ( ( color & 0xffffffffL ) << INDEX_BITS ) | index;
+	}
+
+	private static long group( final long key )
+	{
+		return key >>> INDEX_BITS;
+	}
+
+	private static int stroke( final long group )
+	{
+		return ( int ) ( group >>> 32 );
+	}
+
+	private static int color( final long group )
+	{
+		return ( int ) group;
+	}
+
+	private static int index( final long key )
+	{
+		return ( int ) ( key & INDEX_MASK );
+	}
+
+	/**
+	 * Maps ARGB values to {@link Color}s, with open addressing on an
+	 * {@code int[]}. Fading by slice and time distance creates a few hundred
+	 * distinct colors, the cache is simply cleared when it gets full.
+	 */
+	private static final class ColorCache
+	{
+		private static final int CAPACITY = 4096;
+
+		private static final int MAX_SIZE = CAPACITY / 2;
+
+		private final int[] argbs = new int[ CAPACITY ];
+
+		private final Color[] colors = new Color[ CAPACITY ];
+
+		private int size;
+
+		Color get( final int argb )
+		{
+			int slot = ( argb * 0x9E3779B9 ) >>> 20;
+			while ( colors[ slot ] != null )
+			{
+				if ( argbs[ slot ] == argb )
+					return colors[ slot ];
+				slot = ( slot + 1 ) & ( CAPACITY - 1 );
+			}
+			if ( size == MAX_SIZE )
+			{
+				Arrays.fill( colors, null );
+				size = 0;
+				return get( argb );
+			}
+			final Color color = new Color( argb, true );
+			argbs[ slot ] = argb;
+			colors[ slot ] = color;
+			++size;
+			return color;
+		}
+	}
+
+	/**
+	 * A linear, acyclic gradient between two ARGB colors, like
+	 * {@link java.awt.GradientPaint}, whose end points and colors can be set
+	 * for each link. The context and its raster are reused.
+	 */
+	private static final class LinkGradientPaint implements Paint, PaintContext
+	{
+		private final int[] lut = new int[ 257 ];
+
+		private final Point2D.Double p0 = new Point2D.Double();
+
+		private final Point2D.Double p1 = new Point2D.Double();
+
+		private final Point2D.Double d0 = new Point2D.Double();
+
+		private final Point2D.Double d1 = new Point2D.Double();
+
+		private int color0;
+
+		private int color1;
+
+		private int lutColor0;
+
+		private int lutColor1;
+
+		private boolean lutValid;
+
+		private double x0;
+
+		private double y0;
+
+		private double dx;
+
+		private double dy;
+
+		private WritableRaster raster;
+
+		void set( final int x0, final int y0, final int color0, final int x1, final int y1, final int color1 )
+		{
+			p0.setLocation( x0, y0 );
+			p1.setLocation( x1, y1 );
+			this.color0 = color0;
+			this.color1 = color1;
+		}
+
+		@Override
+		public int getTransparency()
+		{
+			return Transparency.TRANSLUCENT;
+		}
+
+		@Override
+		public PaintContext createContext( final ColorModel cm, final Rectangle deviceBounds, final Rectangle2D userBounds, final AffineTransform xform, final RenderingHints hints )
+		{
+			xform.transform( p0, d0 );
+			xform.transform( p1, d1 );
+			final double ex = d1.x - d0.x;
+			final double ey = d1.y - d0.y;
+			final double len2 = ex * ex + ey * ey;
+			dx = len2 == 0 ? 0 : ex / len2;
+			dy = len2 == 0 ? 0 : ey / len2;
+
+			// Like GradientPaint, scan with dx >= 0: swap the end points.
+			final int from;
+			final int to;
+			if ( dx < 0 )
+			{
+				dx = -dx;
+				dy = -dy;
+				x0 = d1.x;
+				y0 = d1.y;
+				from = color1;
+				to = color0;
+			}
+			else
+			{
+				x0 = d0.x;
+				y0 = d0.y;
+				from = color0;
+				to = color1;
+			}
+			if ( !lutValid || lutColor0 != from || lutColor1 != to )
+			{
+				fillLut( from, to );
+				lutColor0 = from;
+				lutColor1 = to;
+				lutValid = true;
+			}
+			return this;
+		}
+
+		/**
+		 * Interpolates the colors the same way as {@link java.awt.GradientPaint}.
+		 */
+		private void fillLut( final int c0, final int c1 )
+		{
+			final int a0 = ( c0 >>> 24 ), r0 = ( c0 >> 16 ) & 0xff, g0 = ( c0 >> 8 ) & 0xff, b0 = c0 & 0xff;
+			final int da = ( c1 >>> 24 ) - a0;
+			final int dr = ( ( c1 >> 16 ) & 0xff ) - r0;
+			final int dg = ( ( c1 >> 8 ) & 0xff ) - g0;
+			final int db = ( c1 & 0xff ) - b0;
+			for ( int i = 0; i <= 256; i++ )
+			{
+				final float rel = i / 256f;
+				lut[ i ] = ( ( int ) ( a0 + da * rel ) << 24 )
+						| ( ( int ) ( r0 + dr * rel ) << 16 )
+						| ( ( int ) ( g0 + dg * rel ) << 8 )
+						| ( int ) ( b0 + db * rel );
+			}
+		}
+
+		@Override
+		public void dispose()
+		{}
+
+		@Override
+		public ColorModel getColorModel()
+		{
+			return ColorModel.getRGBdefault();
+		}
+
+		@Override
+		public Raster getRaster( final int x, final int y, final int w, final int h )
+		{
+			if ( raster == null || raster.getWidth() < w || raster.getHeight() < h )
+				raster = getColorModel().createCompatibleWritableRaster( Math.max( w, 64 ), Math.max( h, 64 ) );
+			final int[] pixels = ( ( DataBufferInt ) raster.getDataBuffer() ).getData();
+			final int stride = raster.getWidth();
+			for ( int j = 0; j < h; j++ )
+			{
+				double t = ( x - x0 ) * dx + ( y + j - y0 ) * dy;
+				int o = j * stride;
+				for ( int i = 0; i < w; i++, t += dx )
+					pixels[ o++ ] = lut[ t <= 0 ? 0 : t >= 1 ? 256 : ( int ) ( t * 256 ) ];
+			}
+			return raster;
+		}
+	}
+}
@@ -28,10 +28,8 @@
  */
 package org.mastodon.views.bdv.overlay;
 
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -124,6 +122,12 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 
 	protected final Visibilities< V, E > visibilities;
 
+	/**
+	 * The primitives of the frame being painted. Each renderer, and each
+	 * {@link #copy()} of it, has its own.
+	 */
+	final OverlayDrawList drawList = new OverlayDrawList();
+
 	public OverlayGraphRenderer(
 			final OverlayGraph< V, E > graph,
 			final HighlightModel< V, E > highlight,
@@ -142,6 +146,43 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		setRenderSettings( RenderSettings.defaultStyle() ); // default RenderSettings
 	}
 
+	/**
+	 * Creates a renderer that paints the same graph, with the same models,
+	 * coloring, settings and visibilities as the specified renderer. The new
+	 * renderer has its own canvas size, transform and timepoint, so that
+	 * several frames can be painted concurrently.
+	 *
+	 * @param other
+	 *            the renderer to copy.
+	 */
+	protected OverlayGraphRenderer( final OverlayGraphRenderer< V, E > other )
+	{
+		this.graph = other.graph;
+		this.highlight = other.highlight;
+		this.focus = other.focus;
+		this.selection = other.selection;
+		this.coloring = other.coloring;
+		this.visibilities = other.visibilities;
+		this.index = other.index;
+		this.renderTransform = other.getRenderTransformCopy();
+		this.renderTimepoint = other.renderTimepoint;
+		this.width = other.width;
+		this.height = other.height;
+		this.settings = other.settings;
+	}
+
+	/**
+	 * Returns a new renderer for the same graph and models, with its own
+	 * transform, timepoint and canvas size. Used to paint overlays of several
+	 * timepoints in parallel, for instance when recording movies.
+	 *
+	 * @return a new renderer.
+	 */
+	public OverlayGraphRenderer< V, E > copy()
+	{
+		return new OverlayGraphRenderer<>( this );
+	}
+
 	@Override
 	public void setCanvasSize( final int width, final int height )
 	{
@@ -251,9 +292,9 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	 * @param isSelected
 	 *            whether to use selected or un-selected color scheme.
 	 * @param color the color assigned to the object when using a coloring scheme.
-	 * @return vertex/edge color suitable for display in a BDV.
+	 * @return vertex/edge ARGB color suitable for display in a BDV.
 	 */
-	protected static Color getColor(
+	protected static int getColor(
 			final double sd,
 			final double td,
 			final double sdFade,
@@ -314,7 +355,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 							? 0.8
 							: ( isSelected ? 0.6 : 0.4 ),
 					( 1 + tf ) * ( 1 - Math.abs( sf ) ) );
-			return new Color( truncRGBA( r, g, b, a ), true );
+			return truncRGBA( r, g, b, a );
 		}
 		else
 		{
@@ -335,7 +376,7 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 							? 0.8
 							: ( isSelected ? 0.6 : 0.4 ),
 					a0 / 255f * ( 1 + tf ) * ( 1 - Math.abs( sf ) ) );
-			return new Color( truncRGBA( r, g, b, a ), true );
+			return truncRGBA( r, g, b, a );
 		}
 	}
 
@@ -549,11 +590,6 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			return;
 
 		final Graphics2D graphics = ( Graphics2D ) g;
-		final BasicStroke defaultVertexStroke = new BasicStroke( ( float ) settings.getSpotStrokeWidth() );
-		final BasicStroke highlightedVertexStroke = new BasicStroke( 4f );
-		final BasicStroke focusedVertexStroke = new BasicStroke( 2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 1f, new float[] { 8f, 3f }, 0 );
-		final BasicStroke defaultEdgeStroke = new BasicStroke( ( float ) settings.getLinkStrokeWidth() );
-		final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
 
 		final AffineTransform3D transform = getRenderTransformCopy();
 		final int currentTimepoint = renderTimepoint;
@@ -578,11 +614,12 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		final boolean drawPointsAlways = drawPointsAlways();
 		final boolean drawPointsMaybe = drawPointsMaybe();
 		final boolean useGradient = settings.getUseGradient();
-		final boolean drawArrowHeads = settings.getDrawArrowHeads();
 		final int colorSpot = settings.getColorSpot();
 		final int colorPast = settings.getColorPast();
 		final int colorFuture = settings.getColorFuture();
 
+		drawList.clear( settings.getLinkStrokeWidth(), settings.getSpotStrokeWidth(), settings.getDrawArrowHeads() );
+
 		graph.getLock().readLock().lock();
 		index.readLock().lock();
 		try
@@ -590,65 +627,40 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 			if ( settings.getDrawLinks())
 			{
 				final E highlighted = highlight.getHighlightedEdge( ref3 );
-				graphics.setStroke( defaultEdgeStroke );
 				forEachVisibleEdge( transform, currentTimepoint, ( edge, td0, td1, sd0, sd1, x0, y0, x1, y1 ) -> {
 					final boolean isHighlighted = edge.equals( highlighted );
+					final boolean isSelected = selection.isSelected( edge );
 
 					edge.getSource( source );
 					edge.getTarget( target );
 					final int edgeColor = coloring.color( edge, source, target );
-					final Color c1 = getColor(
+					final int c1 = getColor(
 							sd1,
 							td1,
 							sliceDistanceFade,
 							timepointDistanceFade,
-							selection.isSelected( edge ),
+							isSelected,
 							isHighlighted,
 							colorSpot,
 							colorPast,
 							colorFuture,
 							edgeColor );
-					if ( useGradient )
-					{
-						final Color c0 = getColor(
-								sd0,
-								td0,
-								sliceDistanceFade,
-								timepointDistanceFade,
-								selection.isSelected( edge ),
-								isHighlighted,
-								colorSpot,
-								colorPast,
-								colorFuture,
-								edgeColor );
-						graphics.setPaint( new GradientPaint( x0, y0, c0, x1, y1, c1 ) );
-					}
-					else
-					{
-						graphics.setPaint( c1 );
-					}
-					if ( isHighlighted )
-						graphics.setStroke( highlightedEdgeStroke );
-					graphics.drawLine( x0, y0, x1, y1 );
-
-					// Draw arrows for edge direction.
-					if ( drawArrowHeads )
-					{
-						final double dx = x1 - x0;
-						final double dy = y1 - y0;
-						final double alpha = Math.atan2( dy, dx );
-						final double l = 5;
-						final double theta = Math.PI / 6.;
-						final int x1a = ( int ) Math.round( x1 - l * Math.cos( alpha - theta ) );
-						final int x1b = ( int ) Math.round( x1 - l * Math.cos( alpha + theta ) );
-						final int y1a = ( int ) Math.round( y1 - l * Math.sin( alpha - theta ) );
-						final int y1b = ( int ) Math.round( y1 - l * Math.sin( alpha + theta ) );
-						graphics.drawLine( x1, y1, x1a, y1a );
-						graphics.drawLine( x1, y1, x1b, y1b );
-					}
-
-					if ( isHighlighted )
-						graphics.setStroke( defaultEdgeStroke );
+					final int c0 = useGradient
+							? getColor(
+									sd0,
+									td0,
+									sliceDistanceFade,
+									timepointDistanceFade,
+									isSelected,
+									isHighlighted,
+									colorSpot,
+									colorPast,
+									colorFuture,
+									edgeColor )
+							: c1;
+					drawList.addLink( x0, y0, x1, y1, c0, c1, isHighlighted
+							? OverlayDrawList.LINK_HIGHLIGHTED
+							: OverlayDrawList.LINK );
 				} );
 			}
 
@@ -659,15 +671,11 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 				final boolean drawEllipsoidSliceIntersection = settings.getDrawEllipsoidSliceIntersection();
 				final boolean drawEllipsoidSliceProjection = settings.getDrawEllipsoidSliceProjection();
 				final double pointFadeDepth = settings.getPointFadeDepth();
-				final boolean fillSpots = settings.getFillSpots();
 				final Visibility< V, E > visibility = visibilities.getVisibility();
 
 				final V highlighted = highlight.getHighlightedVertex( ref1 );
 				final V focused = focus.getFocusedVertex( ref2 );
 
-				graphics.setStroke( defaultVertexStroke );
-				final AffineTransform torig = graphics.getTransform();
-
 				final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, currentTimepoint );
 				final ClipConvexPolytope< V > ccp = index.getSpatialIndex( currentTimepoint ).getClipConvexPolytope();
 				ccp.clip( cropPolytopeGlobal );
@@ -679,6 +687,12 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 					final int color = coloring.color( vertex );
 					final boolean isHighlighted = vertex.equals( highlighted );
 					final boolean isFocused = vertex.equals( focused );
+					final boolean isSelected = selection.isSelected( vertex );
+					final int stroke = isHighlighted
+							? OverlayDrawList.SPOT_HIGHLIGHTED
+							: isFocused
+									? OverlayDrawList.SPOT_FOCUSED
+									: OverlayDrawList.SPOT;
 
 					screenVertexMath.init( vertex, transform );
 
@@ -692,28 +706,21 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 						if ( screenVertexMath.intersectsViewPlane() )
 						{
 							final Ellipse ellipse = screenVertexMath.getIntersectEllipse();
-
-							graphics.setColor( getColor(
+							final int c = getColor(
 									0,
 									0,
 									ellipsoidFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig, fillSpots );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( !drawEllipsoidSliceProjection && drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
+									color );
+							final String label = !drawEllipsoidSliceProjection && drawSpotLabels
+									? vertex.getLabel()
+									: null;
+							drawList.addEllipse( ellipse, c, stroke, label );
 						}
 					}
 
@@ -722,55 +729,40 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 						if ( drawEllipsoidSliceProjection )
 						{
 							final Ellipse ellipse = screenVertexMath.getProjectEllipse();
-
-							graphics.setColor( getColor(
+							final int c = getColor(
 									sd,
 									0,
 									ellipsoidFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
-							if ( isHighlighted )
-								graphics.setStroke( highlightedVertexStroke );
-							else if ( isFocused )
-								graphics.setStroke( focusedVertexStroke );
-							drawEllipse( graphics, ellipse, torig, fillSpots );
-							if ( isHighlighted || isFocused )
-								graphics.setStroke( defaultVertexStroke );
-
-							if ( drawSpotLabels )
-								drawEllipseLabel( graphics, ellipse, vertex.getLabel() );
-
-							graphics.setTransform( torig );
+									color );
+							drawList.addEllipse( ellipse, c, stroke, drawSpotLabels ? vertex.getLabel() : null );
 						}
 
 						if ( drawPointsAlways || ( drawPointsMaybe && !screenVertexMath.intersectsViewPlane() ) )
 						{
-							graphics.setColor( getColor(
+							final int c = getColor(
 									sd,
 									0,
 									pointFadeDepth,
 									timepointDistanceFade,
-									selection.isSelected( vertex ),
+									isSelected,
 									isHighlighted,
 									colorSpot,
 									colorPast,
 									colorFuture,
-									color ) );
+									color );
 							double radius = pointRadius;
 							if ( isHighlighted || isFocused )
 								radius *= 2;
 							final int ox = ( int ) ( x - radius );
 							final int oy = ( int ) ( y - radius );
 							final int ow = ( int ) ( 2 * radius );
-							if ( isFocused )
-								graphics.fillRect( ox, oy, ow, ow );
-							else
-								graphics.fillOval( ox, oy, ow, ow );
+							drawList.addPoint( ox, oy, ow, c, isFocused );
 						}
 					}
 				}
@@ -786,6 +778,8 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		graph.releaseRef( ref3 );
 		graph.releaseRef( source );
 		graph.releaseRef( target );
+
+		drawList.draw( graphics, settings.getFillSpots() );
 	}
 
 	static void drawEllipse( final Graphics2D graphics, final Ellipse ellipse, AffineTransform torig, final boolean fillSpots )
@@ -823,11 +817,16 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 	static void drawEllipseLabel( final Graphics2D graphics, final Ellipse ellipse, final String label )
 	{
 		final double[] tr = ellipse.getCenter();
+		drawLabel( graphics, tr[ 0 ], tr[ 1 ], label );
+	}
+
+	static void drawLabel( final Graphics2D graphics, final double x, final double y, final String label )
+	{
 		final FontRenderContext frc = graphics.getFontRenderContext();
 		final TextLayout layout = new TextLayout( label, font, frc );
 		final Rectangle2D bounds = layout.getBounds();
-		final float tx = ( float ) ( tr[ 0 ] - bounds.getCenterX() );
-		final float ty = ( float ) ( tr[ 1 ] - bounds.getCenterY() );
+		final float tx = ( float ) ( x - bounds.getCenterX() );
+		final float ty = ( float ) ( y - bounds.getCenterY() );
 		layout.draw( graphics, tx, ty );
 	}
 
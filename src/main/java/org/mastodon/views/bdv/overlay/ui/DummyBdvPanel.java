@@ -35,6 +35,7 @@ import java.awt.RenderingHints;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
@@ -60,6 +61,7 @@ import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.ModelOverlayProperties;
 import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.LargeByteBuffer;
 import org.mastodon.mamut.project.MamutProject.ProjectReader;
 import org.mastodon.model.DefaultFocusModel;
 import org.mastodon.model.DefaultHighlightModel;
@@ -367,6 +369,30 @@ public class DummyBdvPanel extends JPanel
 			return DummyBdvPanel.class.getResourceAsStream( resourceName + RAW_MODEL_FILE_NAME );
 		}
 
+		@Override
+		public boolean hasRawModelColumns()
+		{
+			return false;
+		}
+
+		@Override
+		public LargeByteBuffer getRawSpotColumns() throws IOException
+		{
+			throw new FileNotFoundException( resourceName + "/model.spots" );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLinkColumns() throws IOException
+		{
+			throw new FileNotFoundException( resourceName + "/model.links" );
+		}
+
+		@Override
+		public LargeByteBuffer getRawLabelTable() throws IOException
+		{
+			throw new FileNotFoundException( resourceName + "/model.labels" );
+		}
+
 		@Override
 		public InputStream getRawTagsInputStream() throws IOException
 		{
@@ -0,0 +1,237 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme;
+
+import java.util.Arrays;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * A multi-resolution summary of the vertices in a
+ * {@link TrackSchemeVertexTable}. It is used to draw zoomed-out views in time
+ * proportional to the size of the screen, rather than to the number of
+ * vertices.
+ * <p>
+ * Level {@code (ly, lx)} groups timepoints into bands of {@code 2^ly}
+ * consecutive timepoints. For each band, it stores the layout X ranges
+ * occupied by the vertices of any of the band's timepoints. Ranges separated
+ * by a gap of at most {@code BASE_GAP * 2^lx} are merged. Levels are built
+ * lazily, each from the next finer level, and are discarded by
+ * {@link #clear()} when the layout changes.
+ */
+class LayoutDensityPyramid
+{
+	/**
+	 * The largest gap (in layout X) between merged ranges at level
+	 * {@code lx = 0}.
+	 */
+	static final double BASE_GAP = 0.125;
+
+	private static final double[] EMPTY = new double[ 0 ];
+
+	private final TrackSchemeVertexTable vertexTable;
+
+	private final TrackSchemeGraph< ?, ? > graph;
+
+	/**
+	 * {@code levels[ly][lx]} holds, for each band, the occupied ranges as
+	 * {@code [min0, max0, min1, max1, ...]}.
+	 */
+	private final double[][][][] levels;
+
+	private int minTimepoint;
+
+	public LayoutDensityPyramid( final TrackSchemeVertexTable vertexTable, final TrackSchemeGraph< ?, ? > graph )
+	{
+		this.vertexTable = vertexTable;
+		this.graph = graph;
+		levels = new double[ 32 ][ 64 ][][];
+	}
+
+	/**
+	 * Discard all levels. They are rebuilt from the vertex table when needed.
+	 */
+	public void clear()
+	{
+		for ( final double[][][] level : levels )
+			Arrays.fill( level, null );
+	}
+
+	/**
+	 * Get the first timepoint of band 0.
+	 *
+	 * @return the smallest timepoint in the vertex table.
+	 */
+	public int getMinTimepoint()
+	{
+		getBands( 0, 0 );
+		return minTimepoint;
+	}
+
+	/**
+	 * Get the occupied ranges of all bands of level {@code (ly, lx)}. Band
+	 * {@code b} contains timepoints
+	 * {@code getMinTimepoint() + b * 2^ly, ..., getMinTimepoint() + (b+1) * 2^ly - 1}.
+	 *
+	 * @param ly
+	 *            the band size is {@code 2^ly} timepoints.
+	 * @param lx
+	 *            ranges closer than {@code BASE_GAP * 2^lx} are merged.
+	 * @return the occupied ranges {@code [min0, max0, min1, max1, ...]} of
+	 *         each band, ordered by layout X.
+	 */
+	public double[][] getBands( final int ly, final int lx )
+	{
+		double[][] bands = levels[ ly ][ lx ];
+		if ( bands == null )
+		{
+			if ( ly == 0 && lx == 0 )
+				bands = buildBase();
+			else if ( ly == 0 )
+			{
+				final double[][] finer = getBands( 0, lx - 1 );
+				final double gap = BASE_GAP * ( 1L << lx );
+				bands = new double[ finer.length ][];
+				for ( int b = 0; b < finer.length; ++b )
+					bands[ b ] = merge( finer[ b ], EMPTY, gap );
+			}
+			else
+			{
+				final double[][] finer = getBands( ly - 1, lx );
+				final double gap = BASE_GAP * ( 1L << lx );
+				bands = new double[ ( finer.length + 1 ) / 2 ][];
+				for ( int b = 0; b < bands.length; ++b )
+					bands[ b ] = merge( finer[ 2 * b ], 2 * b + 1 < finer.length ? finer[ 2 * b + 1 ] : EMPTY, gap );
+			}
+			levels[ ly ][ lx ] = bands;
+		}
+		return bands;
+	}
+
+	/**
+	 * Get the index of the first range in {@code ranges} that ends at or
+	 * after {@code x}.
+	 *
+	 * @param ranges
+	 *            occupied ranges {@code [min0, max0, min1, max1, ...]}.
+	 * @param x
+	 *            layout X.
+	 * @return the (even) index of the range minimum, or
+	 *         {@code ranges.length}.
+	 */
+	public static int firstRangeEndingAfter( final double[] ranges, final double x )
+	{
+		int low = 0;
+		int high = ranges.length / 2 - 1;
+		while ( low <= high )
+		{
+			final int mid = ( low + high ) >>> 1;
+			if ( ranges[ 2 * mid + 1 ] < x )
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return 2 * low;
+	}
+
+	private double[][] buildBase()
+	{
+		final TIntList timepoints = vertexTable.getTimepoints();
+		if ( timepoints.isEmpty() )
+		{
+			minTimepoint = 0;
+			return new double[ 0 ][];
+		}
+		minTimepoint = timepoints.get( 0 );
+		final double[][] bands = new double[ timepoints.get( timepoints.size() - 1 ) - minTimepoint + 1 ][];
+		Arrays.fill( bands, EMPTY );
+
+		final TDoubleArrayList ranges = new TDoubleArrayList();
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int t = 0; t < timepoints.size(); ++t )
+		{
+			final int timepoint = timepoints.get( t );
+			final TrackSchemeVertexList vertexList = vertexTable.getOrderedVertices( timepoint );
+			ranges.resetQuick();
+			for ( int i = 0; i < vertexList.size(); ++i )
+			{
+				final double x = vertexList.get( i, ref ).getLayoutX();
+				final int n = ranges.size();
+				if ( n > 0 && x - ranges.getQuick( n - 1 ) <= BASE_GAP )
+					ranges.setQuick( n - 1, Math.max( x, ranges.getQuick( n - 1 ) ) );
+				else
+				{
+					ranges.add( x );
+					ranges.add( x );
+				}
+			}
+			bands[ timepoint - minTimepoint ] = ranges.toArray();
+		}
+		graph.releaseRef( ref );
+		return bands;
+	}
+
+	/**
+	 * Merge two ordered lists of ranges, and join ranges separated by at most
+	 * {@code gap}.
+	 */
+	private static double[] merge( final double[] a, final double[] b, final double gap )
+	{
+		final TDoubleArrayList merged = new TDoubleArrayList( a.length + b.length );
+		int i = 0;
+		int j = 0;
+		while ( i < a.length || j < b.length )
+		{
+			final double min;
+			final double max;
+			if ( j >= b.length || ( i < a.length && a[ i ] <= b[ j ] ) )
+			{
+				min = a[ i ];
+				max = a[ i + 1 ];
+				i += 2;
+			}
+			else
+			{
+				min = b[ j ];
+				max = b[ j + 1 ];
+				j += 2;
+			}
+			final int n = merged.size();
+			if ( n > 0 && min - merged.getQuick( n - 1 ) <= gap )
+				merged.setQuick( n - 1, Math.max( max, merged.getQuick( n - 1 ) ) );
+			else
+			{
+				merged.add( min );
+				merged.add( max );
+			}
+		}
+		return merged.toArray();
+	}
+}
@@ -29,6 +29,7 @@
 package org.mastodon.views.trackscheme;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 
@@ -37,6 +38,7 @@ import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.model.RootsModel;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.ui.coloring.GraphColorGenerator;
@@ -47,9 +49,14 @@ import org.mastodon.views.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
 import org.scijava.listeners.Listeners;
 
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.impl.Constants;
 import gnu.trove.list.TDoubleList;
+import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.RealLocalizable;
 
 /**
@@ -71,6 +78,11 @@ import net.imglib2.RealLocalizable;
  * </ul>
  *
  * We call vertices contained in the current layout <em>active</em>.
+ * <p>
+ * When {@link #layout()} lays out all graph roots, the trees of the previous
+ * layout that were not touched by graph changes since then keep their shape,
+ * and only the touched trees are laid out again. The untouched trees are
+ * shifted in X to make room (see {@link #setIncremental(boolean)}).
  *
  *
  *
@@ -136,6 +148,28 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	 */
 	protected static final double MIN_COLUMN_WIDTH = 30;
 
+	/**
+	 * If consecutive timepoints are closer than this on screen (in pixels),
+	 * and neighboring columns closer than {@link #MIN_SIBLING_SPACING},
+	 * {@link #cropAndScale(ScreenTransform, ScreenEntities, int, int, GraphColorGenerator)}
+	 * only generates {@link ScreenVertexRange}s for the occupied parts of
+	 * bands of timepoints, taken from the {@link #densityPyramid}.
+	 */
+	protected static final double MIN_TIMEPOINT_SPACING = 2;
+
+	/**
+	 * If vertices one layout X unit apart are at least this far apart on
+	 * screen (in pixels), they are drawn individually, however close the
+	 * timepoints are.
+	 */
+	protected static final double MIN_SIBLING_SPACING = 2;
+
+	/**
+	 * Summarizes the {@link #vertexTable} at several resolutions, for drawing
+	 * zoomed-out views.
+	 */
+	private final LayoutDensityPyramid densityPyramid;
+
 	/**
 	 * The column layout X coordinates.
 	 */
@@ -146,6 +180,67 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	 */
 	protected final RefList< TrackSchemeVertex > currentLayoutColumnRoot;
 
+	/**
+	 * The maximum number of ancestors visited to find the laid out tree of a
+	 * new vertex. If more have to be visited, the next {@link #layout()} lays
+	 * out everything.
+	 */
+	private static final int MAX_DIRTY_WALK = 1000;
+
+	/**
+	 * Whether {@link #layout()} may lay out again only the trees touched since
+	 * the previous layout.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Whether the slots of the current layout are known and all graph changes
+	 * since then have been recorded in {@link #dirtySlots}.
+	 */
+	private boolean slotsValid;
+
+	/**
+	 * The roots of the current layout, one per slot. A slot is the range of
+	 * layout X coordinates occupied by the tree of one graph root.
+	 */
+	private final RefList< TrackSchemeVertex > slotRoots;
+
+	/**
+	 * Maps the internal pool index of each slot root to its slot.
+	 */
+	private final TIntIntHashMap rootToSlot;
+
+	/**
+	 * The layout X coordinate of the first leaf of each slot, followed by
+	 * {@link #rightmost}. The vertices of slot {@code i} have layout X in
+	 * {@code [slotStart[i], slotStart[i+1])}.
+	 */
+	private final TDoubleArrayList slotStart;
+
+	/**
+	 * The slots whose trees have changed since the current layout.
+	 */
+	private final BitSet dirtySlots;
+
+	/**
+	 * Receives the vertices of the trees laid out again by an incremental
+	 * layout, before they are merged into {@link #vertexTable}.
+	 */
+	private final TrackSchemeVertexTable freshVertexTable;
+
+	/**
+	 * How many times a vertex was reached again through a second incoming
+	 * edge in the current layout.
+	 */
+	private int revisits;
+
+	/**
+	 * Changes of the graph since the current layout. The graph listener only
+	 * records them, they are applied to the layout state by the next layout or
+	 * crop, that is, by the thread that owns the layout state.
+	 */
+	private final GraphChanges pendingChanges;
+
 	public LineageTreeLayoutImp(
 			final RootsModel<TrackSchemeVertex> rootsModel,
 			final TrackSchemeGraph< ?, ? > graph,
@@ -158,8 +253,32 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 		rightmost = 0;
 		timestamp = 0;
 		vertexTable = new TrackSchemeVertexTable( graph );
+		densityPyramid = new LayoutDensityPyramid( vertexTable, graph );
 		currentLayoutColumnX = new TDoubleArrayList();
 		currentLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
+		incremental = true;
+		slotsValid = false;
+		slotRoots = RefCollections.createRefList( graph.vertices() );
+		rootToSlot = new TIntIntHashMap( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1, -1 );
+		slotStart = new TDoubleArrayList();
+		dirtySlots = new BitSet();
+		freshVertexTable = new TrackSchemeVertexTable( graph );
+		pendingChanges = new GraphChanges();
+		graph.graphListeners().add( new DirtyTreeTracker() );
+	}
+
+	/**
+	 * Set whether {@link #layout()} may lay out again only the lineage trees
+	 * touched since the previous layout, instead of the whole graph. This is
+	 * on by default, and only applies when the roots model is empty.
+	 *
+	 * @param incremental
+	 *            whether to lay out touched trees only.
+	 */
+	public void setIncremental( final boolean incremental )
+	{
+		this.incremental = incremental;
+		slotsValid = false;
 	}
 
 	/**
@@ -171,10 +290,21 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	@Override
 	public void layout()
 	{
-		RefCollection<TrackSchemeVertex> roots = this.roots.getRoots();
-		if(roots.isEmpty())
-			roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
-		layout( roots, -1 );
+		final RefCollection<TrackSchemeVertex> roots = this.roots.getRoots();
+		if ( !roots.isEmpty() )
+		{
+			layout( roots, -1 );
+			return;
+		}
+
+		applyGraphChanges();
+		final RefList< TrackSchemeVertex > sorted = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		if ( incremental && slotsValid && layoutIncremental( sorted ) )
+			return;
+
+		layout( sorted, -1 );
+		if ( incremental && revisits == 0 && currentLayoutColumnX.size() == sorted.size() + 1 )
+			setSlots( sorted, currentLayoutColumnX );
 	}
 
 	/**
@@ -217,7 +347,10 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	public void layout( final Collection<TrackSchemeVertex> layoutRoots, final int mark )
 	{
 		++timestamp;
+		slotsValid = false;
+		revisits = 0;
 		rightmost = 0;
+		pendingChanges.clear();
 		vertexTable.clear();
 		currentLayoutColumnX.clear();
 		currentLayoutColumnRoot.clear();
@@ -295,6 +428,7 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	@Override
 	public int nextLayoutTimestamp()
 	{
+		slotsValid = false;
 		++timestamp;
 		return timestamp;
 	}
@@ -326,6 +460,13 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 		final double xScale = transform.getScaleX();
 		final double yScale = transform.getScaleY();
 		screenEntities.screenTransform().set( transform );
+		applyGraphChanges();
+
+		if ( yScale < MIN_TIMEPOINT_SPACING && xScale < MIN_SIBLING_SPACING )
+		{
+			cropAndScaleDensity( transform, screenEntities, decorationsOffsetX, decorationsOffsetY );
+			return;
+		}
 
 		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
 		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
@@ -445,6 +586,66 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 		buildScreenColumns( screenEntities, decorationsOffsetX, minX, maxX, xScale );
 	}
 
+	/**
+	 * Crop a zoomed-out region of the current layout. Instead of vertices and
+	 * edges, this only creates a {@link ScreenVertexRange} for each occupied
+	 * range of each band of timepoints, using the level of the
+	 * {@link #densityPyramid} that has bands at least one pixel high and
+	 * merges gaps below one pixel. The number of generated entities is thus
+	 * bounded by the screen size, not by the size of the graph.
+	 *
+	 * @param transform
+	 *            specifies the transformation from layout to screen coordinates
+	 *            and the crop region.
+	 * @param screenEntities
+	 *            the vertex ranges are stored here.
+	 * @param decorationsOffsetX
+	 *            the screen entities are shifted in X by this amount.
+	 * @param decorationsOffsetY
+	 *            the screen entities are shifted in Y by this amount.
+	 */
+	protected void cropAndScaleDensity( final ScreenTransform transform, final ScreenEntities screenEntities, final int decorationsOffsetX, final int decorationsOffsetY )
+	{
+		final double minX = transform.getMinX();
+		final double maxX = transform.getMaxX();
+		final double minY = transform.getMinY();
+		final double maxY = transform.getMaxY();
+		final double xScale = transform.getScaleX();
+		final double yScale = transform.getScaleY();
+
+		final int ly = Math.min( 31, Math.max( 0, ( int ) Math.ceil( -Math.log( yScale ) / Math.log( 2 ) ) ) );
+		final int lx = Math.min( 62, Math.max( 0, ( int ) Math.floor( -Math.log( xScale * LayoutDensityPyramid.BASE_GAP ) / Math.log( 2 ) ) ) );
+		final double[][] bands = densityPyramid.getBands( ly, lx );
+		final int minTimepoint = densityPyramid.getMinTimepoint();
+		// long, because 1 << 31 would overflow
+		final long bandSize = 1L << ly;
+		final int firstBand = ( int ) Math.max( 0, Math.floor( ( minY - 1 - minTimepoint ) / bandSize ) );
+		final int lastBand = ( int ) Math.min( bands.length - 1, Math.floor( ( maxY + 1 - minTimepoint ) / bandSize ) );
+
+		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
+		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
+		final ScreenVertexRange sr = screenRangePool.createRef();
+		final double marginX = 1 / xScale;
+		for ( int b = firstBand; b <= lastBand; ++b )
+		{
+			final double[] ranges = bands[ b ];
+			final long firstTimepoint = minTimepoint + b * bandSize;
+			// from screen y of (first timepoint - 1) to screen y of last timepoint
+			final double y0 = ( firstTimepoint - 1 - minY ) * yScale + decorationsOffsetY;
+			final double y1 = ( firstTimepoint + bandSize - 1 - minY ) * yScale + decorationsOffsetY;
+			for ( int i = LayoutDensityPyramid.firstRangeEndingAfter( ranges, minX - marginX ); i < ranges.length && ranges[ i ] <= maxX + marginX; i += 2 )
+			{
+				final double x0 = ( ranges[ i ] - minX ) * xScale + decorationsOffsetX;
+				final double x1 = ( ranges[ i + 1 ] - minX ) * xScale + decorationsOffsetX;
+				// at least one pixel wide, so that single vertices show
+				vertexRanges.add( screenRangePool.create( sr ).init( x0, Math.max( x1, x0 + 1 ), y0, Math.max( y1, y0 + 1 ) ) );
+			}
+		}
+		screenRangePool.releaseRef( sr );
+
+		buildScreenColumns( screenEntities, decorationsOffsetX, minX, maxX, xScale );
+	}
+
 	protected void addScreenVertex( GraphColorGenerator<TrackSchemeVertex, TrackSchemeEdge> colorGenerator, RefList<ScreenVertex> screenVertices, ScreenVertexPool screenVertexPool, TrackSchemeVertex v1, ScreenVertex sv, double x, double y, double firstY )
 	{
 		final int v1si = screenVertices.size();
@@ -668,6 +869,20 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 	 *            root of sub-tree to layout.
 	 */
 	protected void layoutX( final TrackSchemeVertex root )
+	{
+		layoutX( root, vertexTable );
+	}
+
+	/**
+	 * Recursively lay out vertices as {@link #layoutX(TrackSchemeVertex)}, but
+	 * add the laid out vertices to the specified table.
+	 *
+	 * @param root
+	 *            root of sub-tree to layout.
+	 * @param table
+	 *            the table to add laid out vertices to.
+	 */
+	protected void layoutX( final TrackSchemeVertex root, final TrackSchemeVertexTable table )
 	{
 		double[] firstX = new double[ 8 ];
 		double[] lastX = new double[ 8 ];
@@ -693,11 +908,12 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 				if ( hasBeenVisitedBefore )
 				{
 					// This only happens if a node has two incoming edges.
+					++revisits;
 					step.truncate();
 					continue;
 				}
 
-				vertexTable.add( v );
+				table.add( v );
 
 				final boolean ghost = v.getLayoutTimestamp() < mark;
 				v.setGhost( ghost );
@@ -737,7 +953,358 @@ public class LineageTreeLayoutImp implements LineageTreeLayout
 
 	protected void notifyListeners()
 	{
+		densityPyramid.clear();
 		for ( final LayoutListener l : listeners.list )
 			l.layoutChanged( this );
 	}
+
+	/**
+	 * Lay out again only the trees touched since the current layout. The
+	 * untouched trees before the first touched one stay where they are. The
+	 * untouched trees after it keep their shape, and are shifted to their new
+	 * position.
+	 *
+	 * @param layoutRoots
+	 *            the sorted graph roots.
+	 * @return {@code false} if the current layout could not be updated, and
+	 *         everything has to be laid out again.
+	 */
+	private boolean layoutIncremental( final RefList< TrackSchemeVertex > layoutRoots )
+	{
+		final int numSlots = slotRoots.size();
+		final int numRoots = layoutRoots.size();
+		final TrackSchemeVertex ref = graph.vertexRef();
+		try
+		{
+			// Find the untouched slot of each root (-1 if it is laid out again).
+			final int[] rootSlot = new int[ numRoots ];
+			final boolean[] kept = new boolean[ numSlots ];
+			int lastKept = -1;
+			for ( int i = 0; i < numRoots; ++i )
+			{
+				final int slot = rootToSlot.get( layoutRoots.get( i, ref ).getInternalPoolIndex() );
+				if ( slot < 0 || dirtySlots.get( slot ) )
+				{
+					rootSlot[ i ] = -1;
+					continue;
+				}
+				// The order of untouched trees changed, e.g. a root was renamed.
+				if ( slot <= lastKept )
+					return false;
+				rootSlot[ i ] = slot;
+				kept[ slot ] = true;
+				lastKept = slot;
+			}
+
+			int prefix = 0;
+			while ( prefix < numRoots && prefix < numSlots && rootSlot[ prefix ] == prefix )
+				++prefix;
+			if ( prefix == numRoots && prefix == numSlots )
+			{
+				notifyListeners();
+				return true;
+			}
+
+			/*
+			 * In each timepoint, collect the vertices right of the unchanged
+			 * prefix that belong to untouched trees. Vertices of touched trees
+			 * are marked as not laid out.
+			 */
+			final double cursor = slotStart.get( prefix );
+			final int[] timepoints = vertexTable.getTimepoints().toArray();
+			final int[] tailStart = new int[ timepoints.length ];
+			final TIntArrayList[] keptTails = new TIntArrayList[ timepoints.length ];
+			for ( int t = 0; t < timepoints.length; ++t )
+			{
+				final TrackSchemeVertexList vertexList = vertexTable.getOrderedVertices( timepoints[ t ] );
+				final int from = vertexList.binarySearch( Math.nextDown( cursor ) ) + 1;
+				final TIntArrayList keptTail = new TIntArrayList( vertexList.size() - from );
+				for ( int i = from; i < vertexList.size(); ++i )
+				{
+					final TrackSchemeVertex v = vertexList.get( i, ref );
+					if ( kept[ slotOf( v.getLayoutX() ) ] )
+						keptTail.add( v.getInternalPoolIndex() );
+					else
+						v.setLayoutTimestamp( -1 );
+				}
+				tailStart[ t ] = from;
+				keptTails[ t ] = keptTail;
+			}
+
+			// Lay out touched trees, and compute the shift of untouched ones.
+			final double[] shift = new double[ numSlots ];
+			final TDoubleArrayList newSlotStart = new TDoubleArrayList( numRoots + 1 );
+			for ( int i = 0; i <= prefix; ++i )
+				newSlotStart.add( slotStart.get( i ) );
+			freshVertexTable.clear();
+			mark = -1;
+			rightmost = cursor;
+			revisits = 0;
+			for ( int i = prefix; i < numRoots; ++i )
+			{
+				final int slot = rootSlot[ i ];
+				if ( slot < 0 )
+					layoutX( layoutRoots.get( i, ref ), freshVertexTable );
+				else
+				{
+					shift[ slot ] = rightmost - slotStart.get( slot );
+					rightmost += slotStart.get( slot + 1 ) - slotStart.get( slot );
+				}
+				newSlotStart.add( rightmost );
+			}
+			// A touched tree reached into an untouched one.
+			if ( revisits > 0 )
+				return false;
+
+			// Merge shifted untouched vertices and touched vertices.
+			for ( int t = 0; t < timepoints.length; ++t )
+			{
+				final TrackSchemeVertexList vertexList = vertexTable.getOrderedVertices( timepoints[ t ] );
+				final TrackSchemeVertexList fresh = freshVertexTable.getOrderedVertices( timepoints[ t ] );
+				vertexList.replaceTail( tailStart[ t ], mergeTail( keptTails[ t ], fresh, shift, ref ) );
+				if ( vertexList.isEmpty() )
+					vertexTable.removeTimepoint( timepoints[ t ] );
+			}
+			final TIntList freshTimepoints = freshVertexTable.getTimepoints();
+			for ( int t = 0; t < freshTimepoints.size(); ++t )
+			{
+				final int timepoint = freshTimepoints.get( t );
+				if ( vertexTable.getOrderedVertices( timepoint ) == null )
+					vertexTable.getOrCreateOrderedVertices( timepoint ).replaceTail( 0,
+							freshVertexTable.getOrderedVertices( timepoint ).getIndexCollection() );
+			}
+			freshVertexTable.clear();
+
+			currentLayoutColumnX.clear();
+			currentLayoutColumnX.addAll( newSlotStart );
+			currentLayoutColumnRoot.clear();
+			currentLayoutColumnRoot.addAll( layoutRoots );
+			currentLayoutMinX = 0;
+			currentLayoutMaxX = rightmost - 1;
+			setSlots( layoutRoots, newSlotStart );
+			notifyListeners();
+			return true;
+		}
+		finally
+		{
+			graph.releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Shift untouched vertices of one timepoint, and merge them with the
+	 * touched vertices of the same timepoint, ordered by layout X.
+	 */
+	private TIntArrayList mergeTail( final TIntArrayList keptTail, final TrackSchemeVertexList fresh, final double[] shift, final TrackSchemeVertex ref )
+	{
+		final int numFresh = fresh == null ? 0 : fresh.size();
+		final TIntArrayList merged = new TIntArrayList( keptTail.size() + numFresh );
+		final TIntArrayList freshIndices = fresh == null ? null : fresh.getIndexCollection();
+		int j = 0;
+		for ( int i = 0; i < keptTail.size(); ++i )
+		{
+			final int index = keptTail.get( i );
+			final TrackSchemeVertex v = graph.getVertexPool().getObject( index, ref );
+			final double x = v.getLayoutX() + shift[ slotOf( v.getLayoutX() ) ];
+			v.setLayoutX( x );
+			while ( j < numFresh && fresh.get( j, ref ).getLayoutX() < x )
+				merged.add( freshIndices.get( j++ ) );
+			merged.add( index );
+		}
+		while ( j < numFresh )
+			merged.add( freshIndices.get( j++ ) );
+		return merged;
+	}
+
+	/**
+	 * Remember the slots of the current layout, that was made from the
+	 * specified sorted graph roots.
+	 */
+	private void setSlots( final RefList< TrackSchemeVertex > layoutRoots, final TDoubleList columnX )
+	{
+		if ( layoutRoots != slotRoots )
+		{
+			slotRoots.clear();
+			slotRoots.addAll( layoutRoots );
+		}
+		slotStart.clear();
+		slotStart.addAll( columnX );
+		rootToSlot.clear();
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int i = 0; i < slotRoots.size(); ++i )
+			rootToSlot.put( slotRoots.get( i, ref ).getInternalPoolIndex(), i );
+		graph.releaseRef( ref );
+		dirtySlots.clear();
+		slotsValid = true;
+	}
+
+	/**
+	 * Get the slot of the current layout that contains the specified layout X
+	 * coordinate.
+	 */
+	private int slotOf( final double layoutX )
+	{
+		int i = slotStart.binarySearch( layoutX );
+		if ( i < 0 )
+			i = -i - 2;
+		return Math.max( 0, Math.min( i, slotRoots.size() - 1 ) );
+	}
+
+	/**
+	 * Record that the tree containing {@code vertex} has changed. If
+	 * {@code vertex} is not laid out in the current layout, the layout X
+	 * coordinate of its nearest laid out ancestor is recorded. Vertices without
+	 * laid out ancestors are part of new trees, which are laid out anyway.
+	 */
+	private void markDirty( final TrackSchemeVertex vertex, final TrackSchemeVertex ref )
+	{
+		final TrackSchemeVertex v = ref.refTo( vertex );
+		for ( int steps = 0; v.getLayoutTimestamp() != timestamp; ++steps )
+		{
+			if ( v.incomingEdges().isEmpty() )
+				return;
+			if ( steps >= MAX_DIRTY_WALK )
+			{
+				pendingChanges.invalidate();
+				return;
+			}
+			v.incomingEdges().iterator().next().getSource( v );
+		}
+		pendingChanges.markDirty( v.getLayoutX() );
+	}
+
+	/**
+	 * Apply the {@link #pendingChanges} recorded by the graph listener to the
+	 * {@link #dirtySlots} and the {@link #vertexTable}.
+	 */
+	private void applyGraphChanges()
+	{
+		final boolean invalid;
+		final double[] dirtyX;
+		final int[] removed;
+		synchronized ( pendingChanges )
+		{
+			invalid = pendingChanges.invalid;
+			dirtyX = pendingChanges.dirtyX.toArray();
+			removed = pendingChanges.removedVertices.toArray();
+			pendingChanges.clear();
+		}
+		if ( invalid )
+			slotsValid = false;
+		else if ( slotsValid && !slotRoots.isEmpty() )
+			for ( final double x : dirtyX )
+				dirtySlots.set( slotOf( x ) );
+
+		if ( removed.length == 0 )
+			return;
+		final TIntObjectHashMap< TIntHashSet > byTimepoint = new TIntObjectHashMap<>();
+		for ( int i = 0; i < removed.length; i += 2 )
+		{
+			TIntHashSet indices = byTimepoint.get( removed[ i ] );
+			if ( indices == null )
+			{
+				indices = new TIntHashSet();
+				byTimepoint.put( removed[ i ], indices );
+			}
+			indices.add( removed[ i + 1 ] );
+		}
+		byTimepoint.forEachEntry( ( timepoint, indices ) -> {
+			vertexTable.removeAll( timepoint, indices );
+			return true;
+		} );
+		densityPyramid.clear();
+	}
+
+	/**
+	 * Changes of the {@link TrackSchemeGraph} that touch the current layout.
+	 * Guarded by itself.
+	 */
+	private static class GraphChanges
+	{
+		/**
+		 * Whether the slots of the current layout can no longer be trusted.
+		 */
+		private boolean invalid;
+
+		/**
+		 * Layout X coordinates of laid out vertices whose trees have changed.
+		 */
+		private final TDoubleArrayList dirtyX = new TDoubleArrayList();
+
+		/**
+		 * Vertices of the current layout that were removed from the graph, as
+		 * pairs of timepoint and internal pool index.
+		 */
+		private final TIntArrayList removedVertices = new TIntArrayList();
+
+		synchronized void invalidate()
+		{
+			invalid = true;
+			dirtyX.clear();
+		}
+
+		synchronized void markDirty( final double layoutX )
+		{
+			if ( !invalid )
+				dirtyX.add( layoutX );
+		}
+
+		synchronized void removed( final int timepoint, final int index )
+		{
+			removedVertices.add( timepoint );
+			removedVertices.add( index );
+		}
+
+		synchronized void clear()
+		{
+			invalid = false;
+			dirtyX.clear();
+			removedVertices.clear();
+		}
+	}
+
+	/**
+	 * Records which parts of the current layout are touched by changes of the
+	 * {@link TrackSchemeGraph}, and which vertices of the current layout are
+	 * removed. The listener is called while the graph is modified, so it only
+	 * records the changes in {@link #pendingChanges}.
+	 */
+	private class DirtyTreeTracker implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+	{
+		private final TrackSchemeVertex vref = graph.vertexRef();
+
+		private final TrackSchemeVertex walkRef = graph.vertexRef();
+
+		@Override
+		public void graphRebuilt()
+		{
+			pendingChanges.invalidate();
+		}
+
+		@Override
+		public void vertexAdded( final TrackSchemeVertex vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final TrackSchemeVertex vertex )
+		{
+			markDirty( vertex, walkRef );
+			if ( vertex.getLayoutTimestamp() == timestamp )
+				pendingChanges.removed( vertex.getTimepoint(), vertex.getInternalPoolIndex() );
+		}
+
+		@Override
+		public void edgeAdded( final TrackSchemeEdge edge )
+		{
+			markDirty( edge.getSource( vref ), walkRef );
+			markDirty( edge.getTarget( vref ), walkRef );
+		}
+
+		@Override
+		public void edgeRemoved( final TrackSchemeEdge edge )
+		{
+			markDirty( edge.getSource( vref ), walkRef );
+			markDirty( edge.getTarget( vref ), walkRef );
+		}
+	}
 }
@@ -165,4 +165,51 @@ public class ScreenEntities
 
 		screenTransform().set( ent.screenTransform );
 	}
+
+	/**
+	 * Set this to a copy of {@code ent}, with all screen coordinates mapped
+	 * from the transform that {@code ent} was created with to the specified
+	 * {@code transform}. This allows to show existing entities under a new
+	 * transform without cropping the layout again. Entities that were outside
+	 * of the screen of {@code ent} remain missing, so {@code ent} should be
+	 * cropped with a margin around the screen where that matters.
+	 *
+	 * @param ent
+	 *            the entities to copy.
+	 * @param transform
+	 *            the transform to map the copied entities to.
+	 */
+	public void set( final ScreenEntities ent, final ScreenTransform transform )
+	{
+		set( ent );
+
+		final ScreenTransform incremental = transform.concatenate( ent.screenTransform.inverse() );
+		final double scaleX = incremental.getScaleX();
+
+		for ( final ScreenVertex v : vertices )
+		{
+			v.setX( incremental.layoutToScreenX( v.getX() ) );
+			v.setY( incremental.layoutToScreenY( v.getY() ) );
+			v.setYStart( incremental.layoutToScreenY( v.getYStart() ) );
+			v.setVertexDist( v.getVertexDist() * scaleX );
+		}
+
+		for ( final ScreenVertexRange r : ranges )
+		{
+			r.setMinX( incremental.layoutToScreenX( r.getMinX() ) );
+			r.setMaxX( incremental.layoutToScreenX( r.getMaxX() ) );
+			r.setMinY( incremental.layoutToScreenY( r.getMinY() ) );
+			r.setMaxY( incremental.layoutToScreenY( r.getMaxY() ) );
+		}
+
+		for ( int i = 0; i < columns.size(); ++i )
+		{
+			final ScreenColumn c = columns.get( i );
+			final int xLeft = ( int ) incremental.layoutToScreenX( c.xLeft );
+			final int xRight = ( int ) incremental.layoutToScreenX( c.xLeft + c.width );
+			columns.set( i, new ScreenColumn( c.label, xLeft, xRight - xLeft ) );
+		}
+
+		screenTransform.set( transform );
+	}
 }
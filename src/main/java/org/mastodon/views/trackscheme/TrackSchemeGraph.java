@@ -145,6 +145,8 @@ public class TrackSchemeGraph<
 
 	private final Listeners.List< GraphChangeListener > listeners;
 
+	private final Listeners.List< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners;
+
 	private final RefBimap< V, TrackSchemeVertex > vertexMap;
 
 	private final RefBimap< E, TrackSchemeEdge > edgeMap;
@@ -228,6 +230,7 @@ public class TrackSchemeGraph<
 		tsv2 = vertexRef();
 		tse = edgeRef();
 		listeners = new Listeners.SynchronizedList<>();
+		graphListeners = new Listeners.SynchronizedList<>();
 		vertexMap = new TrackSchemeVertexBimap<>( this );
 		edgeMap = new TrackSchemeEdgeBimap<>( this );
 
@@ -347,6 +350,19 @@ public class TrackSchemeGraph<
 		return listeners;
 	}
 
+	/**
+	 * Get the list of GraphListeners. This can be used to add (or remove) a
+	 * GraphListener that will be notified of the vertices and edges added to
+	 * or removed from this TrackSchemeGraph. As for the model graph, removals
+	 * are notified before the vertex or edge is removed.
+	 *
+	 * @return list of GraphListeners
+	 */
+	public Listeners< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners()
+	{
+		return graphListeners;
+	}
+
 	public ReentrantReadWriteLock getLock()
 	{
 		return lock;
@@ -471,6 +487,8 @@ public class TrackSchemeGraph<
 			super.insertEdge( tsv, e.getSourceOutIndex(), tsv2, e.getTargetInIndex(), tse ).initModelId( id );
 			idToTrackSchemeEdge.put( id, tse );
 		}
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.graphRebuilt();
 	}
 
 	@Override
@@ -480,6 +498,8 @@ public class TrackSchemeGraph<
 		super.addVertex( tsv ).initModelId( id );
 		idToTrackSchemeVertex.put( id, tsv );
 		roots.add( tsv );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.vertexAdded( tsv );
 	}
 
 	@Override
@@ -488,6 +508,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getVertexId( vertex );
 		if ( idToTrackSchemeVertex.remove( id, tsv ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.vertexRemoved( tsv );
 			if ( tsv.incomingEdges().isEmpty() )
 				roots.remove( tsv );
 			super.remove( tsv );
@@ -504,6 +526,8 @@ public class TrackSchemeGraph<
 			roots.remove( tsv2 );
 		super.insertEdge( tsv, edge.getSourceOutIndex(), tsv2, edge.getTargetInIndex(), tse ).initModelId( id );
 		idToTrackSchemeEdge.put( id, tse );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.edgeAdded( tse );
 	}
 
 	@Override
@@ -512,6 +536,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getEdgeId( edge );
 		if ( idToTrackSchemeEdge.remove( id, tse ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.edgeRemoved( tse );
 			if ( tse.getTarget( tsv ).incomingEdges().size() == 1 )
 				roots.add( tsv );
 			super.remove( tse );
@@ -30,7 +30,9 @@ package org.mastodon.views.trackscheme;
 
 import org.mastodon.collection.ref.RefArrayList;
 
+import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
 
 /**
  * A list of {@link TrackSchemeVertex}. The vertices are assumed to be ordered
@@ -142,6 +144,47 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		return high;
 	}
 
+	/**
+	 * Replace the vertices from {@code fromIndex} to the end of the list by
+	 * the vertices with the specified internal pool indices. The replacement
+	 * is assumed to be ordered by {@link TrackSchemeVertex#getLayoutX()
+	 * layoutX}, starting right of the vertex at {@code fromIndex - 1}.
+	 *
+	 * @param fromIndex
+	 *            the index of the first vertex to replace.
+	 * @param indices
+	 *            the internal pool indices of the replacement vertices.
+	 */
+	protected void replaceTail( final int fromIndex, final TIntList indices )
+	{
+		final TIntArrayList list = getIndexCollection();
+		list.remove( fromIndex, list.size() - fromIndex );
+		list.addAll( indices );
+		cachedMinLayoutXDistanceValid = false;
+	}
+
+	/**
+	 * Removes the vertices with the specified internal pool indices from the
+	 * list. The vertices are not accessed, so they may already have been
+	 * deleted from the graph.
+	 *
+	 * @param indices
+	 *            the internal pool indices of the vertices to remove.
+	 */
+	protected void removeIndices( final TIntSet indices )
+	{
+		final TIntArrayList list = getIndexCollection();
+		int size = 0;
+		for ( int i = 0; i < list.size(); ++i )
+		{
+			final int index = list.getQuick( i );
+			if ( !indices.contains( index ) )
+				list.setQuick( size++, index );
+		}
+		list.remove( size, list.size() - size );
+		cachedMinLayoutXDistanceValid = false;
+	}
+
 	protected TIntArrayList getDenseRanges(
 			final int fromIndex,
 			final int toIndex,
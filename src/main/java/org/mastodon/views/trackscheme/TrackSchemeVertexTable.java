@@ -34,6 +34,7 @@ import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntObjectArrayMap;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.set.TIntSet;
 import net.imglib2.RealLocalizable;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefSet;
@@ -82,17 +83,47 @@ public class TrackSchemeVertexTable
 		return timepointToOrderedVertices.get(timepoint);
 	}
 
-	public void add( TrackSchemeVertex v )
+	public TrackSchemeVertexList getOrCreateOrderedVertices( int timepoint )
 	{
-		final int tp = v.getTimepoint();
-		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoint );
 		if ( vlist == null )
 		{
 			vlist = new TrackSchemeVertexList( graph );
-			timepointToOrderedVertices.put( tp, vlist );
-			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+			timepointToOrderedVertices.put( timepoint, vlist );
+			timepoints.insert( -( 1 + timepoints.binarySearch( timepoint ) ), timepoint );
 		}
-		vlist.add( v );
+		return vlist;
+	}
+
+	public void removeTimepoint( int timepoint )
+	{
+		if ( timepointToOrderedVertices.remove( timepoint ) != null )
+			timepoints.removeAt( timepoints.binarySearch( timepoint ) );
+	}
+
+	public void add( TrackSchemeVertex v )
+	{
+		getOrCreateOrderedVertices( v.getTimepoint() ).add( v );
+	}
+
+	/**
+	 * Removes vertices from the "row" of the specified time point. The "row"
+	 * is removed if it becomes empty. The vertices are not accessed, so they
+	 * may already have been deleted from the graph.
+	 *
+	 * @param timepoint
+	 *            the time point of the vertices.
+	 * @param indices
+	 *            the internal pool indices of the vertices to remove.
+	 */
+	public void removeAll( int timepoint, TIntSet indices )
+	{
+		final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoint );
+		if ( vlist == null )
+			return;
+		vlist.removeIndices( indices );
+		if ( vlist.isEmpty() )
+			removeTimepoint( timepoint );
 	}
 
 	public RefSet<TrackSchemeVertex> getVerticesWithin( double lx1, double ly1, double lx2, double ly2 )
@@ -36,6 +36,8 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.Box;
@@ -132,6 +134,45 @@ public class TrackSchemePanel extends JPanel implements
 
 	private final PainterThread painterThread;
 
+	/**
+	 * Lays out the graph and crops the new layout in the background, while
+	 * the {@link #painterThread} keeps animating the previous
+	 * {@link ScreenEntities}.
+	 */
+	private final LayoutThread layoutThread;
+
+	/**
+	 * Held while the {@link #layout} is modified or cropped. The
+	 * {@link #painterThread} only crops the layout if it can get this lock
+	 * without waiting.
+	 */
+	private final ReentrantLock layoutLock;
+
+	/**
+	 * {@link System#nanoTime()} of the oldest graph change that has not been
+	 * laid out yet, or 0.
+	 */
+	private final AtomicLong graphChangeTime;
+
+	/**
+	 * {@link System#nanoTime()} of the oldest graph change shown by the
+	 * entities most recently given to the {@link #graphOverlay}, or 0 if that
+	 * frame has already been drawn.
+	 */
+	private volatile long frameChangeTime;
+
+	/**
+	 * Time in milliseconds from the last laid out graph change to the first
+	 * frame showing it.
+	 */
+	private volatile double lastLayoutLatency;
+
+	/**
+	 * Maximum time in milliseconds from a graph change to the first frame
+	 * showing it.
+	 */
+	private volatile double maxLayoutLatency;
+
 	private final TrackSchemeOverlay graphOverlay;
 
 	/**
@@ -241,6 +282,7 @@ public class TrackSchemePanel extends JPanel implements
 			@Override
 			public void drawOverlays( final Graphics g )
 			{
+				checkLatency();
 				checkAnimate();
 			}
 		} );
@@ -251,6 +293,9 @@ public class TrackSchemePanel extends JPanel implements
 		layout.layoutListeners().add( transformEventHandler );
 		entityAnimator = new ScreenEntityAnimator();
 		painterThread = new PainterThread( this );
+		layoutLock = new ReentrantLock();
+		graphChangeTime = new AtomicLong();
+		layoutThread = new LayoutThread();
 		flags = new Flags();
 
 		final MouseHighlightHandler highlightHandler = new MouseHighlightHandler( graphOverlay, highlight, graph );
@@ -325,14 +370,16 @@ public class TrackSchemePanel extends JPanel implements
 		setNavigationEtiquette( options.getNavigationEtiquette() );
 
 		painterThread.start();
+		layoutThread.start();
 	}
 
 	/**
-	 * Stop the painter thread.
+	 * Stop the painter and layout threads.
 	 */
 	public void stop()
 	{
 		painterThread.interrupt();
+		layoutThread.interrupt();
 	}
 
 	/**
@@ -359,73 +406,119 @@ public class TrackSchemePanel extends JPanel implements
 			painterThread.requestRepaint();
 	}
 
+	/**
+	 * Record the latency of the graph change shown by the frame being drawn,
+	 * if it is the first frame to show it.
+	 */
+	private void checkLatency()
+	{
+		final long t0 = frameChangeTime;
+		if ( t0 != 0 )
+		{
+			frameChangeTime = 0;
+			final double latency = ( System.nanoTime() - t0 ) / 1e6;
+			lastLayoutLatency = latency;
+			if ( latency > maxLayoutLatency )
+				maxLayoutLatency = latency;
+		}
+	}
+
+	/**
+	 * Get the time from the last graph change that was laid out to the first
+	 * frame that showed the new layout. This includes waiting for the graph
+	 * lock, layout, cropping, and animating up to the first frame.
+	 *
+	 * @return latency in milliseconds, or 0 if no graph change was shown yet.
+	 */
+	public double getLayoutLatencyMillis()
+	{
+		return lastLayoutLatency;
+	}
+
+	/**
+	 * Get the maximum time from a graph change to the first frame that showed
+	 * the new layout, since this panel was created.
+	 *
+	 * @return maximum latency in milliseconds.
+	 */
+	public double getMaxLayoutLatencyMillis()
+	{
+		return maxLayoutLatency;
+	}
+
 	@Override
 	public void paint()
 	{
-		final ReentrantReadWriteLock lock = graph.getLock();
-		lock.readLock().lock();
-		try
+		final ScreenTransform transform = screenTransform.get();
+		final Flags flags = this.flags.clear();
+		if ( flags.graphChanged || flags.contextChanged )
+			layoutThread.requestLayout( flags.graphChanged, flags.contextChanged );
+
+		if ( layoutThread.takeLayout() )
 		{
-			final ScreenTransform transform = screenTransform.get();
-			final Flags flags = this.flags.clear();
-			if ( flags.graphChanged )
-			{
-//				System.out.println( "paint: graphChanged" );
-				layout.layout();
-				layoutMinX = layout.getCurrentLayoutMinX();
-				layoutMaxX = layout.getCurrentLayoutMaxX();
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.transformChanged )
+			/*
+			 * New entities were laid out in the background. Changes that
+			 * happened meanwhile are handled in the next paint.
+			 */
+			if ( flags.transformChanged )
+				this.flags.setTransformChanged();
+			if ( flags.selectionChanged )
+				this.flags.setSelectionChanged();
+			if ( flags.entitiesAttributesChanged )
+				this.flags.setEntitiesAttributesChanged();
+			painterThread.requestRepaint();
+		}
+		else if ( ( flags.transformChanged || flags.selectionChanged || flags.entitiesAttributesChanged ) && layoutLock.tryLock() )
+		{
+			final ReentrantReadWriteLock lock = graph.getLock();
+			lock.readLock().lock();
+			try
 			{
-//				System.out.println( "paint: transformChanged" );
-//				entityAnimator.startAnimation( transform, 0 );
-				if ( context != null && contextLayout.buildContext( context, transform, false ) )
+				if ( flags.transformChanged )
 				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
-					entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
+					if ( context != null && contextLayout.buildContext( context, transform, false ) )
+					{
+						layoutMinX = layout.getCurrentLayoutMinX();
+						layoutMaxX = layout.getCurrentLayoutMaxX();
+						entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
+					}
+					else
+						entityAnimator.continueAnimation( transform, 0 );
 				}
-				else
-					entityAnimator.continueAnimation( transform, 0 );
-//					entityAnimator.startAnimation( transform, 0 );
-//				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.selectionChanged )
-			{
-//				System.out.println( "paint: selectionChanged" );
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
-			}
-			else if ( flags.contextChanged )
-			{
-//				System.out.println( "paint: contextChanged" );
-				if ( context == null )
+				else if ( flags.selectionChanged )
 				{
-					layout.layout();
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
+					entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
 				}
-				else if ( contextLayout.buildContext( context, transform, true ) )
+				else if ( flags.entitiesAttributesChanged )
 				{
-					layoutMinX = layout.getCurrentLayoutMinX();
-					layoutMaxX = layout.getCurrentLayoutMaxX();
+					entityAnimator.continueAnimation( transform, 0 );
 				}
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
 			}
-			else if ( flags.entitiesAttributesChanged )
+			finally
 			{
-//				System.out.println( "paint: entitiesAttributesChanged" ); // DEBUG
-				entityAnimator.continueAnimation( transform, 0 );
+				lock.readLock().unlock();
+				layoutLock.unlock();
 			}
-
-			entityAnimator.setTime( System.currentTimeMillis() );
-			entityAnimator.setPaintEntities( graphOverlay );
-			display.repaint();
 		}
-		finally
+		else
 		{
-			lock.readLock().unlock();
+			/*
+			 * A layout is running in the background. Keep showing the
+			 * previous entities under the current transform, and handle
+			 * other changes when the layout is done.
+			 */
+			if ( flags.transformChanged )
+				layoutThread.reproject( transform );
+			if ( flags.selectionChanged )
+				this.flags.setSelectionChanged();
+			if ( flags.entitiesAttributesChanged )
+				this.flags.setEntitiesAttributesChanged();
 		}
+
+		entityAnimator.setTime( System.currentTimeMillis() );
+		entityAnimator.setPaintEntities( graphOverlay );
+		display.repaint();
+
 		// adjust scrollbars sizes
 		final ScreenTransform t = new ScreenTransform();
 		entityAnimator.getLastComputedScreenEntities().getScreenTransform( t );
@@ -466,6 +559,7 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void graphChanged()
 	{
+		graphChangeTime.compareAndSet( 0, System.nanoTime() );
 		flags.setGraphChanged();
 		painterThread.requestRepaint();
 	}
@@ -496,7 +590,7 @@ public class TrackSchemePanel extends JPanel implements
 	}
 
 	// TODO: THIS IS FOR TESTING ONLY
-	private Context< TrackSchemeVertex > context;
+	private volatile Context< TrackSchemeVertex > context;
 
 	// TODO: THIS IS FOR TESTING ONLY
 	@Override
@@ -873,6 +967,66 @@ public class TrackSchemePanel extends JPanel implements
 			}
 		}
 
+		/**
+		 * Start animating from the current entities to entities that were
+		 * laid out and cropped by the {@link LayoutThread}. The specified
+		 * entities are copied.
+		 *
+		 * @param laidOut
+		 *            the new entities.
+		 * @param duration
+		 *            animation duration (in time units), may be 0.
+		 */
+		public void startAnimation( final ScreenEntities laidOut, final long duration )
+		{
+			reset( duration );
+			if ( duration > 0 )
+			{
+				copyIpStart();
+				screenEntities.set( laidOut );
+				swapIpEnd();
+				interpolator = new ScreenEntitiesInterpolator( screenEntitiesIpStart, screenEntitiesIpEnd );
+			}
+			else
+			{
+				interpolator = null;
+				swapPools();
+				screenEntities.set( laidOut );
+				lastComputedScreenEntities = screenEntities;
+			}
+		}
+
+		/**
+		 * Show the last computed entities under a new transform, without
+		 * cropping the layout. Any running animation is stopped.
+		 *
+		 * @param transform
+		 *            the new screen transform.
+		 */
+		public void reproject( final ScreenTransform transform )
+		{
+			copyIpStart();
+			reproject( screenEntitiesIpStart, transform );
+		}
+
+		/**
+		 * Show the specified entities under a new transform, without cropping
+		 * the layout. Any running animation is stopped.
+		 *
+		 * @param entities
+		 *            the entities to show.
+		 * @param transform
+		 *            the new screen transform.
+		 */
+		public void reproject( final ScreenEntities entities, final ScreenTransform transform )
+		{
+			reset( 0 );
+			interpolator = null;
+			swapPools();
+			screenEntities.set( entities, transform );
+			lastComputedScreenEntities = screenEntities;
+		}
+
 		public void continueAnimation( final ScreenTransform transform, final long duration )
 		{
 			if ( interpolator != null )
@@ -936,6 +1090,213 @@ public class TrackSchemePanel extends JPanel implements
 		}
 	}
 
+	/**
+	 * Lays out the graph and crops the new layout into a back buffer of
+	 * {@link ScreenEntities}, holding the {@link #layoutLock}. The painter
+	 * thread picks up the result with {@link #takeLayout()}.
+	 * <p>
+	 * The layout and the cropping hold the graph read lock for their whole
+	 * duration. The graph is not copied for the layout: the layout
+	 * coordinates are stored in the {@link TrackSchemeVertex}s themselves, and
+	 * the cropping reads them back, so both need a consistent graph. A thread
+	 * that wants to modify the graph waits until the layout and the cropping
+	 * are done. The painter does not: it keeps showing the previous entities
+	 * while the layout runs.
+	 */
+	private class LayoutThread extends Thread
+	{
+		private boolean graphChanged;
+
+		private boolean contextChanged;
+
+		/**
+		 * The entities the next layout is cropped into.
+		 */
+		private ScreenEntities working;
+
+		/**
+		 * The entities of the last finished layout.
+		 */
+		private ScreenEntities ready;
+
+		private boolean readyPending;
+
+		/**
+		 * The entities of the layout that is shown while the next layout is
+		 * running, cropped with a margin of one screen on each side, so that
+		 * they can be reprojected for small pans.
+		 */
+		private ScreenEntities margin;
+
+		/**
+		 * Whether {@link #margin} was cropped from the layout that is
+		 * currently shown.
+		 */
+		private boolean marginValid;
+
+		private double readyMinX;
+
+		private double readyMaxX;
+
+		private long readyChangeTime;
+
+		public LayoutThread()
+		{
+			super( "TrackScheme layout" );
+			setDaemon( true );
+			working = new ScreenEntities( graph );
+			ready = new ScreenEntities( graph );
+			margin = new ScreenEntities( graph );
+		}
+
+		public synchronized void requestLayout( final boolean graphChanged, final boolean contextChanged )
+		{
+			this.graphChanged |= graphChanged;
+			this.contextChanged |= contextChanged;
+			notify();
+		}
+
+		/**
+		 * If a new layout is ready, start animating to it.
+		 *
+		 * @return {@code true} if a new layout was ready.
+		 */
+		public synchronized boolean takeLayout()
+		{
+			if ( !readyPending )
+				return false;
+			readyPending = false;
+			layoutMinX = readyMinX;
+			layoutMaxX = readyMaxX;
+			entityAnimator.startAnimation( ready, ANIMATION_MILLISECONDS );
+			final ScreenTransform t = new ScreenTransform();
+			ready.getScreenTransform( t );
+			if ( !t.equals( screenTransform.get() ) )
+				flags.setTransformChanged();
+			if ( readyChangeTime != 0 )
+			{
+				frameChangeTime = readyChangeTime;
+				readyChangeTime = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * Show the entities of the layout that is shown while a layout is
+		 * running under a new transform, without cropping the layout.
+		 *
+		 * @param transform
+		 *            the new screen transform.
+		 */
+		public synchronized void reproject( final ScreenTransform transform )
+		{
+			if ( marginValid )
+				entityAnimator.reproject( margin, transform );
+			else
+				entityAnimator.reproject( transform );
+		}
+
+		/**
+		 * Get a transform with the same scale as {@code transform}, that
+		 * extends it by one screen on each side.
+		 */
+		private ScreenTransform withMargin( final ScreenTransform transform )
+		{
+			final int w = transform.getScreenWidth();
+			final int h = transform.getScreenHeight();
+			final double minX = transform.getMinX() - w / transform.getScaleX();
+			final double minY = transform.getMinY() - h / transform.getScaleY();
+			return new ScreenTransform(
+					minX, minX + ( 3 * w - 1 ) / transform.getScaleX(),
+					minY, minY + ( 3 * h - 1 ) / transform.getScaleY(),
+					3 * w, 3 * h );
+		}
+
+		@Override
+		public void run()
+		{
+			while ( !isInterrupted() )
+			{
+				final boolean graphChanged;
+				final boolean contextChanged;
+				synchronized ( this )
+				{
+					try
+					{
+						while ( !this.graphChanged && !this.contextChanged )
+							wait();
+					}
+					catch ( final InterruptedException e )
+					{
+						return;
+					}
+					graphChanged = this.graphChanged;
+					contextChanged = this.contextChanged;
+					this.graphChanged = false;
+					this.contextChanged = false;
+				}
+
+				final long changeTime = graphChangeTime.getAndSet( 0 );
+				final double minX;
+				final double maxX;
+				layoutLock.lock();
+				try
+				{
+					final ReentrantReadWriteLock lock = graph.getLock();
+					lock.readLock().lock();
+					try
+					{
+						/*
+						 * Keep the entities of the layout that is shown, with
+						 * a margin, for the painter to reproject meanwhile.
+						 */
+						final ScreenEntities marginWorking = working;
+						marginWorking.clear();
+						layout.cropAndScale( withMargin( screenTransform.get() ), marginWorking, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+						synchronized ( this )
+						{
+							working = margin;
+							margin = marginWorking;
+							marginValid = true;
+						}
+
+						final Context< TrackSchemeVertex > context = TrackSchemePanel.this.context;
+						if ( graphChanged || context == null )
+							layout.layout();
+						else
+							contextLayout.buildContext( context, screenTransform.get(), true );
+						minX = layout.getCurrentLayoutMinX();
+						maxX = layout.getCurrentLayoutMaxX();
+						working.clear();
+						layout.cropAndScale( screenTransform.get(), working, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
+					}
+					finally
+					{
+						lock.readLock().unlock();
+					}
+				}
+				finally
+				{
+					layoutLock.unlock();
+				}
+
+				synchronized ( this )
+				{
+					final ScreenEntities tmp = ready;
+					ready = working;
+					working = tmp;
+					readyPending = true;
+					marginValid = false;
+					readyMinX = minX;
+					readyMaxX = maxX;
+					if ( readyChangeTime == 0 )
+						readyChangeTime = changeTime;
+				}
+				painterThread.requestRepaint();
+			}
+		}
+	}
+
 	static class Flags
 	{
 		private boolean transformChanged;
@@ -0,0 +1,691 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.scijava.ItemIO.OUTPUT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatus;
+import org.mastodon.feature.DefaultFeatureComputerService.FeatureComputationStatusListener;
+import org.scijava.Cancelable;
+import org.scijava.Context;
+import org.scijava.command.CommandService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+
+/**
+ * Tests the scheduling of feature computers by
+ * {@link DefaultFeatureComputerService}.
+ */
+public class DefaultFeatureComputerServiceTest
+{
+
+	private static final List< String > events = Collections.synchronizedList( new ArrayList<>() );
+
+	private static CountDownLatch slowStarted;
+
+	private static CountDownLatch waitingStarted;
+
+	private Context context;
+
+	private DefaultFeatureComputerService service;
+
+	@Before
+	public void setUp()
+	{
+		events.clear();
+		slowStarted = new CountDownLatch( 1 );
+		waitingStarted = new CountDownLatch( 1 );
+		context = new Context( PluginService.class, CommandService.class, FeatureSpecsService.class );
+		service = new DefaultFeatureComputerService( SchedulerTestComputer.class );
+		context.inject( service );
+		service.initialize();
+	}
+
+	@After
+	public void tearDown()
+	{
+		context.dispose();
+	}
+
+	/**
+	 * A computer only starts once the computers it depends on are done.
+	 */
+	@Test
+	public void testDependencyOrder()
+	{
+		service.setNumThreads( 4 );
+		final Set< FeatureSpec< ?, ? > > computed = service.compute( D.SPEC ).keySet();
+
+		assertTrue( computed.contains( A.SPEC ) );
+		assertTrue( computed.contains( B.SPEC ) );
+		assertTrue( computed.contains( C.SPEC ) );
+		assertTrue( computed.contains( D.SPEC ) );
+		assertBefore( "end A", "start B" );
+		assertBefore( "end A", "start C" );
+		assertBefore( "end B", "start D" );
+		assertBefore( "end C", "start D" );
+	}
+
+	/**
+	 * The failure of a computer is reported to the caller, once the computers
+	 * running next to it are done.
+	 */
+	@Test
+	public void testFailure()
+	{
+		service.setNumThreads( 2 );
+		try
+		{
+			service.compute( Failing.SPEC, Slow.SPEC );
+			fail( "The failure of a computer should be reported." );
+		}
+		catch ( final IllegalStateException e )
+		{
+			assertEquals( "Failing on purpose.", e.getMessage() );
+		}
+		assertTrue( service.isCanceled() );
+		assertTrue( "A computer was still running after the computation returned.", events.contains( "end Slow" ) );
+	}
+
+	/**
+	 * Canceling stops the running computers and does not start the ones that
+	 * depend on them.
+	 */
+	@Test
+	public void testCancel()
+	{
+		final Thread canceler = new Thread( () -> {
+			await( waitingStarted );
+			service.cancel( "Canceled on purpose." );
+		} );
+		canceler.start();
+		service.compute( Dependent.SPEC );
+
+		assertTrue( service.isCanceled() );
+		assertEquals( "Canceled on purpose.", service.getCancelReason() );
+		assertTrue( events.contains( "end Waiting" ) );
+		assertFalse( events.contains( "start Dependent" ) );
+	}
+
+	/**
+	 * The progress reported to the listeners is the one of the whole
+	 * computation, not the one of the computer that reports it.
+	 */
+	@Test
+	public void testProgress()
+	{
+		service.setNumThreads( 1 );
+		final List< Double > progress = Collections.synchronizedList( new ArrayList<>() );
+		service.computationStatusListeners().add( new FeatureComputationStatusListener()
+		{
+			@Override
+			public void status( final String status )
+			{}
+
+			@Override
+			public void progress( final double value )
+			{
+				progress.add( value );
+			}
+
+			@Override
+			public void clear()
+			{}
+		} );
+		service.compute( P1.SPEC, P2.SPEC );
+
+		assertEquals( 0.5, progress.get( 0 ), 1e-9 );
+		for ( final double value : progress )
+			assertTrue( value >= 0. && value <= 1. );
+		assertEquals( 1., progress.get( progress.size() - 1 ), 1e-9 );
+	}
+
+	private static void assertBefore( final String first, final String second )
+	{
+		final int i1 = events.indexOf( first );
+		final int i2 = events.indexOf( second );
+		assertTrue( "Missing event " + first, i1 >= 0 );
+		assertTrue( "Missing event " + second, i2 >= 0 );
+		assertTrue( "Expected " + first + " before " + second + " in " + events, i1 < i2 );
+	}
+
+	private static void record( final String name )
+	{
+		events.add( "start " + name );
+		sleep( 20 );
+		events.add( "end " + name );
+	}
+
+	private static void sleep( final long millis )
+	{
+		try
+		{
+			Thread.sleep( millis );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await( final CountDownLatch latch )
+	{
+		try
+		{
+			latch.await();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Test features and computers. They are discovered under their own type,
+	 * so that they do not interfere with the other computers.
+	 */
+
+	public static interface SchedulerTestComputer extends FeatureComputer
+	{}
+
+	public static class Target
+	{}
+
+	public static abstract class TestFeature implements Feature< Target >
+	{
+		@Override
+		public FeatureProjection< Target > project( final FeatureProjectionKey key )
+		{
+			return null;
+		}
+
+		@Override
+		public Set< FeatureProjection< Target > > projections()
+		{
+			return Collections.emptySet();
+		}
+
+		@Override
+		public void invalidate( final Target obj )
+		{}
+	}
+
+	public static class A extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< A, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test A", "Test feature A.", A.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class B extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< B, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test B", "Test feature B.", B.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class C extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< C, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test C", "Test feature C.", C.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class D extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< D, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test D", "Test feature D.", D.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class Failing extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< Failing, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test Failing", "Test feature Failing.", Failing.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class Slow extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< Slow, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test Slow", "Test feature Slow.", Slow.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class Waiting extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< Waiting, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test Waiting", "Test feature Waiting.", Waiting.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class Dependent extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< Dependent, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test Dependent", "Test feature Dependent.", Dependent.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class P1 extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< P1, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test P1", "Test feature P1.", P1.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	public static class P2 extends TestFeature
+	{
+		public static final Spec SPEC = new Spec();
+
+		@Plugin( type = FeatureSpec.class )
+		public static class Spec extends FeatureSpec< P2, Target >
+		{
+			public Spec()
+			{
+				super( "Scheduler test P2", "Test feature P2.", P2.class, Target.class, Multiplicity.SINGLE );
+			}
+		}
+
+		@Override
+		public Spec getSpec()
+		{
+			return SPEC;
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class AComputer implements SchedulerTestComputer
+	{
+		@Parameter( type = OUTPUT )
+		private A output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new A();
+		}
+
+		@Override
+		public void run()
+		{
+			record( "A" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class BComputer implements SchedulerTestComputer
+	{
+		@Parameter
+		private A a;
+
+		@Parameter( type = OUTPUT )
+		private B output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new B();
+		}
+
+		@Override
+		public void run()
+		{
+			record( "B" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class CComputer implements SchedulerTestComputer
+	{
+		@Parameter
+		private A a;
+
+		@Parameter( type = OUTPUT )
+		private C output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new C();
+		}
+
+		@Override
+		public void run()
+		{
+			record( "C" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class DComputer implements SchedulerTestComputer
+	{
+		@Parameter
+		private B b;
+
+		@Parameter
+		private C c;
+
+		@Parameter( type = OUTPUT )
+		private D output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new D();
+		}
+
+		@Override
+		public void run()
+		{
+			record( "D" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class FailingComputer implements SchedulerTestComputer
+	{
+		@Parameter( type = OUTPUT )
+		private Failing output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new Failing();
+		}
+
+		@Override
+		public void run()
+		{
+			await( slowStarted );
+			throw new IllegalStateException( "Failing on purpose." );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class SlowComputer implements SchedulerTestComputer
+	{
+		@Parameter( type = OUTPUT )
+		private Slow output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new Slow();
+		}
+
+		@Override
+		public void run()
+		{
+			events.add( "start Slow" );
+			slowStarted.countDown();
+			sleep( 200 );
+			events.add( "end Slow" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class WaitingComputer implements SchedulerTestComputer, Cancelable
+	{
+		private volatile String cancelReason;
+
+		@Parameter( type = OUTPUT )
+		private Waiting output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new Waiting();
+		}
+
+		@Override
+		public void run()
+		{
+			events.add( "start Waiting" );
+			waitingStarted.countDown();
+			while ( cancelReason == null )
+				sleep( 10 );
+			events.add( "end Waiting" );
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return cancelReason != null;
+		}
+
+		@Override
+		public void cancel( final String reason )
+		{
+			cancelReason = reason;
+		}
+
+		@Override
+		public String getCancelReason()
+		{
+			return cancelReason;
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class DependentComputer implements SchedulerTestComputer
+	{
+		@Parameter
+		private Waiting waiting;
+
+		@Parameter( type = OUTPUT )
+		private Dependent output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new Dependent();
+		}
+
+		@Override
+		public void run()
+		{
+			record( "Dependent" );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class P1Computer implements SchedulerTestComputer
+	{
+		@Parameter
+		private FeatureComputationStatus status;
+
+		@Parameter( type = OUTPUT )
+		private P1 output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new P1();
+		}
+
+		@Override
+		public void run()
+		{
+			status.notifyProgress( 1. );
+		}
+	}
+
+	@Plugin( type = SchedulerTestComputer.class )
+	public static class P2Computer implements SchedulerTestComputer
+	{
+		@Parameter
+		private FeatureComputationStatus status;
+
+		@Parameter( type = OUTPUT )
+		private P2 output;
+
+		@Override
+		public void createOutput()
+		{
+			output = new P2();
+		}
+
+		@Override
+		public void run()
+		{
+			status.notifyProgress( 1. );
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.feature.update;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.update.GraphFeatureUpdateListeners.GraphUpdateListener;
+import org.mastodon.mamut.feature.LinkDisplacementFeature;
+import org.mastodon.mamut.feature.SpotNLinksFeature;
+import org.mastodon.mamut.feature.SpotRadiusFeature;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.SpotPool;
+
+public class GraphUpdateListenerTest
+{
+
+	private ModelGraph graph;
+
+	private UpdateTracker< Spot > vertexUpdates;
+
+	private UpdateTracker< Link > edgeUpdates;
+
+	/** Two tracks a0 &rarr; a1 &rarr; a2 and b0 &rarr; b1 &rarr; b2. */
+	private final Spot[] a = new Spot[ 3 ];
+
+	private final Spot[] b = new Spot[ 3 ];
+
+	private final Link[] la = new Link[ 2 ];
+
+	private final Link[] lb = new Link[ 2 ];
+
+	@Before
+	public void setUp()
+	{
+		graph = new Model().getGraph();
+
+		// Wire the listener the way MamutFeatureComputerService does.
+		vertexUpdates = new UpdateTracker<>( graph.vertices() );
+		edgeUpdates = new UpdateTracker<>( graph.edges() );
+		final GraphUpdateListener< Spot, Link > listener = GraphFeatureUpdateListeners.graphUpdateListener( vertexUpdates, edgeUpdates );
+		graph.addGraphListener( listener );
+		final SpotPool spotPool = ( SpotPool ) graph.vertices().getRefPool();
+		spotPool.covarianceProperty().propertyChangeListeners().add( listener );
+		spotPool.positionProperty().propertyChangeListeners().add( listener );
+
+		for ( int t = 0; t < 3; t++ )
+		{
+			a[ t ] = graph.addVertex().init( t, new double[] { 10., 10., 10. }, 2. );
+			b[ t ] = graph.addVertex().init( t, new double[] { 50., 50., 10. }, 2. );
+		}
+		for ( int t = 0; t < 2; t++ )
+		{
+			la[ t ] = graph.addEdge( a[ t ], a[ t + 1 ] ).init();
+			lb[ t ] = graph.addEdge( b[ t ], b[ t + 1 ] ).init();
+		}
+	}
+
+	/**
+	 * Moving one spot must only mark this spot and its links for
+	 * recomputation.
+	 */
+	@Test
+	public void testMovedSpotIsTheOnlyDirtyObject()
+	{
+		// First computation: changes are unknown, everything is computed.
+		assertEquals( 6, compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() ).size() );
+		assertEquals( 4, compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() ).size() );
+
+		// Nothing changed since.
+		assertTrue( compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() ).isEmpty() );
+		assertTrue( compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() ).isEmpty() );
+
+		a[ 1 ].move( 5., 0 );
+
+		final RefSet< Spot > spots = compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		assertEquals( 1, spots.size() );
+		assertTrue( spots.contains( a[ 1 ] ) );
+
+		final RefSet< Link > links = compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() );
+		assertEquals( 2, links.size() );
+		assertTrue( links.contains( la[ 0 ] ) );
+		assertTrue( links.contains( la[ 1 ] ) );
+
+		// The changes were consumed.
+		assertTrue( compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() ).isEmpty() );
+		assertTrue( compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() ).isEmpty() );
+	}
+
+	/**
+	 * Each feature accumulates the changes made since it was last computed,
+	 * independently of the others.
+	 */
+	@Test
+	public void testFeaturesAreTrackedIndependently()
+	{
+		compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		compute( vertexUpdates, SpotRadiusFeature.SPEC, graph.vertices() );
+
+		a[ 0 ].move( 1., 1 );
+		assertEquals( 1, compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() ).size() );
+
+		b[ 2 ].setCovariance( new double[][] { { 9., 0., 0. }, { 0., 9., 0. }, { 0., 0., 9. } } );
+		final RefSet< Spot > nlinks = compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		assertEquals( 1, nlinks.size() );
+		assertTrue( nlinks.contains( b[ 2 ] ) );
+
+		final RefSet< Spot > radius = compute( vertexUpdates, SpotRadiusFeature.SPEC, graph.vertices() );
+		assertEquals( 2, radius.size() );
+		assertTrue( radius.contains( a[ 0 ] ) );
+		assertTrue( radius.contains( b[ 2 ] ) );
+	}
+
+	/**
+	 * Structural changes mark the neighbors of added and removed objects, and
+	 * removed objects are not reported.
+	 */
+	@Test
+	public void testStructuralChanges()
+	{
+		compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() );
+
+		graph.remove( b[ 2 ] );
+		final Spot c = graph.addVertex().init( 1, new double[] { 30., 30., 10. }, 2. );
+		final Link lc = graph.addEdge( a[ 0 ], c ).init();
+
+		final RefSet< Spot > spots = compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		assertEquals( 3, spots.size() );
+		assertTrue( spots.contains( b[ 1 ] ) );
+		assertTrue( spots.contains( a[ 0 ] ) );
+		assertTrue( spots.contains( c ) );
+
+		final RefSet< Link > links = compute( edgeUpdates, LinkDisplacementFeature.SPEC, graph.edges() );
+		assertEquals( 1, links.size() );
+		assertTrue( links.contains( lc ) );
+	}
+
+	/**
+	 * After a feature is forgotten, for instance because its computation was
+	 * canceled, its changes are unknown and everything is computed again.
+	 */
+	@Test
+	public void testForget()
+	{
+		compute( vertexUpdates, SpotNLinksFeature.SPEC, graph.vertices() );
+		a[ 2 ].move( 1., 2 );
+		vertexUpdates.forget( SpotNLinksFeature.SPEC );
+		assertNull( vertexUpdates.take( SpotNLinksFeature.SPEC ) );
+
+		a[ 2 ].move( 1., 2 );
+		graph.remove( a[ 2 ] );
+		final Update< Spot > update = vertexUpdates.take( SpotNLinksFeature.SPEC );
+		assertFalse( update.get().contains( a[ 2 ] ) );
+		assertTrue( update.get().contains( a[ 1 ] ) );
+	}
+
+	/**
+	 * Mimics an incremental feature computer: takes the changes of a feature,
+	 * and returns the objects it would compute values for.
+	 */
+	private static < O > RefSet< O > compute( final UpdateTracker< O > tracker, final FeatureSpec< ?, ? > spec, final RefCollection< O > all )
+	{
+		final Update< O > update = tracker.take( spec );
+		final RefSet< O > computed = RefCollections.createRefSet( all );
+		if ( update == null )
+			computed.addAll( all );
+		else
+			computed.addAll( update.get() );
+		return computed;
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+
+import bdv.export.ProgressWriterConsole;
+
+public class MamutMovieRecorderTest
+{
+
+	/**
+	 * Records a small PNG movie of a project over a dummy dataset, with the
+	 * default view, and checks that one image of the requested size is written
+	 * per time-point.
+	 */
+	@Test
+	public void testRecordPngFolder() throws Exception
+	{
+		final File folder = Files.createTempDirectory( "mastodon-movie" ).toFile();
+		try
+		{
+			final File projectRoot = new File( folder, "project.mastodon" );
+			projectRoot.mkdirs();
+			final File dataset = new File( folder, "dummy x=32 y=24 z=4 sx=1 sy=1 sz=1 t=3.dummy" );
+			final MamutProject project = new MamutProject( projectRoot, dataset );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				createModel().saveRaw( writer );
+			}
+
+			final MamutMovieRecorder recorder = new MamutMovieRecorder( project, null );
+			assertEquals( "A project without GUI file should have no saved BDV view.", 0, recorder.numBdvViews() );
+			assertEquals( 3, recorder.numTimepoints() );
+
+			final File output = new File( folder, "frames" );
+			output.mkdirs();
+			recorder.record( -1, output, 64, 48, 0, 2, 10, 1, new ProgressWriterConsole() );
+
+			for ( int t = 0; t < 3; t++ )
+			{
+				final File png = new File( output, String.format( "img-%03d.png", t ) );
+				assertTrue( "Missing frame " + png, png.isFile() );
+				final BufferedImage img = ImageIO.read( png );
+				assertEquals( 64, img.getWidth() );
+				assertEquals( 48, img.getHeight() );
+			}
+		}
+		finally
+		{
+			delete( folder );
+		}
+	}
+
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot ref = graph.vertexRef();
+		for ( int t = 0; t < 3; t++ )
+			graph.addVertex( ref ).init( t, new double[] { 10. + 4. * t, 12., 2. }, 3. );
+		graph.releaseRef( ref );
+		return model;
+	}
+
+	private static void delete( final File file )
+	{
+		final File[] children = file.listFiles();
+		if ( children != null )
+			for ( final File child : children )
+				delete( child );
+		file.delete();
+	}
+}
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.Source;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Compares iterating over the pixels of spots with {@link EllipsoidIterable}
+ * and with {@link ScanlineEllipsoidIterable}, for several spot radii.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 4, time = 1, timeUnit = TimeUnit.SECONDS )
+@Measurement( iterations = 8, time = 1, timeUnit = TimeUnit.SECONDS )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class EllipsoidIterableBenchmark
+{
+
+	@Param( { "3", "10", "30" } )
+	public double radius;
+
+	private ModelGraph graph;
+
+	private EllipsoidIterable< UnsignedShortType > maskIterable;
+
+	private ScanlineEllipsoidIterable< UnsignedShortType > scanlineIterable;
+
+	@Setup
+	public void setup()
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1., 0, 0, 0,
+				0, 1., 0, 0,
+				0, 0, 2., 0 );
+		final Random ran = new Random( 1l );
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( 256, 256, 128 );
+		for ( final UnsignedShortType p : img )
+			p.set( ran.nextInt( 4096 ) );
+		final Source< UnsignedShortType > source = new RandomAccessibleIntervalSource<>( img, new UnsignedShortType(), transform, "Benchmark source" );
+
+		graph = new ModelGraph();
+		final double[][] cov = new double[][] {
+				{ radius * radius, 0.2 * radius * radius, 0 },
+				{ 0.2 * radius * radius, radius * radius, 0 },
+				{ 0, 0, radius * radius } };
+		for ( int i = 0; i < 100; i++ )
+		{
+			final double[] pos = new double[] {
+					256. * ran.nextDouble(),
+					256. * ran.nextDouble(),
+					256. * ran.nextDouble() };
+			graph.addVertex().init( 0, pos, cov );
+		}
+
+		maskIterable = new EllipsoidIterable<>( source );
+		scanlineIterable = new ScanlineEllipsoidIterable<>( source );
+	}
+
+	@Benchmark
+	public double benchmarkEllipsoidIterable()
+	{
+		double sum = 0.;
+		for ( final Spot spot : graph.vertices() )
+		{
+			maskIterable.reset( spot );
+			for ( final UnsignedShortType p : maskIterable )
+				sum += p.getRealDouble();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double benchmarkScanlineEllipsoidIterable()
+	{
+		double sum = 0.;
+		for ( final Spot spot : graph.vertices() )
+		{
+			scanlineIterable.reset( spot );
+			for ( final UnsignedShortType p : scanlineIterable )
+				sum += p.getRealDouble();
+		}
+		return sum;
+	}
+
+	public static void main( final String[] args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( EllipsoidIterableBenchmark.class.getSimpleName() )
+				.build();
+		new Runner( opt ).run();
+	}
+}
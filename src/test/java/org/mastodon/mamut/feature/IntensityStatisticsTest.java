@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class IntensityStatisticsTest
+{
+
+	@Test
+	public void testUnsignedShort()
+	{
+		final Random ran = new Random( 1l );
+		final IntensityStatistics stats = IntensityStatistics.create( new UnsignedShortType() );
+		assertTrue( "Expected a histogram for UnsignedShortType.", stats instanceof IntensityStatistics.HistogramStatistics );
+		for ( int n = 1; n < 200; n++ )
+		{
+			final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( n );
+			for ( final UnsignedShortType p : img )
+				p.set( ran.nextInt( 1 + n * 300 ) );
+			check( img, stats );
+		}
+	}
+
+	@Test
+	public void testByte()
+	{
+		final Random ran = new Random( 2l );
+		final IntensityStatistics stats = IntensityStatistics.create( new ByteType() );
+		assertTrue( "Expected a histogram for ByteType.", stats instanceof IntensityStatistics.HistogramStatistics );
+		for ( int n = 1; n < 200; n++ )
+		{
+			final Img< ByteType > img = ArrayImgs.bytes( n );
+			for ( final ByteType p : img )
+				p.set( ( byte ) ( ran.nextInt( 256 ) - 128 ) );
+			check( img, stats );
+		}
+	}
+
+	@Test
+	public void testFloat()
+	{
+		final Random ran = new Random( 3l );
+		final IntensityStatistics stats = IntensityStatistics.create( new FloatType() );
+		assertTrue( "Expected selection for FloatType.", stats instanceof IntensityStatistics.SelectionStatistics );
+		for ( int n = 1; n < 200; n++ )
+		{
+			final Img< FloatType > img = ArrayImgs.floats( n );
+			for ( final FloatType p : img )
+				p.set( ran.nextInt( 5 ) == 0 ? 10f : ( float ) ran.nextGaussian() );
+			check( img, stats );
+		}
+	}
+
+	/**
+	 * Compares with the statistics computed by sorting the values.
+	 */
+	private static void check( final Iterable< ? extends RealType< ? > > pixels, final IntensityStatistics stats )
+	{
+		int n = 0;
+		for ( @SuppressWarnings( "unused" )
+		final RealType< ? > p : pixels )
+			n++;
+		final double[] array = new double[ n ];
+		int i = 0;
+		double sum = 0.;
+		for ( final RealType< ? > p : pixels )
+		{
+			array[ i++ ] = p.getRealDouble();
+			sum += p.getRealDouble();
+		}
+		final double mean = sum / n;
+		double sum2 = 0.;
+		for ( final double val : array )
+			sum2 += ( val - mean ) * ( val - mean );
+		final double std = n < 2 ? 0. : Math.sqrt( sum2 / ( n - 1 ) );
+		Arrays.sort( array );
+
+		stats.compute( pixels );
+		assertEquals( "Unexpected size.", n, stats.size );
+		assertEquals( "Unexpected sum.", sum, stats.sum, 0. );
+		assertEquals( "Unexpected mean.", mean, stats.mean, 0. );
+		assertEquals( "Unexpected min.", array[ 0 ], stats.min, 0. );
+		assertEquals( "Unexpected max.", array[ n - 1 ], stats.max, 0. );
+		assertEquals( "Unexpected median.", array[ n / 2 ], stats.median, 0. );
+		assertEquals( "Unexpected std.", std, stats.std, 1e-9 * ( 1. + std ) );
+	}
+}
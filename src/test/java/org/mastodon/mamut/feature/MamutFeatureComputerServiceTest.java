@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.mamut.importer.trackmate.MaMuTExporterTest;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.project.MamutProjectIO;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.Context;
+
+import bdv.viewer.ViewerOptions;
+import mpicbg.spim.data.SpimDataException;
+
+public class MamutFeatureComputerServiceTest
+{
+
+	private static final String MASTODON_FILE = MaMuTExporterTest.class.getResource( "mamutproject" ).getFile();
+
+	/**
+	 * A feature that is removed from the feature model and then computed
+	 * again must have values for all spots, the modified ones included.
+	 */
+	@Test
+	public void testIncrementalComputeAfterFeatureWasCleared() throws IOException, SpimDataException
+	{
+		final MamutProject project = new MamutProjectIO().load( MASTODON_FILE );
+		final SharedBigDataViewerData sharedBdvData = SharedBigDataViewerData.fromSpimDataXmlFile(
+				project.getDatasetXmlFile().getAbsolutePath(), new ViewerOptions(), () -> {} );
+		final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			model.loadRaw( reader );
+		}
+
+		try (final Context context = new Context())
+		{
+			final MamutFeatureComputerService service = context.getService( MamutFeatureComputerService.class );
+			service.setModel( model );
+			service.setSharedBdvData( sharedBdvData );
+
+			// Compute everything once, changes are tracked from now on.
+			compute( service, model.getFeatureModel(), SpotQuickMeanIntensityFeature.SPEC );
+
+			// Computing another feature removes this one from the feature model.
+			compute( service, model.getFeatureModel(), SpotRadiusFeature.SPEC );
+			assertNull( model.getFeatureModel().getFeature( SpotQuickMeanIntensityFeature.SPEC ) );
+
+			// Modify a spot, then compute the feature again.
+			final Spot spot = model.getGraph().vertices().iterator().next();
+			spot.move( 3., 0 );
+			compute( service, model.getFeatureModel(), SpotQuickMeanIntensityFeature.SPEC );
+		}
+
+		final SpotQuickMeanIntensityFeature incremental =
+				( SpotQuickMeanIntensityFeature ) model.getFeatureModel().getFeature( SpotQuickMeanIntensityFeature.SPEC );
+
+		// Compare against a computation from scratch.
+		try (final Context context = new Context())
+		{
+			final MamutFeatureComputerService service = context.getService( MamutFeatureComputerService.class );
+			service.setModel( model );
+			service.setSharedBdvData( sharedBdvData );
+			final SpotQuickMeanIntensityFeature expected =
+					( SpotQuickMeanIntensityFeature ) service.compute( true, SpotQuickMeanIntensityFeature.SPEC )
+							.get( SpotQuickMeanIntensityFeature.SPEC );
+
+			for ( final Spot spot : model.getGraph().vertices() )
+			{
+				for ( int source = 0; source < sharedBdvData.getSources().size(); source++ )
+				{
+					final double value = incremental.getMean( spot, source );
+					assertFalse( "No value for " + spot, Double.isNaN( value ) );
+					assertEquals( "Unexpected value for " + spot, expected.getMean( spot, source ), value, 1e-9 );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the specified feature and passes it to the feature model the
+	 * way MamutFeatureComputation does: all the features the service can
+	 * compute are first removed from the feature model.
+	 */
+	private static void compute( final MamutFeatureComputerService service, final FeatureModel featureModel, final FeatureSpec< ?, ? > spec )
+	{
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > features = service.compute( spec );
+		featureModel.pauseListeners();
+		final Collection< FeatureSpec< ?, ? > > toClear = new ArrayList<>();
+		for ( final FeatureSpec< ?, ? > featureSpec : featureModel.getFeatureSpecs() )
+			if ( null != service.getFeatureComputerFor( featureSpec ) )
+				toClear.add( featureSpec );
+		toClear.forEach( featureModel::clear );
+		features.values().forEach( featureModel::declareFeature );
+		featureModel.resumeListeners();
+	}
+}
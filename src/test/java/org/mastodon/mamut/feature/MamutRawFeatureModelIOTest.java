@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.mamut.importer.trackmate.MaMuTExporterTest;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.scijava.Context;
+
+public class MamutRawFeatureModelIOTest
+{
+
+	private static final String MASTODON_FILE = MaMuTExporterTest.class.getResource( "mamutproject" ).getFile();
+
+	/**
+	 * Features read lazily must have the same values as features read right
+	 * away.
+	 */
+	@Test
+	public void testLazyRoundTrip() throws IOException, ClassNotFoundException
+	{
+		final MamutProject project = new MamutProject( MASTODON_FILE );
+		try (final Context context = new Context())
+		{
+			final Model expected = load( context, project, false );
+			final Model actual = load( context, project, true );
+
+			final FeatureModel expectedFeatures = expected.getFeatureModel();
+			final FeatureModel actualFeatures = actual.getFeatureModel();
+			assertEquals( expectedFeatures.getFeatureSpecs(), actualFeatures.getFeatureSpecs() );
+
+			for ( final FeatureSpec< ?, ? > spec : expectedFeatures.getFeatureSpecs() )
+			{
+				if ( spec.getTargetClass() != Spot.class )
+					continue;
+
+				@SuppressWarnings( "unchecked" )
+				final Feature< Spot > expectedFeature = ( Feature< Spot > ) expectedFeatures.getFeature( spec );
+				@SuppressWarnings( "unchecked" )
+				final Feature< Spot > actualFeature = ( Feature< Spot > ) actualFeatures.getFeature( spec );
+				assertNotNull( "Feature " + spec.getKey() + " was not loaded.", actualFeature );
+				for ( final FeatureProjection< Spot > expectedProjection : expectedFeature.projections() )
+				{
+					final FeatureProjection< Spot > actualProjection = actualFeature.project( expectedProjection.getKey() );
+					final Iterator< Spot > it = actual.getGraph().vertices().iterator();
+					for ( final Spot spot : expected.getGraph().vertices() )
+					{
+						final Spot other = it.next();
+						assertEquals( expectedProjection.isSet( spot ), actualProjection.isSet( other ) );
+						if ( expectedProjection.isSet( spot ) )
+							assertEquals( "Unexpected value of " + expectedProjection.getKey() + " for " + spot,
+									expectedProjection.value( spot ), actualProjection.value( other ), 0. );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A lazy feature retrieved concurrently is loaded once.
+	 */
+	@Test
+	public void testConcurrentRetrieval() throws Exception
+	{
+		final MamutProject project = new MamutProject( MASTODON_FILE );
+		try (final Context context = new Context())
+		{
+			final Model model = load( context, project, true );
+			final FeatureModel featureModel = model.getFeatureModel();
+			final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+			try
+			{
+				final List< Future< Feature< ? > > > futures = new ArrayList<>();
+				for ( int i = 0; i < 4; i++ )
+					futures.add( executor.submit( () -> featureModel.getFeature( SpotRadiusFeature.SPEC ) ) );
+				final Feature< ? > feature = futures.get( 0 ).get();
+				assertNotNull( feature );
+				for ( final Future< Feature< ? > > future : futures )
+					assertSame( feature, future.get() );
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * A lazy feature is not read from a project that was saved over since it
+	 * was opened.
+	 */
+	@Test
+	public void testProjectChanged() throws IOException, ClassNotFoundException
+	{
+		final Path folder = Files.createTempDirectory( "mastodon-lazy-features" );
+		try
+		{
+			copy( new File( MASTODON_FILE ).toPath(), folder );
+			final MamutProject project = new MamutProject( folder.toFile() );
+			try (final Context context = new Context())
+			{
+				final Model model = new Model();
+				// Keep the background loader waiting.
+				final WriteLock lock = model.getGraph().getLock().writeLock();
+				lock.lock();
+				try
+				{
+					try (final MamutProject.ProjectReader reader = project.openForReading())
+					{
+						final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
+						MamutRawFeatureModelIO.deserialize( context, model, idmap, reader, project );
+					}
+					final FeatureModel featureModel = model.getFeatureModel();
+					assertFalse( featureModel.isLoaded( SpotRadiusFeature.SPEC ) );
+					assertTrue( featureModel.getFeatureSpecs().contains( SpotRadiusFeature.SPEC ) );
+
+					try (final MamutProject.ProjectWriter writer = project.openForWriting())
+					{
+						new Model().saveRaw( writer );
+					}
+					assertNull( featureModel.getFeature( SpotRadiusFeature.SPEC ) );
+					assertFalse( featureModel.getFeatureSpecs().contains( SpotRadiusFeature.SPEC ) );
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		}
+		finally
+		{
+			try (Stream< Path > paths = Files.walk( folder ))
+			{
+				paths.sorted( Comparator.reverseOrder() ).map( Path::toFile ).forEach( File::delete );
+			}
+		}
+	}
+
+	private static Model load( final Context context, final MamutProject project, final boolean lazy ) throws IOException, ClassNotFoundException
+	{
+		final Model model = new Model();
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			final FileIdToGraphMap< Spot, Link > idmap = model.loadRaw( reader );
+			MamutRawFeatureModelIO.deserialize( context, model, idmap, reader, lazy ? project : null );
+		}
+		return model;
+	}
+
+	private static void copy( final Path source, final Path target ) throws IOException
+	{
+		try (Stream< Path > paths = Files.walk( source ))
+		{
+			for ( final Path path : ( Iterable< Path > ) paths::iterator )
+			{
+				final Path copy = target.resolve( source.relativize( path ).toString() );
+				if ( Files.isDirectory( path ) )
+					Files.createDirectories( copy );
+				else
+					Files.copy( path, copy, StandardCopyOption.REPLACE_EXISTING );
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.Source;
+import net.imglib2.Cursor;
+import net.imglib2.Localizable;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.LinAlgHelpers;
+import net.imglib2.util.Util;
+
+public class ScanlineEllipsoidIterableTest
+{
+
+	/**
+	 * Tests that we iterate over exactly the same pixels, in the same order,
+	 * as {@link EllipsoidIterable}, for random spots, some of them crossing
+	 * the image borders.
+	 */
+	@Test
+	public void testSameAsEllipsoidIterable()
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1., 0, 0, 0,
+				0, 1., 0, 0,
+				0, 0, 2., 0 );
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 64, 64, 32 );
+		final Source< UnsignedByteType > source = new RandomAccessibleIntervalSource<>( img, new UnsignedByteType(), transform, "Test source" );
+
+		final Random ran = new Random( 1l );
+		final ModelGraph graph = new ModelGraph();
+		final double[][] A = new double[ 3 ][ 3 ];
+		final double[][] cov = new double[ 3 ][ 3 ];
+		for ( int i = 0; i < 200; i++ )
+		{
+			for ( int r = 0; r < 3; r++ )
+				for ( int c = 0; c < 3; c++ )
+					A[ r ][ c ] = 6. * ran.nextGaussian();
+			LinAlgHelpers.multABT( A, A, cov );
+			for ( int d = 0; d < 3; d++ )
+				cov[ d ][ d ] += 0.5;
+			final double[] pos = new double[] {
+					-10. + 84. * ran.nextDouble(),
+					-10. + 84. * ran.nextDouble(),
+					-10. + 84. * ran.nextDouble() };
+			graph.addVertex().init( 0, pos, cov );
+		}
+
+		final EllipsoidIterable< UnsignedByteType > expected = new EllipsoidIterable<>( source );
+		final ScanlineEllipsoidIterable< UnsignedByteType > actual = new ScanlineEllipsoidIterable<>( source );
+		for ( final Spot spot : graph.vertices() )
+		{
+			expected.reset( spot );
+			actual.reset( spot );
+			final List< long[] > expectedPositions = positions( expected.localizingCursor() );
+			final List< long[] > actualPositions = positions( actual.localizingCursor() );
+			assertEquals( "Unexpected number of pixels iterated.", expectedPositions.size(), actualPositions.size() );
+			assertEquals( "Unexpected size.", expectedPositions.size(), actual.size() );
+			for ( int i = 0; i < expectedPositions.size(); i++ )
+				assertArrayEquals( "Unexpected position iterated.", expectedPositions.get( i ), actualPositions.get( i ) );
+			for ( int d = 0; d < 3; d++ )
+				assertEquals( "Unexpected spot center position.", expected.getDoublePosition( d ), actual.getDoublePosition( d ), 0. );
+		}
+	}
+
+	/**
+	 * Tests that we iterate over pixels at most once, and that we iterate
+	 * inside spots.
+	 */
+	@Test
+	public void testIteration()
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.set(
+				1., 0, 0, 0,
+				0, 1., 0, 0,
+				0, 0, 2., 0 );
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 100, 100, 50 );
+		final Source< UnsignedByteType > source = new RandomAccessibleIntervalSource<>( img, new UnsignedByteType(), transform, "Test source" );
+
+		final ModelGraph graph = new ModelGraph();
+		graph.addVertex().init( 0,
+				new double[] { 50, 50, 50 },
+				new double[][] {
+						{ 210, 100, 0 },
+						{ 100, 110, 10 },
+						{ 0, 10, 100 }
+				} );
+		graph.addVertex().init( 0,
+				new double[] { 20, 80, 40 },
+				new double[][] {
+						{ 90, 0, 0 },
+						{ 0, 90, 0 },
+						{ 0, 0, 500 }
+				} );
+		graph.addVertex().init( 0,
+				new double[] { 40, 10, 40 },
+				new double[][] {
+						{ 90, -80, 0 },
+						{ -80, 90, 0 },
+						{ 0, 0, 90 }
+				} );
+
+		final ScanlineEllipsoidIterable< UnsignedByteType > ellipsoidIter = new ScanlineEllipsoidIterable<>( source );
+		graph.vertices().forEach( spot -> {
+			ellipsoidIter.reset( spot );
+			ellipsoidIter.forEach( t -> t.inc() );
+		} );
+
+		final List< Predicate< Localizable > > testers = graph.vertices()
+				.stream()
+				.map( spot -> SpotTestUtils.isInsideTest( spot, transform ) )
+				.collect( Collectors.toList() );
+
+		final Cursor< UnsignedByteType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final int val = cursor.get().get();
+			if ( val > 1 )
+				fail( "Expected values to be 0 or 1, but found " + val + " at location " + Util.printCoordinates( cursor ) );
+
+			boolean inside = false;
+			for ( final Predicate< Localizable > tester : testers )
+				inside = inside || tester.test( cursor );
+			if ( val == 0 )
+				assertFalse( "Found position " + Util.printCoordinates( cursor ) + ", to be inside a spot, expected it to be outside", inside );
+			else
+				assertTrue( "Found position " + Util.printCoordinates( cursor ) + ", to be outside a spot, expected it to be inside", inside );
+		}
+	}
+
+	private static List< long[] > positions( final Cursor< ? > cursor )
+	{
+		final List< long[] > positions = new ArrayList<>();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final long[] pos = new long[ 3 ];
+			cursor.localize( pos );
+			positions.add( pos );
+		}
+		return positions;
+	}
+}
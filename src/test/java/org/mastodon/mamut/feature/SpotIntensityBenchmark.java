@@ -55,6 +55,40 @@ public class SpotIntensityBenchmark
 		windowManager.getProjectManager().open( project );
 		final Model model = windowManager.getAppModel().getModel();
 
+		final Context context = windowManager.getContext();
+		final MamutFeatureComputerService featureComputerService = context.getService( MamutFeatureComputerService.class );
+		featureComputerService.setModel( model );
+		featureComputerService.setSharedBdvData( windowManager.getAppModel().getSharedBdvData() );
+
+		/*
+		 * 1.0. Scaling of the spot intensity feature with the number of
+		 * threads. Time-points are processed in parallel, so we run this on
+		 * the full model.
+		 */
+
+		final SpotIntensityFeatureComputer computer = ( SpotIntensityFeatureComputer ) featureComputerService.getFeatureComputerFor( SpotIntensityFeature.SPEC );
+		final int maxThreads = Runtime.getRuntime().availableProcessors();
+		System.out.println( "Computing spot intensity with 1 to " + maxThreads + " threads..." );
+		double reference = Double.NaN;
+		for ( int nThreads = 1;; nThreads = Math.min( 2 * nThreads, maxThreads ) )
+		{
+			computer.setNumThreads( nThreads );
+			// Warm-up.
+			featureComputerService.compute( true, SpotIntensityFeature.SPEC );
+			final int nRuns = 3;
+			final StopWatch stopWatch = StopWatch.createAndStart();
+			for ( int i = 0; i < nRuns; i++ )
+				featureComputerService.compute( true, SpotIntensityFeature.SPEC );
+			stopWatch.stop();
+			final double time = stopWatch.nanoTime() / 1e9 / nRuns;
+			if ( nThreads == 1 )
+				reference = time;
+			System.out.println( String.format( "  %2d threads: %.2f s - speedup x%.2f", nThreads, time, reference / time ) );
+			if ( nThreads == maxThreads )
+				break;
+		}
+		computer.setNumThreads( maxThreads );
+
 		// Just keep the 1st time-point, or else....
 		System.out.println( "Removing all time-points but the first one." );
 		model.getSpatioTemporalIndex().getSpatialIndex( 0 );
@@ -72,10 +106,6 @@ public class SpotIntensityBenchmark
 		 * 1.1a. Compute spot intensity feature for all.
 		 */
 
-		final Context context = windowManager.getContext();
-		final MamutFeatureComputerService featureComputerService = context.getService( MamutFeatureComputerService.class );
-		featureComputerService.setModel( model );
-		featureComputerService.setSharedBdvData( windowManager.getAppModel().getSharedBdvData() );
 		System.out.println( "Computing spot intensity..." );
 		for ( int i = 0; i < 5; i++ )
 		{
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.importer;
+
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import net.imglib2.util.StopWatch;
+
+/**
+ * Compares adding tracks to a model one object at a time, with the graph and
+ * property listeners notified for each of them, to adding them in a bulk-load
+ * session of a {@link ModelImporter}, in a single batch or in one batch per
+ * time-point (as the TGMM importer does).
+ */
+public class ModelImporterBenchmark
+{
+
+	private static final int N_TRACKS = 1000;
+
+	private static final int N_TIMEPOINTS = 200;
+
+	private static final int N_RUNS = 5;
+
+	public static void main( final String[] args )
+	{
+		System.out.println( String.format( "Adding %d tracks over %d time-points (%d spots).", N_TRACKS, N_TIMEPOINTS, N_TRACKS * N_TIMEPOINTS ) );
+
+		// Warm-up.
+		addWithListeners( new Model() );
+		addInSession( new Model() );
+		addInBatches( new Model() );
+
+		for ( int i = 0; i < N_RUNS; i++ )
+		{
+			final Model m1 = new Model();
+			final StopWatch stopWatch1 = StopWatch.createAndStart();
+			addWithListeners( m1 );
+			stopWatch1.stop();
+
+			final Model m2 = new Model();
+			final StopWatch stopWatch2 = StopWatch.createAndStart();
+			addInSession( m2 );
+			stopWatch2.stop();
+
+			final Model m3 = new Model();
+			final StopWatch stopWatch3 = StopWatch.createAndStart();
+			addInBatches( m3 );
+			stopWatch3.stop();
+
+			final double t1 = stopWatch1.nanoTime() / 1e9;
+			final double t2 = stopWatch2.nanoTime() / 1e9;
+			final double t3 = stopWatch3.nanoTime() / 1e9;
+			System.out.println( String.format( "  with listeners: %.2f s - bulk-load session: %.2f s (x%.2f) - batched per time-point: %.2f s (x%.2f)", t1, t2, t1 / t2, t3, t1 / t3 ) );
+		}
+	}
+
+	private static void addWithListeners( final Model model )
+	{
+		final Lock lock = model.getGraph().getLock().writeLock();
+		lock.lock();
+		try
+		{
+			addTracks( model.getGraph() );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		model.setUndoPoint();
+	}
+
+	private static void addInSession( final Model model )
+	{
+		new ModelImporter( model )
+		{
+			{
+				startImport();
+				startInsertion();
+				try
+				{
+					addTracks( model.getGraph() );
+				}
+				finally
+				{
+					finishInsertion();
+					finishImport();
+				}
+			}
+		};
+	}
+
+	private static void addInBatches( final Model model )
+	{
+		new ModelImporter( model )
+		{
+			{
+				final ModelGraph graph = model.getGraph();
+				final Spot previous = graph.vertexRef();
+				final Spot spot = graph.vertexRef();
+				final Link edge = graph.edgeRef();
+				final double[] pos = new double[ 3 ];
+				final int[] previousIds = new int[ N_TRACKS ];
+				startImport();
+				try
+				{
+					for ( int t = 0; t < N_TIMEPOINTS; t++ )
+					{
+						startInsertion();
+						try
+						{
+							pos[ 2 ] = t;
+							for ( int track = 0; track < N_TRACKS; track++ )
+							{
+								pos[ 0 ] = 10. * ( track % 100 );
+								pos[ 1 ] = 10. * ( track / 100 );
+								graph.addVertex( spot ).init( t, pos, 2. );
+								if ( t > 0 )
+									graph.addEdge( graph.getGraphIdBimap().getVertex( previousIds[ track ], previous ), spot, edge ).init();
+								previousIds[ track ] = graph.getGraphIdBimap().getVertexId( spot );
+							}
+						}
+						finally
+						{
+							finishInsertion();
+						}
+					}
+				}
+				finally
+				{
+					finishImport();
+					graph.releaseRef( previous );
+					graph.releaseRef( spot );
+					graph.releaseRef( edge );
+				}
+			}
+		};
+	}
+
+	private static void addTracks( final ModelGraph graph )
+	{
+		final Spot previous = graph.vertexRef();
+		final Spot spot = graph.vertexRef();
+		final Link edge = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		for ( int track = 0; track < N_TRACKS; track++ )
+		{
+			pos[ 0 ] = 10. * ( track % 100 );
+			pos[ 1 ] = 10. * ( track / 100 );
+			for ( int t = 0; t < N_TIMEPOINTS; t++ )
+			{
+				pos[ 2 ] = t;
+				graph.addVertex( spot ).init( t, pos, 2. );
+				if ( t > 0 )
+					graph.addEdge( previous, spot, edge ).init();
+				previous.refTo( spot );
+			}
+		}
+		graph.releaseRef( previous );
+		graph.releaseRef( spot );
+		graph.releaseRef( edge );
+	}
+}
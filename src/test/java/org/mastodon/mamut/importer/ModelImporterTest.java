@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class ModelImporterTest
+{
+
+	@Test
+	public void testImport() throws Exception
+	{
+		final Model model = new Model();
+		addSpots( model.getGraph(), 10 );
+		assertEquals( 10, model.getSpatioTemporalIndex().getSpatialIndex( 0 ).size() );
+
+		new Importer( model, true, 2, 5 );
+		assertEquals( 10, model.getGraph().vertices().size() );
+		assertEquals( 10, model.getSpatioTemporalIndex().getSpatialIndex( 0 ).size() );
+		assertFalse( model.getGraph().getLock().isWriteLocked() );
+	}
+
+	@Test
+	public void testAppend() throws Exception
+	{
+		final Model model = new Model();
+		addSpots( model.getGraph(), 10 );
+
+		new Importer( model, false, 2, 5 );
+		assertEquals( 20, model.getGraph().vertices().size() );
+		assertEquals( 20, model.getSpatioTemporalIndex().getSpatialIndex( 0 ).size() );
+		assertFalse( model.getGraph().getLock().isWriteLocked() );
+	}
+
+	private static void addSpots( final ModelGraph graph, final int n )
+	{
+		final Spot ref = graph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		for ( int i = 0; i < n; ++i )
+		{
+			pos[ 0 ] = i;
+			graph.addVertex( ref ).init( 0, pos, 1. );
+		}
+		graph.releaseRef( ref );
+	}
+
+	/**
+	 * Imports batches of spots. Between batches, checks that the model can be
+	 * read from another thread, and that the spatial index does not reference
+	 * more spots than the graph contains. After the first batch, publishes
+	 * the imported spots, and checks that they are indexed.
+	 */
+	private static final class Importer extends ModelImporter
+	{
+		Importer( final Model model, final boolean clear, final int nBatches, final int batchSize ) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			super( model );
+			final ExecutorService reader = Executors.newSingleThreadExecutor();
+			final int nExisting = clear ? 0 : model.getGraph().vertices().size();
+			startImport( clear );
+			try
+			{
+				for ( int i = 0; i < nBatches; i++ )
+				{
+					final Future< int[] > sizes = reader.submit( () -> {
+						final Lock lock = model.getGraph().getLock().readLock();
+						lock.lock();
+						try
+						{
+							return new int[] {
+									model.getSpatioTemporalIndex().getSpatialIndex( 0 ).size(),
+									model.getGraph().vertices().size() };
+						}
+						finally
+						{
+							lock.unlock();
+						}
+					} );
+					final int[] indexedAndTotal = sizes.get( 10, TimeUnit.SECONDS );
+					assertEquals( nExisting + i * batchSize, indexedAndTotal[ 1 ] );
+					assertTrue( indexedAndTotal[ 0 ] >= nExisting );
+					assertTrue( indexedAndTotal[ 0 ] <= indexedAndTotal[ 1 ] );
+					if ( i == 1 )
+						assertEquals( nExisting + batchSize, indexedAndTotal[ 0 ] );
+
+					startInsertion();
+					try
+					{
+						assertTrue( model.getGraph().getLock().isWriteLockedByCurrentThread() );
+						addSpots( model.getGraph(), batchSize );
+					}
+					finally
+					{
+						finishInsertion();
+					}
+					if ( i == 0 )
+						publishInsertions();
+				}
+			}
+			finally
+			{
+				finishImport();
+				reader.shutdown();
+			}
+		}
+	}
+}
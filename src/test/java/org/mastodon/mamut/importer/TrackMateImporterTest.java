@@ -63,6 +63,7 @@ import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.ui.ProgressListener;
 import org.scijava.Context;
 
 public class TrackMateImporterTest
@@ -216,6 +217,35 @@ public class TrackMateImporterTest
 			false,
 			true };
 
+	@Test
+	public void testProgress() throws Exception
+	{
+		final int[] last = new int[] { -1, -1 };
+		final ProgressListener progress = new ProgressListener()
+		{
+			@Override
+			public void showStatus( final String string )
+			{}
+
+			@Override
+			public void showProgress( final int current, final int total )
+			{
+				assertTrue( "Progress should not go backwards.", current >= last[ 0 ] );
+				last[ 0 ] = current;
+				last[ 1 ] = total;
+			}
+
+			@Override
+			public void clearStatus()
+			{}
+		};
+		final Model model = new Model();
+		new TrackMateImporter( new File( TRACKMATE_FILE ) ).readModel( model, null, progress );
+		assertEquals( "Unexpected number of vertices.", EXPECTED_N_SPOTS, model.getGraph().vertices().size() );
+		assertEquals( "Unexpected number of edges.", EXPECTED_N_EDGES, model.getGraph().edges().size() );
+		assertTrue( "Progress should have been reported.", last[ 0 ] > 0 && last[ 0 ] <= last[ 1 ] );
+	}
+
 	@Test
 	public void test() throws Exception
 	{
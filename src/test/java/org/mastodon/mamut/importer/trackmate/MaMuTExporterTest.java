@@ -37,8 +37,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -46,12 +49,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.junit.Test;
 import org.mastodon.collection.RefSet;
@@ -118,6 +124,36 @@ public class MaMuTExporterTest
 		}
 	}
 
+	/**
+	 * The streamed export must have the same bytes as the file JDOM writes for
+	 * the same document with its pretty format, which the exporter used
+	 * before.
+	 */
+	@Test
+	public void testSameBytesAsJdom() throws IOException, SpimDataException, JDOMException
+	{
+		try
+		{
+			export( model -> {
+				// Exercise escaping in attribute values.
+				final Spot spot = model.getGraph().vertices().iterator().next();
+				spot.setLabel( "a<b> & \"c\" 'd'\te\r\nf" );
+			} );
+			final File file = new File( EXPORT_FILE );
+			final String streamed = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+
+			final Document document = new SAXBuilder().build( file );
+			final ByteArrayOutputStream jdom = new ByteArrayOutputStream();
+			new XMLOutputter( Format.getPrettyFormat() ).output( document, jdom );
+
+			assertEquals( jdom.toString( "UTF-8" ), streamed );
+		}
+		finally
+		{
+			new File( EXPORT_FILE ).delete();
+		}
+	}
+
 	private void reloadAndTestAgainst( final Model sourceModel )
 	{
 		// We load the data directly with TrackMate!
@@ -319,6 +355,11 @@ public class MaMuTExporterTest
 
 
 	private Model export() throws IOException, SpimDataException
+	{
+		return export( model -> {} );
+	}
+
+	private Model export( final Consumer< Model > edit ) throws IOException, SpimDataException
 	{
 		/*
 		 * 1. Load a regular Mastodon project.
@@ -350,6 +391,8 @@ public class MaMuTExporterTest
 			featureModel.declareFeature( features.get( spec ) );
 		featureModel.resumeListeners();
 
+		edit.accept( model );
+
 		/*
 		 * 2. Export it to a MaMuT file.
 		 */
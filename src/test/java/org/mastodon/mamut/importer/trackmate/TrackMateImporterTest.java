@@ -0,0 +1,112 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.importer.trackmate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.Spot;
+
+public class TrackMateImporterTest
+{
+
+	private static String file( final String secondSpot )
+	{
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<TrackMate version=\"3.0\">\n"
+				+ "  <Model spatialunits=\"um\" timeunits=\"frame\">\n"
+				+ "    <AllSpots nspots=\"2\">\n"
+				+ "      <SpotsInFrame frame=\"0\">\n"
+				+ "        <Spot ID=\"0\" name=\"a\" VISIBILITY=\"1\" POSITION_X=\"1.0\" POSITION_Y=\"2.0\" POSITION_Z=\"3.0\" RADIUS=\"1.0\" FRAME=\"0\" />\n"
+				+ "        " + secondSpot + "\n"
+				+ "      </SpotsInFrame>\n"
+				+ "    </AllSpots>\n"
+				+ "  </Model>\n"
+				+ "</TrackMate>\n";
+	}
+
+	private static Model read( final String content ) throws IOException
+	{
+		final File file = File.createTempFile( "trackmate", ".xml" );
+		try
+		{
+			Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+			final Model model = new Model();
+			new TrackMateImporter( file ).readModel( model, null );
+			return model;
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSpotPositions() throws IOException
+	{
+		final Model model = read( file( "<Spot ID=\"1\" name=\"b\" VISIBILITY=\"1\" POSITION_X=\"4.0\" POSITION_Y=\"5.0\" POSITION_Z=\"6.0\" RADIUS=\"1.0\" FRAME=\"0\" />" ) );
+		assertEquals( 2, model.getGraph().vertices().size() );
+		final double[] pos = new double[ 3 ];
+		for ( final Spot spot : model.getGraph().vertices() )
+		{
+			spot.localize( pos );
+			final double[] expected = spot.getLabel().equals( "a" )
+					? new double[] { 1., 2., 3. }
+					: new double[] { 4., 5., 6. };
+			assertArrayEquals( expected, pos, 0. );
+		}
+	}
+
+	/**
+	 * A spot without a position must not get the coordinates of the spot read
+	 * before it.
+	 */
+	@Test
+	public void testSpotWithoutPosition()
+	{
+		try
+		{
+			read( file( "<Spot ID=\"1\" name=\"b\" VISIBILITY=\"1\" POSITION_X=\"4.0\" POSITION_Y=\"5.0\" RADIUS=\"1.0\" FRAME=\"0\" />" ) );
+			fail( "Importing a spot without position should fail." );
+		}
+		catch ( final IOException e )
+		{
+			assertTrue( e.getMessage(), e.getMessage().contains( "Spot 1" ) );
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.mastodon.mamut.project.MamutProject;
+
+import net.imglib2.util.StopWatch;
+
+/**
+ * Compares loading a model graph from the serialized model file to loading it
+ * from the columnar model files of a project folder.
+ */
+public class ModelColumnsIOBenchmark
+{
+
+	private static final int N_TRACKS = 5000;
+
+	private static final int N_TIMEPOINTS = 200;
+
+	private static final int N_RUNS = 5;
+
+	public static void main( final String[] args ) throws IOException
+	{
+		System.out.println( String.format( "Loading %d tracks over %d time-points (%d spots).", N_TRACKS, N_TIMEPOINTS, N_TRACKS * N_TIMEPOINTS ) );
+
+		final Model model = createModel();
+		final File serializedFolder = Files.createTempDirectory( "mastodon-serialized" ).toFile();
+		final File columnsFolder = Files.createTempDirectory( "mastodon-columns" ).toFile();
+		try
+		{
+			final MamutProject serialized = save( model, serializedFolder, false );
+			final MamutProject columns = save( model, columnsFolder, true );
+
+			// Warm-up.
+			load( serialized );
+			load( columns );
+
+			for ( int i = 0; i < N_RUNS; i++ )
+			{
+				final StopWatch stopWatch1 = StopWatch.createAndStart();
+				load( serialized );
+				stopWatch1.stop();
+
+				final StopWatch stopWatch2 = StopWatch.createAndStart();
+				load( columns );
+				stopWatch2.stop();
+
+				final double t1 = stopWatch1.nanoTime() / 1e9;
+				final double t2 = stopWatch2.nanoTime() / 1e9;
+				System.out.println( String.format( "  serialized: %.2f s - columns: %.2f s - speedup x%.2f", t1, t2, t1 / t2 ) );
+			}
+		}
+		finally
+		{
+			delete( serializedFolder );
+			delete( columnsFolder );
+		}
+	}
+
+	private static MamutProject save( final Model model, final File folder, final boolean columnar ) throws IOException
+	{
+		final MamutProject project = new MamutProject( folder );
+		project.setRawModelColumnar( columnar );
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			model.saveRaw( writer );
+		}
+		return project;
+	}
+
+	private static void load( final MamutProject project ) throws IOException
+	{
+		final Model model = new Model();
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			model.loadRaw( reader );
+		}
+	}
+
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot previous = graph.vertexRef();
+		final Spot spot = graph.vertexRef();
+		final Link edge = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		for ( int track = 0; track < N_TRACKS; track++ )
+		{
+			pos[ 0 ] = 10. * ( track % 100 );
+			pos[ 1 ] = 10. * ( track / 100 );
+			for ( int t = 0; t < N_TIMEPOINTS; t++ )
+			{
+				pos[ 2 ] = t;
+				graph.addVertex( spot ).init( t, pos, 2. );
+				spot.setLabel( "Track " + track );
+				if ( t > 0 )
+					graph.addEdge( previous, spot, edge ).init();
+				previous.refTo( spot );
+			}
+		}
+		graph.releaseRef( previous );
+		graph.releaseRef( spot );
+		graph.releaseRef( edge );
+		return model;
+	}
+
+	private static void delete( final File folder )
+	{
+		final File[] files = folder.listFiles();
+		if ( files != null )
+			for ( final File file : files )
+				file.delete();
+		folder.delete();
+	}
+}
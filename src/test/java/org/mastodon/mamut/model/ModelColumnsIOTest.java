@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.mamut.project.LargeByteBuffer;
+import org.mastodon.mamut.project.MamutProject;
+
+public class ModelColumnsIOTest
+{
+
+	@Test
+	public void testDirectory() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-columns" ).toFile();
+		try
+		{
+			testRoundTrip( folder );
+		}
+		finally
+		{
+			for ( final File file : folder.listFiles() )
+				file.delete();
+			folder.delete();
+		}
+	}
+
+	@Test
+	public void testZip() throws IOException
+	{
+		final File file = File.createTempFile( "mastodon-columns", ".mastodon" );
+		try
+		{
+			testRoundTrip( file );
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Saving over columns that are still mapped from a previous read must not
+	 * change the mapped content.
+	 */
+	@Test
+	public void testOverwriteMapped() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-columns" ).toFile();
+		try
+		{
+			final MamutProject project = new MamutProject( folder );
+			project.setRawModelColumnar( true );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				createModel().saveRaw( writer );
+			}
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				final LargeByteBuffer spots = reader.getRawSpotColumns();
+				final long size = spots.size();
+				final int numSpots = spots.getInt( 2 * Integer.BYTES );
+				final int lastLabel = spots.getInt( size - Integer.BYTES );
+				try (final MamutProject.ProjectWriter writer = project.openForWriting())
+				{
+					new Model().saveRaw( writer );
+				}
+				assertEquals( size, spots.size() );
+				assertEquals( numSpots, spots.getInt( 2 * Integer.BYTES ) );
+				assertEquals( lastLabel, spots.getInt( size - Integer.BYTES ) );
+			}
+			final Model target = new Model();
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				target.loadRaw( reader );
+			}
+			assertEquals( "The new, empty model should have been read.", 0, target.getGraph().vertices().size() );
+		}
+		finally
+		{
+			for ( final File file : folder.listFiles() )
+				file.delete();
+			folder.delete();
+		}
+	}
+
+	/**
+	 * A columnar save that stops before all columns are written must leave
+	 * the previous model in place.
+	 */
+	@Test
+	public void testInterruptedSave() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-columns" ).toFile();
+		try
+		{
+			final Model source = createModel();
+			final MamutProject project = new MamutProject( folder );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				source.saveRaw( writer );
+			}
+
+			// Switch to columns, but only write the spot columns.
+			project.setRawModelColumnar( true );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				try (final OutputStream os = writer.getRawSpotColumnsOutputStream())
+				{
+					os.write( new byte[ 16 ] );
+				}
+			}
+
+			final Model target = new Model();
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				assertFalse( "Incomplete columns must not be used.", reader.hasRawModelColumns() );
+				target.loadRaw( reader );
+			}
+			assertEquals( "The previous model should have been read.",
+					source.getGraph().vertices().size(), target.getGraph().vertices().size() );
+
+			// A complete save replaces the previous layout.
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				source.saveRaw( writer );
+			}
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				assertTrue( "Columnar model files should have been written.", reader.hasRawModelColumns() );
+			}
+			assertFalse( "The previous layout should have been removed.", new File( folder, "model.raw" ).exists() );
+		}
+		finally
+		{
+			for ( final File file : folder.listFiles() )
+				file.delete();
+			folder.delete();
+		}
+	}
+
+	/**
+	 * A label index out of the label table must be reported as an
+	 * {@link IOException}.
+	 */
+	@Test
+	public void testInvalidLabelIndex() throws IOException
+	{
+		testCorrupted( "model.spots" );
+	}
+
+	/**
+	 * A link to a spot id out of the spot columns must be reported as an
+	 * {@link IOException}.
+	 */
+	@Test
+	public void testInvalidLinkTarget() throws IOException
+	{
+		testCorrupted( "model.links" );
+	}
+
+	/**
+	 * Overwrites the last int of the specified column file, which is the
+	 * label index of the last spot or the target of the last link, with an
+	 * out-of-bounds value, and checks that reading fails.
+	 */
+	private static void testCorrupted( final String columnFile ) throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-columns" ).toFile();
+		try
+		{
+			final MamutProject project = new MamutProject( folder );
+			project.setRawModelColumnar( true );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				createModel().saveRaw( writer );
+			}
+			try (final RandomAccessFile raf = new RandomAccessFile( new File( folder, columnFile ), "rw" ))
+			{
+				raf.seek( raf.length() - Integer.BYTES );
+				raf.writeInt( 1_000_000 );
+			}
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				new Model().loadRaw( reader );
+				fail( "Reading corrupted " + columnFile + " should have failed." );
+			}
+			catch ( final IOException e )
+			{
+				// Expected.
+			}
+		}
+		finally
+		{
+			for ( final File file : folder.listFiles() )
+				file.delete();
+			folder.delete();
+		}
+	}
+
+	private static void testRoundTrip( final File projectRoot ) throws IOException
+	{
+		final Model source = createModel();
+
+		final MamutProject project = new MamutProject( projectRoot );
+		project.setRawModelColumnar( true );
+		try (final MamutProject.ProjectWriter writer = project.openForWriting())
+		{
+			source.saveRaw( writer );
+		}
+
+		final Model target = new Model();
+		try (final MamutProject.ProjectReader reader = project.openForReading())
+		{
+			assertTrue( "Columnar model files should have been written.", reader.hasRawModelColumns() );
+			target.loadRaw( reader );
+		}
+
+		final ModelGraph expected = source.getGraph();
+		final ModelGraph actual = target.getGraph();
+		assertEquals( "Unexpected number of spots.", expected.vertices().size(), actual.vertices().size() );
+		assertEquals( "Unexpected number of links.", expected.edges().size(), actual.edges().size() );
+
+		final double[] posExpected = new double[ 3 ];
+		final double[] posActual = new double[ 3 ];
+		final double[][] covExpected = new double[ 3 ][ 3 ];
+		final double[][] covActual = new double[ 3 ][ 3 ];
+		final Spot tref1 = expected.vertexRef();
+		final Spot tref2 = actual.vertexRef();
+		final Iterator< Spot > it = actual.vertices().iterator();
+		for ( final Spot se : expected.vertices() )
+		{
+			final Spot sa = it.next();
+			assertEquals( se.getTimepoint(), sa.getTimepoint() );
+			assertEquals( se.getLabel(), sa.getLabel() );
+			se.localize( posExpected );
+			sa.localize( posActual );
+			assertArrayEquals( posExpected, posActual, 0. );
+			se.getCovariance( covExpected );
+			sa.getCovariance( covActual );
+			for ( int d = 0; d < 3; ++d )
+				assertArrayEquals( covExpected[ d ], covActual[ d ], 0. );
+			assertEquals( se.getBoundingSphereRadiusSquared(), sa.getBoundingSphereRadiusSquared(), 0. );
+
+			// Same children, in the same order.
+			assertEquals( se.outgoingEdges().size(), sa.outgoingEdges().size() );
+			final Iterator< Link > lit = sa.outgoingEdges().iterator();
+			for ( final Link le : se.outgoingEdges() )
+			{
+				final Link la = lit.next();
+				assertEquals( le.getTarget( tref1 ).getInternalPoolIndex(), la.getTarget( tref2 ).getInternalPoolIndex() );
+			}
+		}
+		expected.releaseRef( tref1 );
+		actual.releaseRef( tref2 );
+
+		assertEquals( "Spatial index should have been rebuilt.",
+				source.getSpatioTemporalIndex().getSpatialIndex( 1 ).size(),
+				target.getSpatioTemporalIndex().getSpatialIndex( 1 ).size() );
+	}
+
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Random ran = new Random( 1l );
+		final Spot parent = graph.vertexRef();
+		final Spot child = graph.vertexRef();
+		final Link link = graph.edgeRef();
+		final double[] pos = new double[ 3 ];
+		final double[][] cov = new double[][] { { 4., 1., 0. }, { 1., 5., 0.5 }, { 0., 0.5, 6. } };
+		for ( int track = 0; track < 10; ++track )
+		{
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = 100. * ran.nextDouble();
+			graph.addVertex( parent ).init( 0, pos, cov );
+			for ( int t = 1; t < 5; ++t )
+			{
+				// Divide once in a while, to test the order of outgoing links.
+				final int nChildren = ( t == 2 && track % 3 == 0 ) ? 2 : 1;
+				for ( int c = 0; c < nChildren; ++c )
+				{
+					for ( int d = 0; d < 3; ++d )
+						pos[ d ] += ran.nextGaussian();
+					graph.addVertex( child ).init( t, pos, 1. + ran.nextDouble() );
+					if ( ran.nextBoolean() )
+						child.setLabel( "Spot \u00e4" + track + "-" + t + "-" + c );
+					graph.addEdge( parent, child, link ).init();
+				}
+				parent.refTo( child );
+			}
+		}
+		graph.releaseRef( parent );
+		graph.releaseRef( child );
+		graph.releaseRef( link );
+		return model;
+	}
+}
@@ -0,0 +1,285 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class ModelJournalTest
+{
+
+	@Test
+	public void testReplay() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-journal" ).toFile();
+		try
+		{
+			// Edit an empty model while journaling, then stop without saving.
+			final Model source = new Model();
+			final ModelJournal journal = ModelJournal.open( source, folder, 60000, 60000 );
+			edit( source );
+			journal.close();
+			assertNull( "No snapshot should have been written.", ModelJournal.findSnapshot( folder ) );
+
+			// Replay the log on a fresh model.
+			final Model target = new Model();
+			ModelJournal.open( target, folder, 60000, 60000 ).close();
+			assertSameGraph( source.getGraph(), target.getGraph() );
+		}
+		finally
+		{
+			deleteFolder( folder );
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-journal" ).toFile();
+		try
+		{
+			final Model source = new Model();
+			final ModelJournal journal = ModelJournal.open( source, folder, 60000, 60000 );
+			edit( source );
+			journal.compact();
+			// More edits after the snapshot go to the new log.
+			final Spot ref = source.getGraph().vertexRef();
+			source.getGraph().vertices().iterator().next().setLabel( "after compaction" );
+			source.getGraph().addVertex( ref ).init( 3, new double[] { 1., 2., 3. }, 2. );
+			source.getGraph().releaseRef( ref );
+			journal.close();
+
+			final File snapshot = ModelJournal.findSnapshot( folder );
+			assertNotNull( "A snapshot should have been written.", snapshot );
+			final Model target = new Model();
+			try (final MamutProject.ProjectReader reader = new MamutProject( snapshot ).openForReading())
+			{
+				target.loadRaw( reader );
+			}
+			ModelJournal.open( target, folder, 60000, 60000 ).discard();
+			assertSameGraph( source.getGraph(), target.getGraph() );
+			assertEquals( "Journal folder should have been deleted.", false, folder.exists() );
+		}
+		finally
+		{
+			deleteFolder( folder );
+		}
+	}
+
+	@Test
+	public void testTagReplay() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-journal" ).toFile();
+		try
+		{
+			final TagSetStructure tss = new TagSetStructure();
+			final TagSet tagSet = tss.createTagSet( "lineage" );
+			tagSet.createTag( "a", 0xFFFF0000 );
+			tagSet.createTag( "b", 0xFF00FF00 );
+
+			final Model source = new Model();
+			source.getTagSetModel().setTagSetStructure( tss );
+			final ModelJournal journal = ModelJournal.open( source, folder, 60000, 60000 );
+			edit( source );
+			final TagSet sourceTagSet = source.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+			final Tag a = sourceTagSet.getTags().get( 0 );
+			final Tag b = sourceTagSet.getTags().get( 1 );
+			final ObjTagMap< Spot, Tag > spotTags = source.getTagSetModel().getVertexTags().tags( sourceTagSet );
+			final Iterator< Spot > it = source.getGraph().vertices().iterator();
+			spotTags.set( it.next(), a );
+			spotTags.set( it.next(), b );
+			final Spot untagged = it.next();
+			spotTags.set( untagged, a );
+			spotTags.remove( untagged );
+			source.getTagSetModel().getEdgeTags().tags( sourceTagSet ).set( source.getGraph().edges().iterator().next(), b );
+			journal.close();
+
+			final Model target = new Model();
+			target.getTagSetModel().setTagSetStructure( tss );
+			ModelJournal.open( target, folder, 60000, 60000 ).close();
+			assertSameGraph( source.getGraph(), target.getGraph() );
+
+			final TagSet targetTagSet = target.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+			final ObjTagMap< Spot, Tag > targetSpotTags = target.getTagSetModel().getVertexTags().tags( targetTagSet );
+			final Iterator< Spot > its = source.getGraph().vertices().iterator();
+			for ( final Spot spot : target.getGraph().vertices() )
+				assertEquals( tagName( spotTags.get( its.next() ) ), tagName( targetSpotTags.get( spot ) ) );
+			final Tag linkTag = target.getTagSetModel().getEdgeTags().tags( targetTagSet ).get( target.getGraph().edges().iterator().next() );
+			assertEquals( "b", tagName( linkTag ) );
+		}
+		finally
+		{
+			deleteFolder( folder );
+		}
+	}
+
+	@Test
+	public void testLongLabel() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-journal" ).toFile();
+		try
+		{
+			final StringBuilder sb = new StringBuilder();
+			while ( sb.length() < 100_000 )
+				sb.append( "label \u00e4\u4e2d " );
+			final String label = sb.toString();
+
+			final Model source = new Model();
+			final ModelJournal journal = ModelJournal.open( source, folder, 60000, 60000 );
+			edit( source );
+			source.getGraph().vertices().iterator().next().setLabel( label );
+			journal.close();
+
+			final Model target = new Model();
+			ModelJournal.open( target, folder, 60000, 60000 ).close();
+			assertSameGraph( source.getGraph(), target.getGraph() );
+			assertEquals( label, target.getGraph().vertices().iterator().next().getLabel() );
+		}
+		finally
+		{
+			deleteFolder( folder );
+		}
+	}
+
+	/**
+	 * A journal only applies to the saved project it was recorded against.
+	 */
+	@Test
+	public void testBase() throws IOException
+	{
+		final File folder = Files.createTempDirectory( "mastodon-journal" ).toFile();
+		try
+		{
+			final Model model = new Model();
+			final ModelJournal journal = ModelJournal.open( model, folder, 60000, 60000 );
+			assertFalse( "A journal without fingerprint applies to no project.", ModelJournal.isBasedOn( folder, "project.xml 10 1" ) );
+			ModelJournal.setBase( folder, "project.xml 10 1" );
+			assertTrue( ModelJournal.isBasedOn( folder, "project.xml 10 1" ) );
+			ModelJournal.setBase( folder, "project.xml 12 2" );
+			assertFalse( "The project was saved again.", ModelJournal.isBasedOn( folder, "project.xml 10 1" ) );
+
+			// Compactions keep the fingerprint.
+			edit( model );
+			journal.compact();
+			assertTrue( ModelJournal.isBasedOn( folder, "project.xml 12 2" ) );
+			journal.close();
+
+			ModelJournal.discard( folder );
+			assertFalse( "Journal folder should have been deleted.", folder.exists() );
+		}
+		finally
+		{
+			deleteFolder( folder );
+		}
+	}
+
+	private static String tagName( final Tag tag )
+	{
+		return tag == null ? null : tag.label();
+	}
+
+	private static void edit( final Model model )
+	{
+		final ModelGraph graph = model.getGraph();
+		final Spot parent = graph.vertexRef();
+		final Spot child = graph.vertexRef();
+		final Spot removed = graph.vertexRef();
+		final Link link = graph.edgeRef();
+		final double[] pos = new double[] { 10., 20., 30. };
+		graph.addVertex( parent ).init( 0, pos, 5. );
+		for ( int t = 1; t < 5; ++t )
+		{
+			pos[ 0 ] += 1.;
+			graph.addVertex( child ).init( t, pos, 5. );
+			graph.addEdge( parent, child, link ).init();
+			parent.refTo( child );
+		}
+		child.setLabel( "last \u00e4" );
+		child.setPosition( new double[] { 1., 2., 3. } );
+		child.setCovariance( new double[][] { { 4., 1., 0. }, { 1., 5., 0.5 }, { 0., 0.5, 6. } } );
+
+		graph.addVertex( removed ).init( 2, pos, 3. );
+		graph.addEdge( removed, child, link ).init();
+		graph.remove( removed );
+		graph.releaseRef( parent );
+		graph.releaseRef( child );
+		graph.releaseRef( removed );
+		graph.releaseRef( link );
+	}
+
+	private static void assertSameGraph( final ModelGraph expected, final ModelGraph actual )
+	{
+		assertEquals( "Unexpected number of spots.", expected.vertices().size(), actual.vertices().size() );
+		assertEquals( "Unexpected number of links.", expected.edges().size(), actual.edges().size() );
+		final double[] posExpected = new double[ 3 ];
+		final double[] posActual = new double[ 3 ];
+		final double[][] covExpected = new double[ 3 ][ 3 ];
+		final double[][] covActual = new double[ 3 ][ 3 ];
+		final Iterator< Spot > it = actual.vertices().iterator();
+		for ( final Spot se : expected.vertices() )
+		{
+			final Spot sa = it.next();
+			assertEquals( se.getTimepoint(), sa.getTimepoint() );
+			assertEquals( se.getLabel(), sa.getLabel() );
+			assertEquals( se.outgoingEdges().size(), sa.outgoingEdges().size() );
+			se.localize( posExpected );
+			sa.localize( posActual );
+			assertArrayEquals( posExpected, posActual, 0. );
+			se.getCovariance( covExpected );
+			sa.getCovariance( covActual );
+			for ( int d = 0; d < 3; ++d )
+				assertArrayEquals( covExpected[ d ], covActual[ d ], 0. );
+		}
+	}
+
+	private static void deleteFolder( final File folder )
+	{
+		final File[] files = folder.listFiles();
+		if ( files != null )
+			for ( final File file : files )
+				deleteFolder( file );
+		folder.delete();
+	}
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SpatialIndexMaintenanceTest
+{
+
+	@Test
+	public void testPauseAndRebuild() throws InterruptedException
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final SpatialIndexMaintenance maintenance = model.getSpatialIndexMaintenance();
+		maintenance.setThreshold( 10 );
+		maintenance.pause();
+
+		final double[] pos = new double[ 3 ];
+		for ( int i = 0; i < 50; ++i )
+		{
+			pos[ 0 ] = i;
+			graph.addVertex().init( 2, pos, 1. );
+		}
+		Thread.sleep( 100 );
+		assertEquals( 50, maintenance.getPendingModifications( 2 ) );
+		assertEquals( 0, maintenance.getRebuildCount( 2 ) );
+
+		maintenance.resume();
+		final long deadline = System.currentTimeMillis() + 5000;
+		while ( maintenance.getPendingModifications( 2 ) > 0 && System.currentTimeMillis() < deadline )
+			Thread.sleep( 10 );
+		assertEquals( 0, maintenance.getPendingModifications( 2 ) );
+		assertEquals( 1, maintenance.getRebuildCount( 2 ) );
+		assertTrue( maintenance.getRebuildTimeMillis( 2 ) >= 0. );
+		assertEquals( 50, model.getSpatioTemporalIndex().getSpatialIndex( 2 ).size() );
+	}
+
+	@Test
+	public void testRebuildIsCreditedToRebuiltTimepoint() throws InterruptedException
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final SpatialIndexMaintenance maintenance = model.getSpatialIndexMaintenance();
+		maintenance.setThreshold( 10 );
+		maintenance.pause();
+		addSpots( graph, 1, 400 );
+		maintenance.resume();
+		waitForRebuilds( maintenance, 1 );
+		assertEquals( 1, maintenance.getRebuildCount( 1 ) );
+
+		/*
+		 * Both time-points are due, time-point 1 has more modifications. The
+		 * index rebuilds time-point 1 first.
+		 */
+		maintenance.pause();
+		addSpots( graph, 1, 60 );
+		addSpots( graph, 2, 20 );
+		maintenance.resume();
+		waitForRebuilds( maintenance, 1, 2 );
+		assertEquals( 2, maintenance.getRebuildCount( 1 ) );
+		assertEquals( 1, maintenance.getRebuildCount( 2 ) );
+	}
+
+	@Test
+	public void testDefaultThreshold()
+	{
+		assertEquals( 100, new Model().getSpatialIndexMaintenance().getThreshold() );
+	}
+
+	private static void addSpots( final ModelGraph graph, final int timepoint, final int n )
+	{
+		final double[] pos = new double[ 3 ];
+		for ( int i = 0; i < n; ++i )
+		{
+			pos[ 0 ] = i;
+			graph.addVertex().init( timepoint, pos, 1. );
+		}
+	}
+
+	private static void waitForRebuilds( final SpatialIndexMaintenance maintenance, final int... timepoints ) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + 5000;
+		for ( final int t : timepoints )
+		{
+			while ( maintenance.getPendingModifications( t ) > 0 && System.currentTimeMillis() < deadline )
+				Thread.sleep( 10 );
+			assertEquals( 0, maintenance.getPendingModifications( t ) );
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.project;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+public class LargeByteBufferTest
+{
+
+	/**
+	 * Values at every offset, with 16-byte windows so that many of them
+	 * straddle two windows.
+	 */
+	@Test
+	public void testWindows() throws IOException
+	{
+		final ByteBuffer expected = ByteBuffer.allocate( 100 );
+		for ( int i = 0; i < expected.limit(); i++ )
+			expected.put( i, ( byte ) ( 31 * i + 7 ) );
+
+		check( expected, LargeByteBuffer.wrap( expected ) );
+		check( expected, LargeByteBuffer.read( new ByteArrayInputStream( expected.array() ), expected.limit(), 4 ) );
+
+		final File file = File.createTempFile( "mastodon-buffer", ".raw" );
+		try
+		{
+			Files.write( file.toPath(), expected.array() );
+			try (final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+			{
+				check( expected, LargeByteBuffer.map( channel, 4 ) );
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static void check( final ByteBuffer expected, final LargeByteBuffer actual )
+	{
+		assertEquals( expected.limit(), actual.size() );
+		for ( int i = 0; i < expected.limit(); i++ )
+			assertEquals( expected.get( i ), actual.get( i ) );
+		for ( int i = 0; i <= expected.limit() - Integer.BYTES; i++ )
+			assertEquals( expected.getInt( i ), actual.getInt( i ) );
+		for ( int i = 0; i <= expected.limit() - Double.BYTES; i++ )
+			assertEquals( expected.getDouble( i ), actual.getDouble( i ), 0. );
+	}
+}
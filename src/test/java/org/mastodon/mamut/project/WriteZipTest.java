@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.mamut.project;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class WriteZipTest
+{
+
+	@Test
+	public void testStored() throws Exception
+	{
+		testConcurrentEntries( 0 );
+	}
+
+	@Test
+	public void testDeflated() throws Exception
+	{
+		testConcurrentEntries( WriteZip.DEFAULT_COMPRESSION_LEVEL );
+	}
+
+	/**
+	 * Entries compressed on the executor that also writes them. The executor
+	 * must still be usable after the zip file is closed.
+	 */
+	@Test
+	public void testSharedExecutor() throws Exception
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			testConcurrentEntries( WriteZip.DEFAULT_COMPRESSION_LEVEL, executor );
+			assertFalse( executor.isShutdown() );
+			testConcurrentEntries( 0, executor );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * An entry larger than the spill threshold, written in small chunks and
+	 * then single bytes, between two small entries.
+	 */
+	@Test
+	public void testSpilledEntry() throws Exception
+	{
+		final File file = File.createTempFile( "writezip", ".zip" );
+		try
+		{
+			final byte[] chunk = content( 7 );
+			final int nChunks = WriteZip.SPILL_THRESHOLD / chunk.length + 2;
+			final int nBytes = 10000;
+			try (final WriteZip zip = new WriteZip( file ))
+			{
+				try (final OutputStream os = zip.getOutputStream( "before" ))
+				{
+					os.write( content( 1 ) );
+				}
+				try (final OutputStream os = zip.getOutputStream( "large" ))
+				{
+					for ( int i = 0; i < nChunks; i++ )
+						os.write( chunk );
+					for ( int i = 0; i < nBytes; i++ )
+						os.write( i );
+				}
+				try (final OutputStream os = zip.getOutputStream( "after" ))
+				{
+					os.write( content( 2 ) );
+				}
+			}
+
+			try (final ReadZip zip = new ReadZip( file ))
+			{
+				final LargeByteBuffer large = zip.getLargeByteBuffer( "large" );
+				final long chunksSize = ( long ) nChunks * chunk.length;
+				assertEquals( chunksSize + nBytes, large.size() );
+				for ( long i = 0; i < chunksSize; i += 4099 )
+					assertEquals( chunk[ ( int ) ( i % chunk.length ) ], large.get( i ) );
+				for ( int i = 0; i < nBytes; i++ )
+					assertEquals( ( byte ) i, large.get( chunksSize + i ) );
+				assertEquals( content( 2 ).length, zip.getLargeByteBuffer( "after" ).size() );
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static void testConcurrentEntries( final int level ) throws Exception
+	{
+		testConcurrentEntries( level, null );
+	}
+
+	/**
+	 * Writes entries concurrently, from tasks run on the specified executor,
+	 * that also compresses them. If it is {@code null}, the entries are
+	 * written from a new pool and compressed on the pool of the zip file.
+	 */
+	private static void testConcurrentEntries( final int level, final ExecutorService shared ) throws Exception
+	{
+		final int nEntries = 20;
+		final File file = File.createTempFile( "writezip", ".zip" );
+		try
+		{
+			final ExecutorService executor = shared != null ? shared : Executors.newFixedThreadPool( 4 );
+			try (final WriteZip zip = shared != null ? new WriteZip( file, level, shared ) : new WriteZip( file, level, 4 ))
+			{
+				final List< Future< Void > > futures = new ArrayList<>();
+				for ( int i = 0; i < nEntries; i++ )
+				{
+					final int entry = i;
+					futures.add( executor.submit( () -> {
+						try (final OutputStream os = zip.getOutputStream( "features/f" + entry + ".raw" ))
+						{
+							os.write( content( entry ) );
+						}
+						return null;
+					} ) );
+				}
+				for ( final Future< Void > future : futures )
+					future.get();
+			}
+			finally
+			{
+				if ( shared == null )
+					executor.shutdown();
+			}
+
+			try (final ReadZip zip = new ReadZip( file ))
+			{
+				assertEquals( "Unexpected number of entries.", nEntries, zip.listFile( "features" ).size() );
+				for ( int i = 0; i < nEntries; i++ )
+				{
+					final LargeByteBuffer buffer = zip.getLargeByteBuffer( "features/f" + i + ".raw" );
+					final byte[] bytes = new byte[ ( int ) buffer.size() ];
+					for ( int j = 0; j < bytes.length; j++ )
+						bytes[ j ] = buffer.get( j );
+					assertArrayEquals( "Unexpected content for entry " + i, content( i ), bytes );
+				}
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static byte[] content( final int entry )
+	{
+		final byte[] bytes = new byte[ 10000 * entry ];
+		for ( int i = 0; i < bytes.length; i++ )
+			bytes[ i ] = ( byte ) ( ( i * entry ) % 7 );
+		return bytes;
+	}
+}
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class ConcurrentSelectionModelTest
+{
+
+	@Test
+	public void testSelection()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final ConcurrentSelectionModel< Spot, Link > selection = new ConcurrentSelectionModel<>( graph, model.getGraphIdBimap() );
+		graph.addGraphListener( selection );
+		final AtomicInteger events = new AtomicInteger();
+		selection.listeners().add( () -> events.incrementAndGet() );
+
+		final RefList< Spot > spots = RefCollections.createRefList( graph.vertices() );
+		final double[] pos = new double[ 3 ];
+		for ( int i = 0; i < 200; ++i )
+		{
+			pos[ 0 ] = i;
+			spots.add( graph.addVertex().init( i % 5, pos, 1. ) );
+		}
+		final Link link = graph.addEdge( spots.get( 0 ), spots.get( 1 ) ).init();
+		assertTrue( selection.isEmpty() );
+
+		// Batch selection is notified once.
+		assertTrue( selection.setVerticesSelected( spots, true ) );
+		assertEquals( 1, events.get() );
+		assertEquals( 200, selection.getSelectedVertices().size() );
+		assertFalse( selection.setVerticesSelected( spots, true ) );
+		assertEquals( 1, events.get() );
+
+		selection.setSelected( link, true );
+		assertTrue( selection.isSelected( link ) );
+		assertEquals( 1, selection.getSelectedEdges().size() );
+
+		// Removed objects are deselected.
+		final Spot spot = spots.get( 150 );
+		graph.remove( spot );
+		assertEquals( 199, selection.getSelectedVertices().size() );
+		graph.remove( link );
+		assertTrue( selection.getSelectedEdges().isEmpty() );
+
+		selection.toggle( spots.get( 3 ) );
+		assertFalse( selection.isSelected( spots.get( 3 ) ) );
+
+		assertTrue( selection.clearSelection() );
+		assertTrue( selection.isEmpty() );
+		assertFalse( selection.clearSelection() );
+	}
+
+	/**
+	 * A listener that throws must not stop later notifications.
+	 */
+	@Test
+	public void testFailingListener()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final ConcurrentSelectionModel< Spot, Link > selection = new ConcurrentSelectionModel<>( graph, model.getGraphIdBimap() );
+		final Spot spot = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		final AtomicInteger events = new AtomicInteger();
+		selection.listeners().add( () -> {
+			if ( events.incrementAndGet() == 1 )
+				throw new IllegalStateException();
+		} );
+
+		try
+		{
+			selection.setSelected( spot, true );
+		}
+		catch ( final IllegalStateException e )
+		{
+			// Expected.
+		}
+		selection.setSelected( spot, false );
+		assertEquals( 2, events.get() );
+	}
+
+	/**
+	 * By default, listeners are notified once per change, before the modifying
+	 * call returns.
+	 */
+	@Test
+	public void testConcurrentReadersAndBatchedWriters() throws Exception
+	{
+		testConcurrentReadersAndBatchedWriters( false );
+	}
+
+	/**
+	 * When notifications are coalesced, listeners are notified at most once
+	 * per change, and of the last change.
+	 */
+	@Test
+	public void testConcurrentReadersAndBatchedWritersCoalesced() throws Exception
+	{
+		testConcurrentReadersAndBatchedWriters( true );
+	}
+
+	/**
+	 * Readers running concurrently with writers must never see a selected spot
+	 * become unselected while writers only select.
+	 */
+	private void testConcurrentReadersAndBatchedWriters( final boolean coalesceNotifications ) throws Exception
+	{
+		final int nGroups = 200;
+		final int groupSize = 50;
+		final int nWriters = 4;
+		final int nReaders = 4;
+
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final ConcurrentSelectionModel< Spot, Link > selection = new ConcurrentSelectionModel<>( graph, model.getGraphIdBimap(), coalesceNotifications );
+		graph.addGraphListener( selection );
+
+		final List< RefList< Spot > > groups = new ArrayList<>();
+		final double[] pos = new double[ 3 ];
+		for ( int g = 0; g < nGroups; ++g )
+		{
+			final RefList< Spot > group = RefCollections.createRefList( graph.vertices() );
+			for ( int i = 0; i < groupSize; ++i )
+			{
+				pos[ 0 ] = i;
+				group.add( graph.addVertex().init( g % 5, pos, 1. ) );
+			}
+			groups.add( group );
+		}
+
+		final AtomicInteger events = new AtomicInteger();
+		selection.listeners().add( () -> events.incrementAndGet() );
+
+		final ExecutorService executor = Executors.newFixedThreadPool( nWriters + nReaders );
+		final AtomicBoolean writing = new AtomicBoolean( true );
+		try
+		{
+			/*
+			 * Writers select whole groups, and never deselect. Batches are
+			 * applied in place, so a reader can see part of a group selected,
+			 * but once it sees a spot selected, the spot must stay selected.
+			 */
+			final List< Future< String > > readers = new ArrayList<>();
+			for ( int r = 0; r < nReaders; ++r )
+			{
+				readers.add( executor.submit( () -> {
+					final Spot ref = graph.vertexRef();
+					final boolean[] seen = new boolean[ nGroups * groupSize ];
+					try
+					{
+						do
+						{
+							for ( int g = 0; g < nGroups; ++g )
+							{
+								final RefList< Spot > group = groups.get( g );
+								for ( int i = 0; i < groupSize; ++i )
+								{
+									final boolean selected = selection.isSelected( group.get( i, ref ) );
+									final int k = g * groupSize + i;
+									if ( seen[ k ] && !selected )
+										return "Selected spot became unselected: spot " + i + " of " + group;
+									seen[ k ] = selected;
+								}
+							}
+						}
+						while ( writing.get() );
+						return null;
+					}
+					finally
+					{
+						graph.releaseRef( ref );
+					}
+				} ) );
+			}
+
+			final List< Future< ? > > writers = new ArrayList<>();
+			for ( int w = 0; w < nWriters; ++w )
+			{
+				final int offset = w;
+				writers.add( executor.submit( () -> {
+					for ( int g = offset; g < nGroups; g += nWriters )
+						selection.setVerticesSelected( groups.get( g ), true );
+				} ) );
+			}
+			for ( final Future< ? > writer : writers )
+				writer.get();
+			writing.set( false );
+			for ( final Future< String > reader : readers )
+				assertNull( reader.get() );
+		}
+		finally
+		{
+			executor.shutdown();
+			executor.awaitTermination( 1, TimeUnit.MINUTES );
+		}
+
+		assertEquals( nGroups * groupSize, selection.getSelectedVertices().size() );
+		if ( coalesceNotifications )
+			assertTrue( events.get() >= 1 && events.get() <= nGroups );
+		else
+			assertEquals( nGroups, events.get() );
+		final int before = events.get();
+		selection.setSelected( groups.get( 0 ).get( 0 ), false );
+		assertEquals( before + 1, events.get() );
+	}
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model.branch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.branch.BranchLink;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.model.branch.ModelBranchGraph;
+import org.mastodon.model.ConcurrentSelectionModel;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetModel;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class BranchGraphAdaptersTest
+{
+
+	@Test
+	public void testCachedAggregates()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final ModelBranchGraph branchGraph = model.getBranchGraph();
+
+		// A single track of 5 spots: one branch.
+		final RefList< Spot > spots = RefCollections.createRefList( graph.vertices() );
+		final double[] pos = new double[ 3 ];
+		graph.pauseListeners();
+		final Spot ref = graph.vertexRef();
+		for ( int t = 0; t < 5; ++t )
+		{
+			final Spot s = graph.addVertex( ref ).init( t, pos, 1. );
+			if ( t > 0 )
+				graph.addEdge( spots.get( t - 1 ), s ).init();
+			spots.add( s );
+		}
+		graph.resumeListeners();
+
+		final BranchSpot bref = branchGraph.vertexRef();
+		BranchSpot branch = branchGraph.getBranchVertex( spots.get( 0, ref ), bref );
+
+		// Selection.
+		final ConcurrentSelectionModel< Spot, Link > selection = new ConcurrentSelectionModel<>( graph, model.getGraphIdBimap() );
+		graph.addGraphListener( selection );
+		final BranchGraphSelectionAdapter< Spot, Link, BranchSpot, BranchLink > branchSelection =
+				new BranchGraphSelectionAdapter<>( branchGraph, graph, model.getGraphIdBimap(), selection );
+		assertFalse( branchSelection.isSelected( branch ) );
+		for ( final Spot s : spots )
+			selection.setSelected( s, true );
+		assertFalse( "Links of the branch are not selected yet.", branchSelection.isSelected( branch ) );
+		for ( final Link l : graph.edges() )
+			selection.setSelected( l, true );
+		assertTrue( branchSelection.isSelected( branch ) );
+		selection.setSelected( spots.get( 2, ref ), false );
+		assertFalse( branchSelection.isSelected( branch ) );
+		branchSelection.setSelected( branch, true );
+		assertTrue( branchSelection.isSelected( branch ) );
+
+		// Extending the branch changes its last vertex: it is counted again.
+		final Spot extra = graph.addVertex().init( 5, pos, 1. );
+		graph.addEdge( spots.get( 4 ), extra ).init();
+		final BranchSpot bref2 = branchGraph.vertexRef();
+		final BranchSpot extended = branchGraph.getBranchVertex( extra, bref2 );
+		assertFalse( branchSelection.isSelected( extended ) );
+		selection.setSelected( extra, true );
+		assertFalse( branchSelection.isSelected( extended ) );
+		branchSelection.setSelected( extended, true );
+		assertTrue( branchSelection.isSelected( extended ) );
+		selection.clearSelection();
+		assertFalse( branchSelection.isSelected( extended ) );
+		branchGraph.releaseRef( bref2 );
+		branchSelection.close();
+		branch = branchGraph.getBranchVertex( spots.get( 0, ref ), bref );
+
+		// Tags.
+		final TagSetModel< Spot, Link > tagSetModel = model.getTagSetModel();
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet ts = tss.createTagSet( "fate" );
+		ts.createTag( "a", 0xff0000 );
+		ts.createTag( "b", 0x00ff00 );
+		tagSetModel.setTagSetStructure( tss );
+		final TagSet tagSet = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		final Tag a = tagSet.getTags().get( 0 );
+		final Tag b = tagSet.getTags().get( 1 );
+
+		final BranchGraphTagSetAdapter< Spot, Link, BranchSpot, BranchLink > branchTags =
+				new BranchGraphTagSetAdapter<>( branchGraph, graph, model.getGraphIdBimap(), tagSetModel );
+		final ObjTagMap< BranchSpot, Tag > branchTagMap = branchTags.getVertexTags().tags( tagSet );
+		assertNull( branchTagMap.get( branch ) );
+		branchTagMap.set( branch, a );
+		assertEquals( a, branchTagMap.get( branch ) );
+
+		// Changing the tag of a single core object invalidates the branch.
+		final ObjTagMap< Spot, Tag > spotTags = tagSetModel.getVertexTags().tags( tagSet );
+		spotTags.set( spots.get( 3, ref ), b );
+		assertNull( branchTagMap.get( branch ) );
+		spotTags.set( spots.get( 3, ref ), a );
+		assertEquals( a, branchTagMap.get( branch ) );
+		final ObjTagMap< Link, Tag > linkTags = tagSetModel.getEdgeTags().tags( tagSet );
+		linkTags.remove( graph.edges().iterator().next() );
+		assertNull( branchTagMap.get( branch ) );
+		branchTags.close();
+
+		branchGraph.releaseRef( bref );
+		graph.releaseRef( ref );
+	}
+}
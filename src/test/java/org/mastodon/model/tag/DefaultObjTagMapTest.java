@@ -0,0 +1,207 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.model.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class DefaultObjTagMapTest
+{
+
+	@Test
+	public void testTagsInStore()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final TagSetModel< Spot, Link > tagSetModel = model.getTagSetModel();
+
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet fate = tss.createTagSet( "fate" );
+		final Tag a = fate.createTag( "a", 0xff0000 );
+		final Tag b = fate.createTag( "b", 0x00ff00 );
+		final TagSet other = tss.createTagSet( "other" );
+		final Tag c = other.createTag( "c", 0x0000ff );
+		tagSetModel.setTagSetStructure( tss );
+
+		final double[] pos = new double[ 3 ];
+		final Spot s0 = graph.addVertex().init( 0, pos, 1. );
+		final Spot s1 = graph.addVertex().init( 0, pos, 1. );
+		model.setUndoPoint();
+
+		final ObjTagMap< Spot, Tag > fateTags = tagSetModel.getVertexTags().tags( tagSetModel.getTagSetStructure().getTagSets().get( 0 ) );
+		final ObjTagMap< Spot, Tag > otherTags = tagSetModel.getVertexTags().tags( tagSetModel.getTagSetStructure().getTagSets().get( 1 ) );
+		fateTags.set( s0, a );
+		otherTags.set( s0, c );
+		fateTags.set( s1, b );
+		model.setUndoPoint();
+		assertEquals( a, fateTags.get( s0 ) );
+		assertEquals( c, otherTags.get( s0 ) );
+		assertEquals( b, fateTags.get( s1 ) );
+		assertNull( otherTags.get( s1 ) );
+
+		// Objects are found by tag, in any tag set.
+		assertEquals( 1, fateTags.getTaggedWith( a ).size() );
+		assertEquals( s0, fateTags.getTaggedWith( a ).iterator().next() );
+		assertEquals( 1, otherTags.getTaggedWith( c ).size() );
+
+		// Tags within a set are mutually exclusive.
+		fateTags.set( s0, b );
+		assertEquals( b, fateTags.get( s0 ) );
+		assertEquals( c, otherTags.get( s0 ) );
+		model.setUndoPoint();
+
+		// Undo goes through the tag property, not through the map.
+		model.undo();
+		assertEquals( a, fateTags.get( s0 ) );
+		model.redo();
+		assertEquals( b, fateTags.get( s0 ) );
+
+		fateTags.remove( s1 );
+		assertNull( fateTags.get( s1 ) );
+		assertEquals( 1, fateTags.getTaggedWith( b ).size() );
+
+		tagSetModel.clear();
+		assertNull( fateTags.get( s0 ) );
+		assertNull( otherTags.get( s0 ) );
+	}
+
+	@Test
+	public void testRemovedTagsAreCleared()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final TagSetModel< Spot, Link > tagSetModel = model.getTagSetModel();
+
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet fate = tss.createTagSet( "fate" );
+		fate.createTag( "a", 0xff0000 );
+		fate.createTag( "b", 0x00ff00 );
+		tagSetModel.setTagSetStructure( tss );
+		final TagSet ts = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		final Tag a = ts.getTags().get( 0 );
+		final Tag b = ts.getTags().get( 1 );
+
+		final Spot s0 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		tagSetModel.getVertexTags().set( s0, a );
+
+		final TagSetStructure copy = new TagSetStructure();
+		copy.set( tagSetModel.getTagSetStructure() );
+		copy.getTagSets().get( 0 ).removeTag( copy.getTagSets().get( 0 ).getTags().get( 0 ) );
+		tagSetModel.setTagSetStructure( copy );
+
+		final TagSet newTs = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		final ObjTagMap< Spot, Tag > tags = tagSetModel.getVertexTags().tags( newTs );
+		assertNull( tags.get( s0 ) );
+		tags.set( s0, newTs.getTags().get( 0 ) );
+		assertEquals( b.id(), tags.get( s0 ).id() );
+	}
+
+	@Test
+	public void testRawRoundTrip() throws IOException
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final TagSetModel< Spot, Link > tagSetModel = model.getTagSetModel();
+
+		final TagSetStructure tss = new TagSetStructure();
+		tss.createTagSet( "fate" ).createTag( "a", 0xff0000 );
+		tss.createTagSet( "other" ).createTag( "c", 0x0000ff );
+		tagSetModel.setTagSetStructure( tss );
+		final TagSet fate = tagSetModel.getTagSetStructure().getTagSets().get( 0 );
+		final TagSet other = tagSetModel.getTagSetStructure().getTagSets().get( 1 );
+
+		final Spot s0 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		s0.setLabel( "s0" );
+		final Spot s1 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		s1.setLabel( "s1" );
+		final Link l = graph.addEdge( s0, s1 ).init();
+		tagSetModel.getVertexTags().tags( fate ).set( s0, fate.getTags().get( 0 ) );
+		tagSetModel.getVertexTags().tags( other ).set( s0, other.getTags().get( 0 ) );
+		tagSetModel.getEdgeTags().tags( other ).set( l, other.getTags().get( 0 ) );
+
+		final File folder = Files.createTempDirectory( "mastodon-tags" ).toFile();
+		final Model target = new Model();
+		try
+		{
+			final MamutProject project = new MamutProject( folder );
+			try (final MamutProject.ProjectWriter writer = project.openForWriting())
+			{
+				model.saveRaw( writer );
+			}
+			try (final MamutProject.ProjectReader reader = project.openForReading())
+			{
+				target.loadRaw( reader );
+			}
+		}
+		finally
+		{
+			for ( final File file : folder.listFiles() )
+				file.delete();
+			folder.delete();
+		}
+
+		final TagSetModel< Spot, Link > targetTags = target.getTagSetModel();
+		final TagSet targetFate = targetTags.getTagSetStructure().getTagSets().get( 0 );
+		final TagSet targetOther = targetTags.getTagSetStructure().getTagSets().get( 1 );
+		for ( final Spot spot : target.getGraph().vertices() )
+		{
+			final Tag fateTag = targetTags.getVertexTags().tags( targetFate ).get( spot );
+			final Tag otherTag = targetTags.getVertexTags().tags( targetOther ).get( spot );
+			if ( spot.getLabel().equals( "s0" ) )
+			{
+				assertEquals( "a", fateTag.label() );
+				assertEquals( "c", otherTag.label() );
+			}
+			else
+			{
+				assertNull( fateTag );
+				assertNull( otherTag );
+			}
+		}
+		assertEquals( 1, target.getGraph().edges().size() );
+		for ( final Link link : target.getGraph().edges() )
+		{
+			assertNull( targetTags.getEdgeTags().tags( targetFate ).get( link ) );
+			assertEquals( "c", targetTags.getEdgeTags().tags( targetOther ).get( link ).label() );
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class CachingGraphColorGeneratorTest
+{
+
+	/**
+	 * Returns a fixed color, and counts how many times it was asked.
+	 */
+	private static class CountingGenerator implements GraphColorGenerator< Spot, Link >
+	{
+		private final int color;
+
+		private int calls;
+
+		private Runnable onColor;
+
+		CountingGenerator( final int color )
+		{
+			this.color = color;
+		}
+
+		@Override
+		public int color( final Spot vertex )
+		{
+			calls++;
+			if ( onColor != null )
+				onColor.run();
+			return color;
+		}
+
+		@Override
+		public int color( final Link edge, final Spot source, final Spot target )
+		{
+			calls++;
+			return color;
+		}
+	}
+
+	@Test
+	public void testCache()
+	{
+		final ModelGraph graph = new ModelGraph();
+		final Spot s0 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		final Spot s1 = graph.addVertex().init( 1, new double[ 3 ], 1. );
+		final Link link = graph.addEdge( s0, s1 ).init();
+
+		final CachingGraphColorGenerator< Spot, Link > cache = new CachingGraphColorGenerator<>( graph.getGraphIdBimap() );
+		assertEquals( 0, cache.color( s0 ) );
+
+		final CountingGenerator generator = new CountingGenerator( 0xFF112233 );
+		cache.setColorGenerator( generator );
+		assertEquals( 0xFF112233, cache.color( s0 ) );
+		assertEquals( 0xFF112233, cache.color( s0 ) );
+		assertEquals( 0xFF112233, cache.color( s1 ) );
+		assertEquals( 0xFF112233, cache.color( link, s0, s1 ) );
+		assertEquals( 0xFF112233, cache.color( link, s0, s1 ) );
+		assertEquals( 3, generator.calls );
+
+		cache.invalidate();
+		assertEquals( 0xFF112233, cache.color( s0 ) );
+		assertEquals( 4, generator.calls );
+
+		cache.setColorGenerator( new CountingGenerator( 0xFF445566 ) );
+		assertEquals( 0xFF445566, cache.color( s0 ) );
+		assertEquals( 0xFF445566, cache.color( link, s0, s1 ) );
+	}
+
+	/**
+	 * Tests that a color computed by a generator that was replaced while it
+	 * computed is not cached for the new generator.
+	 */
+	@Test
+	public void testNoStaleColorAfterGeneratorSwap()
+	{
+		final ModelGraph graph = new ModelGraph();
+		final Spot s0 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+
+		final CachingGraphColorGenerator< Spot, Link > cache = new CachingGraphColorGenerator<>( graph.getGraphIdBimap() );
+		final CountingGenerator oldGenerator = new CountingGenerator( 0xFF112233 );
+		final CountingGenerator newGenerator = new CountingGenerator( 0xFF445566 );
+		oldGenerator.onColor = () -> cache.setColorGenerator( newGenerator );
+		cache.setColorGenerator( oldGenerator );
+
+		assertEquals( 0xFF112233, cache.color( s0 ) );
+		assertEquals( 0xFF445566, cache.color( s0 ) );
+		assertEquals( 1, newGenerator.calls );
+	}
+}
@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ColorMapTest
+{
+
+	@Test
+	public void testQuantizedIsCloseToInterpolated()
+	{
+		final Random random = new Random( 1l );
+		// Smooth colormaps; categorical ones change by more than a level between table entries.
+		for ( final ColorMap cm : new ColorMap[] { ColorMap.JET, ColorMap.PARULA, ColorMap.VIRIDIS, ColorMap.SEISMIC } )
+		{
+			final String name = cm.getName();
+			for ( int i = 0; i < 10000; i++ )
+			{
+				final double val = random.nextDouble();
+				final int expected = cm.get( val );
+				final int actual = cm.getQuantized( val );
+				for ( int shift = 0; shift < 32; shift += 8 )
+				{
+					final int diff = Math.abs( ( ( expected >> shift ) & 0xFF ) - ( ( actual >> shift ) & 0xFF ) );
+					assertTrue( name + " at " + val + ": channel differs by " + diff, diff <= 1 );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testQuantizedBounds()
+	{
+		final ColorMap cm = ColorMap.JET;
+		assertEquals( cm.get( 0. ), cm.getQuantized( 0. ) );
+		assertEquals( cm.get( 1. ), cm.getQuantized( 1. ) );
+		assertEquals( cm.get( 0. ), cm.getQuantized( -5. ) );
+		assertEquals( cm.get( 1. ), cm.getQuantized( 5. ) );
+		assertEquals( cm.get( Double.NaN ), cm.getQuantized( Double.NaN ) );
+		// Table entries are exact.
+		for ( int i = 0; i < ColorMap.LUT_SIZE; i += 97 )
+		{
+			final double val = ( double ) i / ( ColorMap.LUT_SIZE - 1 );
+			assertEquals( cm.get( val ), cm.getQuantized( val ) );
+		}
+	}
+}
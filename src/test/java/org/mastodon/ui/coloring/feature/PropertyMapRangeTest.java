@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.ui.coloring.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+public class PropertyMapRangeTest
+{
+
+	@Test
+	public void testIncrementalRange()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot s0 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		final Spot s1 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+		final Spot s2 = graph.addVertex().init( 0, new double[ 3 ], 1. );
+
+		final DoublePropertyMap< Spot > map = new DoublePropertyMap<>( graph.vertices(), Double.NaN );
+		final int[] stamp = new int[ 1 ];
+		final PropertyMapRange< Spot > range = PropertyMapRange.of( map, () -> stamp[ 0 ] );
+		assertArrayEquals( new double[] { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY }, range.getMinMax(), 0. );
+
+		map.set( s0, 2. );
+		map.set( s1, 5. );
+		assertArrayEquals( new double[] { 2., 5. }, range.getMinMax(), 0. );
+
+		// Extending the range.
+		map.set( s2, -1. );
+		assertArrayEquals( new double[] { -1., 5. }, range.getMinMax(), 0. );
+
+		// Overwriting a value inside the range.
+		map.set( s0, 3. );
+		assertArrayEquals( new double[] { -1., 5. }, range.getMinMax(), 0. );
+
+		// Overwriting and removing the bounds.
+		map.set( s1, 4. );
+		assertArrayEquals( new double[] { -1., 4. }, range.getMinMax(), 0. );
+		map.remove( s2 );
+		assertArrayEquals( new double[] { 3., 4. }, range.getMinMax(), 0. );
+
+		// Values written while not listening are detected from the stamp,
+		// also when they overwrite existing values.
+		range.close();
+		map.set( s2, 10. );
+		++stamp[ 0 ];
+		assertArrayEquals( new double[] { 3., 10. }, range.getMinMax(), 0. );
+		map.set( s2, 0. );
+		++stamp[ 0 ];
+		assertArrayEquals( new double[] { 0., 4. }, range.getMinMax(), 0. );
+	}
+
+	@Test
+	public void testParallelRange()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final int n = PropertyMapRange.MIN_PARALLEL_SIZE + 1000;
+		final IntPropertyMap< Spot > map = new IntPropertyMap<>( graph.vertices(), -1 );
+		final Spot ref = graph.vertexRef();
+		for ( int i = 0; i < n; i++ )
+		{
+			final Spot spot = graph.addVertex( ref ).init( 0, new double[ 3 ], 1. );
+			if ( i % 3 != 0 )
+				map.set( spot, i );
+		}
+
+		final int[] stamp = new int[ 1 ];
+		final PropertyMapRange< Spot > range = PropertyMapRange.of( map, graph.vertices(), () -> stamp[ 0 ] );
+		assertArrayEquals( new double[] { 1., n - 1 }, range.getMinMax(), 0. );
+
+		// Deleting the first spots leaves live spots at pool indices above
+		// their number, which are not visited by the parallel reduction.
+		for ( int i = 0; i < 10; i++ )
+			graph.remove( graph.getGraphIdBimap().getVertex( i, ref ) );
+		++stamp[ 0 ];
+		assertArrayEquals( new double[] { 10., n - 1 }, range.getMinMax(), 0. );
+		graph.releaseRef( ref );
+	}
+}
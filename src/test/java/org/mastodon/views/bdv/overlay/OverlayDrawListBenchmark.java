@@ -0,0 +1,226 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.bdv.overlay;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import org.mastodon.views.bdv.overlay.ScreenVertexMath.Ellipse;
+
+import net.imglib2.util.StopWatch;
+
+/**
+ * Compares painting a BDV overlay frame of random spots and links one
+ * primitive at a time, with a new {@link Color} for each of them, a new
+ * {@link GradientPaint} for each link and a transform for each ellipse (as the
+ * overlay renderers used to), to painting it through an
+ * {@link OverlayDrawList}.
+ */
+public class OverlayDrawListBenchmark
+{
+
+	private static final int WIDTH = 1920;
+
+	private static final int HEIGHT = 1080;
+
+	private static final int N_SPOTS = 20_000;
+
+	private static final int N_FRAMES = 20;
+
+	private static final int N_RUNS = 5;
+
+	public static void main( final String[] args )
+	{
+		for ( final boolean useGradient : new boolean[] { false, true } )
+		{
+			System.out.println( String.format( "Painting %d spots and %d links on %d x %d, antialiased, gradient links: %b.",
+					N_SPOTS, N_SPOTS, WIDTH, HEIGHT, useGradient ) );
+			final Frame frame = new Frame( new Random( 42 ), useGradient );
+			final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+			final OverlayDrawList drawList = new OverlayDrawList();
+
+			// Warm-up.
+			for ( int i = 0; i < N_FRAMES; i++ )
+			{
+				paintImmediately( frame, image );
+				paintDrawList( frame, drawList, image );
+			}
+
+			for ( int run = 0; run < N_RUNS; run++ )
+			{
+				final long a0 = allocatedBytes();
+				final StopWatch stopWatch1 = StopWatch.createAndStart();
+				for ( int i = 0; i < N_FRAMES; i++ )
+					paintImmediately( frame, image );
+				stopWatch1.stop();
+				final long a1 = allocatedBytes();
+
+				final StopWatch stopWatch2 = StopWatch.createAndStart();
+				for ( int i = 0; i < N_FRAMES; i++ )
+					paintDrawList( frame, drawList, image );
+				stopWatch2.stop();
+				final long a2 = allocatedBytes();
+
+				final double t1 = stopWatch1.nanoTime() / 1e6 / N_FRAMES;
+				final double t2 = stopWatch2.nanoTime() / 1e6 / N_FRAMES;
+				final double m1 = ( a1 - a0 ) / 1e6 / N_FRAMES;
+				final double m2 = ( a2 - a1 ) / 1e6 / N_FRAMES;
+				System.out.println( String.format( "  immediate: %.1f ms/frame, %.1f MB/frame - draw list: %.1f ms/frame, %.1f MB/frame - speedup x%.2f",
+						t1, m1, t2, m2, t1 / t2 ) );
+			}
+		}
+	}
+
+	/**
+	 * Bytes allocated by the current thread so far, or 0 if the JVM cannot
+	 * tell.
+	 */
+	private static long allocatedBytes()
+	{
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( threads instanceof com.sun.management.ThreadMXBean )
+			return ( ( com.sun.management.ThreadMXBean ) threads ).getThreadAllocatedBytes( Thread.currentThread().getId() );
+		return 0;
+	}
+
+	private static Graphics2D createGraphics( final BufferedImage image )
+	{
+		final Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		return graphics;
+	}
+
+	private static void paintImmediately( final Frame frame, final BufferedImage image )
+	{
+		final Graphics2D graphics = createGraphics( image );
+		final BasicStroke linkStroke = new BasicStroke( 1f );
+		final BasicStroke spotStroke = new BasicStroke( 1f );
+
+		graphics.setStroke( linkStroke );
+		for ( int i = 0; i < N_SPOTS; i++ )
+		{
+			final Color c1 = new Color( frame.linkColor1[ i ], true );
+			if ( frame.linkColor0[ i ] != frame.linkColor1[ i ] )
+			{
+				final Color c0 = new Color( frame.linkColor0[ i ], true );
+				graphics.setPaint( new GradientPaint( frame.linkX0[ i ], frame.linkY0[ i ], c0, frame.linkX1[ i ], frame.linkY1[ i ], c1 ) );
+			}
+			else
+				graphics.setPaint( c1 );
+			graphics.drawLine( frame.linkX0[ i ], frame.linkY0[ i ], frame.linkX1[ i ], frame.linkY1[ i ] );
+		}
+
+		graphics.setStroke( spotStroke );
+		final AffineTransform torig = graphics.getTransform();
+		for ( int i = 0; i < N_SPOTS; i++ )
+		{
+			graphics.setColor( new Color( frame.spotColor[ i ], true ) );
+			final Ellipse ellipse = frame.ellipses[ i ];
+			final double w = ellipse.getHalfWidth();
+			final double h = ellipse.getHalfHeight();
+			graphics.translate( ellipse.getCenter()[ 0 ], ellipse.getCenter()[ 1 ] );
+			graphics.rotate( ellipse.getTheta() );
+			graphics.draw( new Ellipse2D.Double( -w, -h, 2. * w, 2. * h ) );
+			graphics.setTransform( torig );
+		}
+		graphics.dispose();
+	}
+
+	private static void paintDrawList( final Frame frame, final OverlayDrawList drawList, final BufferedImage image )
+	{
+		final Graphics2D graphics = createGraphics( image );
+		drawList.clear( 1., 1., false );
+		for ( int i = 0; i < N_SPOTS; i++ )
+			drawList.addLink( frame.linkX0[ i ], frame.linkY0[ i ], frame.linkX1[ i ], frame.linkY1[ i ], frame.linkColor0[ i ], frame.linkColor1[ i ], OverlayDrawList.LINK );
+		for ( int i = 0; i < N_SPOTS; i++ )
+			drawList.addEllipse( frame.ellipses[ i ], frame.spotColor[ i ], OverlayDrawList.SPOT, null );
+		drawList.draw( graphics, false );
+		graphics.dispose();
+	}
+
+	/**
+	 * Random spots and links, with the few distinct colors that the fading of
+	 * a single coloring produces.
+	 */
+	private static class Frame
+	{
+		final int[] linkX0 = new int[ N_SPOTS ];
+
+		final int[] linkY0 = new int[ N_SPOTS ];
+
+		final int[] linkX1 = new int[ N_SPOTS ];
+
+		final int[] linkY1 = new int[ N_SPOTS ];
+
+		final int[] linkColor0 = new int[ N_SPOTS ];
+
+		final int[] linkColor1 = new int[ N_SPOTS ];
+
+		final int[] spotColor = new int[ N_SPOTS ];
+
+		final Ellipse[] ellipses = new Ellipse[ N_SPOTS ];
+
+		Frame( final Random random, final boolean useGradient )
+		{
+			for ( int i = 0; i < N_SPOTS; i++ )
+			{
+				final double x = random.nextDouble() * WIDTH;
+				final double y = random.nextDouble() * HEIGHT;
+				final Ellipse ellipse = new Ellipse();
+				ellipse.setCenter( x, y );
+				ellipse.setTheta( random.nextDouble() * Math.PI );
+				ellipse.setAxisHalfLength( 4 + 6 * random.nextDouble(), 4 + 6 * random.nextDouble() );
+				ellipses[ i ] = ellipse;
+				spotColor[ i ] = fadedColor( random );
+
+				linkX1[ i ] = ( int ) x;
+				linkY1[ i ] = ( int ) y;
+				linkX0[ i ] = ( int ) ( x + 20 * random.nextGaussian() );
+				linkY0[ i ] = ( int ) ( y + 20 * random.nextGaussian() );
+				linkColor1[ i ] = fadedColor( random );
+				linkColor0[ i ] = useGradient ? fadedColor( random ) : linkColor1[ i ];
+			}
+		}
+
+		private static int fadedColor( final Random random )
+		{
+			final int alpha = 0x66 + 0x22 * random.nextInt( 5 );
+			return ( alpha << 24 ) | 0x00ff00ff;
+		}
+	}
+}
@@ -42,9 +42,14 @@ import org.mastodon.ui.coloring.GraphColorGeneratorAdapter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests {@link LineageTreeLayoutImp}
@@ -79,6 +84,157 @@ public class LineageTreeLayoutImpTest
 		assertEquals( Arrays.asList( "a->b", "a->c", "b->d", "c->d"), getEdges( screenEntities ) );
 	}
 
+	/**
+	 * Tests that laying out only the trees touched by graph changes gives the
+	 * same layout as laying out everything.
+	 */
+	@Test
+	public void testIncrementalLayout()
+	{
+		// setup
+		ModelGraph graph = new ModelGraph();
+		List<Spot> leaves = new ArrayList<>();
+		for ( int i = 0; i < 5; i++ )
+			addTree( graph, "t" + i, leaves );
+		TrackSchemeGraph<Spot, Link> tsGraph = new TrackSchemeGraph<>( graph, graph.getGraphIdBimap(), new ModelGraphTrackSchemeProperties( graph ) );
+		LineageTreeLayoutImp layout = ( LineageTreeLayoutImp ) initLineageTreeLayout( graph, tsGraph );
+		layout.layout();
+		int timestamp = layout.getCurrentLayoutTimestamp();
+		Map<Integer, List<Integer>> table = getVertexTable( layout );
+		// run
+		Spot child = addSpot( graph, 4, "t1-new", 0, 0, 0 );
+		graph.addEdge( leaves.get( 1 * 4 ), child );
+		graph.remove( leaves.get( 3 * 4 + 2 ).incomingEdges().iterator().next() );
+		leaves.get( 3 * 4 + 2 ).setLabel( "t3a" );
+		addSpot( graph, 0, "t2b", 0, 0, 0 );
+		graph.remove( leaves.get( 4 * 4 + 1 ) );
+		// The vertex table is only updated by the next layout.
+		assertEquals( table, getVertexTable( layout ) );
+		// Probably reuses the pool index of the removed vertex.
+		addSpot( graph, 3, "t5", 0, 0, 0 );
+		layout.layout();
+		// test
+		assertEquals( timestamp, layout.getCurrentLayoutTimestamp() );
+		Map<Integer, Double> incrementalX = getLayoutX( tsGraph, layout );
+		Map<Integer, List<Integer>> incrementalTable = getVertexTable( layout );
+		List<Double> incrementalColumns = new ArrayList<>();
+		for ( double x : layout.currentLayoutColumnX.toArray() )
+			incrementalColumns.add( x );
+		layout.setIncremental( false );
+		layout.layout();
+		assertNotEquals( timestamp, layout.getCurrentLayoutTimestamp() );
+		assertEquals( getLayoutX( tsGraph, layout ), incrementalX );
+		assertEquals( getVertexTable( layout ), incrementalTable );
+		List<Double> columns = new ArrayList<>();
+		for ( double x : layout.currentLayoutColumnX.toArray() )
+			columns.add( x );
+		assertEquals( columns, incrementalColumns );
+	}
+
+	/**
+	 * Tests that a view that is zoomed out in X and Y only shows the occupied
+	 * layout X ranges of bands of timepoints, instead of vertices and edges.
+	 */
+	@Test
+	public void testZoomedOutDensity()
+	{
+		// setup
+		ModelGraph graph = new ModelGraph();
+		for ( int i = 0; i < 5; i++ )
+			addTree( graph, "t" + i, new ArrayList<>() );
+		TrackSchemeGraph<Spot, Link> tsGraph = new TrackSchemeGraph<>( graph, graph.getGraphIdBimap(), new ModelGraphTrackSchemeProperties( graph ) );
+		LineageTreeLayout layout = initLineageTreeLayout( graph, tsGraph );
+		ScreenEntities screenEntities = new ScreenEntities( tsGraph );
+		ScreenTransform transform = new ScreenTransform();
+		// 1 timepoint is less than a pixel high, 1 layout unit is 1.5 pixels wide.
+		transform.set( -1, 398, -1, 1000, 600, 100 );
+		// run
+		layout.layout();
+		layout.cropAndScale( transform, screenEntities, 0, 0, new GraphColorGeneratorAdapter<>( tsGraph.getVertexMap(), tsGraph.getEdgeMap() ) );
+		// test
+		assertTrue( screenEntities.getVertices().isEmpty() );
+		assertTrue( screenEntities.getEdges().isEmpty() );
+		// All timepoints fall in one band, with at most one range for each occupied layout X.
+		TreeSet<Double> occupied = new TreeSet<>();
+		for ( TrackSchemeVertex v : tsGraph.vertices() )
+			occupied.add( v.getLayoutX() );
+		assertTrue( !screenEntities.getRanges().isEmpty() );
+		assertTrue( screenEntities.getRanges().size() <= occupied.size() );
+		for ( ScreenVertexRange r : screenEntities.getRanges() )
+		{
+			assertTrue( r.getMaxX() > r.getMinX() );
+			assertTrue( r.getMaxY() > r.getMinY() );
+		}
+	}
+
+	/**
+	 * Tests that a view that is zoomed out in Y only, still shows the
+	 * individual vertices.
+	 */
+	@Test
+	public void testZoomedOutInYOnly()
+	{
+		// setup
+		ModelGraph graph = new ModelGraph();
+		for ( int i = 0; i < 5; i++ )
+			addTree( graph, "t" + i, new ArrayList<>() );
+		TrackSchemeGraph<Spot, Link> tsGraph = new TrackSchemeGraph<>( graph, graph.getGraphIdBimap(), new ModelGraphTrackSchemeProperties( graph ) );
+		LineageTreeLayout layout = initLineageTreeLayout( graph, tsGraph );
+		ScreenEntities screenEntities = new ScreenEntities( tsGraph );
+		ScreenTransform transform = new ScreenTransform();
+		// 1 timepoint is less than a pixel high, 1 layout unit is 27 pixels wide.
+		transform.set( -1, 21, -1, 1000, 600, 100 );
+		// run
+		layout.layout();
+		layout.cropAndScale( transform, screenEntities, 0, 0, new GraphColorGeneratorAdapter<>( tsGraph.getVertexMap(), tsGraph.getEdgeMap() ) );
+		// test
+		assertEquals( tsGraph.vertices().size(), screenEntities.getVertices().size() );
+	}
+
+	/**
+	 * Adds a tree that divides twice, with 4 leaves at timepoint 3.
+	 */
+	private void addTree( ModelGraph graph, String label, List<Spot> leaves )
+	{
+		Spot root = addSpot( graph, 0, label, 0, 0, 0 );
+		Spot a = addSpot( graph, 1, label + "-a", 0, 0, 0 );
+		graph.addEdge( root, a );
+		for ( int i = 0; i < 2; i++ )
+		{
+			Spot b = addSpot( graph, 2, label + "-b" + i, 0, 0, 0 );
+			graph.addEdge( a, b );
+			for ( int j = 0; j < 2; j++ )
+			{
+				Spot c = addSpot( graph, 3, label + "-c" + i + j, 0, 0, 0 );
+				graph.addEdge( b, c );
+				leaves.add( c );
+			}
+		}
+	}
+
+	private Map<Integer, Double> getLayoutX( TrackSchemeGraph<Spot, Link> tsGraph, LineageTreeLayout layout )
+	{
+		Map<Integer, Double> xs = new HashMap<>();
+		for ( TrackSchemeVertex v : tsGraph.vertices() )
+		{
+			assertEquals( layout.getCurrentLayoutTimestamp(), v.getLayoutTimestamp() );
+			xs.put( v.getInternalPoolIndex(), v.getLayoutX() );
+		}
+		return xs;
+	}
+
+	private Map<Integer, List<Integer>> getVertexTable( LineageTreeLayoutImp layout )
+	{
+		Map<Integer, List<Integer>> table = new HashMap<>();
+		for ( int tp : layout.vertexTable.getTimepoints().toArray() )
+		{
+			List<Integer> indices = new ArrayList<>();
+			for ( TrackSchemeVertex v : layout.vertexTable.getOrderedVertices( tp ) )
+				indices.add( v.getInternalPoolIndex() );
+			table.put( tp, indices );
+		}
+		return table;
+	}
 
 	private ModelGraph initDiamondModelGraph()
 	{
@@ -0,0 +1,205 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2022 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.views.trackscheme.display;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelGraphTrackSchemeProperties;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.DefaultFocusModel;
+import org.mastodon.model.DefaultHighlightModel;
+import org.mastodon.model.DefaultNavigationHandler;
+import org.mastodon.model.DefaultRootsModel;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.DefaultTimepointModel;
+import org.mastodon.model.FocusModel;
+import org.mastodon.model.HighlightModel;
+import org.mastodon.views.trackscheme.ScreenEntities;
+import org.mastodon.views.trackscheme.ScreenTransform;
+import org.mastodon.views.trackscheme.TrackSchemeEdge;
+import org.mastodon.views.trackscheme.TrackSchemeGraph;
+import org.mastodon.views.trackscheme.TrackSchemeVertex;
+import org.mastodon.views.trackscheme.display.TrackSchemeOverlay.TrackSchemeOverlayFactory;
+
+/**
+ * Tests the pipeline from graph changes to the entities painted by
+ * {@link TrackSchemePanel}: layouts run in the background, and the painter
+ * keeps drawing the previous entities meanwhile.
+ */
+public class TrackSchemePanelTest
+{
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private ModelGraph graph;
+
+	private ReentrantReadWriteLock lock;
+
+	private TrackSchemePanel panel;
+
+	/**
+	 * Number of vertices in the entities most recently given to the overlay.
+	 */
+	private AtomicInteger paintedVertices;
+
+	/**
+	 * Number of times entities were given to the overlay.
+	 */
+	private AtomicInteger paintCount;
+
+	@Before
+	public void setUp()
+	{
+		graph = new ModelGraph();
+		lock = graph.getLock();
+		final TrackSchemeGraph< Spot, Link > tsGraph = new TrackSchemeGraph<>( graph, graph.getGraphIdBimap(), new ModelGraphTrackSchemeProperties( graph ), lock );
+		paintedVertices = new AtomicInteger();
+		paintCount = new AtomicInteger();
+		final TrackSchemeOptions options = TrackSchemeOptions.options()
+				.animationDurationMillis( 0 )
+				.trackSchemeOverlayFactory( new TrackSchemeOverlayFactory()
+				{
+					@Override
+					public TrackSchemeOverlay create(
+							final TrackSchemeGraph< ?, ? > graph,
+							final HighlightModel< TrackSchemeVertex, TrackSchemeEdge > highlight,
+							final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus,
+							final TrackSchemeOptions options )
+					{
+						return new TrackSchemeOverlay( graph, highlight, focus, new PaintDecorations(), new PaintGraph(), options )
+						{
+							@Override
+							public synchronized ScreenEntities setScreenEntities( final ScreenEntities entities )
+							{
+								paintedVertices.set( entities.getVertices().size() );
+								paintCount.incrementAndGet();
+								return super.setScreenEntities( entities );
+							}
+						};
+					}
+				} );
+		panel = new TrackSchemePanel(
+				tsGraph,
+				new DefaultHighlightModel<>( tsGraph.getGraphIdBimap() ),
+				new DefaultFocusModel<>( tsGraph.getGraphIdBimap() ),
+				new DefaultTimepointModel(),
+				new SelectionModelAdapter<>( new DefaultSelectionModel<>( graph, graph.getGraphIdBimap() ), tsGraph.getVertexMap(), tsGraph.getEdgeMap() ),
+				new DefaultRootsModel<>( graph, tsGraph ),
+				new DefaultNavigationHandler<>(),
+				options );
+		panel.setTimepointRange( 0, 10 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		panel.stop();
+	}
+
+	@Test
+	public void testLayoutIsPainted() throws InterruptedException
+	{
+		addTrack( 0., 5 );
+		panel.graphChanged();
+		waitFor( () -> paintedVertices.get() == 5 );
+
+		addTrack( 1., 5 );
+		panel.graphChanged();
+		waitFor( () -> paintedVertices.get() == 10 );
+	}
+
+	@Test
+	public void testPaintDoesNotWaitForLayout() throws InterruptedException
+	{
+		addTrack( 0., 5 );
+		panel.graphChanged();
+		waitFor( () -> paintedVertices.get() == 5 );
+
+		lock.writeLock().lock();
+		try
+		{
+			addTrack( 1., 5 );
+			panel.graphChanged();
+
+			// The layout waits for the graph lock.
+			waitFor( () -> lock.getQueueLength() > 0 );
+
+			// The painter still shows the previous layout under new transforms.
+			final int count = paintCount.get();
+			final ScreenTransform transform = panel.getScreenTransform().get();
+			transform.shiftLayoutX( 1. );
+			panel.transformChanged( transform );
+			waitFor( () -> paintCount.get() > count );
+			assertTrue( paintedVertices.get() <= 5 );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+
+		// Once the graph is unlocked, the new layout is painted.
+		waitFor( () -> paintedVertices.get() == 10 );
+	}
+
+	private void addTrack( final double x, final int length )
+	{
+		final Spot previous = graph.vertexRef();
+		final Spot spot = graph.vertexRef();
+		final double[] pos = new double[] { x, 0., 0. };
+		for ( int t = 0; t < length; t++ )
+		{
+			graph.addVertex( spot ).init( t, pos, 1. );
+			if ( t > 0 )
+				graph.addEdge( previous, spot ).init();
+			previous.refTo( spot );
+		}
+		graph.releaseRef( previous );
+		graph.releaseRef( spot );
+	}
+
+	private static void waitFor( final BooleanSupplier condition ) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while ( !condition.getAsBoolean() )
+		{
+			assertTrue( "Timed out.", System.currentTimeMillis() < deadline );
+			Thread.sleep( 10 );
+		}
+	}
+}